@@ -70,10 +70,40 @@ public enum EQueryType
      */
     STORE_PROCEDURE(WebsockConstants.STORE_PROCEDURE),
 
+    /**
+     * Requests the numeric handle of the stored procedure with the given
+     * name, to be used instead of the name in later calls.
+     */
+    RESOLVE_PROCEDURE(WebsockConstants.RESOLVE_PROCEDURE),
+
     /**
      * Result values from a called procedure or executed statement.
      */
-    RESULT(WebsockConstants.RESULT);
+    RESULT(WebsockConstants.RESULT),
+
+    /**
+     * Several messages transferred in a single frame, contained as a list of
+     * message maps in the payload.
+     */
+    BATCH(WebsockConstants.MESSAGE_BATCH),
+
+    /**
+     * Several queries, contained as a list in the payload, to be answered
+     * with a single batch message containing their responses in order.
+     */
+    QUERY_BATCH(WebsockConstants.QUERY_BATCH),
+
+    /**
+     * Total number of results for a previous result that was sent without
+     * it, with the same query ID.
+     */
+    TOTAL(WebsockConstants.RESULT_TOTAL),
+
+    /**
+     * Cancels the query with the same query ID, discarding its remaining
+     * output; no response is sent for cancelled queries.
+     */
+    CANCEL(WebsockConstants.CANCEL);
 
     //map of type codes for easy decoding
     private static final Map<String, EQueryType> fTypesByCode
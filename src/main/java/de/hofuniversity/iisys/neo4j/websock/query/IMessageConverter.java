@@ -0,0 +1,43 @@
+/*
+ *  Copyright 2015 Institute of Information Systems, Hof University
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package de.hofuniversity.iisys.neo4j.websock.query;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Component decoding incoming websocket messages into queries.
+ */
+public interface IMessageConverter
+{
+    /**
+     * Converts the given message in String form into a WebsockQuery.
+     *
+     * @param message message in String form to convert
+     * @return converted WebsockQuery
+     * @throws Exception if conversion fails
+     */
+    public WebsockQuery convert(String message) throws Exception;
+
+    /**
+     * Converts the given message in binary form into a WebsockQuery.
+     *
+     * @param message message in binary form to convert
+     * @return converted WebsockQuery
+     * @throws Exception if conversion fails
+     */
+    public WebsockQuery convert(ByteBuffer message) throws Exception;
+}
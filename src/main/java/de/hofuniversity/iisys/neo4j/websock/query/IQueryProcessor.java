@@ -0,0 +1,35 @@
+/*
+ *  Copyright 2015 Institute of Information Systems, Hof University
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package de.hofuniversity.iisys.neo4j.websock.query;
+
+/**
+ * Processor executing a single query and returning its response, such as a
+ * server's query execution.
+ */
+public interface IQueryProcessor
+{
+    /**
+     * Executes the given query and returns the response to send back, using
+     * the query's ID.
+     * The query given must not be null.
+     *
+     * @param query query to execute
+     * @return response to the query, null if nothing is to be sent
+     * @throws Exception if execution fails
+     */
+    public WebsockQuery process(WebsockQuery query) throws Exception;
+}
@@ -33,6 +33,8 @@ public class WebsockQuery
     private Object fPayload;
     private Map<String, Object> fParameters;
 
+    private long fDeadline;
+
     /**
      * Creates an empty ping type query with ID 0.
      */
@@ -174,4 +176,67 @@ public class WebsockQuery
     {
         this.fPayload = payload;
     }
+
+    /**
+     * @return local time in milliseconds after which the query's result is
+     *  no longer needed or 0 if there is no deadline
+     */
+    public long getDeadline()
+    {
+        return fDeadline;
+    }
+
+    /**
+     * Sets the local time in milliseconds after which the query's result is
+     * no longer needed, 0 meaning no deadline.
+     *
+     * @param deadline new deadline of the query
+     */
+    public void setDeadline(long deadline)
+    {
+        fDeadline = deadline;
+    }
+
+    /**
+     * Sets the query's deadline to the given number of milliseconds from
+     * now, removing it if the timeout is not positive.
+     *
+     * @param timeout time in milliseconds until the deadline
+     */
+    public void setTimeout(long timeout)
+    {
+        if(timeout > 0)
+        {
+            fDeadline = System.currentTimeMillis() + timeout;
+        }
+        else
+        {
+            fDeadline = 0;
+        }
+    }
+
+    /**
+     * Returns the time remaining until the query's deadline, as it is
+     * transferred to avoid depending on synchronized clocks.
+     *
+     * @return remaining time in milliseconds, at least 1, or 0 if there is
+     *  no deadline
+     */
+    public long getTimeout()
+    {
+        if(fDeadline <= 0)
+        {
+            return 0;
+        }
+
+        return Math.max(1, fDeadline - System.currentTimeMillis());
+    }
+
+    /**
+     * @return whether the query has a deadline that has passed
+     */
+    public boolean isExpired()
+    {
+        return fDeadline > 0 && System.currentTimeMillis() > fDeadline;
+    }
 }
@@ -0,0 +1,95 @@
+/*
+ *  Copyright 2015 Institute of Information Systems, Hof University
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package de.hofuniversity.iisys.neo4j.websock.query.batch;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import de.hofuniversity.iisys.neo4j.websock.query.EQueryType;
+import de.hofuniversity.iisys.neo4j.websock.query.WebsockQuery;
+import de.hofuniversity.iisys.neo4j.websock.session.WebsockConstants;
+import de.hofuniversity.iisys.neo4j.websock.util.QueryMapConverter;
+
+/**
+ * Utility creating query batches and reading the queries contained in
+ * batches.
+ * Queries are nested as they are, leaving their encoding to the message
+ * codecs.
+ */
+public class QueryBatch
+{
+    /**
+     * Creates a query batch containing the given queries, which keep their
+     * IDs.
+     * The list given must not be null.
+     *
+     * @param id ID of the batch
+     * @param queries queries to execute
+     * @param parallel whether the queries may be executed in parallel
+     * @return query batch message
+     */
+    public static WebsockQuery create(final int id,
+        final List<WebsockQuery> queries, final boolean parallel)
+    {
+        final WebsockQuery batch = new WebsockQuery(id,
+            EQueryType.QUERY_BATCH);
+        batch.setPayload(new ArrayList<Object>(queries));
+
+        if(parallel)
+        {
+            batch.setParameter(WebsockConstants.PARALLEL_BATCH, true);
+        }
+
+        return batch;
+    }
+
+    /**
+     * Returns the queries or messages contained in the given query batch or
+     * message batch, converting them if they were decoded as maps.
+     * The batch given must not be null.
+     *
+     * @param batch batch to read
+     * @return contained queries in order
+     */
+    public static List<WebsockQuery> getQueries(final WebsockQuery batch)
+    {
+        final List<?> messages = (List<?>)batch.getPayload();
+        if(messages == null)
+        {
+            return new ArrayList<WebsockQuery>(0);
+        }
+
+        final List<WebsockQuery> queries =
+            new ArrayList<WebsockQuery>(messages.size());
+        for(Object message : messages)
+        {
+            queries.add(QueryMapConverter.toQuery(message));
+        }
+
+        return queries;
+    }
+
+    /**
+     * @param batch query batch
+     * @return whether the batch's queries may be executed in parallel
+     */
+    public static boolean isParallel(final WebsockQuery batch)
+    {
+        return Boolean.TRUE.equals(
+            batch.getParameter(WebsockConstants.PARALLEL_BATCH));
+    }
+}
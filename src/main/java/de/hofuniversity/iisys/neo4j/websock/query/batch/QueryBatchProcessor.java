@@ -0,0 +1,171 @@
+/*
+ *  Copyright 2015 Institute of Information Systems, Hof University
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package de.hofuniversity.iisys.neo4j.websock.query.batch;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import de.hofuniversity.iisys.neo4j.websock.query.EQueryType;
+import de.hofuniversity.iisys.neo4j.websock.query.IQueryProcessor;
+import de.hofuniversity.iisys.neo4j.websock.query.WebsockQuery;
+import de.hofuniversity.iisys.neo4j.websock.session.WebsockConstants;
+
+/**
+ * Processor executing the queries of a query batch using another processor
+ * and combining their responses into a single batch message with the
+ * batch's ID, in the order of the queries.
+ * Queries are executed in parallel if the batch requests it and an executor
+ * is available, otherwise one after the other.
+ * A failing query results in an error response for that query only;
+ * queries without a response are answered with a success message.
+ * Queries whose deadline has passed by the time their turn comes are not
+ * executed but answered with a deadline exceeded error.
+ * Other queries are passed on to the other processor unchanged.
+ */
+public class QueryBatchProcessor implements IQueryProcessor
+{
+    private final IQueryProcessor fProcessor;
+    private final ExecutorService fExecutor;
+    private final Logger fLogger;
+
+    /**
+     * Creates a batch processor executing queries using the given processor
+     * and the given executor for parallel batches.
+     * If the executor is null, all batches are executed sequentially.
+     * The processor must not be null.
+     *
+     * @param processor processor executing single queries
+     * @param executor executor for parallel batches or null
+     */
+    public QueryBatchProcessor(final IQueryProcessor processor,
+        final ExecutorService executor)
+    {
+        if(processor == null)
+        {
+            throw new NullPointerException("query processor was null");
+        }
+
+        fProcessor = processor;
+        fExecutor = executor;
+        fLogger = Logger.getLogger(this.getClass().getName());
+    }
+
+    @Override
+    public WebsockQuery process(final WebsockQuery query) throws Exception
+    {
+        if(query.getType() != EQueryType.QUERY_BATCH)
+        {
+            return fProcessor.process(query);
+        }
+
+        final List<WebsockQuery> queries = QueryBatch.getQueries(query);
+        final List<WebsockQuery> responses =
+            new ArrayList<WebsockQuery>(queries.size());
+
+        if(fExecutor != null && queries.size() > 1
+            && QueryBatch.isParallel(query))
+        {
+            final List<Callable<WebsockQuery>> tasks =
+                new ArrayList<Callable<WebsockQuery>>(queries.size());
+            for(final WebsockQuery sub : queries)
+            {
+                tasks.add(new Callable<WebsockQuery>()
+                {
+                    @Override
+                    public WebsockQuery call()
+                    {
+                        return execute(sub);
+                    }
+                });
+            }
+
+            final List<Future<WebsockQuery>> results =
+                fExecutor.invokeAll(tasks);
+            for(int i = 0; i < results.size(); ++i)
+            {
+                try
+                {
+                    responses.add(results.get(i).get());
+                }
+                catch(ExecutionException e)
+                {
+                    responses.add(error(queries.get(i), e.getCause()));
+                }
+            }
+        }
+        else
+        {
+            for(WebsockQuery sub : queries)
+            {
+                responses.add(execute(sub));
+            }
+        }
+
+        final WebsockQuery response = new WebsockQuery(query.getId(),
+            EQueryType.BATCH);
+        response.setPayload(responses);
+        return response;
+    }
+
+    private WebsockQuery execute(final WebsockQuery query)
+    {
+        if(query.isExpired())
+        {
+            fLogger.log(Level.FINE, "dropping query " + query.getId()
+                + " in batch, deadline passed");
+
+            final WebsockQuery error = new WebsockQuery(query.getId(),
+                EQueryType.ERROR);
+            error.setParameter(WebsockConstants.ERROR_CODE,
+                WebsockConstants.DEADLINE_EXCEEDED);
+            error.setPayload("deadline exceeded");
+            return error;
+        }
+
+        try
+        {
+            //nested batches are answered with nested batch messages
+            final WebsockQuery response = process(query);
+            if(response == null)
+            {
+                return new WebsockQuery(query.getId(), EQueryType.SUCCESS);
+            }
+            return response;
+        }
+        catch(Exception e)
+        {
+            return error(query, e);
+        }
+    }
+
+    private WebsockQuery error(final WebsockQuery query, final Throwable t)
+    {
+        fLogger.log(Level.WARNING, "query " + query.getId()
+            + " in batch failed", t);
+
+        final WebsockQuery error = new WebsockQuery(query.getId(),
+            EQueryType.ERROR);
+        error.setPayload(String.valueOf(t.getMessage()));
+        return error;
+    }
+}
@@ -0,0 +1,232 @@
+/*
+ *  Copyright 2015 Institute of Information Systems, Hof University
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package de.hofuniversity.iisys.neo4j.websock.query.cancel;
+
+import java.util.Iterator;
+import java.util.Map.Entry;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import de.hofuniversity.iisys.neo4j.websock.query.EQueryType;
+import de.hofuniversity.iisys.neo4j.websock.query.IQueryListener;
+import de.hofuniversity.iisys.neo4j.websock.query.WebsockQuery;
+
+/**
+ * Per-session registry of the cancellation tokens of executing queries,
+ * cancelling them by ID when a cancellation message arrives.
+ * Cancellations for queries that have not been registered yet, for example
+ * because they are still waiting for a free thread, are remembered for a
+ * limited time, so the query is cancelled as soon as it registers.
+ */
+public class CancellationRegistry
+{
+    /**
+     * Default time in milliseconds cancellations of unregistered queries
+     * are remembered.
+     */
+    public static final long DEFAULT_EXPIRY = 10000;
+
+    private final ConcurrentMap<Integer, CancellationToken> fTokens;
+    private final ConcurrentMap<Integer, Long> fCancelled;
+    private final long fExpiry;
+    private final Logger fLogger;
+
+    /**
+     * Creates an empty registry remembering cancellations of unregistered
+     * queries for the default time.
+     */
+    public CancellationRegistry()
+    {
+        this(DEFAULT_EXPIRY);
+    }
+
+    /**
+     * Creates an empty registry remembering cancellations of unregistered
+     * queries for the given time.
+     *
+     * @param expiry time in milliseconds to remember cancellations of
+     *  unregistered queries, not at all if not positive
+     */
+    public CancellationRegistry(final long expiry)
+    {
+        fTokens = new ConcurrentHashMap<Integer, CancellationToken>();
+        fCancelled = new ConcurrentHashMap<Integer, Long>();
+        fExpiry = expiry;
+        fLogger = Logger.getLogger(this.getClass().getName());
+    }
+
+    /**
+     * Creates a listener executing queries with the given cancellable
+     * listener, registering a token for each query while it executes.
+     * Cancellation messages cancel the query with their ID instead of being
+     * passed on.
+     * The listener must not be null.
+     *
+     * @param listener listener executing queries
+     * @return listener to pass incoming queries to
+     */
+    public IQueryListener createListener(
+        final ICancellableQueryListener listener)
+    {
+        if(listener == null)
+        {
+            throw new NullPointerException("query listener was null");
+        }
+
+        return new IQueryListener()
+        {
+            @Override
+            public void onQuery(final WebsockQuery query)
+            {
+                if(query.getType() == EQueryType.CANCEL)
+                {
+                    cancel(query.getId());
+                    return;
+                }
+
+                final CancellationToken token = register(query.getId());
+                if(token.isCancelled())
+                {
+                    remove(token);
+                    fLogger.log(Level.FINE, "query " + query.getId()
+                        + " was cancelled before its execution");
+                    return;
+                }
+
+                try
+                {
+                    listener.onQuery(query, token);
+                }
+                catch(CancellationException e)
+                {
+                    fLogger.log(Level.FINE, "query " + query.getId()
+                        + " was cancelled");
+                }
+                finally
+                {
+                    remove(token);
+                }
+            }
+        };
+    }
+
+    /**
+     * Registers a new token for the query with the given ID, replacing any
+     * previous token for that ID.
+     * If the query was cancelled before, the token is already cancelled.
+     *
+     * @param id ID of the query
+     * @return token of the query
+     */
+    public CancellationToken register(final int id)
+    {
+        final CancellationToken token = new CancellationToken(id);
+        fTokens.put(id, token);
+
+        final Long expires = fCancelled.remove(id);
+        if(expires != null && expires >= System.currentTimeMillis())
+        {
+            cancel(id);
+        }
+        return token;
+    }
+
+    /**
+     * Removes the given token once its query has finished.
+     * The token must not be null.
+     *
+     * @param token token to remove
+     */
+    public void remove(final CancellationToken token)
+    {
+        fTokens.remove(token.getId(), token);
+    }
+
+    /**
+     * Cancels the executing query with the given ID.
+     * If there is no such query, the cancellation is remembered in case the
+     * query registers later.
+     *
+     * @param id ID of the query to cancel
+     * @return whether an executing query was cancelled
+     */
+    public boolean cancel(final int id)
+    {
+        CancellationToken token = fTokens.remove(id);
+        if(token == null)
+        {
+            remember(id);
+
+            //query registered in the meantime
+            token = fTokens.remove(id);
+            if(token == null)
+            {
+                return false;
+            }
+            fCancelled.remove(id);
+        }
+        return token.cancel();
+    }
+
+    private void remember(final int id)
+    {
+        if(fExpiry <= 0)
+        {
+            return;
+        }
+
+        final long now = System.currentTimeMillis();
+        final Iterator<Entry<Integer, Long>> iter =
+            fCancelled.entrySet().iterator();
+        while(iter.hasNext())
+        {
+            if(iter.next().getValue() < now)
+            {
+                iter.remove();
+            }
+        }
+
+        fCancelled.put(id, now + fExpiry);
+    }
+
+    /**
+     * Cancels all executing queries, for example once the session closes.
+     */
+    public void cancelAll()
+    {
+        for(Integer id : fTokens.keySet())
+        {
+            final CancellationToken token = fTokens.remove(id);
+            if(token != null)
+            {
+                token.cancel();
+            }
+        }
+        fCancelled.clear();
+    }
+
+    /**
+     * @return number of queries currently registered
+     */
+    public int getActive()
+    {
+        return fTokens.size();
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ *  Copyright 2015 Institute of Information Systems, Hof University
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package de.hofuniversity.iisys.neo4j.websock.query.cancel;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Token marking a single query as cancelled, to be checked by the code
+ * executing it at convenient points so it can stop early.
+ * Listeners can be registered to release resources or discard output once
+ * the query is cancelled.
+ */
+public class CancellationToken
+{
+    private final int fId;
+
+    private List<Runnable> fListeners;
+    private volatile boolean fCancelled;
+
+    /**
+     * Creates a token for the query with the given ID.
+     *
+     * @param id ID of the query
+     */
+    public CancellationToken(final int id)
+    {
+        fId = id;
+        fListeners = new ArrayList<Runnable>();
+    }
+
+    /**
+     * @return ID of the query
+     */
+    public int getId()
+    {
+        return fId;
+    }
+
+    /**
+     * Cancels the query and runs all registered listeners in the calling
+     * thread.
+     *
+     * @return whether the query was not cancelled before
+     */
+    public boolean cancel()
+    {
+        final List<Runnable> listeners;
+        synchronized(this)
+        {
+            if(fCancelled)
+            {
+                return false;
+            }
+
+            fCancelled = true;
+            listeners = fListeners;
+            fListeners = null;
+        }
+
+        for(Runnable listener : listeners)
+        {
+            run(listener);
+        }
+        return true;
+    }
+
+    /**
+     * @return whether the query was cancelled
+     */
+    public boolean isCancelled()
+    {
+        return fCancelled;
+    }
+
+    /**
+     * Throws a cancellation exception if the query was cancelled.
+     *
+     * @throws CancellationException if the query was cancelled
+     */
+    public void throwIfCancelled()
+    {
+        if(fCancelled)
+        {
+            throw new CancellationException("query " + fId
+                + " was cancelled");
+        }
+    }
+
+    /**
+     * Registers a listener to run once the query is cancelled, in the
+     * cancelling thread; it runs immediately if already cancelled.
+     * The listener must not be null.
+     *
+     * @param listener listener to run
+     */
+    public void addListener(final Runnable listener)
+    {
+        if(listener == null)
+        {
+            throw new NullPointerException("listener was null");
+        }
+
+        synchronized(this)
+        {
+            if(!fCancelled)
+            {
+                fListeners.add(listener);
+                return;
+            }
+        }
+
+        run(listener);
+    }
+
+    private void run(final Runnable listener)
+    {
+        try
+        {
+            listener.run();
+        }
+        catch(RuntimeException e)
+        {
+            Logger.getLogger(this.getClass().getName()).log(Level.WARNING,
+                "cancellation listener failed", e);
+        }
+    }
+}
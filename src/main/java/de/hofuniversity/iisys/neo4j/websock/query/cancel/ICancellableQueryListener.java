@@ -0,0 +1,35 @@
+/*
+ *  Copyright 2015 Institute of Information Systems, Hof University
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package de.hofuniversity.iisys.neo4j.websock.query.cancel;
+
+import de.hofuniversity.iisys.neo4j.websock.query.WebsockQuery;
+
+/**
+ * Listener for incoming queries that can be cancelled while executing.
+ */
+public interface ICancellableQueryListener
+{
+    /**
+     * Executes the given query, checking the given token to stop early once
+     * the query is cancelled; a cancellation exception may be thrown to
+     * abort.
+     *
+     * @param query query to execute
+     * @param token cancellation token of the query
+     */
+    public void onQuery(WebsockQuery query, CancellationToken token);
+}
@@ -0,0 +1,612 @@
+/*
+ *  Copyright 2015 Institute of Information Systems, Hof University
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package de.hofuniversity.iisys.neo4j.websock.query.client;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import de.hofuniversity.iisys.neo4j.websock.query.EQueryType;
+import de.hofuniversity.iisys.neo4j.websock.query.IMessageConverter;
+import de.hofuniversity.iisys.neo4j.websock.query.IMessageHandler;
+import de.hofuniversity.iisys.neo4j.websock.query.IMessageSender;
+import de.hofuniversity.iisys.neo4j.websock.query.IQueryListener;
+import de.hofuniversity.iisys.neo4j.websock.query.WebsockQuery;
+import de.hofuniversity.iisys.neo4j.websock.query.batch.QueryBatch;
+import de.hofuniversity.iisys.neo4j.websock.query.encoding.BatchUnpackingHandler;
+import de.hofuniversity.iisys.neo4j.websock.result.stream.ResultStream;
+import de.hofuniversity.iisys.neo4j.websock.session.WebsockConstants;
+
+/**
+ * Client-side dispatcher pipelining queries over a single connection.
+ * Each query sent is assigned a fresh ID and a future, which is completed
+ * by the first response with that ID, exceptionally for error messages.
+ * The number of queries awaiting a response is limited; senders block until
+ * a slot is free or their timeout expires.
+ * Queries without a deadline are given one matching their timeout, so the
+ * server can drop them once nobody waits for their response.
+ * Several queries can be sent in a single query batch frame, whose response
+ * batch is unpacked by the handler so each response completes its future.
+ * Responses arriving after their query completed, such as deferred totals,
+ * are ignored.
+ * Results streamed in chunks must be received through a result stream
+ * passed when sending the query, whose future is completed by the last
+ * chunk; futures of queries sent without a stream fail on the first chunk
+ * of a streamed result instead of being completed with it.
+ * Cancelling a future fails it with a cancellation exception and sends a
+ * cancellation message for its query, so the server stops executing it.
+ */
+public class QueryDispatcher implements IQueryListener
+{
+    /**
+     * Default maximum number of queries awaiting a response.
+     */
+    public static final int DEFAULT_MAX_IN_FLIGHT = 256;
+
+    /**
+     * Default time in milliseconds to wait for a response.
+     */
+    public static final long DEFAULT_TIMEOUT = 30000;
+
+    private static ScheduledExecutorService fDefaultTimer;
+
+    private final IMessageSender fSender;
+    private final long fTimeout;
+    private final ScheduledExecutorService fTimer;
+    private final Logger fLogger;
+
+    private final AtomicInteger fNextId;
+    private final ConcurrentMap<Integer, QueryFuture> fPending;
+    private final Semaphore fSlots;
+    private final ConcurrentMap<Integer, List<QueryFuture>> fBatches;
+    private final ConcurrentMap<Integer, ResultStream> fStreams;
+
+    private volatile boolean fClosed;
+
+    /**
+     * Creates a dispatcher sending queries over the given sender with the
+     * default in-flight limit and timeout and a shared timer thread.
+     * The sender must not be null.
+     *
+     * @param sender sender to send queries with
+     */
+    public QueryDispatcher(final IMessageSender sender)
+    {
+        this(sender, DEFAULT_MAX_IN_FLIGHT, DEFAULT_TIMEOUT, null);
+    }
+
+    /**
+     * Creates a dispatcher sending queries over the given sender, using the
+     * given timer to expire queries.
+     * If the timer is null, a shared daemon timer thread is used.
+     * The sender must not be null.
+     *
+     * @param sender sender to send queries with
+     * @param maxInFlight maximum number of queries awaiting a response
+     * @param timeout default time in milliseconds to wait for a response,
+     *  no timeout if not positive
+     * @param timer timer to schedule timeouts with or null
+     */
+    public QueryDispatcher(final IMessageSender sender, final int maxInFlight,
+        final long timeout, final ScheduledExecutorService timer)
+    {
+        if(sender == null)
+        {
+            throw new NullPointerException("message sender was null");
+        }
+        if(maxInFlight <= 0)
+        {
+            throw new IllegalArgumentException(
+                "maximum number of queries in flight must be positive");
+        }
+
+        fSender = sender;
+        fTimeout = timeout;
+
+        if(timer != null)
+        {
+            fTimer = timer;
+        }
+        else
+        {
+            fTimer = getDefaultTimer();
+        }
+
+        fLogger = Logger.getLogger(this.getClass().getName());
+
+        fNextId = new AtomicInteger();
+        fPending = new ConcurrentHashMap<Integer, QueryFuture>();
+        fSlots = new Semaphore(maxInFlight);
+        fBatches = new ConcurrentHashMap<Integer, List<QueryFuture>>();
+        fStreams = new ConcurrentHashMap<Integer, ResultStream>();
+    }
+
+    private static synchronized ScheduledExecutorService getDefaultTimer()
+    {
+        if(fDefaultTimer == null)
+        {
+            fDefaultTimer = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactory()
+                {
+                    @Override
+                    public Thread newThread(Runnable r)
+                    {
+                        final Thread thread = new Thread(r,
+                            "websocket query timeouts");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        }
+
+        return fDefaultTimer;
+    }
+
+    /**
+     * Creates a message handler decoding incoming messages with the given
+     * converter and passing them to this dispatcher, unpacking batches.
+     * The converter given must not be null.
+     *
+     * @param converter converter to decode messages with
+     * @return message handler for the connection
+     */
+    public IMessageHandler createHandler(final IMessageConverter converter)
+    {
+        return new BatchUnpackingHandler(converter, this);
+    }
+
+    /**
+     * Sends the given query with the default timeout.
+     * The query given must not be null; its ID is overwritten.
+     *
+     * @param query query to send
+     * @return future for the response
+     * @throws InterruptedException if interrupted waiting for a free slot
+     */
+    public QueryFuture send(final WebsockQuery query)
+        throws InterruptedException
+    {
+        return send(query, fTimeout);
+    }
+
+    /**
+     * Sends the given query, failing its future with a timeout exception if
+     * no response arrives within the given time, including the time spent
+     * waiting for a free slot.
+     * Sending errors also fail the future instead of being thrown.
+     * The query given must not be null; its ID is overwritten.
+     *
+     * @param query query to send
+     * @param timeout time in milliseconds to wait, unlimited if not positive
+     * @return future for the response
+     * @throws InterruptedException if interrupted waiting for a free slot
+     */
+    public QueryFuture send(final WebsockQuery query, final long timeout)
+        throws InterruptedException
+    {
+        return send(query, timeout, null);
+    }
+
+    /**
+     * Sends the given query, passing all response messages to the given
+     * result stream, with the default timeout.
+     * The future is completed by the last chunk of the result.
+     * Neither of the parameters may be null; the query's ID is overwritten.
+     *
+     * @param query query to send
+     * @param stream stream to receive the result chunks with
+     * @return future for the last response
+     * @throws InterruptedException if interrupted waiting for a free slot
+     */
+    public QueryFuture stream(final WebsockQuery query,
+        final ResultStream stream) throws InterruptedException
+    {
+        return stream(query, stream, fTimeout);
+    }
+
+    /**
+     * Sends the given query, passing all response messages to the given
+     * result stream.
+     * The future is completed by the last chunk of the result; if it fails
+     * beforehand, for example because the whole result did not arrive
+     * within the given time, the stream ends with an error.
+     * Neither of the parameters may be null; the query's ID is overwritten.
+     *
+     * @param query query to send
+     * @param stream stream to receive the result chunks with
+     * @param timeout time in milliseconds to wait, unlimited if not positive
+     * @return future for the last response
+     * @throws InterruptedException if interrupted waiting for a free slot
+     */
+    public QueryFuture stream(final WebsockQuery query,
+        final ResultStream stream, final long timeout)
+        throws InterruptedException
+    {
+        if(stream == null)
+        {
+            throw new NullPointerException("result stream was null");
+        }
+
+        return send(query, timeout, stream);
+    }
+
+    private QueryFuture send(final WebsockQuery query, final long timeout,
+        final ResultStream stream) throws InterruptedException
+    {
+        final QueryFuture future = register(query, timeout,
+            System.currentTimeMillis(), stream);
+
+        if(!future.isDone())
+        {
+            try
+            {
+                fSender.sendMessage(query);
+            }
+            catch(Exception e)
+            {
+                future.fail(e);
+            }
+        }
+
+        return future;
+    }
+
+    /**
+     * Sends the given queries in a single query batch frame with the default
+     * timeout, to be answered with a single batch of responses.
+     * The list given must not be null; the queries' IDs are overwritten.
+     *
+     * @param queries queries to send
+     * @param parallel whether the queries may be executed in parallel
+     * @return futures for the responses, in the order of the queries
+     * @throws InterruptedException if interrupted waiting for free slots
+     */
+    public List<QueryFuture> sendBatch(final List<WebsockQuery> queries,
+        final boolean parallel) throws InterruptedException
+    {
+        return sendBatch(queries, parallel, fTimeout);
+    }
+
+    /**
+     * Sends the given queries in a single query batch frame, to be answered
+     * with a single batch of responses.
+     * Each query occupies a slot and its future fails with a timeout
+     * exception if no response arrives within the given time; an error
+     * response to the whole batch fails all of them.
+     * The list given must not be null; the queries' IDs are overwritten.
+     *
+     * @param queries queries to send
+     * @param parallel whether the queries may be executed in parallel
+     * @param timeout time in milliseconds to wait, unlimited if not positive
+     * @return futures for the responses, in the order of the queries
+     * @throws InterruptedException if interrupted waiting for free slots
+     */
+    public List<QueryFuture> sendBatch(final List<WebsockQuery> queries,
+        final boolean parallel, final long timeout)
+        throws InterruptedException
+    {
+        final long start = System.currentTimeMillis();
+
+        final List<QueryFuture> futures =
+            new ArrayList<QueryFuture>(queries.size());
+        final List<WebsockQuery> sent =
+            new ArrayList<WebsockQuery>(queries.size());
+        final List<QueryFuture> pending =
+            new ArrayList<QueryFuture>(queries.size());
+        for(WebsockQuery query : queries)
+        {
+            final QueryFuture future = register(query, timeout, start, null);
+            futures.add(future);
+
+            if(!future.isDone())
+            {
+                sent.add(query);
+                pending.add(future);
+            }
+        }
+
+        if(sent.isEmpty())
+        {
+            return futures;
+        }
+
+        //remember the batch's queries in case the whole batch fails
+        final int id = nextId();
+        final AtomicInteger open = new AtomicInteger(pending.size());
+        fBatches.put(id, pending);
+        for(QueryFuture future : pending)
+        {
+            future.addCallback(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    if(open.decrementAndGet() == 0)
+                    {
+                        fBatches.remove(id);
+                    }
+                }
+            });
+        }
+
+        try
+        {
+            fSender.sendMessage(QueryBatch.create(id, sent, parallel));
+        }
+        catch(Exception e)
+        {
+            for(QueryFuture future : pending)
+            {
+                future.fail(e);
+            }
+        }
+
+        return futures;
+    }
+
+    private QueryFuture register(final WebsockQuery query, final long timeout,
+        final long start, final ResultStream stream)
+        throws InterruptedException
+    {
+        if(fClosed)
+        {
+            throw new IllegalStateException("dispatcher closed");
+        }
+
+        final long remaining = timeout - (System.currentTimeMillis() - start);
+        if(timeout > 0)
+        {
+            if(remaining <= 0 || !fSlots.tryAcquire(remaining,
+                TimeUnit.MILLISECONDS))
+            {
+                final QueryFuture future = new QueryFuture(0);
+                future.fail(new TimeoutException(
+                    "too many queries in flight"));
+                return future;
+            }
+        }
+        else
+        {
+            fSlots.acquire();
+        }
+
+        int id = 0;
+        QueryFuture future = null;
+        do
+        {
+            id = nextId();
+            future = new QueryFuture(id);
+        }
+        while(fPending.putIfAbsent(id, future) != null);
+        query.setId(id);
+        if(stream != null)
+        {
+            fStreams.put(id, stream);
+        }
+
+        //let the server drop the query once nobody waits for it
+        if(timeout > 0 && query.getDeadline() <= 0)
+        {
+            query.setDeadline(start + timeout);
+        }
+
+        //expire query after the remaining time
+        ScheduledFuture<?> expiry = null;
+        if(timeout > 0)
+        {
+            final QueryFuture expiring = future;
+            final long expiryTime = Math.max(0,
+                timeout - (System.currentTimeMillis() - start));
+            expiry = fTimer.schedule(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    expiring.fail(new TimeoutException("no response for query "
+                        + expiring.getId() + " within " + timeout + " ms"));
+                }
+            }, expiryTime, TimeUnit.MILLISECONDS);
+        }
+
+        final int registered = id;
+        final QueryFuture registeredFuture = future;
+        final ScheduledFuture<?> scheduled = expiry;
+        future.addCallback(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                //notify server before the ID can be reused
+                if(registeredFuture.isCancelled())
+                {
+                    sendCancel(registered);
+                }
+                //end the stream if its last chunk did not arrive
+                if(stream != null && fStreams.remove(registered, stream))
+                {
+                    endStream(registered, registeredFuture, stream);
+                }
+                release(registered, registeredFuture);
+                if(scheduled != null)
+                {
+                    scheduled.cancel(false);
+                }
+            }
+        });
+
+        return future;
+    }
+
+    private void sendCancel(final int id)
+    {
+        try
+        {
+            fSender.sendMessage(new WebsockQuery(id, EQueryType.CANCEL));
+        }
+        catch(Exception e)
+        {
+            fLogger.log(Level.WARNING, "failed to cancel query " + id, e);
+        }
+    }
+
+    private void endStream(final int id, final QueryFuture future,
+        final ResultStream stream)
+    {
+        String reason = "query " + id + " was cancelled";
+        if(!future.isCancelled())
+        {
+            try
+            {
+                future.get();
+            }
+            catch(ExecutionException e)
+            {
+                reason = String.valueOf(e.getCause().getMessage());
+            }
+            catch(InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        final WebsockQuery error = new WebsockQuery(id, EQueryType.ERROR);
+        error.setPayload(reason);
+        stream.onMessage(error);
+    }
+
+    private int nextId()
+    {
+        //skip 0 and IDs still pending after a wrap-around
+        int id = 0;
+        do
+        {
+            id = fNextId.incrementAndGet() & Integer.MAX_VALUE;
+        }
+        while(id == 0 || fPending.containsKey(id)
+            || fBatches.containsKey(id));
+
+        return id;
+    }
+
+    private void release(final int id, final QueryFuture future)
+    {
+        if(fPending.remove(id, future))
+        {
+            fSlots.release();
+        }
+    }
+
+    /**
+     * Completes the future of the query with the response's ID, failing it
+     * for error messages.
+     * Messages for queries sent with a result stream are passed to the
+     * stream, completing the future with the last one.
+     *
+     * @param response received response
+     */
+    @Override
+    public void onQuery(final WebsockQuery response)
+    {
+        final QueryFuture future = fPending.get(response.getId());
+        if(future == null)
+        {
+            final List<QueryFuture> batch = fBatches.get(response.getId());
+            if(batch != null && response.getType() == EQueryType.ERROR)
+            {
+                for(QueryFuture pending : batch)
+                {
+                    pending.fail(new RuntimeException("query batch "
+                        + response.getId() + " failed: "
+                        + response.getPayload()));
+                }
+                return;
+            }
+
+            fLogger.log(Level.FINE, "no pending query for response "
+                + response.getId() + " of type " + response.getType());
+            return;
+        }
+
+        final ResultStream stream = fStreams.get(response.getId());
+        if(stream != null)
+        {
+            if(!stream.onMessage(response))
+            {
+                return;
+            }
+            fStreams.remove(response.getId(), stream);
+        }
+
+        if(response.getType() == EQueryType.ERROR)
+        {
+            future.fail(new RuntimeException("query " + response.getId()
+                + " failed: " + response.getPayload()));
+        }
+        else if(stream == null && isChunk(response))
+        {
+            future.fail(new IllegalStateException("query "
+                + response.getId() + " was answered with a streamed result"));
+        }
+        else
+        {
+            future.complete(response);
+        }
+    }
+
+    private boolean isChunk(final WebsockQuery response)
+    {
+        final Object payload = response.getPayload();
+        return payload instanceof Map
+            && ((Map<?, ?>) payload).containsKey(WebsockConstants.CHUNK_INDEX);
+    }
+
+    /**
+     * @return number of queries currently awaiting a response
+     */
+    public int getInFlight()
+    {
+        return fPending.size();
+    }
+
+    /**
+     * Fails all pending queries and rejects further ones.
+     */
+    public void close()
+    {
+        fClosed = true;
+
+        final List<QueryFuture> pending =
+            new ArrayList<QueryFuture>(fPending.values());
+        for(QueryFuture future : pending)
+        {
+            future.fail(new IllegalStateException("dispatcher closed"));
+        }
+    }
+}
@@ -0,0 +1,220 @@
+/*
+ *  Copyright 2015 Institute of Information Systems, Hof University
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package de.hofuniversity.iisys.neo4j.websock.query.client;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import de.hofuniversity.iisys.neo4j.websock.query.WebsockQuery;
+
+/**
+ * Future for the response to a query sent by a client, completed with the
+ * response or exceptionally once, after which registered callbacks are run.
+ */
+public class QueryFuture implements Future<WebsockQuery>
+{
+    private final int fId;
+    private final CountDownLatch fLatch;
+
+    private List<Runnable> fCallbacks;
+
+    private WebsockQuery fResponse;
+    private Throwable fFailure;
+    private boolean fCancelled;
+
+    /**
+     * Creates a pending future for the query with the given ID.
+     *
+     * @param id ID of the query the response is for
+     */
+    public QueryFuture(final int id)
+    {
+        fId = id;
+        fLatch = new CountDownLatch(1);
+        fCallbacks = new ArrayList<Runnable>(1);
+    }
+
+    /**
+     * @return ID of the query the response is for
+     */
+    public int getId()
+    {
+        return fId;
+    }
+
+    /**
+     * Completes this future with the given response if it is still pending.
+     *
+     * @param response received response
+     * @return whether this call completed the future
+     */
+    public boolean complete(final WebsockQuery response)
+    {
+        return finish(response, null, false);
+    }
+
+    /**
+     * Completes this future exceptionally if it is still pending.
+     * The cause given must not be null.
+     *
+     * @param cause reason of the failure
+     * @return whether this call completed the future
+     */
+    public boolean fail(final Throwable cause)
+    {
+        if(cause == null)
+        {
+            throw new NullPointerException("cause was null");
+        }
+
+        return finish(null, cause, false);
+    }
+
+    @Override
+    public boolean cancel(final boolean mayInterruptIfRunning)
+    {
+        return finish(null, null, true);
+    }
+
+    private boolean finish(final WebsockQuery response,
+        final Throwable failure, final boolean cancelled)
+    {
+        final List<Runnable> callbacks;
+        synchronized(this)
+        {
+            if(fCallbacks == null)
+            {
+                return false;
+            }
+
+            fResponse = response;
+            fFailure = failure;
+            fCancelled = cancelled;
+
+            callbacks = fCallbacks;
+            fCallbacks = null;
+        }
+
+        fLatch.countDown();
+
+        for(Runnable callback : callbacks)
+        {
+            run(callback);
+        }
+
+        return true;
+    }
+
+    /**
+     * Registers a callback to run once this future is completed, in the
+     * completing thread; it runs immediately if already completed.
+     * The callback given must not be null.
+     *
+     * @param callback callback to run
+     */
+    public void addCallback(final Runnable callback)
+    {
+        if(callback == null)
+        {
+            throw new NullPointerException("callback was null");
+        }
+
+        synchronized(this)
+        {
+            if(fCallbacks != null)
+            {
+                fCallbacks.add(callback);
+                return;
+            }
+        }
+
+        run(callback);
+    }
+
+    private void run(final Runnable callback)
+    {
+        try
+        {
+            callback.run();
+        }
+        catch(RuntimeException e)
+        {
+            Logger.getLogger(this.getClass().getName()).log(Level.WARNING,
+                "query callback failed", e);
+        }
+    }
+
+    @Override
+    public synchronized boolean isCancelled()
+    {
+        return fCancelled;
+    }
+
+    @Override
+    public synchronized boolean isDone()
+    {
+        return fCallbacks == null;
+    }
+
+    /**
+     * @return whether the future was completed exceptionally or cancelled
+     */
+    public synchronized boolean isFailed()
+    {
+        return fFailure != null || fCancelled;
+    }
+
+    @Override
+    public WebsockQuery get() throws InterruptedException, ExecutionException
+    {
+        fLatch.await();
+        return getResponse();
+    }
+
+    @Override
+    public WebsockQuery get(final long timeout, final TimeUnit unit)
+        throws InterruptedException, ExecutionException, TimeoutException
+    {
+        if(!fLatch.await(timeout, unit))
+        {
+            throw new TimeoutException("no response for query " + fId);
+        }
+        return getResponse();
+    }
+
+    private synchronized WebsockQuery getResponse() throws ExecutionException
+    {
+        if(fCancelled)
+        {
+            throw new CancellationException("query " + fId + " cancelled");
+        }
+        if(fFailure != null)
+        {
+            throw new ExecutionException(fFailure);
+        }
+
+        return fResponse;
+    }
+}
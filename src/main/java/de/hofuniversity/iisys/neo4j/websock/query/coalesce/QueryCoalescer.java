@@ -0,0 +1,380 @@
+/*
+ *  Copyright 2015 Institute of Information Systems, Hof University
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package de.hofuniversity.iisys.neo4j.websock.query.coalesce;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import de.hofuniversity.iisys.neo4j.websock.query.EQueryType;
+import de.hofuniversity.iisys.neo4j.websock.query.IMessageSender;
+import de.hofuniversity.iisys.neo4j.websock.query.IQueryProcessor;
+import de.hofuniversity.iisys.neo4j.websock.query.WebsockQuery;
+import de.hofuniversity.iisys.neo4j.websock.session.WebsockConstants;
+import de.hofuniversity.iisys.neo4j.websock.util.BsonConverter;
+import de.hofuniversity.iisys.neo4j.websock.util.JSONList;
+import de.hofuniversity.iisys.neo4j.websock.util.JSONMap;
+import de.hofuniversity.iisys.neo4j.websock.util.JsonConverter;
+import de.hofuniversity.iisys.neo4j.websock.util.QueryMapConverter;
+
+/**
+ * Server-side coalescer executing identical queries arriving while one of
+ * them is executing only once, answering all of them with its response.
+ * Queries are identical if they have the same type, the same procedure name
+ * or Cypher statement and structurally equal parameters.
+ * The first query is executed in the calling thread, later ones return
+ * immediately and are answered once it finishes.
+ * The response's payload is converted once per message format and shared
+ * among all queries using that format, so it must not depend on the session
+ * that sent the query.
+ * Only stored procedure calls are coalesced by default, since direct Cypher
+ * statements might modify data; procedures doing so should be excluded.
+ */
+public class QueryCoalescer
+{
+    private final IQueryProcessor fProcessor;
+    private final boolean fCypher;
+    private final Set<String> fExcluded;
+    private final Logger fLogger;
+
+    private final Map<FlightKey, List<Waiter>> fFlights;
+
+    private final AtomicLong fExecutions;
+    private final AtomicLong fCoalesced;
+
+    /**
+     * Creates a coalescer executing queries with the given processor,
+     * coalescing direct Cypher statements as well if requested.
+     * The processor must not be null.
+     *
+     * @param processor processor executing queries
+     * @param cypher whether to coalesce direct Cypher statements
+     */
+    public QueryCoalescer(final IQueryProcessor processor,
+        final boolean cypher)
+    {
+        if(processor == null)
+        {
+            throw new NullPointerException("query processor was null");
+        }
+
+        fProcessor = processor;
+        fCypher = cypher;
+        fExcluded = Collections.newSetFromMap(
+            new ConcurrentHashMap<String, Boolean>());
+        fLogger = Logger.getLogger(this.getClass().getName());
+
+        fFlights = new HashMap<FlightKey, List<Waiter>>();
+
+        fExecutions = new AtomicLong();
+        fCoalesced = new AtomicLong();
+    }
+
+    /**
+     * Excludes the procedure with the given name from coalescing, for
+     * example because it modifies data.
+     * The name must not be null.
+     *
+     * @param procedure name of the procedure
+     */
+    public void exclude(final String procedure)
+    {
+        if(procedure == null)
+        {
+            throw new NullPointerException("procedure name was null");
+        }
+
+        fExcluded.add(procedure);
+    }
+
+    /**
+     * Executes the given query unless an identical one is already executing
+     * and sends the response using the given sender, converting its payload
+     * for the given message format.
+     * Query and sender must not be null.
+     *
+     * @param query query to execute
+     * @param sender sender of the session that sent the query
+     * @param format message format of the session
+     */
+    public void execute(final WebsockQuery query, final IMessageSender sender,
+        final String format)
+    {
+        final List<Waiter> waiters = new ArrayList<Waiter>(1);
+        waiters.add(new Waiter(query.getId(), sender, format));
+
+        final FlightKey key = createKey(query);
+        if(key != null)
+        {
+            synchronized(fFlights)
+            {
+                final List<Waiter> flight = fFlights.get(key);
+                if(flight != null)
+                {
+                    flight.addAll(waiters);
+                    fCoalesced.incrementAndGet();
+                    return;
+                }
+
+                fFlights.put(key, waiters);
+            }
+        }
+
+        fExecutions.incrementAndGet();
+        WebsockQuery response = null;
+        Exception error = null;
+        try
+        {
+            response = fProcessor.process(query);
+        }
+        catch(Exception e)
+        {
+            error = e;
+        }
+        finally
+        {
+            //no further queries join once the response is known
+            if(key != null)
+            {
+                synchronized(fFlights)
+                {
+                    fFlights.remove(key);
+                }
+            }
+        }
+
+        respond(waiters, response, error);
+    }
+
+    private FlightKey createKey(final WebsockQuery query)
+    {
+        final EQueryType type = query.getType();
+        if(type != EQueryType.PROCEDURE_CALL
+            && (type != EQueryType.DIRECT_CYPHER || !fCypher))
+        {
+            return null;
+        }
+
+        //payload contains the statement or procedure name, if any
+        final Object payload = query.getPayload();
+        if(payload != null && !(payload instanceof String))
+        {
+            return null;
+        }
+
+        if(type == EQueryType.PROCEDURE_CALL && !fExcluded.isEmpty())
+        {
+            Object name = query.getParameter(
+                WebsockConstants.PROCEDURE_NAME);
+            if(name == null)
+            {
+                name = payload;
+            }
+            if(fExcluded.contains(name))
+            {
+                return null;
+            }
+        }
+
+        return new FlightKey(type, (String) payload,
+            QueryMapConverter.normalize(query.getParameters()));
+    }
+
+    private void respond(final List<Waiter> waiters,
+        final WebsockQuery response, final Exception error)
+    {
+        final Map<String, Object> payloads = new HashMap<String, Object>();
+
+        for(Waiter waiter : waiters)
+        {
+            WebsockQuery message = null;
+            if(error != null)
+            {
+                message = new WebsockQuery(waiter.fId, EQueryType.ERROR);
+                message.setPayload(String.valueOf(error.getMessage()));
+            }
+            else if(response == null)
+            {
+                message = new WebsockQuery(waiter.fId, EQueryType.SUCCESS);
+            }
+            else
+            {
+                message = new WebsockQuery(waiter.fId, response.getType());
+                message.setParameters(response.getParameters());
+
+                if(waiters.size() == 1)
+                {
+                    message.setPayload(response.getPayload());
+                }
+                else
+                {
+                    if(!payloads.containsKey(waiter.fFormat))
+                    {
+                        payloads.put(waiter.fFormat,
+                            convert(response, waiter.fFormat));
+                    }
+                    message.setPayload(payloads.get(waiter.fFormat));
+                }
+            }
+
+            try
+            {
+                waiter.fSender.sendMessage(message);
+            }
+            catch(Exception e)
+            {
+                fLogger.log(Level.WARNING, "failed to send response for "
+                    + "query " + waiter.fId, e);
+            }
+        }
+    }
+
+    /*
+     * converts the payload into the format's native objects, which the
+     * encoders pass through unchanged
+     */
+    private Object convert(final WebsockQuery response, final String format)
+    {
+        final Object payload = response.getPayload();
+        if(!(payload instanceof Map || payload instanceof List))
+        {
+            return payload;
+        }
+
+        try
+        {
+            if(WebsockConstants.BSON_FORMAT.equals(format))
+            {
+                return BsonConverter.toBson(response).get(
+                    WebsockConstants.PAYLOAD);
+            }
+            else if(WebsockConstants.JSON_FORMAT.equals(format))
+            {
+                final Object json = JsonConverter.toJson(response).opt(
+                    WebsockConstants.PAYLOAD);
+                if(json instanceof JSONObject)
+                {
+                    return new JSONMap((JSONObject) json);
+                }
+                else if(json instanceof JSONArray)
+                {
+                    return new JSONList((JSONArray) json);
+                }
+            }
+        }
+        catch(Exception e)
+        {
+            fLogger.log(Level.WARNING, "failed to convert shared response "
+                + "for format " + format, e);
+        }
+
+        return payload;
+    }
+
+    /**
+     * @return number of queries actually executed
+     */
+    public long getExecutions()
+    {
+        return fExecutions.get();
+    }
+
+    /**
+     * @return number of queries answered with another query's response
+     */
+    public long getCoalesced()
+    {
+        return fCoalesced.get();
+    }
+
+    /**
+     * @return number of coalescable queries currently executing
+     */
+    public int getInFlight()
+    {
+        synchronized(fFlights)
+        {
+            return fFlights.size();
+        }
+    }
+
+    private static class FlightKey
+    {
+        private final EQueryType fType;
+        private final String fText;
+        private final Object fParameters;
+        private final int fHash;
+
+        public FlightKey(final EQueryType type, final String text,
+            final Object parameters)
+        {
+            fType = type;
+            fText = text;
+            fParameters = parameters;
+
+            int hash = type.hashCode();
+            hash = 31 * hash + (text != null ? text.hashCode() : 0);
+            fHash = 31 * hash + parameters.hashCode();
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return fHash;
+        }
+
+        @Override
+        public boolean equals(final Object o)
+        {
+            if(!(o instanceof FlightKey))
+            {
+                return false;
+            }
+
+            final FlightKey other = (FlightKey) o;
+            return fHash == other.fHash && fType == other.fType
+                && (fText == null ? other.fText == null
+                    : fText.equals(other.fText))
+                && fParameters.equals(other.fParameters);
+        }
+    }
+
+    private static class Waiter
+    {
+        private final int fId;
+        private final IMessageSender fSender;
+        private final String fFormat;
+
+        public Waiter(final int id, final IMessageSender sender,
+            final String format)
+        {
+            fId = id;
+            fSender = sender;
+            fFormat = format;
+        }
+    }
+}
@@ -0,0 +1,255 @@
+/*
+ *  Copyright 2015 Institute of Information Systems, Hof University
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package de.hofuniversity.iisys.neo4j.websock.query.concurrent;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import de.hofuniversity.iisys.neo4j.websock.query.IMessageConverter;
+import de.hofuniversity.iisys.neo4j.websock.query.IMessageHandler;
+import de.hofuniversity.iisys.neo4j.websock.query.IQueryListener;
+import de.hofuniversity.iisys.neo4j.websock.query.WebsockQuery;
+
+/**
+ * Executor running each incoming query in its own thread, shared by the
+ * message handlers of all sessions.
+ * Uses a virtual thread per query on Java 21 and later and a fixed pool of
+ * platform threads on older runtimes; in both cases at most the configured
+ * number of queries execute at once.
+ */
+public class QueryExecutor
+{
+    private final Executor fExecutor;
+    private final boolean fVirtual;
+    private final boolean fOwned;
+    private final Semaphore fPermits;
+    private final AtomicInteger fActive;
+    private final Logger fLogger;
+
+    /**
+     * Creates an executor using virtual threads if the runtime supports
+     * them, running at most the given number of queries at once.
+     *
+     * @param maxConcurrent maximum number of queries executing at once
+     */
+    public QueryExecutor(final int maxConcurrent)
+    {
+        this(createExecutor(maxConcurrent), maxConcurrent, true);
+    }
+
+    /**
+     * Creates an executor running queries using the given executor, at most
+     * the given number at once.
+     * The given executor is not shut down along with this executor.
+     * The executor given must not be null.
+     *
+     * @param executor executor to run queries in
+     * @param maxConcurrent maximum number of queries executing at once
+     */
+    public QueryExecutor(final Executor executor, final int maxConcurrent)
+    {
+        this(executor, maxConcurrent, false);
+    }
+
+    private QueryExecutor(final Executor executor, final int maxConcurrent,
+        final boolean owned)
+    {
+        if(executor == null)
+        {
+            throw new NullPointerException("executor was null");
+        }
+        if(maxConcurrent <= 0)
+        {
+            throw new IllegalArgumentException(
+                "maximum concurrency must be positive");
+        }
+
+        fExecutor = executor;
+        fVirtual = executor instanceof VirtualExecutor;
+        fOwned = owned;
+        fPermits = new Semaphore(maxConcurrent);
+        fActive = new AtomicInteger();
+        fLogger = Logger.getLogger(this.getClass().getName());
+    }
+
+    private static Executor createExecutor(final int maxConcurrent)
+    {
+        //virtual threads are only available from Java 21 on
+        try
+        {
+            final Method factory = Executors.class.getMethod(
+                "newVirtualThreadPerTaskExecutor");
+            return new VirtualExecutor((ExecutorService)factory.invoke(null));
+        }
+        catch(Exception e)
+        {
+            Logger.getLogger(QueryExecutor.class.getName()).log(Level.FINE,
+                "virtual threads unavailable, using platform threads", e);
+        }
+
+        final AtomicInteger count = new AtomicInteger();
+        return Executors.newFixedThreadPool(Math.max(1, maxConcurrent),
+            new ThreadFactory()
+        {
+            @Override
+            public Thread newThread(Runnable r)
+            {
+                final Thread thread = new Thread(r,
+                    "websocket query " + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Creates a message handler for a session, decoding messages with the
+     * given converter, such as a transfer utility, and running each query
+     * in its own thread.
+     * Neither converter nor listener may be null.
+     *
+     * @param converter converter to decode messages with
+     * @param listener listener executing queries
+     * @param ordered whether the session's queries are to be executed one
+     *  after the other in arrival order
+     * @return message handler for the session
+     */
+    public IMessageHandler createHandler(final IMessageConverter converter,
+        final IQueryListener listener, final boolean ordered)
+    {
+        return new ThreadPerQueryHandler(this, converter, listener, ordered);
+    }
+
+    /**
+     * Executes the given task in its own thread once a permit is available.
+     * The task must not be null.
+     *
+     * @param task task to execute
+     */
+    void execute(final Runnable task)
+    {
+        fExecutor.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    fPermits.acquire();
+                }
+                catch(InterruptedException e)
+                {
+                    fLogger.log(Level.WARNING, "interrupted waiting to "
+                        + "execute query", e);
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+
+                fActive.incrementAndGet();
+                try
+                {
+                    task.run();
+                }
+                finally
+                {
+                    fActive.decrementAndGet();
+                    fPermits.release();
+                }
+            }
+        });
+    }
+
+    /**
+     * Runs the given query with the given listener, logging failures.
+     *
+     * @param listener listener executing the query
+     * @param query query to execute
+     */
+    void run(final IQueryListener listener, final WebsockQuery query)
+    {
+        try
+        {
+            listener.onQuery(query);
+        }
+        catch(RuntimeException e)
+        {
+            fLogger.log(Level.SEVERE, "failed to execute query "
+                + query.getId(), e);
+        }
+    }
+
+    /**
+     * @return whether queries run in virtual threads
+     */
+    public boolean isVirtual()
+    {
+        return fVirtual;
+    }
+
+    /**
+     * @return number of queries currently executing
+     */
+    public int getActive()
+    {
+        return fActive.get();
+    }
+
+    /**
+     * Stops accepting queries if the underlying executor was created by
+     * this executor; executors passed in are left to their owners.
+     */
+    public void shutdown()
+    {
+        if(!fOwned)
+        {
+            return;
+        }
+
+        if(fExecutor instanceof VirtualExecutor)
+        {
+            ((VirtualExecutor)fExecutor).fService.shutdown();
+        }
+        else if(fExecutor instanceof ExecutorService)
+        {
+            ((ExecutorService)fExecutor).shutdown();
+        }
+    }
+
+    //marks the virtual thread per task executor
+    private static class VirtualExecutor implements Executor
+    {
+        private final ExecutorService fService;
+
+        public VirtualExecutor(final ExecutorService service)
+        {
+            fService = service;
+        }
+
+        @Override
+        public void execute(final Runnable command)
+        {
+            fService.execute(command);
+        }
+    }
+}
@@ -0,0 +1,256 @@
+/*
+ *  Copyright 2015 Institute of Information Systems, Hof University
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package de.hofuniversity.iisys.neo4j.websock.query.concurrent;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import de.hofuniversity.iisys.neo4j.websock.query.EQueryType;
+import de.hofuniversity.iisys.neo4j.websock.query.IMessageConverter;
+import de.hofuniversity.iisys.neo4j.websock.query.IMessageHandler;
+import de.hofuniversity.iisys.neo4j.websock.query.IQueryListener;
+import de.hofuniversity.iisys.neo4j.websock.query.WebsockQuery;
+import de.hofuniversity.iisys.neo4j.websock.query.batch.QueryBatch;
+
+/**
+ * Message handler for a single session, decoding messages in the receiving
+ * thread and executing each query in its own thread of a query executor,
+ * so blocking queries do not hold up the container's threads.
+ * If ordered, the session's queries are executed one after the other in
+ * arrival order, otherwise concurrently.
+ * Message batches are unpacked and their messages executed individually.
+ * Cancellation messages remove queued queries with their ID and are passed
+ * to the listener directly in the receiving thread.
+ */
+public class ThreadPerQueryHandler implements IMessageHandler
+{
+    private final QueryExecutor fExecutor;
+    private final IMessageConverter fConverter;
+    private final IQueryListener fListener;
+    private final boolean fOrdered;
+    private final Logger fLogger;
+
+    private final Queue<WebsockQuery> fQueue;
+    private boolean fRunning;
+    private volatile boolean fDisposed;
+
+    /**
+     * Creates a handler decoding messages with the given converter and
+     * executing them with the given listener in the given executor.
+     * None of the objects given may be null.
+     *
+     * @param executor executor to run queries in
+     * @param converter converter to decode messages with
+     * @param listener listener executing queries
+     * @param ordered whether queries are to be executed in arrival order
+     */
+    public ThreadPerQueryHandler(final QueryExecutor executor,
+        final IMessageConverter converter, final IQueryListener listener,
+        final boolean ordered)
+    {
+        if(executor == null)
+        {
+            throw new NullPointerException("query executor was null");
+        }
+        if(converter == null)
+        {
+            throw new NullPointerException("message converter was null");
+        }
+        if(listener == null)
+        {
+            throw new NullPointerException("query listener was null");
+        }
+
+        fExecutor = executor;
+        fConverter = converter;
+        fListener = listener;
+        fOrdered = ordered;
+        fLogger = Logger.getLogger(this.getClass().getName());
+
+        fQueue = new ArrayDeque<WebsockQuery>();
+    }
+
+    @Override
+    public void onMessage(final ByteBuffer message)
+    {
+        try
+        {
+            submit(fConverter.convert(message));
+        }
+        catch(Exception e)
+        {
+            fLogger.log(Level.SEVERE, "failed to decode binary message", e);
+        }
+    }
+
+    @Override
+    public void onMessage(final String message)
+    {
+        try
+        {
+            submit(fConverter.convert(message));
+        }
+        catch(Exception e)
+        {
+            fLogger.log(Level.SEVERE, "failed to decode text message", e);
+        }
+    }
+
+    /**
+     * Executes the given decoded query, unpacking message batches.
+     * The query must not be null.
+     *
+     * @param query query to execute
+     */
+    public void submit(final WebsockQuery query)
+    {
+        if(query.getType() == EQueryType.BATCH)
+        {
+            for(WebsockQuery message : QueryBatch.getQueries(query))
+            {
+                submit(message);
+            }
+            return;
+        }
+
+        if(query.getType() == EQueryType.CANCEL)
+        {
+            cancel(query);
+            return;
+        }
+
+        if(!fOrdered)
+        {
+            if(fDisposed)
+            {
+                return;
+            }
+
+            try
+            {
+                fExecutor.execute(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        //drop queries still waiting for a permit
+                        if(!fDisposed)
+                        {
+                            fExecutor.run(fListener, query);
+                        }
+                    }
+                });
+            }
+            catch(RejectedExecutionException e)
+            {
+                fLogger.log(Level.SEVERE, "failed to start query "
+                    + query.getId(), e);
+            }
+            return;
+        }
+
+        synchronized(this)
+        {
+            if(fDisposed)
+            {
+                return;
+            }
+
+            fQueue.add(query);
+            if(fRunning)
+            {
+                return;
+            }
+            fRunning = true;
+        }
+
+        try
+        {
+            fExecutor.execute(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    drain();
+                }
+            });
+        }
+        catch(RejectedExecutionException e)
+        {
+            //leave the queue to be drained by the next query's submission
+            fLogger.log(Level.SEVERE, "failed to start query "
+                + query.getId(), e);
+            synchronized(this)
+            {
+                fRunning = false;
+            }
+        }
+    }
+
+    private void cancel(final WebsockQuery cancel)
+    {
+        synchronized(this)
+        {
+            final Iterator<WebsockQuery> iter = fQueue.iterator();
+            while(iter.hasNext())
+            {
+                if(iter.next().getId() == cancel.getId())
+                {
+                    iter.remove();
+                }
+            }
+        }
+
+        fExecutor.run(fListener, cancel);
+    }
+
+    //runs queued queries of the session in order, must be the only drainer
+    private void drain()
+    {
+        while(true)
+        {
+            final WebsockQuery query;
+            synchronized(this)
+            {
+                query = fQueue.poll();
+                if(query == null)
+                {
+                    fRunning = false;
+                    return;
+                }
+            }
+
+            fExecutor.run(fListener, query);
+        }
+    }
+
+    /**
+     * Drops queries still waiting for execution, including those waiting
+     * for a permit of the query executor.
+     */
+    @Override
+    public synchronized void dispose()
+    {
+        fDisposed = true;
+        fQueue.clear();
+    }
+}
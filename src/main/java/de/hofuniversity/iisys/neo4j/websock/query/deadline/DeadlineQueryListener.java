@@ -0,0 +1,136 @@
+/*
+ *  Copyright 2015 Institute of Information Systems, Hof University
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package de.hofuniversity.iisys.neo4j.websock.query.deadline;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import de.hofuniversity.iisys.neo4j.websock.query.EQueryType;
+import de.hofuniversity.iisys.neo4j.websock.query.IMessageSender;
+import de.hofuniversity.iisys.neo4j.websock.query.IQueryListener;
+import de.hofuniversity.iisys.neo4j.websock.query.WebsockQuery;
+import de.hofuniversity.iisys.neo4j.websock.session.WebsockConstants;
+
+/**
+ * Listener wrapper dropping queries whose deadline has passed instead of
+ * executing them, answering them with an error message carrying the
+ * deadline exceeded error code.
+ * Since it checks queries right before they are executed, time spent queued
+ * in a message handler is taken into account.
+ * Counts of executed and dropped queries are kept for monitoring.
+ */
+public class DeadlineQueryListener implements IQueryListener
+{
+    private final IQueryListener fListener;
+    private final IMessageSender fSender;
+    private final Logger fLogger;
+
+    private final AtomicLong fExecuted;
+    private final AtomicLong fShed;
+
+    /**
+     * Creates a wrapper passing queries within their deadline to the given
+     * listener and answering expired ones using the given sender.
+     * Neither of the parameters may be null.
+     *
+     * @param listener listener executing queries
+     * @param sender sender to send error messages with
+     */
+    public DeadlineQueryListener(final IQueryListener listener,
+        final IMessageSender sender)
+    {
+        if(listener == null)
+        {
+            throw new NullPointerException("query listener was null");
+        }
+        if(sender == null)
+        {
+            throw new NullPointerException("message sender was null");
+        }
+
+        fListener = listener;
+        fSender = sender;
+        fLogger = Logger.getLogger(this.getClass().getName());
+
+        fExecuted = new AtomicLong();
+        fShed = new AtomicLong();
+    }
+
+    /**
+     * Determines whether the given response is an error caused by the
+     * query's deadline passing before it was executed.
+     * The response must not be null.
+     *
+     * @param response response to check
+     * @return whether the query was dropped due to its deadline
+     */
+    public static boolean isDeadlineExceeded(final WebsockQuery response)
+    {
+        return response.getType() == EQueryType.ERROR
+            && WebsockConstants.DEADLINE_EXCEEDED.equals(
+                response.getParameter(WebsockConstants.ERROR_CODE));
+    }
+
+    @Override
+    public void onQuery(final WebsockQuery query)
+    {
+        //cancellations are never dropped
+        if(!query.isExpired() || query.getType() == EQueryType.CANCEL)
+        {
+            fExecuted.incrementAndGet();
+            fListener.onQuery(query);
+            return;
+        }
+
+        fShed.incrementAndGet();
+        fLogger.log(Level.FINE, "dropping query " + query.getId()
+            + ", deadline passed " + (System.currentTimeMillis()
+            - query.getDeadline()) + " ms ago");
+
+        final WebsockQuery error = new WebsockQuery(query.getId(),
+            EQueryType.ERROR);
+        error.setParameter(WebsockConstants.ERROR_CODE,
+            WebsockConstants.DEADLINE_EXCEEDED);
+        error.setPayload("deadline exceeded");
+        try
+        {
+            fSender.sendMessage(error);
+        }
+        catch(Exception e)
+        {
+            fLogger.log(Level.WARNING, "failed to send error for query "
+                + query.getId(), e);
+        }
+    }
+
+    /**
+     * @return number of queries passed on for execution
+     */
+    public long getExecuted()
+    {
+        return fExecuted.get();
+    }
+
+    /**
+     * @return number of queries dropped due to their deadline
+     */
+    public long getShed()
+    {
+        return fShed.get();
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ *  Copyright 2015 Institute of Information Systems, Hof University
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package de.hofuniversity.iisys.neo4j.websock.query.encoding;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import de.hofuniversity.iisys.neo4j.websock.query.EQueryType;
+import de.hofuniversity.iisys.neo4j.websock.query.IMessageConverter;
+import de.hofuniversity.iisys.neo4j.websock.query.IMessageHandler;
+import de.hofuniversity.iisys.neo4j.websock.query.IQueryListener;
+import de.hofuniversity.iisys.neo4j.websock.query.WebsockQuery;
+import de.hofuniversity.iisys.neo4j.websock.util.QueryMapConverter;
+
+/**
+ * Message handler decoding incoming messages and passing them on to a query
+ * listener one by one, unpacking batch messages into their contained
+ * messages in the order they were sent.
+ */
+public class BatchUnpackingHandler implements IMessageHandler
+{
+    private final IMessageConverter fConverter;
+    private final IQueryListener fListener;
+    private final Logger fLogger;
+
+    /**
+     * Creates a handler decoding messages using the given converter and
+     * passing them on to the given listener.
+     * Neither of the parameters may be null.
+     *
+     * @param converter converter to decode messages with
+     * @param listener listener to pass decoded messages to
+     */
+    public BatchUnpackingHandler(final IMessageConverter converter,
+        final IQueryListener listener)
+    {
+        if(converter == null)
+        {
+            throw new NullPointerException("message converter was null");
+        }
+        if(listener == null)
+        {
+            throw new NullPointerException("query listener was null");
+        }
+
+        fConverter = converter;
+        fListener = listener;
+        fLogger = Logger.getLogger(this.getClass().getName());
+    }
+
+    @Override
+    public void onMessage(final ByteBuffer message)
+    {
+        try
+        {
+            dispatch(fConverter.convert(message));
+        }
+        catch(Exception e)
+        {
+            fLogger.log(Level.SEVERE, "failed to decode binary message", e);
+        }
+    }
+
+    @Override
+    public void onMessage(final String message)
+    {
+        try
+        {
+            dispatch(fConverter.convert(message));
+        }
+        catch(Exception e)
+        {
+            fLogger.log(Level.SEVERE, "failed to decode text message", e);
+        }
+    }
+
+    /**
+     * Passes the given query to the listener, unpacking it if it is a batch.
+     * The query must not be null.
+     *
+     * @param query query to dispatch
+     */
+    public void dispatch(final WebsockQuery query)
+    {
+        if(query.getType() != EQueryType.BATCH)
+        {
+            fListener.onQuery(query);
+            return;
+        }
+
+        final List<?> messages = (List<?>) query.getPayload();
+        if(messages == null)
+        {
+            return;
+        }
+
+        for(Object message : messages)
+        {
+            dispatch(QueryMapConverter.toQuery(message));
+        }
+    }
+
+    @Override
+    public void dispose()
+    {
+        //nothing to release
+    }
+}
@@ -0,0 +1,329 @@
+/*
+ *  Copyright 2015 Institute of Information Systems, Hof University
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package de.hofuniversity.iisys.neo4j.websock.query.encoding;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import de.hofuniversity.iisys.neo4j.websock.query.EQueryType;
+import de.hofuniversity.iisys.neo4j.websock.query.IMessageSender;
+import de.hofuniversity.iisys.neo4j.websock.query.WebsockQuery;
+import de.hofuniversity.iisys.neo4j.websock.query.cancel.CancellationToken;
+import de.hofuniversity.iisys.neo4j.websock.session.WebsockSession;
+import de.hofuniversity.iisys.neo4j.websock.util.QueryMapConverter;
+import de.hofuniversity.iisys.neo4j.websock.util.SizeEstimator;
+
+/**
+ * Per-session sender accumulating outgoing result and success messages and
+ * sending them as a single batch message.
+ * A batch is flushed once it contains the configured number of messages,
+ * once its estimated size exceeds the byte budget or once the first message
+ * in it has waited for the maximum linger time.
+ * All other messages flush the current batch and are sent directly, so the
+ * order of messages is preserved.
+ * Messages are only converted when their batch is sent, so their remaining
+ * time until their deadline is not counted from when they were added.
+ * Messages must therefore not be changed after they have been passed in.
+ */
+public class BatchingMessageSender implements IMessageSender
+{
+    /**
+     * Number of messages per batch used if the session does not specify one.
+     */
+    public static final int DEFAULT_BATCH_SIZE = 32;
+
+    /**
+     * Default estimated maximum size of a batch in bytes.
+     */
+    public static final int DEFAULT_MAX_BYTES = 64 * 1024;
+
+    /**
+     * Default maximum time in milliseconds a message is held back.
+     */
+    public static final long DEFAULT_LINGER = 5;
+
+    private static ScheduledExecutorService fDefaultTimer;
+
+    private final IMessageSender fSender;
+    private final int fBatchSize;
+    private final int fMaxBytes;
+    private final long fLinger;
+    private final ScheduledExecutorService fTimer;
+    private final Logger fLogger;
+
+    private final Runnable fFlushTask;
+
+    private List<WebsockQuery> fBatch;
+    private long fBytes;
+    private ScheduledFuture<?> fScheduled;
+
+    /**
+     * Creates a sender for the given session if it requested batching,
+     * otherwise returns the given sender unchanged.
+     * Uses the default byte budget and linger time and a shared timer thread.
+     * Neither of the parameters may be null.
+     *
+     * @param sender sender to send messages and batches with
+     * @param session session to create a sender for
+     * @return sender to use for the session
+     */
+    public static IMessageSender forSession(final IMessageSender sender,
+        final WebsockSession session)
+    {
+        if(!session.getBatching())
+        {
+            return sender;
+        }
+
+        int size = session.getBatchSize();
+        if(size <= 0)
+        {
+            size = DEFAULT_BATCH_SIZE;
+        }
+
+        return new BatchingMessageSender(sender, size, DEFAULT_MAX_BYTES,
+            DEFAULT_LINGER, null);
+    }
+
+    /**
+     * Creates a batching sender with the given limits, using the given timer
+     * to flush batches after the linger time.
+     * If the timer is null, a shared daemon timer thread is used.
+     * The sender must not be null.
+     *
+     * @param sender sender to send messages and batches with
+     * @param batchSize maximum number of messages per batch
+     * @param maxBytes estimated maximum size of a batch in bytes
+     * @param linger maximum time in milliseconds a message is held back
+     * @param timer timer to schedule flushes with or null
+     */
+    public BatchingMessageSender(final IMessageSender sender,
+        final int batchSize, final int maxBytes, final long linger,
+        final ScheduledExecutorService timer)
+    {
+        if(sender == null)
+        {
+            throw new NullPointerException("message sender was null");
+        }
+        if(batchSize <= 0)
+        {
+            throw new IllegalArgumentException("batch size must be positive");
+        }
+
+        fSender = sender;
+        fBatchSize = batchSize;
+        fMaxBytes = maxBytes;
+        fLinger = linger;
+
+        if(timer != null)
+        {
+            fTimer = timer;
+        }
+        else
+        {
+            fTimer = getDefaultTimer();
+        }
+
+        fLogger = Logger.getLogger(this.getClass().getName());
+
+        fFlushTask = new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    flush();
+                }
+                catch(Exception e)
+                {
+                    fLogger.log(Level.SEVERE, "failed to send batch", e);
+                }
+            }
+        };
+
+        fBatch = new ArrayList<WebsockQuery>(batchSize);
+    }
+
+    private static synchronized ScheduledExecutorService getDefaultTimer()
+    {
+        if(fDefaultTimer == null)
+        {
+            fDefaultTimer = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactory()
+                {
+                    @Override
+                    public Thread newThread(Runnable r)
+                    {
+                        final Thread thread = new Thread(r,
+                            "websocket batch flusher");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        }
+
+        return fDefaultTimer;
+    }
+
+    /**
+     * Adds result and success messages to the current batch, flushing it if
+     * a limit is reached.
+     * Other messages are sent directly after flushing the current batch.
+     * The message must not be null.
+     *
+     * @param message message to send
+     * @throws Exception if conversion or sending fail
+     */
+    @Override
+    public synchronized void sendMessage(final WebsockQuery message)
+        throws Exception
+    {
+        final EQueryType type = message.getType();
+        if(type != EQueryType.RESULT && type != EQueryType.SUCCESS)
+        {
+            flush();
+            fSender.sendMessage(message);
+            return;
+        }
+
+        fBatch.add(message);
+        fBytes += estimate(message);
+
+        if(fBatch.size() >= fBatchSize || fBytes >= fMaxBytes)
+        {
+            flush();
+        }
+        else if(fScheduled == null)
+        {
+            fScheduled = fTimer.schedule(fFlushTask, fLinger,
+                TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Sends all messages in the current batch.
+     * A single pending message is sent as it is.
+     *
+     * @throws Exception if conversion or sending fail
+     */
+    public synchronized void flush() throws Exception
+    {
+        if(fScheduled != null)
+        {
+            fScheduled.cancel(false);
+            fScheduled = null;
+        }
+
+        if(fBatch.isEmpty())
+        {
+            return;
+        }
+
+        final List<WebsockQuery> batch = fBatch;
+        fBatch = new ArrayList<WebsockQuery>(fBatchSize);
+        fBytes = 0;
+
+        if(batch.size() == 1)
+        {
+            fSender.sendMessage(batch.get(0));
+        }
+        else
+        {
+            //converted now, so timeouts are relative to the time of sending
+            final List<Object> maps = new ArrayList<Object>(batch.size());
+            for(WebsockQuery query : batch)
+            {
+                maps.add(QueryMapConverter.toMap(query));
+            }
+
+            final WebsockQuery message = new WebsockQuery(EQueryType.BATCH);
+            message.setPayload(maps);
+            fSender.sendMessage(message);
+        }
+    }
+
+    /**
+     * Removes all messages for the query with the given ID from the current
+     * batch, for example once the query was cancelled.
+     *
+     * @param id ID of the query
+     * @return number of messages removed
+     */
+    public synchronized int discard(final int id)
+    {
+        int removed = 0;
+        final Iterator<WebsockQuery> iter = fBatch.iterator();
+        while(iter.hasNext())
+        {
+            final WebsockQuery message = iter.next();
+            if(message.getId() == id)
+            {
+                iter.remove();
+                fBytes -= estimate(message);
+                ++removed;
+            }
+        }
+
+        if(fBatch.isEmpty())
+        {
+            fBytes = 0;
+        }
+        return removed;
+    }
+
+    private static long estimate(final WebsockQuery message)
+    {
+        return SizeEstimator.estimate(message.getPayload())
+            + SizeEstimator.estimate(message.getParameters());
+    }
+
+    /**
+     * Makes the batched messages of the given token's query be discarded
+     * once the query is cancelled.
+     * The token must not be null.
+     *
+     * @param token cancellation token of a query
+     */
+    public void discardOnCancel(final CancellationToken token)
+    {
+        token.addListener(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                discard(token.getId());
+            }
+        });
+    }
+
+    /**
+     * @return number of messages waiting in the current batch
+     */
+    public synchronized int getPending()
+    {
+        return fBatch.size();
+    }
+}
@@ -18,6 +18,8 @@ package de.hofuniversity.iisys.neo4j.websock.query.encoding;
 
 import java.nio.ByteBuffer;
 
+import de.hofuniversity.iisys.neo4j.websock.query.IMessageConverter;
+import de.hofuniversity.iisys.neo4j.websock.query.IMessageSender;
 import de.hofuniversity.iisys.neo4j.websock.query.WebsockQuery;
 import de.hofuniversity.iisys.neo4j.websock.session.WebsockConstants;
 
@@ -25,7 +27,8 @@ import de.hofuniversity.iisys.neo4j.websock.session.WebsockConstants;
  * Utility forwarding outgoing messages and format configuration to the
  * subordinate binary and text transfer utilities.
  */
-public class TransferUtil implements Cloneable
+public class TransferUtil implements IMessageSender,
+    IMessageConverter, Cloneable
 {
     private final StringTransferUtil fStrings;
     private final BinaryTransferUtil fBinary;
@@ -65,6 +68,7 @@ public class TransferUtil implements Cloneable
      * @param message message to send
      * @throws Exception if conversion or sending fail
      */
+    @Override
     public void sendMessage(final WebsockQuery message) throws Exception
     {
         if(fBinaryTransfer)
@@ -84,6 +88,7 @@ public class TransferUtil implements Cloneable
      * @return converted WebsockQuery
      * @throws Exception if conversion fails
      */
+    @Override
     public WebsockQuery convert(String message) throws Exception
     {
         return fStrings.convert(message);
@@ -96,6 +101,7 @@ public class TransferUtil implements Cloneable
      * @return converted WebsockQuery
      * @throws Exception if conversion fails
      */
+    @Override
     public WebsockQuery convert(ByteBuffer message) throws Exception
     {
         return fBinary.convert(message);
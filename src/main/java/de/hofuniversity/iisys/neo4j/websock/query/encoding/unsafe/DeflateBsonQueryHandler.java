@@ -203,8 +203,9 @@ public class DeflateBsonQueryHandler implements Encoder.Binary<WebsockQuery>,
 
         try
         {
-            //decompress
+            //decompress, every message is a complete deflate stream
             final byte[] incoming = buff.array();
+            fInflater.reset();
             fInflater.setInput(incoming);
 
             int totalSize = 0;
@@ -252,6 +253,7 @@ public class DeflateBsonQueryHandler implements Encoder.Binary<WebsockQuery>,
         try
         {
             //decompress
+            fInflater.reset();
             fInflater.setInput(buff.array());
 
             int totalSize = 0;
@@ -199,8 +199,9 @@ public class DeflateJsonQueryHandler implements Encoder.Binary<WebsockQuery>,
 
         try
         {
-            //decompress
+            //decompress, every message is a complete deflate stream
             final byte[] incoming = buff.array();
+            fInflater.reset();
             fInflater.setInput(incoming);
 
             int totalSize = 0;
@@ -247,6 +248,7 @@ public class DeflateJsonQueryHandler implements Encoder.Binary<WebsockQuery>,
         try
         {
             //decompress
+            fInflater.reset();
             fInflater.setInput(buff.array());
 
             int totalSize = 0;
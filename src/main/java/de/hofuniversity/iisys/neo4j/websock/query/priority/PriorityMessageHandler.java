@@ -0,0 +1,506 @@
+/*
+ *  Copyright 2015 Institute of Information Systems, Hof University
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package de.hofuniversity.iisys.neo4j.websock.query.priority;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import de.hofuniversity.iisys.neo4j.websock.query.EQueryType;
+import de.hofuniversity.iisys.neo4j.websock.query.IMessageConverter;
+import de.hofuniversity.iisys.neo4j.websock.query.IMessageHandler;
+import de.hofuniversity.iisys.neo4j.websock.query.IQueryListener;
+import de.hofuniversity.iisys.neo4j.websock.query.WebsockQuery;
+import de.hofuniversity.iisys.neo4j.websock.query.batch.QueryBatch;
+import de.hofuniversity.iisys.neo4j.websock.query.procedure.ProcedureTable;
+import de.hofuniversity.iisys.neo4j.websock.session.WebsockConstants;
+
+/**
+ * Message handler decoding messages in the receiving thread and executing
+ * them on a worker executor in order of priority, so cheap queries do not
+ * wait behind expensive ones.
+ * Queries are classified by type and, for procedure calls, by procedure
+ * name; each class has its own queue and concurrency limit, and the total
+ * number of queries executing at once is limited as well.
+ * Calls by procedure handle are classified by name if the procedure table
+ * handing out the handles is set.
+ * Queries the executor rejects are put back at the head of their queue and
+ * started once the next query finishes or arrives.
+ * Queries waiting longer than the maximum wait time are started before
+ * queries of higher classes, so no class starves.
+ * Message batches are unpacked and their messages scheduled individually.
+ * Cancellation messages remove queued queries with their ID and are passed
+ * to the listener directly in the receiving thread, bypassing all limits.
+ */
+public class PriorityMessageHandler implements IMessageHandler
+{
+    /**
+     * Default maximum time in milliseconds before a waiting query is
+     * preferred regardless of its class.
+     */
+    public static final long DEFAULT_MAX_WAIT = 1000;
+
+    private final IMessageConverter fConverter;
+    private final IQueryListener fListener;
+    private final Executor fExecutor;
+    private final int fMaxConcurrent;
+    private final Logger fLogger;
+
+    private final Map<EQueryType, EPriorityClass> fTypeClasses;
+    private final Map<String, EPriorityClass> fProcedureClasses;
+    private volatile ProcedureTable<?> fProcedures;
+
+    private final Map<EPriorityClass, Deque<Entry>> fQueues;
+    private final Map<EPriorityClass, Integer> fLimits;
+    private final Map<EPriorityClass, Integer> fRunning;
+
+    private long fMaxWait = DEFAULT_MAX_WAIT;
+    private int fTotalRunning;
+    private long fSequence;
+    private boolean fDisposed;
+
+    /**
+     * Creates a handler decoding messages with the given converter and
+     * passing them to the given listener using the given executor, running
+     * at most the given number of queries at once.
+     * Classes are unlimited up to that number, except for low priority
+     * queries, which may use at most half of it.
+     * None of the objects given may be null.
+     *
+     * @param converter converter to decode messages with
+     * @param listener listener executing queries
+     * @param executor executor to run queries in
+     * @param maxConcurrent maximum number of queries executing at once
+     */
+    public PriorityMessageHandler(final IMessageConverter converter,
+        final IQueryListener listener, final Executor executor,
+        final int maxConcurrent)
+    {
+        if(converter == null)
+        {
+            throw new NullPointerException("message converter was null");
+        }
+        if(listener == null)
+        {
+            throw new NullPointerException("query listener was null");
+        }
+        if(executor == null)
+        {
+            throw new NullPointerException("executor was null");
+        }
+        if(maxConcurrent <= 0)
+        {
+            throw new IllegalArgumentException(
+                "maximum concurrency must be positive");
+        }
+
+        fConverter = converter;
+        fListener = listener;
+        fExecutor = executor;
+        fMaxConcurrent = maxConcurrent;
+        fLogger = Logger.getLogger(this.getClass().getName());
+
+        fTypeClasses = new EnumMap<EQueryType, EPriorityClass>(
+            EQueryType.class);
+        for(EQueryType type : EQueryType.values())
+        {
+            fTypeClasses.put(type, EPriorityClass.HIGH);
+        }
+        fTypeClasses.put(EQueryType.PROCEDURE_CALL, EPriorityClass.NORMAL);
+        fTypeClasses.put(EQueryType.STORE_PROCEDURE, EPriorityClass.NORMAL);
+        fTypeClasses.put(EQueryType.DELETE_PROCEDURE, EPriorityClass.NORMAL);
+        fTypeClasses.put(EQueryType.QUERY_BATCH, EPriorityClass.NORMAL);
+        fTypeClasses.put(EQueryType.DIRECT_CYPHER, EPriorityClass.LOW);
+
+        fProcedureClasses = new ConcurrentHashMap<String, EPriorityClass>();
+
+        fQueues = new EnumMap<EPriorityClass, Deque<Entry>>(
+            EPriorityClass.class);
+        fLimits = new EnumMap<EPriorityClass, Integer>(EPriorityClass.class);
+        fRunning = new EnumMap<EPriorityClass, Integer>(EPriorityClass.class);
+        for(EPriorityClass prio : EPriorityClass.values())
+        {
+            fQueues.put(prio, new ArrayDeque<Entry>());
+            fLimits.put(prio, maxConcurrent);
+            fRunning.put(prio, 0);
+        }
+        fLimits.put(EPriorityClass.LOW, Math.max(1, maxConcurrent / 2));
+    }
+
+    /**
+     * Sets the class for queries of the given type.
+     * Neither of the parameters may be null.
+     *
+     * @param type type of queries
+     * @param prio class to schedule them in
+     */
+    public synchronized void setClass(final EQueryType type,
+        final EPriorityClass prio)
+    {
+        if(type == null || prio == null)
+        {
+            throw new NullPointerException("type or class was null");
+        }
+        fTypeClasses.put(type, prio);
+    }
+
+    /**
+     * Sets the class for calls of the procedure with the given name,
+     * overriding the class for procedure calls.
+     * The name must not be null, a null class removes the override.
+     *
+     * @param procedure name of the procedure
+     * @param prio class to schedule calls in or null
+     */
+    public void setClass(final String procedure, final EPriorityClass prio)
+    {
+        if(prio == null)
+        {
+            fProcedureClasses.remove(procedure);
+        }
+        else
+        {
+            fProcedureClasses.put(procedure, prio);
+        }
+    }
+
+    /**
+     * Sets the procedure table whose handles procedure calls may use, so
+     * calls by handle are classified by the procedure's name.
+     * A null table disables the lookup.
+     *
+     * @param procedures table of stored procedures or null
+     */
+    public void setProcedureTable(final ProcedureTable<?> procedures)
+    {
+        fProcedures = procedures;
+    }
+
+    /**
+     * Sets the maximum number of queries of the given class executing at
+     * once.
+     *
+     * @param prio class to limit
+     * @param limit maximum number of concurrent queries, must be positive
+     */
+    public synchronized void setLimit(final EPriorityClass prio,
+        final int limit)
+    {
+        if(limit <= 0)
+        {
+            throw new IllegalArgumentException("limit must be positive");
+        }
+        fLimits.put(prio, limit);
+        schedule();
+    }
+
+    /**
+     * Sets the time in milliseconds after which a waiting query is started
+     * before queries of higher classes.
+     *
+     * @param maxWait maximum wait time in milliseconds
+     */
+    public synchronized void setMaxWait(final long maxWait)
+    {
+        fMaxWait = maxWait;
+    }
+
+    @Override
+    public void onMessage(final ByteBuffer message)
+    {
+        try
+        {
+            enqueue(fConverter.convert(message));
+        }
+        catch(Exception e)
+        {
+            fLogger.log(Level.SEVERE, "failed to decode binary message", e);
+        }
+    }
+
+    @Override
+    public void onMessage(final String message)
+    {
+        try
+        {
+            enqueue(fConverter.convert(message));
+        }
+        catch(Exception e)
+        {
+            fLogger.log(Level.SEVERE, "failed to decode text message", e);
+        }
+    }
+
+    /**
+     * Schedules the given decoded query for execution, unpacking message
+     * batches.
+     * The query must not be null.
+     *
+     * @param query query to schedule
+     */
+    public void enqueue(final WebsockQuery query)
+    {
+        if(query.getType() == EQueryType.BATCH)
+        {
+            for(WebsockQuery message : QueryBatch.getQueries(query))
+            {
+                enqueue(message);
+            }
+            return;
+        }
+
+        if(query.getType() == EQueryType.CANCEL)
+        {
+            cancel(query);
+            return;
+        }
+
+        final EPriorityClass prio = classify(query);
+        synchronized(this)
+        {
+            if(fDisposed)
+            {
+                return;
+            }
+
+            fQueues.get(prio).add(new Entry(query, prio, fSequence++));
+            schedule();
+        }
+    }
+
+    private void cancel(final WebsockQuery cancel)
+    {
+        synchronized(this)
+        {
+            for(Deque<Entry> queue : fQueues.values())
+            {
+                final Iterator<Entry> iter = queue.iterator();
+                while(iter.hasNext())
+                {
+                    if(iter.next().fQuery.getId() == cancel.getId())
+                    {
+                        iter.remove();
+                    }
+                }
+            }
+        }
+
+        try
+        {
+            fListener.onQuery(cancel);
+        }
+        catch(RuntimeException e)
+        {
+            fLogger.log(Level.SEVERE, "failed to cancel query "
+                + cancel.getId(), e);
+        }
+    }
+
+    /**
+     * Determines the class of the given query.
+     * The query must not be null.
+     *
+     * @param query query to classify
+     * @return class of the query
+     */
+    public EPriorityClass classify(final WebsockQuery query)
+    {
+        if(query.getType() == EQueryType.PROCEDURE_CALL
+            && !fProcedureClasses.isEmpty())
+        {
+            final Object handle = query.getParameter(
+                WebsockConstants.PROCEDURE_HANDLE);
+            final ProcedureTable<?> procedures = fProcedures;
+
+            Object name = null;
+            if(handle instanceof Number && procedures != null)
+            {
+                name = procedures.getName(((Number) handle).intValue());
+            }
+            else if(handle == null)
+            {
+                name = query.getParameter(WebsockConstants.PROCEDURE_NAME);
+                if(name == null)
+                {
+                    name = query.getPayload();
+                }
+            }
+
+            final EPriorityClass prio = name instanceof String
+                ? fProcedureClasses.get(name) : null;
+            if(prio != null)
+            {
+                return prio;
+            }
+        }
+
+        synchronized(this)
+        {
+            return fTypeClasses.get(query.getType());
+        }
+    }
+
+    //starts as many queued queries as limits allow, must hold the lock
+    private void schedule()
+    {
+        Entry next = null;
+        while(fTotalRunning < fMaxConcurrent
+            && (next = pollNext()) != null)
+        {
+            fRunning.put(next.fClass, fRunning.get(next.fClass) + 1);
+            ++fTotalRunning;
+
+            final Entry entry = next;
+            try
+            {
+                fExecutor.execute(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        execute(entry);
+                    }
+                });
+            }
+            catch(RuntimeException e)
+            {
+                //retry once another query finished or arrived
+                fLogger.log(Level.SEVERE, "failed to start query", e);
+                fRunning.put(entry.fClass, fRunning.get(entry.fClass) - 1);
+                --fTotalRunning;
+                fQueues.get(entry.fClass).addFirst(entry);
+                break;
+            }
+        }
+    }
+
+    private Entry pollNext()
+    {
+        final long now = System.currentTimeMillis();
+
+        Deque<Entry> best = null;
+        Deque<Entry> starving = null;
+        for(EPriorityClass prio : EPriorityClass.values())
+        {
+            final Deque<Entry> queue = fQueues.get(prio);
+            if(queue.isEmpty() || fRunning.get(prio) >= fLimits.get(prio))
+            {
+                continue;
+            }
+
+            if(best == null)
+            {
+                best = queue;
+            }
+
+            //oldest query that waited too long
+            final Entry head = queue.peek();
+            if(now - head.fTime >= fMaxWait && (starving == null
+                || head.fSequence < starving.peek().fSequence))
+            {
+                starving = queue;
+            }
+        }
+
+        if(starving != null)
+        {
+            return starving.poll();
+        }
+        if(best != null)
+        {
+            return best.poll();
+        }
+        return null;
+    }
+
+    private void execute(final Entry entry)
+    {
+        try
+        {
+            fListener.onQuery(entry.fQuery);
+        }
+        catch(RuntimeException e)
+        {
+            fLogger.log(Level.SEVERE, "failed to execute query "
+                + entry.fQuery.getId(), e);
+        }
+        finally
+        {
+            synchronized(this)
+            {
+                fRunning.put(entry.fClass, fRunning.get(entry.fClass) - 1);
+                --fTotalRunning;
+                schedule();
+            }
+        }
+    }
+
+    /**
+     * @param prio class of queries
+     * @return number of queries of the class waiting to be executed
+     */
+    public synchronized int getQueued(final EPriorityClass prio)
+    {
+        return fQueues.get(prio).size();
+    }
+
+    /**
+     * @param prio class of queries
+     * @return number of queries of the class currently executing
+     */
+    public synchronized int getRunning(final EPriorityClass prio)
+    {
+        return fRunning.get(prio);
+    }
+
+    /**
+     * Drops all queued queries; executing queries are finished.
+     */
+    @Override
+    public synchronized void dispose()
+    {
+        fDisposed = true;
+        for(Deque<Entry> queue : fQueues.values())
+        {
+            queue.clear();
+        }
+    }
+
+    private static class Entry
+    {
+        private final WebsockQuery fQuery;
+        private final EPriorityClass fClass;
+        private final long fSequence;
+        private final long fTime;
+
+        public Entry(final WebsockQuery query, final EPriorityClass prio,
+            final long sequence)
+        {
+            fQuery = query;
+            fClass = prio;
+            fSequence = sequence;
+            fTime = System.currentTimeMillis();
+        }
+    }
+}
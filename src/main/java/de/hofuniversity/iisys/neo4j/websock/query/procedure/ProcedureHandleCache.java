@@ -0,0 +1,222 @@
+/*
+ *  Copyright 2015 Institute of Information Systems, Hof University
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package de.hofuniversity.iisys.neo4j.websock.query.procedure;
+
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import de.hofuniversity.iisys.neo4j.websock.query.EQueryType;
+import de.hofuniversity.iisys.neo4j.websock.query.IMessageSender;
+import de.hofuniversity.iisys.neo4j.websock.query.WebsockQuery;
+import de.hofuniversity.iisys.neo4j.websock.session.WebsockConstants;
+
+/**
+ * Client-side cache of procedure handles for a single session, learned
+ * from responses to store and resolve requests and used to replace
+ * procedure names in later calls.
+ * If the server rejects a handle, the name should be invalidated and the
+ * original call sent again.
+ * Calls are prepared when they are sent, so a result cache wrapping the
+ * sender created by this cache still sees the procedure names.
+ */
+public class ProcedureHandleCache
+{
+    private final ConcurrentMap<String, Integer> fHandles;
+
+    /**
+     * Creates an empty handle cache.
+     */
+    public ProcedureHandleCache()
+    {
+        fHandles = new ConcurrentHashMap<String, Integer>();
+    }
+
+    /**
+     * Creates a request for the handle of the procedure with the given name.
+     * The name must not be null.
+     *
+     * @param name name of the procedure
+     * @return resolve request
+     */
+    public static WebsockQuery createResolve(final String name)
+    {
+        if(name == null)
+        {
+            throw new NullPointerException("procedure name was null");
+        }
+
+        final WebsockQuery query = new WebsockQuery(
+            EQueryType.RESOLVE_PROCEDURE);
+        query.setParameter(WebsockConstants.PROCEDURE_NAME, name);
+        return query;
+    }
+
+    /**
+     * Caches the handle contained in the given response, if any.
+     * The response must not be null.
+     *
+     * @param response response to a store or resolve request
+     * @return whether a handle was learned
+     */
+    public boolean learn(final WebsockQuery response)
+    {
+        if(response.getType() != EQueryType.SUCCESS)
+        {
+            return false;
+        }
+
+        final Object name = response.getParameter(
+            WebsockConstants.PROCEDURE_NAME);
+        final Object handle = response.getParameter(
+            WebsockConstants.PROCEDURE_HANDLE);
+        if(name == null || !(handle instanceof Number))
+        {
+            return false;
+        }
+
+        fHandles.put(name.toString(), ((Number)handle).intValue());
+        return true;
+    }
+
+    /**
+     * Prepares an outgoing query: procedure calls with a cached handle are
+     * returned as a copy using the handle instead of the name, storing or
+     * deleting a procedure invalidates its cached handle.
+     * The given query is not modified and must not be null.
+     *
+     * @param query outgoing query
+     * @return query to send
+     */
+    public WebsockQuery prepare(final WebsockQuery query)
+    {
+        final EQueryType type = query.getType();
+        if(type == EQueryType.STORE_PROCEDURE)
+        {
+            //the payload contains the procedure's statement
+            final Object name = query.getParameter(
+                WebsockConstants.PROCEDURE_NAME);
+            if(name instanceof String)
+            {
+                invalidate((String)name);
+            }
+            return query;
+        }
+        if(type == EQueryType.DELETE_PROCEDURE)
+        {
+            final String name = getName(query);
+            if(name != null)
+            {
+                invalidate(name);
+            }
+            return query;
+        }
+        if(type != EQueryType.PROCEDURE_CALL)
+        {
+            return query;
+        }
+
+        final String name = getName(query);
+        final Integer handle = name == null ? null : fHandles.get(name);
+        if(handle == null)
+        {
+            return query;
+        }
+
+        final WebsockQuery call = new WebsockQuery(query.getId(), type);
+        call.setParameters(new HashMap<String, Object>(
+            query.getParameters()));
+        call.getParameters().remove(WebsockConstants.PROCEDURE_NAME);
+        call.setParameter(WebsockConstants.PROCEDURE_HANDLE, handle);
+
+        //name may have been sent as payload
+        if(!name.equals(query.getPayload()))
+        {
+            call.setPayload(query.getPayload());
+        }
+        call.setDeadline(query.getDeadline());
+
+        return call;
+    }
+
+    /**
+     * Creates a sender preparing all messages before passing them on to the
+     * given sender.
+     * The sender must not be null.
+     *
+     * @param sender sender to wrap
+     * @return preparing sender
+     */
+    public IMessageSender wrap(final IMessageSender sender)
+    {
+        if(sender == null)
+        {
+            throw new NullPointerException("message sender was null");
+        }
+
+        return new IMessageSender()
+        {
+            @Override
+            public void sendMessage(WebsockQuery message) throws Exception
+            {
+                sender.sendMessage(prepare(message));
+            }
+        };
+    }
+
+    private String getName(final WebsockQuery query)
+    {
+        Object name = query.getParameter(WebsockConstants.PROCEDURE_NAME);
+        if(name == null)
+        {
+            name = query.getPayload();
+        }
+
+        if(name instanceof String)
+        {
+            return (String)name;
+        }
+        return null;
+    }
+
+    /**
+     * @param name name of a procedure
+     * @return cached handle of the procedure or null
+     */
+    public Integer getHandle(final String name)
+    {
+        return fHandles.get(name);
+    }
+
+    /**
+     * Removes the cached handle of the procedure with the given name.
+     *
+     * @param name name of the procedure
+     */
+    public void invalidate(final String name)
+    {
+        fHandles.remove(name);
+    }
+
+    /**
+     * Removes all cached handles, for example after reconnecting.
+     */
+    public void clear()
+    {
+        fHandles.clear();
+    }
+}
@@ -0,0 +1,284 @@
+/*
+ *  Copyright 2015 Institute of Information Systems, Hof University
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package de.hofuniversity.iisys.neo4j.websock.query.procedure;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import de.hofuniversity.iisys.neo4j.websock.query.EQueryType;
+import de.hofuniversity.iisys.neo4j.websock.query.WebsockQuery;
+import de.hofuniversity.iisys.neo4j.websock.session.WebsockConstants;
+
+/**
+ * Server-side table of stored procedures, assigning each a numeric handle
+ * that calls can use instead of the procedure's name.
+ * Handles index an array directly; they combine a slot index with the
+ * slot's generation, so handles of deleted or replaced procedures stay
+ * invalid even after their slot has been reused.
+ * Lookups are lock-free, modifications are synchronized.
+ *
+ * @param <T> type of stored procedures
+ */
+public class ProcedureTable<T>
+{
+    private static final int INDEX_BITS = 20;
+    private static final int INDEX_MASK = (1 << INDEX_BITS) - 1;
+    private static final int GENERATION_MASK = (1 << (31 - INDEX_BITS)) - 1;
+
+    private static final int INITIAL_SIZE = 16;
+
+    private final Map<String, Integer> fHandles;
+
+    private volatile Slot<T>[] fSlots;
+    private int[] fGenerations;
+    private int fFree;
+
+    /**
+     * Creates an empty procedure table.
+     */
+    @SuppressWarnings("unchecked")
+    public ProcedureTable()
+    {
+        fHandles = new HashMap<String, Integer>();
+        fSlots = (Slot<T>[]) new Slot<?>[INITIAL_SIZE];
+        fGenerations = new int[INITIAL_SIZE];
+    }
+
+    /**
+     * Stores the given procedure under the given name, replacing and
+     * invalidating the handle of any procedure previously stored under it.
+     * Neither of the parameters may be null.
+     *
+     * @param name name of the procedure
+     * @param procedure procedure to store
+     * @return handle of the stored procedure
+     */
+    public synchronized int register(final String name, final T procedure)
+    {
+        if(name == null)
+        {
+            throw new NullPointerException("procedure name was null");
+        }
+        if(procedure == null)
+        {
+            throw new NullPointerException("procedure was null");
+        }
+
+        remove(name);
+
+        final int index = nextFreeIndex();
+        final int generation = (fGenerations[index] + 1) & GENERATION_MASK;
+        fGenerations[index] = generation;
+
+        final int handle = (generation << INDEX_BITS) | index;
+
+        //copy on write for lock-free lookups
+        final Slot<T>[] slots = Arrays.copyOf(fSlots, fSlots.length);
+        slots[index] = new Slot<T>(name, handle, procedure);
+        fSlots = slots;
+
+        fHandles.put(name, handle);
+        return handle;
+    }
+
+    private int nextFreeIndex()
+    {
+        final Slot<T>[] slots = fSlots;
+        for(int i = 0; i < slots.length; ++i)
+        {
+            final int index = (fFree + i) % slots.length;
+            if(slots[index] == null)
+            {
+                fFree = index + 1;
+                return index;
+            }
+        }
+
+        if(slots.length > INDEX_MASK)
+        {
+            throw new IllegalStateException("procedure table full");
+        }
+
+        //grow, the first new slot is free
+        fSlots = Arrays.copyOf(slots, slots.length * 2);
+        fGenerations = Arrays.copyOf(fGenerations, slots.length * 2);
+        fFree = slots.length + 1;
+        return slots.length;
+    }
+
+    /**
+     * Removes the procedure with the given name, invalidating its handle.
+     *
+     * @param name name of the procedure to remove
+     * @return whether a procedure was removed
+     */
+    public synchronized boolean remove(final String name)
+    {
+        final Integer handle = fHandles.remove(name);
+        if(handle == null)
+        {
+            return false;
+        }
+
+        final Slot<T>[] slots = Arrays.copyOf(fSlots, fSlots.length);
+        slots[handle & INDEX_MASK] = null;
+        fSlots = slots;
+        return true;
+    }
+
+    /**
+     * @param name name of a procedure
+     * @return handle of the procedure or -1 if there is none
+     */
+    public synchronized int resolve(final String name)
+    {
+        final Integer handle = fHandles.get(name);
+        if(handle == null)
+        {
+            return -1;
+        }
+        return handle;
+    }
+
+    /**
+     * Looks up a procedure by its handle without locking.
+     *
+     * @param handle handle of the procedure
+     * @return procedure or null if the handle is invalid
+     */
+    public T get(final int handle)
+    {
+        final Slot<T> slot = getSlot(handle);
+        if(slot == null)
+        {
+            return null;
+        }
+        return slot.fProcedure;
+    }
+
+    /**
+     * @param handle handle of a procedure
+     * @return name of the procedure or null if the handle is invalid
+     */
+    public String getName(final int handle)
+    {
+        final Slot<T> slot = getSlot(handle);
+        if(slot == null)
+        {
+            return null;
+        }
+        return slot.fName;
+    }
+
+    private Slot<T> getSlot(final int handle)
+    {
+        final Slot<T>[] slots = fSlots;
+        final int index = handle & INDEX_MASK;
+        if(handle < 0 || index >= slots.length)
+        {
+            return null;
+        }
+
+        final Slot<T> slot = slots[index];
+        if(slot == null || slot.fHandle != handle)
+        {
+            return null;
+        }
+        return slot;
+    }
+
+    /**
+     * Looks up the procedure called by the given query, by its handle if it
+     * has one, otherwise by its name given as parameter or payload.
+     * The query must not be null.
+     *
+     * @param call procedure call
+     * @return called procedure
+     * @throws IllegalArgumentException if the handle is invalid or there is
+     *  no procedure with the name
+     */
+    public T get(final WebsockQuery call)
+    {
+        final Object handle = call.getParameter(
+            WebsockConstants.PROCEDURE_HANDLE);
+        if(handle != null)
+        {
+            final T procedure = get(((Number)handle).intValue());
+            if(procedure == null)
+            {
+                throw new IllegalArgumentException(
+                    "unknown procedure handle: " + handle);
+            }
+            return procedure;
+        }
+
+        Object name = call.getParameter(WebsockConstants.PROCEDURE_NAME);
+        if(name == null)
+        {
+            name = call.getPayload();
+        }
+
+        final T procedure = get(resolve(String.valueOf(name)));
+        if(procedure == null)
+        {
+            throw new IllegalArgumentException("unknown procedure: " + name);
+        }
+        return procedure;
+    }
+
+    /**
+     * Creates a success response telling the client the handle of the
+     * procedure with the given name, answering a store or resolve request.
+     *
+     * @param id ID of the request
+     * @param name name of the procedure
+     * @param handle handle of the procedure
+     * @return response message
+     */
+    public static WebsockQuery createHandleResponse(final int id,
+        final String name, final int handle)
+    {
+        final WebsockQuery response = new WebsockQuery(id,
+            EQueryType.SUCCESS);
+        response.setParameter(WebsockConstants.PROCEDURE_NAME, name);
+        response.setParameter(WebsockConstants.PROCEDURE_HANDLE, handle);
+        return response;
+    }
+
+    /**
+     * @return number of stored procedures
+     */
+    public synchronized int getSize()
+    {
+        return fHandles.size();
+    }
+
+    private static class Slot<T>
+    {
+        private final String fName;
+        private final int fHandle;
+        private final T fProcedure;
+
+        public Slot(final String name, final int handle, final T procedure)
+        {
+            fName = name;
+            fHandle = handle;
+            fProcedure = procedure;
+        }
+    }
+}
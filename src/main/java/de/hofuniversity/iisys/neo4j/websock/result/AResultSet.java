@@ -40,6 +40,11 @@ public abstract class AResultSet<T>
     private int fMax = -1;
     private int fTotal = -1;
 
+    private String fCursor;
+
+    private double fTotalError = 0.0;
+    private boolean fTotalDeferred = false;
+
     /**
      * Creates a result set with the given type, containing the given result
      * object.
@@ -89,6 +94,21 @@ public abstract class AResultSet<T>
         {
             fTotal = (Integer)total;
         }
+
+        Object cursor = map.get(WebsockConstants.CURSOR);
+        if(cursor != null)
+        {
+            fCursor = cursor.toString();
+        }
+
+        Object error = map.get(WebsockConstants.TOTAL_ERROR);
+        if(error != null)
+        {
+            fTotalError = ((Number)error).doubleValue();
+        }
+
+        fTotalDeferred = Boolean.TRUE.equals(
+            map.get(WebsockConstants.TOTAL_DEFERRED));
     }
 
     /**
@@ -139,6 +159,54 @@ public abstract class AResultSet<T>
         fTotal = total;
     }
 
+    /**
+     * @return token of the server-held cursor for further pages or null
+     */
+    public String getCursor()
+    {
+        return fCursor;
+    }
+
+    /**
+     * @param cursor token of the server-held cursor for further pages
+     */
+    public void setCursor(String cursor)
+    {
+        fCursor = cursor;
+    }
+
+    /**
+     * @return relative error bound of an estimated total, 0 if exact
+     */
+    public double getTotalError()
+    {
+        return fTotalError;
+    }
+
+    /**
+     * @param error relative error bound of an estimated total, 0 if exact
+     */
+    public void setTotalError(double error)
+    {
+        fTotalError = error;
+    }
+
+    /**
+     * @return whether the total will be sent in a separate message
+     */
+    public boolean isTotalDeferred()
+    {
+        return fTotalDeferred;
+    }
+
+    /**
+     * @param deferred whether the total will be sent in a separate message
+     */
+    public void setTotalDeferred(boolean deferred)
+    {
+        fTotalDeferred = deferred;
+    }
+
     /**
      * @return type of this result
      */
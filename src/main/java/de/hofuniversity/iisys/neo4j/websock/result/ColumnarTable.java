@@ -0,0 +1,139 @@
+/*
+ *  Copyright 2015 Institute of Information Systems, Hof University
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package de.hofuniversity.iisys.neo4j.websock.result;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Read-only table stored column by column, exposing its contents as a list of
+ * row views.
+ * Rows are not materialized, every row view reads from the underlying
+ * columns.
+ */
+public class ColumnarTable extends AbstractList<List<Object>>
+    implements RandomAccess
+{
+    private final List<List<Object>> fColumns;
+    private final int fRows;
+
+    /**
+     * Creates a table from the given columns, all of which must contain the
+     * given number of rows.
+     * The list of columns may not be null.
+     *
+     * @param columns ordered list of column value lists
+     * @param rows number of rows in the table
+     */
+    public ColumnarTable(List<List<Object>> columns, int rows)
+    {
+        if(columns == null)
+        {
+            throw new NullPointerException("list of columns was null");
+        }
+
+        fColumns = columns;
+        fRows = rows;
+    }
+
+    /**
+     * Converts the given columns into a list of independent row lists.
+     * The list of columns may not be null.
+     *
+     * @param columns ordered list of column value lists
+     * @param rows number of rows in the table
+     * @return list of materialized rows
+     */
+    public static List<List<Object>> toRows(final List<List<Object>> columns,
+        final int rows)
+    {
+        final int width = columns.size();
+        final List<List<Object>> table = new ArrayList<List<Object>>(rows);
+
+        List<Object> row = null;
+        for(int i = 0; i < rows; ++i)
+        {
+            row = new ArrayList<Object>(width);
+            for(int j = 0; j < width; ++j)
+            {
+                row.add(columns.get(j).get(i));
+            }
+            table.add(row);
+        }
+
+        return table;
+    }
+
+    /**
+     * @param index index of the column
+     * @return list of values in the column
+     */
+    public List<Object> getColumn(int index)
+    {
+        return fColumns.get(index);
+    }
+
+    /**
+     * @return ordered list of column value lists
+     */
+    public List<List<Object>> getColumns()
+    {
+        return fColumns;
+    }
+
+    @Override
+    public List<Object> get(final int index)
+    {
+        if(index < 0 || index >= fRows)
+        {
+            throw new IndexOutOfBoundsException("row " + index + " of "
+                + fRows);
+        }
+
+        return new Row(index);
+    }
+
+    @Override
+    public int size()
+    {
+        return fRows;
+    }
+
+    private class Row extends AbstractList<Object> implements RandomAccess
+    {
+        private final int fIndex;
+
+        public Row(int index)
+        {
+            fIndex = index;
+        }
+
+        @Override
+        public Object get(int column)
+        {
+            return fColumns.get(column).get(fIndex);
+        }
+
+        @Override
+        public int size()
+        {
+            return fColumns.size();
+        }
+    }
+}
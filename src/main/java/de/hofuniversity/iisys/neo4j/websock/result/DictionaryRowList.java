@@ -0,0 +1,93 @@
+/*
+ *  Copyright 2015 Institute of Information Systems, Hof University
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package de.hofuniversity.iisys.neo4j.websock.result;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.RandomAccess;
+
+import de.hofuniversity.iisys.neo4j.websock.util.DictionaryCodec;
+
+/**
+ * Read-only list of table rows, backed by received rows containing
+ * dictionary codes in some of their columns.
+ * Rows are not materialized, every access returns a new decoded copy of
+ * the received row.
+ */
+public class DictionaryRowList extends AbstractList<List<Object>>
+    implements RandomAccess
+{
+    private final List<List<Object>> fRows;
+    private final int[] fIndices;
+    private final String[][] fEntries;
+
+    /**
+     * Creates a list of rows decoding the given received rows using the
+     * given dictionaries, mapped to by their column's index.
+     * Neither of the parameters may be null.
+     *
+     * @param rows received rows containing dictionary codes
+     * @param dictionaries dictionaries by column index
+     */
+    public DictionaryRowList(List<List<Object>> rows,
+        Map<String, ?> dictionaries)
+    {
+        if(rows == null)
+        {
+            throw new NullPointerException("list of rows was null");
+        }
+        if(dictionaries == null)
+        {
+            throw new NullPointerException("map of dictionaries was null");
+        }
+
+        fRows = rows;
+        fIndices = new int[dictionaries.size()];
+        fEntries = new String[fIndices.length][];
+
+        int i = 0;
+        for(Entry<String, ?> dictE : dictionaries.entrySet())
+        {
+            fIndices[i] = Integer.parseInt(dictE.getKey());
+            fEntries[i] = DictionaryCodec.getEntries(
+                (List<?>)dictE.getValue());
+            ++i;
+        }
+    }
+
+    @Override
+    public List<Object> get(int index)
+    {
+        final List<Object> row = new ArrayList<Object>(fRows.get(index));
+        for(int i = 0; i < fIndices.length; ++i)
+        {
+            row.set(fIndices[i], DictionaryCodec.lookup(
+                row.get(fIndices[i]), fEntries[i]));
+        }
+
+        return row;
+    }
+
+    @Override
+    public int size()
+    {
+        return fRows.size();
+    }
+}
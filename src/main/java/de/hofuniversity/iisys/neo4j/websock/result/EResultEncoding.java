@@ -0,0 +1,82 @@
+/*
+ *  Copyright 2015 Institute of Information Systems, Hof University
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package de.hofuniversity.iisys.neo4j.websock.result;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import de.hofuniversity.iisys.neo4j.websock.session.WebsockConstants;
+
+/**
+ * Enumeration of optional compact result encodings a client can negotiate,
+ * each with a code for size-efficient encoding and decoding.
+ */
+public enum EResultEncoding
+{
+    /**
+     * Column-major table encoding with one typed array per column.
+     */
+    COLUMNAR(WebsockConstants.COLUMNAR_ENCODING),
+
+    /**
+     * Low-cardinality String columns and fields sent as a dictionary plus
+     * integer codes.
+     */
+    DICTIONARY(WebsockConstants.DICTIONARY_ENCODING),
+
+    /**
+     * Lists of maps sharing the same keys sent as a key list plus value
+     * tuples.
+     */
+    SCHEMA(WebsockConstants.SCHEMA_ENCODING);
+
+    //map of encoding codes for easy decoding
+    private static final Map<String, EResultEncoding> fTypesByCode
+        = new HashMap<String, EResultEncoding>();
+
+    static
+    {
+        for(EResultEncoding type : EResultEncoding.values())
+        {
+            fTypesByCode.put(type.getCode(), type);
+        }
+    }
+
+    /**
+     * @param code received encoding code
+     * @return enumeration constant for the code given or null
+     */
+    public static EResultEncoding getTypeFor(String code)
+    {
+        return fTypesByCode.get(code);
+    }
+
+    private final String fCode;
+
+    private EResultEncoding(String code)
+    {
+        fCode = code;
+    }
+
+    /**
+     * @return code to encode this encoding with
+     */
+    public String getCode()
+    {
+        return fCode;
+    }
+}
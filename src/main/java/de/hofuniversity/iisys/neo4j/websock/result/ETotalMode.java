@@ -0,0 +1,106 @@
+/*
+ *  Copyright 2015 Institute of Information Systems, Hof University
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package de.hofuniversity.iisys.neo4j.websock.result;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import de.hofuniversity.iisys.neo4j.websock.session.WebsockConstants;
+
+/**
+ * Enumeration of ways a client can request the total number of results to be
+ * determined, each with a code for size-efficient encoding and decoding.
+ */
+public enum ETotalMode
+{
+    /**
+     * Total counted completely and sent with the result.
+     */
+    EXACT(WebsockConstants.EXACT_TOTAL),
+
+    /**
+     * Result sent without a total, the exact total follows in a separate
+     * message once counted.
+     */
+    DEFERRED(WebsockConstants.DEFERRED_TOTAL),
+
+    /**
+     * Total estimated and sent with the result, along with a relative error
+     * bound.
+     */
+    APPROXIMATE(WebsockConstants.APPROXIMATE_TOTAL);
+
+    //map of mode codes for easy decoding
+    private static final Map<String, ETotalMode> fTypesByCode
+        = new HashMap<String, ETotalMode>();
+
+    static
+    {
+        for(ETotalMode type : ETotalMode.values())
+        {
+            fTypesByCode.put(type.getCode(), type);
+        }
+    }
+
+    /**
+     * @param code received mode code
+     * @return enumeration constant for the code given or null
+     */
+    public static ETotalMode getTypeFor(String code)
+    {
+        return fTypesByCode.get(code);
+    }
+
+    /**
+     * Reads the requested mode from the given query parameters, defaulting
+     * to exact totals.
+     * The map given must not be null.
+     *
+     * @param params query parameters
+     * @return requested mode
+     */
+    public static ETotalMode fromParameters(Map<String, Object> params)
+    {
+        final Object code = params.get(WebsockConstants.TOTAL_MODE);
+        if(code == null)
+        {
+            return EXACT;
+        }
+
+        final ETotalMode mode = fTypesByCode.get(code.toString());
+        if(mode == null)
+        {
+            throw new IllegalArgumentException("unknown total mode: " + code);
+        }
+        return mode;
+    }
+
+    private final String fCode;
+
+    private ETotalMode(String code)
+    {
+        fCode = code;
+    }
+
+    /**
+     * @return code to encode this mode with
+     */
+    public String getCode()
+    {
+        return fCode;
+    }
+}
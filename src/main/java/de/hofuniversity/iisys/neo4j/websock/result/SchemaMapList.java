@@ -0,0 +1,234 @@
+/*
+ *  Copyright 2015 Institute of Information Systems, Hof University
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package de.hofuniversity.iisys.neo4j.websock.result;
+
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+import java.util.Set;
+
+/**
+ * Read-only list of maps that all share the same keys, backed by a list of
+ * value tuples.
+ * Maps are not materialized, every map view reads from its tuple and looks
+ * up keys in an index shared by all maps.
+ */
+public class SchemaMapList extends AbstractList<Map<String, Object>>
+    implements RandomAccess
+{
+    private final String[] fKeys;
+    private final Map<String, Integer> fIndices;
+    private final List<List<Object>> fTuples;
+
+    /**
+     * Creates a list of maps with the given keys, backed by the given value
+     * tuples containing the values in the order of the keys.
+     * None of the parameters may be null.
+     *
+     * @param keys ordered list of keys shared by all maps
+     * @param tuples list of value tuples
+     */
+    public SchemaMapList(List<?> keys, List<List<Object>> tuples)
+    {
+        if(keys == null)
+        {
+            throw new NullPointerException("list of keys was null");
+        }
+        if(tuples == null)
+        {
+            throw new NullPointerException("list of tuples was null");
+        }
+
+        fKeys = new String[keys.size()];
+        fIndices = new HashMap<String, Integer>(fKeys.length * 2);
+
+        int i = 0;
+        for(Object key : keys)
+        {
+            fKeys[i] = key.toString();
+            fIndices.put(fKeys[i], i);
+            ++i;
+        }
+
+        fTuples = tuples;
+    }
+
+    /**
+     * Determines whether all entries of the given list are maps with the
+     * same set of keys and returns these keys in the order of the first map.
+     * Returns null for empty lists and lists with differing keys or entries
+     * that are not maps.
+     * The list given must not be null.
+     *
+     * @param list list to examine
+     * @return ordered list of shared keys or null
+     */
+    public static List<String> getSharedKeys(final List<?> list)
+    {
+        if(list.isEmpty() || !(list.get(0) instanceof Map))
+        {
+            return null;
+        }
+
+        final Set<?> keys = ((Map<?, ?>)list.get(0)).keySet();
+
+        Map<?, ?> map = null;
+        for(Object o : list)
+        {
+            if(!(o instanceof Map))
+            {
+                return null;
+            }
+
+            map = (Map<?, ?>)o;
+            if(map.size() != keys.size()
+                || !map.keySet().containsAll(keys))
+            {
+                return null;
+            }
+        }
+
+        final List<String> shared = new ArrayList<String>(keys.size());
+        for(Object key : keys)
+        {
+            if(!(key instanceof String))
+            {
+                return null;
+            }
+            shared.add((String)key);
+        }
+
+        return shared;
+    }
+
+    /**
+     * @return list of value tuples backing this list
+     */
+    public List<List<Object>> getTuples()
+    {
+        return fTuples;
+    }
+
+    @Override
+    public Map<String, Object> get(int index)
+    {
+        return new TupleMap(fTuples.get(index));
+    }
+
+    @Override
+    public int size()
+    {
+        return fTuples.size();
+    }
+
+    private class TupleMap extends AbstractMap<String, Object>
+    {
+        private final List<Object> fTuple;
+
+        public TupleMap(List<Object> tuple)
+        {
+            fTuple = tuple;
+        }
+
+        @Override
+        public boolean containsKey(Object key)
+        {
+            return fIndices.containsKey(key);
+        }
+
+        @Override
+        public Object get(Object key)
+        {
+            final Integer index = fIndices.get(key);
+
+            if(index == null)
+            {
+                return null;
+            }
+
+            return fTuple.get(index);
+        }
+
+        @Override
+        public int size()
+        {
+            return fKeys.length;
+        }
+
+        @Override
+        public Set<Entry<String, Object>> entrySet()
+        {
+            return new AbstractSet<Entry<String, Object>>()
+            {
+                @Override
+                public Iterator<Entry<String, Object>> iterator()
+                {
+                    return new EntryIterator(fTuple);
+                }
+
+                @Override
+                public int size()
+                {
+                    return fKeys.length;
+                }
+            };
+        }
+    }
+
+    private class EntryIterator implements Iterator<Map.Entry<String, Object>>
+    {
+        private final List<Object> fTuple;
+        private int fIndex = 0;
+
+        public EntryIterator(List<Object> tuple)
+        {
+            fTuple = tuple;
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            return fIndex < fKeys.length;
+        }
+
+        @Override
+        public Map.Entry<String, Object> next()
+        {
+            if(fIndex >= fKeys.length)
+            {
+                throw new NoSuchElementException();
+            }
+
+            final int index = fIndex++;
+            return new AbstractMap.SimpleImmutableEntry<String, Object>(
+                fKeys[index], fTuple.get(index));
+        }
+
+        @Override
+        public void remove()
+        {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -16,15 +16,19 @@
  */
 package de.hofuniversity.iisys.neo4j.websock.result;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
+import de.hofuniversity.iisys.neo4j.websock.result.aggregate.TableAggregation;
 import de.hofuniversity.iisys.neo4j.websock.session.WebsockConstants;
 
 /**
  * Result set containing a table of objects in one or more named columns.
  * The columns' values are at the same indices as their names in the
  * column list name.
+ * Rows can either be stored as row lists or column by column in a
+ * ColumnarTable.
  */
 public class TableResult extends AResultSet<List<List<Object>>>
 {
@@ -89,10 +93,96 @@ public class TableResult extends AResultSet<List<List<Object>>>
      * exist.
      *
      * @param column name of the column
-     * @return index of the column or null
+     * @return index of the column or -1
      */
     public int getColumnIndex(String column)
     {
         return fColumns.indexOf(column);
     }
+
+    /**
+     * Creates a reusable row cursor positioned before the first row.
+     * The cursor looks up column names in a map of the current columns.
+     *
+     * @return new row cursor for this table
+     */
+    public TableRow getRow()
+    {
+        return new TableRow(this);
+    }
+
+    /**
+     * @return whether the table's values are stored column by column
+     */
+    public boolean isColumnar()
+    {
+        return fResults instanceof ColumnarTable;
+    }
+
+    /**
+     * Returns the list of values in a column. For columnar tables, this is
+     * the internal column, otherwise a new list is created.
+     *
+     * @param index index of the column
+     * @return list of the column's values
+     */
+    public List<Object> getColumnValues(int index)
+    {
+        if(fResults instanceof ColumnarTable)
+        {
+            return ((ColumnarTable)fResults).getColumn(index);
+        }
+
+        final List<Object> values = new ArrayList<Object>(fResults.size());
+        for(List<Object> row : fResults)
+        {
+            values.add(row.get(index));
+        }
+
+        return values;
+    }
+
+    /**
+     * Returns the list of values in a named column or null if it doesn't
+     * exist.
+     *
+     * @param column name of the column
+     * @return list of the column's values or null
+     */
+    public List<Object> getColumnValues(String column)
+    {
+        final int index = getColumnIndex(column);
+
+        if(index < 0)
+        {
+            return null;
+        }
+
+        return getColumnValues(index);
+    }
+
+    /**
+     * Applies the given aggregation to this table, returning a new table
+     * with the grouping columns followed by the aggregated columns.
+     * The aggregation must not be null.
+     *
+     * @param aggregation aggregation to apply
+     * @return aggregated table
+     */
+    public TableResult aggregate(TableAggregation aggregation)
+    {
+        return aggregation.apply(this);
+    }
+
+    /**
+     * Returns a new table containing the distinct combinations of values in
+     * the given columns, in the order of their first occurrence.
+     *
+     * @param columns names of the columns to return
+     * @return table of distinct values
+     */
+    public TableResult distinct(String ... columns)
+    {
+        return new TableAggregation(columns).apply(this);
+    }
 }
@@ -0,0 +1,364 @@
+/*
+ *  Copyright 2015 Institute of Information Systems, Hof University
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package de.hofuniversity.iisys.neo4j.websock.result;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import de.hofuniversity.iisys.neo4j.websock.util.INumericColumn;
+
+/**
+ * Reusable cursor over the rows of a table result, giving typed access to
+ * the current row's values by column index or name.
+ * Moving to another row does not allocate any objects; for columnar tables
+ * with primitive columns, numeric values are read without boxing.
+ * Column names are resolved using an index of the table's columns taken
+ * when the cursor is created, so later changes to the column names are not
+ * seen by the cursor.
+ * Instances are not thread-safe.
+ */
+public class TableRow
+{
+    private final Map<String, Integer> fIndices;
+    private final List<List<Object>> fRows;
+    private final List<Object>[] fColumns;
+    private final INumericColumn[] fNumeric;
+    private final int fSize;
+
+    private int fIndex = -1;
+    private List<Object> fRow;
+
+    /**
+     * Creates a row cursor for the given table, positioned before its first
+     * row.
+     * The table must not be null.
+     *
+     * @param table table to access
+     */
+    @SuppressWarnings("unchecked")
+    public TableRow(final TableResult table)
+    {
+        if(table == null)
+        {
+            throw new NullPointerException("table was null");
+        }
+
+        final List<String> names = table.getColumns();
+        fIndices = new HashMap<String, Integer>(names.size() * 2);
+        for(int i = names.size() - 1; i >= 0; --i)
+        {
+            fIndices.put(names.get(i), i);
+        }
+
+        fRows = table.getResults();
+        fSize = fRows.size();
+
+        if(fRows instanceof ColumnarTable)
+        {
+            final List<List<Object>> columns =
+                ((ColumnarTable) fRows).getColumns();
+            fColumns = (List<Object>[]) columns.toArray(
+                new List<?>[columns.size()]);
+            fNumeric = new INumericColumn[fColumns.length];
+            for(int i = 0; i < fColumns.length; ++i)
+            {
+                if(fColumns[i] instanceof INumericColumn)
+                {
+                    fNumeric[i] = (INumericColumn) fColumns[i];
+                }
+            }
+        }
+        else
+        {
+            fColumns = null;
+            fNumeric = null;
+        }
+    }
+
+    /**
+     * Advances to the next row.
+     *
+     * @return whether there was another row
+     */
+    public boolean next()
+    {
+        if(fIndex + 1 >= fSize)
+        {
+            fIndex = fSize;
+            fRow = null;
+            return false;
+        }
+
+        moveTo(fIndex + 1);
+        return true;
+    }
+
+    /**
+     * Moves to the row with the given index.
+     *
+     * @param index index of the row
+     * @return this row cursor
+     */
+    public TableRow moveTo(final int index)
+    {
+        if(index < 0 || index >= fSize)
+        {
+            throw new IndexOutOfBoundsException("row " + index + " of "
+                + fSize);
+        }
+
+        fIndex = index;
+        if(fColumns == null)
+        {
+            fRow = fRows.get(index);
+        }
+
+        return this;
+    }
+
+    /**
+     * @return index of the current row
+     */
+    public int getIndex()
+    {
+        return fIndex;
+    }
+
+    /**
+     * @param column index of the column
+     * @return value in the given column of the current row
+     */
+    public Object get(final int column)
+    {
+        if(fColumns != null)
+        {
+            checkRow();
+            return fColumns[column].get(fIndex);
+        }
+
+        if(fRow == null)
+        {
+            throw new IllegalStateException("no current row");
+        }
+
+        return fRow.get(column);
+    }
+
+    /**
+     * @param column name of the column
+     * @return value in the given column of the current row
+     */
+    public Object get(final String column)
+    {
+        return get(getIndex(column));
+    }
+
+    /**
+     * @param column index of the column
+     * @return whether the value in the given column is null
+     */
+    public boolean isNull(final int column)
+    {
+        if(fNumeric != null && fNumeric[column] != null)
+        {
+            checkRow();
+            return false;
+        }
+
+        return get(column) == null;
+    }
+
+    /**
+     * @param column name of the column
+     * @return whether the value in the given column is null
+     */
+    public boolean isNull(final String column)
+    {
+        return isNull(getIndex(column));
+    }
+
+    /**
+     * @param column index of the column
+     * @return String form of the value in the given column or null
+     */
+    public String getString(final int column)
+    {
+        final Object value = get(column);
+        if(value == null)
+        {
+            return null;
+        }
+
+        return value.toString();
+    }
+
+    /**
+     * @param column name of the column
+     * @return String form of the value in the given column or null
+     */
+    public String getString(final String column)
+    {
+        return getString(getIndex(column));
+    }
+
+    /**
+     * Returns the numeric value in the given column as a long.
+     * Fails if the value is null or not a number.
+     *
+     * @param column index of the column
+     * @return value in the given column as a long
+     */
+    public long getLong(final int column)
+    {
+        if(fNumeric != null && fNumeric[column] != null)
+        {
+            checkRow();
+            return fNumeric[column].getLong(fIndex);
+        }
+
+        return getNumber(column).longValue();
+    }
+
+    /**
+     * Returns the numeric value in the given column as a long.
+     * Fails if the value is null or not a number.
+     *
+     * @param column name of the column
+     * @return value in the given column as a long
+     */
+    public long getLong(final String column)
+    {
+        return getLong(getIndex(column));
+    }
+
+    /**
+     * Returns the numeric value in the given column as an int.
+     * Fails if the value is null or not a number.
+     *
+     * @param column index of the column
+     * @return value in the given column as an int
+     */
+    public int getInt(final int column)
+    {
+        return (int) getLong(column);
+    }
+
+    /**
+     * Returns the numeric value in the given column as an int.
+     * Fails if the value is null or not a number.
+     *
+     * @param column name of the column
+     * @return value in the given column as an int
+     */
+    public int getInt(final String column)
+    {
+        return getInt(getIndex(column));
+    }
+
+    /**
+     * Returns the numeric value in the given column as a double.
+     * Fails if the value is null or not a number.
+     *
+     * @param column index of the column
+     * @return value in the given column as a double
+     */
+    public double getDouble(final int column)
+    {
+        if(fNumeric != null && fNumeric[column] != null)
+        {
+            checkRow();
+            return fNumeric[column].getDouble(fIndex);
+        }
+
+        return getNumber(column).doubleValue();
+    }
+
+    /**
+     * Returns the numeric value in the given column as a double.
+     * Fails if the value is null or not a number.
+     *
+     * @param column name of the column
+     * @return value in the given column as a double
+     */
+    public double getDouble(final String column)
+    {
+        return getDouble(getIndex(column));
+    }
+
+    /**
+     * Returns the boolean value in the given column.
+     * Fails if the value is null or not a boolean.
+     *
+     * @param column index of the column
+     * @return value in the given column
+     */
+    public boolean getBoolean(final int column)
+    {
+        final Object value = get(column);
+        if(value == null)
+        {
+            throw new NullPointerException("value in column " + column
+                + " was null");
+        }
+
+        return (Boolean) value;
+    }
+
+    /**
+     * Returns the boolean value in the given column.
+     * Fails if the value is null or not a boolean.
+     *
+     * @param column name of the column
+     * @return value in the given column
+     */
+    public boolean getBoolean(final String column)
+    {
+        return getBoolean(getIndex(column));
+    }
+
+    private Number getNumber(final int column)
+    {
+        final Object value = get(column);
+        if(value == null)
+        {
+            throw new NullPointerException("value in column " + column
+                + " was null");
+        }
+
+        return (Number) value;
+    }
+
+    private void checkRow()
+    {
+        if(fIndex < 0 || fIndex >= fSize)
+        {
+            throw new IllegalStateException("no current row");
+        }
+    }
+
+    private int getIndex(final String column)
+    {
+        final Integer index = fIndices.get(column);
+        if(index == null)
+        {
+            throw new IllegalArgumentException("unknown column: " + column);
+        }
+
+        return index;
+    }
+}
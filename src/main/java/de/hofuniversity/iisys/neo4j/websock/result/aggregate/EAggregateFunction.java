@@ -0,0 +1,49 @@
+/*
+ *  Copyright 2015 Institute of Information Systems, Hof University
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package de.hofuniversity.iisys.neo4j.websock.result.aggregate;
+
+/**
+ * Enumeration of functions aggregating the values of a column within a
+ * group of table rows.
+ */
+public enum EAggregateFunction
+{
+    /**
+     * Number of non-null values or of rows if no column is given.
+     */
+    COUNT,
+
+    /**
+     * Number of distinct non-null values.
+     */
+    COUNT_DISTINCT,
+
+    /**
+     * Sum of all numeric values, as a long if all of them are integral.
+     */
+    SUM,
+
+    /**
+     * Smallest non-null value.
+     */
+    MIN,
+
+    /**
+     * Largest non-null value.
+     */
+    MAX;
+}
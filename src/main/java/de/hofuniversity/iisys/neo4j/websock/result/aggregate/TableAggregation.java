@@ -0,0 +1,536 @@
+/*
+ *  Copyright 2015 Institute of Information Systems, Hof University
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package de.hofuniversity.iisys.neo4j.websock.result.aggregate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.RandomAccess;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import de.hofuniversity.iisys.neo4j.websock.result.TableResult;
+
+/**
+ * Aggregation of table rows, grouping rows by the values of zero or more
+ * columns and computing aggregate functions over each group.
+ * Large tables are split into row ranges that are aggregated in parallel
+ * in a fork-join pool, merging the partial results afterwards.
+ * Groups appear in the result in the order of their first row in the
+ * table, independent of parallelization.
+ */
+public class TableAggregation
+{
+    /**
+     * Default number of rows below which ranges are not split any further.
+     */
+    public static final int DEFAULT_THRESHOLD = 8192;
+
+    private static ForkJoinPool fDefaultPool;
+
+    private final List<String> fGroupBy;
+    private final List<Aggregate> fAggregates;
+
+    private int fThreshold = DEFAULT_THRESHOLD;
+    private ForkJoinPool fPool;
+
+    /**
+     * Creates an aggregation grouping by the given columns.
+     * Without any columns, all rows form a single group.
+     *
+     * @param groupBy names of the columns to group by
+     */
+    public TableAggregation(final String ... groupBy)
+    {
+        fGroupBy = Arrays.asList(groupBy);
+        fAggregates = new ArrayList<Aggregate>();
+    }
+
+    /**
+     * Adds an aggregate function over the given column, producing a column
+     * with the given name.
+     * Only counting may be done without a column.
+     *
+     * @param function function to apply
+     * @param column name of the column to aggregate or null
+     * @param name name of the resulting column
+     * @return this aggregation
+     */
+    public TableAggregation add(final EAggregateFunction function,
+        final String column, final String name)
+    {
+        if(function == null)
+        {
+            throw new NullPointerException("aggregate function was null");
+        }
+        if(name == null)
+        {
+            throw new NullPointerException("result column name was null");
+        }
+        if(column == null && function != EAggregateFunction.COUNT)
+        {
+            throw new IllegalArgumentException(function
+                + " requires a column");
+        }
+
+        fAggregates.add(new Aggregate(function, column, name));
+        return this;
+    }
+
+    /**
+     * Adds a row count.
+     *
+     * @param name name of the resulting column
+     * @return this aggregation
+     */
+    public TableAggregation count(final String name)
+    {
+        return add(EAggregateFunction.COUNT, null, name);
+    }
+
+    /**
+     * @param column column to sum up
+     * @param name name of the resulting column
+     * @return this aggregation
+     */
+    public TableAggregation sum(final String column, final String name)
+    {
+        return add(EAggregateFunction.SUM, column, name);
+    }
+
+    /**
+     * @param column column to determine the minimum of
+     * @param name name of the resulting column
+     * @return this aggregation
+     */
+    public TableAggregation min(final String column, final String name)
+    {
+        return add(EAggregateFunction.MIN, column, name);
+    }
+
+    /**
+     * @param column column to determine the maximum of
+     * @param name name of the resulting column
+     * @return this aggregation
+     */
+    public TableAggregation max(final String column, final String name)
+    {
+        return add(EAggregateFunction.MAX, column, name);
+    }
+
+    /**
+     * @param column column to count the distinct values of
+     * @param name name of the resulting column
+     * @return this aggregation
+     */
+    public TableAggregation countDistinct(final String column,
+        final String name)
+    {
+        return add(EAggregateFunction.COUNT_DISTINCT, column, name);
+    }
+
+    /**
+     * @param threshold number of rows below which ranges are not split
+     * @return this aggregation
+     */
+    public TableAggregation setThreshold(final int threshold)
+    {
+        if(threshold <= 0)
+        {
+            throw new IllegalArgumentException("threshold must be positive");
+        }
+
+        fThreshold = threshold;
+        return this;
+    }
+
+    /**
+     * Sets the pool to run the aggregation in. If none is set, a shared
+     * pool using all available processors is used.
+     *
+     * @param pool fork-join pool to use
+     * @return this aggregation
+     */
+    public TableAggregation setPool(final ForkJoinPool pool)
+    {
+        fPool = pool;
+        return this;
+    }
+
+    /**
+     * Applies this aggregation to the given table, returning a new table
+     * with the grouping columns followed by the aggregated columns.
+     * The table must not be null and contain all referenced columns.
+     *
+     * @param table table to aggregate
+     * @return aggregated table
+     */
+    public TableResult apply(final TableResult table)
+    {
+        final int[] groupCols = new int[fGroupBy.size()];
+        for(int i = 0; i < groupCols.length; ++i)
+        {
+            groupCols[i] = getIndex(table, fGroupBy.get(i));
+        }
+
+        final int[] aggCols = new int[fAggregates.size()];
+        final EAggregateFunction[] functions =
+            new EAggregateFunction[aggCols.length];
+        final List<String> columns = new ArrayList<String>(fGroupBy);
+        for(int i = 0; i < aggCols.length; ++i)
+        {
+            final Aggregate agg = fAggregates.get(i);
+            functions[i] = agg.fFunction;
+            aggCols[i] = -1;
+            if(agg.fColumn != null)
+            {
+                aggCols[i] = getIndex(table, agg.fColumn);
+            }
+            columns.add(agg.fName);
+        }
+
+        List<List<Object>> rows = table.getResults();
+        if(!(rows instanceof RandomAccess))
+        {
+            rows = new ArrayList<List<Object>>(rows);
+        }
+
+        final Map<List<Object>, Accumulator[]> groups;
+        final AggregationTask task = new AggregationTask(rows, 0,
+            rows.size(), groupCols, aggCols, functions, fThreshold);
+        if(rows.size() <= fThreshold)
+        {
+            groups = task.compute();
+        }
+        else
+        {
+            groups = getPool().invoke(task);
+        }
+
+        //a global aggregation always produces one row
+        if(groups.isEmpty() && groupCols.length == 0)
+        {
+            groups.put(new ArrayList<Object>(0),
+                createAccumulators(functions));
+        }
+
+        final List<List<Object>> result =
+            new ArrayList<List<Object>>(groups.size());
+        for(Entry<List<Object>, Accumulator[]> e : groups.entrySet())
+        {
+            final List<Object> row = new ArrayList<Object>(columns.size());
+            row.addAll(e.getKey());
+            for(Accumulator acc : e.getValue())
+            {
+                row.add(acc.getResult());
+            }
+            result.add(row);
+        }
+
+        return new TableResult(columns, result);
+    }
+
+    private ForkJoinPool getPool()
+    {
+        if(fPool != null)
+        {
+            return fPool;
+        }
+
+        synchronized(TableAggregation.class)
+        {
+            if(fDefaultPool == null)
+            {
+                fDefaultPool = new ForkJoinPool();
+            }
+            return fDefaultPool;
+        }
+    }
+
+    private int getIndex(final TableResult table, final String column)
+    {
+        final int index = table.getColumnIndex(column);
+        if(index < 0)
+        {
+            throw new IllegalArgumentException("unknown column: " + column);
+        }
+
+        return index;
+    }
+
+    private static Accumulator[] createAccumulators(
+        final EAggregateFunction[] functions)
+    {
+        final Accumulator[] accs = new Accumulator[functions.length];
+        for(int i = 0; i < accs.length; ++i)
+        {
+            accs[i] = new Accumulator(functions[i]);
+        }
+        return accs;
+    }
+
+    private static class Aggregate
+    {
+        private final EAggregateFunction fFunction;
+        private final String fColumn;
+        private final String fName;
+
+        public Aggregate(final EAggregateFunction function,
+            final String column, final String name)
+        {
+            fFunction = function;
+            fColumn = column;
+            fName = name;
+        }
+    }
+
+    private static class AggregationTask
+        extends RecursiveTask<Map<List<Object>, Accumulator[]>>
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final List<List<Object>> fRows;
+        private final int fFrom, fTo;
+        private final int[] fGroupCols, fAggCols;
+        private final EAggregateFunction[] fFunctions;
+        private final int fThreshold;
+
+        public AggregationTask(final List<List<Object>> rows, final int from,
+            final int to, final int[] groupCols, final int[] aggCols,
+            final EAggregateFunction[] functions, final int threshold)
+        {
+            fRows = rows;
+            fFrom = from;
+            fTo = to;
+            fGroupCols = groupCols;
+            fAggCols = aggCols;
+            fFunctions = functions;
+            fThreshold = threshold;
+        }
+
+        @Override
+        protected Map<List<Object>, Accumulator[]> compute()
+        {
+            if(fTo - fFrom > fThreshold)
+            {
+                final int mid = (fFrom + fTo) >>> 1;
+                final AggregationTask left = new AggregationTask(fRows,
+                    fFrom, mid, fGroupCols, fAggCols, fFunctions, fThreshold);
+                final AggregationTask right = new AggregationTask(fRows,
+                    mid, fTo, fGroupCols, fAggCols, fFunctions, fThreshold);
+
+                right.fork();
+                final Map<List<Object>, Accumulator[]> groups =
+                    left.compute();
+                return merge(groups, right.join());
+            }
+
+            final Map<List<Object>, Accumulator[]> groups =
+                new LinkedHashMap<List<Object>, Accumulator[]>();
+            for(int i = fFrom; i < fTo; ++i)
+            {
+                final List<Object> row = fRows.get(i);
+
+                final List<Object> key =
+                    new ArrayList<Object>(fGroupCols.length);
+                for(int col : fGroupCols)
+                {
+                    key.add(row.get(col));
+                }
+
+                Accumulator[] accs = groups.get(key);
+                if(accs == null)
+                {
+                    accs = createAccumulators(fFunctions);
+                    groups.put(key, accs);
+                }
+
+                for(int j = 0; j < accs.length; ++j)
+                {
+                    if(fAggCols[j] < 0)
+                    {
+                        accs[j].addRow();
+                    }
+                    else
+                    {
+                        accs[j].add(row.get(fAggCols[j]));
+                    }
+                }
+            }
+
+            return groups;
+        }
+
+        private Map<List<Object>, Accumulator[]> merge(
+            final Map<List<Object>, Accumulator[]> left,
+            final Map<List<Object>, Accumulator[]> right)
+        {
+            for(Entry<List<Object>, Accumulator[]> e : right.entrySet())
+            {
+                final Accumulator[] accs = left.get(e.getKey());
+                if(accs == null)
+                {
+                    left.put(e.getKey(), e.getValue());
+                }
+                else
+                {
+                    for(int j = 0; j < accs.length; ++j)
+                    {
+                        accs[j].merge(e.getValue()[j]);
+                    }
+                }
+            }
+
+            return left;
+        }
+    }
+
+    private static class Accumulator
+    {
+        private final EAggregateFunction fFunction;
+
+        private long fCount;
+        private long fLongSum;
+        private double fDoubleSum;
+        private boolean fFloating;
+        private Object fExtreme;
+        private Set<Object> fDistinct;
+
+        public Accumulator(final EAggregateFunction function)
+        {
+            fFunction = function;
+
+            if(function == EAggregateFunction.COUNT_DISTINCT)
+            {
+                fDistinct = new HashSet<Object>();
+            }
+        }
+
+        public void addRow()
+        {
+            ++fCount;
+        }
+
+        public void add(final Object value)
+        {
+            if(value == null)
+            {
+                return;
+            }
+
+            switch(fFunction)
+            {
+                case COUNT:
+                    ++fCount;
+                    break;
+
+                case COUNT_DISTINCT:
+                    fDistinct.add(value);
+                    break;
+
+                case SUM:
+                    if(value instanceof Double || value instanceof Float)
+                    {
+                        fFloating = true;
+                        fDoubleSum += ((Number) value).doubleValue();
+                    }
+                    else if(value instanceof Number)
+                    {
+                        fLongSum += ((Number) value).longValue();
+                    }
+                    else
+                    {
+                        throw new IllegalArgumentException(
+                            "can not sum up value: " + value);
+                    }
+                    break;
+
+                case MIN:
+                    if(fExtreme == null || compare(value, fExtreme) < 0)
+                    {
+                        fExtreme = value;
+                    }
+                    break;
+
+                case MAX:
+                    if(fExtreme == null || compare(value, fExtreme) > 0)
+                    {
+                        fExtreme = value;
+                    }
+                    break;
+            }
+        }
+
+        public void merge(final Accumulator other)
+        {
+            fCount += other.fCount;
+            fLongSum += other.fLongSum;
+            fDoubleSum += other.fDoubleSum;
+            fFloating |= other.fFloating;
+
+            if(fDistinct != null)
+            {
+                fDistinct.addAll(other.fDistinct);
+            }
+
+            if(other.fExtreme != null)
+            {
+                add(other.fExtreme);
+            }
+        }
+
+        public Object getResult()
+        {
+            switch(fFunction)
+            {
+                case COUNT:
+                    return fCount;
+
+                case COUNT_DISTINCT:
+                    return (long) fDistinct.size();
+
+                case SUM:
+                    if(fFloating)
+                    {
+                        return fDoubleSum + fLongSum;
+                    }
+                    return fLongSum;
+
+                default:
+                    return fExtreme;
+            }
+        }
+
+        @SuppressWarnings({ "unchecked", "rawtypes" })
+        private int compare(final Object v1, final Object v2)
+        {
+            if(v1 instanceof Number && v2 instanceof Number
+                && v1.getClass() != v2.getClass())
+            {
+                return Double.compare(((Number) v1).doubleValue(),
+                    ((Number) v2).doubleValue());
+            }
+
+            return ((Comparable) v1).compareTo(v2);
+        }
+    }
+}
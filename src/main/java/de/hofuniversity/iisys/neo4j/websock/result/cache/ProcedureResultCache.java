@@ -0,0 +1,619 @@
+/*
+ *  Copyright 2015 Institute of Information Systems, Hof University
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package de.hofuniversity.iisys.neo4j.websock.result.cache;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import de.hofuniversity.iisys.neo4j.websock.query.EQueryType;
+import de.hofuniversity.iisys.neo4j.websock.query.IMessageSender;
+import de.hofuniversity.iisys.neo4j.websock.query.WebsockQuery;
+import de.hofuniversity.iisys.neo4j.websock.result.AResultSet;
+import de.hofuniversity.iisys.neo4j.websock.session.WebsockConstants;
+import de.hofuniversity.iisys.neo4j.websock.util.QueryMapConverter;
+
+/**
+ * Client-side cache for the decoded results of stored procedure calls, keyed
+ * by procedure name and the structure of the call's parameters.
+ * Entries expire after a per-procedure time to live and are evicted in least
+ * recently used order. Optionally, a frequency sketch decides whether a new
+ * entry is worth evicting the least recently used one.
+ * Storing or deleting a procedure invalidates all of its cached results.
+ * Each invalidation starts a new generation of the procedure; results of
+ * calls looked up or sent in an earlier generation are not cached, so a
+ * response arriving after the invalidation can not bring back a stale
+ * result.
+ * Calls are identified by procedure name, so calls using a procedure handle
+ * instead are never cached. When procedure handles are used, the cache has
+ * to see the calls before the names are replaced, for example by wrapping
+ * the sender of a ProcedureHandleCache and passing the original calls to
+ * get and put.
+ * Cached result sets are shared and must not be modified.
+ * All methods are thread-safe.
+ */
+public class ProcedureResultCache
+{
+    private final int fMaxEntries;
+    private final long fDefaultTtl;
+    private final Map<String, Long> fTtls;
+
+    private final LinkedHashMap<CacheKey, CacheEntry> fEntries;
+    private final FrequencySketch fSketch;
+
+    private final Map<String, Long> fGenerations;
+    private final LinkedHashMap<CacheKey, Long> fCalls;
+
+    private long fHits, fMisses, fEvictions, fRejections, fInvalidations;
+
+    /**
+     * Creates a least recently used cache holding at most the given number
+     * of results for the given default time to live.
+     *
+     * @param maxEntries maximum number of cached results
+     * @param defaultTtl default time to live in milliseconds, zero or less
+     *  disabling caching for procedures without their own time to live
+     */
+    public ProcedureResultCache(final int maxEntries, final long defaultTtl)
+    {
+        this(maxEntries, defaultTtl, false);
+    }
+
+    /**
+     * Creates a cache holding at most the given number of results for the
+     * given default time to live, optionally only admitting new results if
+     * they are requested more frequently than the one they would replace.
+     *
+     * @param maxEntries maximum number of cached results
+     * @param defaultTtl default time to live in milliseconds, zero or less
+     *  disabling caching for procedures without their own time to live
+     * @param frequencyAdmission whether to use frequency based admission
+     */
+    public ProcedureResultCache(final int maxEntries, final long defaultTtl,
+        final boolean frequencyAdmission)
+    {
+        if(maxEntries <= 0)
+        {
+            throw new IllegalArgumentException(
+                "maximum number of entries must be positive");
+        }
+
+        fMaxEntries = maxEntries;
+        fDefaultTtl = defaultTtl;
+        fTtls = new HashMap<String, Long>();
+
+        fEntries = new LinkedHashMap<CacheKey, CacheEntry>(16, 0.75f, true);
+
+        fGenerations = new HashMap<String, Long>();
+        fCalls = new LinkedHashMap<CacheKey, Long>();
+
+        if(frequencyAdmission)
+        {
+            fSketch = new FrequencySketch(maxEntries);
+        }
+        else
+        {
+            fSketch = null;
+        }
+    }
+
+    /**
+     * Sets the time to live for results of the procedure with the given
+     * name, overriding the default.
+     * The name must not be null.
+     *
+     * @param procedure name of the procedure
+     * @param ttl time to live in milliseconds, zero or less disabling caching
+     */
+    public synchronized void setTtl(final String procedure, final long ttl)
+    {
+        if(procedure == null)
+        {
+            throw new NullPointerException("procedure name was null");
+        }
+
+        fTtls.put(procedure, ttl);
+    }
+
+    /**
+     * Looks up the cached result for the given procedure call.
+     * The query must not be null.
+     *
+     * @param query procedure call to look up
+     * @return cached result or null if not available
+     */
+    public synchronized AResultSet<?> get(final WebsockQuery query)
+    {
+        final CacheKey key = createKey(query);
+        if(key == null)
+        {
+            return null;
+        }
+
+        if(fSketch != null)
+        {
+            fSketch.increment(key.hashCode());
+        }
+
+        final CacheEntry entry = fEntries.get(key);
+        if(entry == null)
+        {
+            ++fMisses;
+            capture(key);
+            return null;
+        }
+        if(entry.fExpires < System.currentTimeMillis())
+        {
+            fEntries.remove(key);
+            ++fMisses;
+            capture(key);
+            return null;
+        }
+
+        ++fHits;
+        return entry.fResult;
+    }
+
+    //remembers the oldest generation a pending call was made in
+    private void capture(final CacheKey key)
+    {
+        if(fCalls.containsKey(key))
+        {
+            return;
+        }
+
+        //forget calls that never received a result
+        if(fCalls.size() >= fMaxEntries)
+        {
+            final Iterator<CacheKey> iter = fCalls.keySet().iterator();
+            iter.next();
+            iter.remove();
+        }
+
+        fCalls.put(key, getGeneration(key.fProcedure));
+    }
+
+    /**
+     * Returns the current generation of the procedure called by the given
+     * query, to be passed when caching the call's result.
+     * The query must not be null.
+     *
+     * @param query procedure call
+     * @return current generation of the called procedure
+     */
+    public synchronized long getGeneration(final WebsockQuery query)
+    {
+        final String name = getProcedureName(query);
+        if(name == null)
+        {
+            return 0;
+        }
+
+        return getGeneration(name);
+    }
+
+    private long getGeneration(final String procedure)
+    {
+        final Long generation = fGenerations.get(procedure);
+        if(generation != null)
+        {
+            return generation;
+        }
+
+        return 0;
+    }
+
+    /**
+     * Caches the result of the given procedure call, if its procedure has a
+     * positive time to live and was not invalidated since the call was
+     * looked up or sent.
+     * Neither of the parameters may be null.
+     *
+     * @param query procedure call the result was returned for
+     * @param result decoded result of the call
+     */
+    public synchronized void put(final WebsockQuery query,
+        final AResultSet<?> result)
+    {
+        final CacheKey key = createKey(query);
+        if(key == null)
+        {
+            if(result == null)
+            {
+                throw new NullPointerException("result was null");
+            }
+            return;
+        }
+
+        final Long generation = fCalls.remove(key);
+        put(key, result, generation != null ? generation
+            : getGeneration(key.fProcedure));
+    }
+
+    /**
+     * Caches the result of the given procedure call, if its procedure has a
+     * positive time to live and is still in the given generation.
+     * Neither query nor result may be null.
+     *
+     * @param query procedure call the result was returned for
+     * @param result decoded result of the call
+     * @param generation generation of the procedure when the call was sent
+     */
+    public synchronized void put(final WebsockQuery query,
+        final AResultSet<?> result, final long generation)
+    {
+        final CacheKey key = createKey(query);
+        if(key == null)
+        {
+            if(result == null)
+            {
+                throw new NullPointerException("result was null");
+            }
+            return;
+        }
+
+        fCalls.remove(key);
+        put(key, result, generation);
+    }
+
+    private void put(final CacheKey key, final AResultSet<?> result,
+        final long generation)
+    {
+        if(result == null)
+        {
+            throw new NullPointerException("result was null");
+        }
+
+        //invalidated while the call was executing
+        if(generation < getGeneration(key.fProcedure))
+        {
+            ++fRejections;
+            return;
+        }
+
+        final long ttl = getTtl(key.fProcedure);
+        if(ttl <= 0)
+        {
+            return;
+        }
+
+        if(!fEntries.containsKey(key) && fEntries.size() >= fMaxEntries)
+        {
+            final Iterator<Entry<CacheKey, CacheEntry>> iter =
+                fEntries.entrySet().iterator();
+            final CacheKey victim = iter.next().getKey();
+
+            if(fSketch != null && fSketch.frequency(key.hashCode())
+                <= fSketch.frequency(victim.hashCode()))
+            {
+                ++fRejections;
+                return;
+            }
+
+            iter.remove();
+            ++fEvictions;
+        }
+
+        fEntries.put(key, new CacheEntry(result,
+            System.currentTimeMillis() + ttl));
+    }
+
+    /**
+     * Checks whether the given query stores or deletes a procedure and
+     * invalidates all cached results for it if so.
+     * Procedure calls are recorded with the procedure's current generation.
+     * The query must not be null.
+     *
+     * @param query query passing through
+     */
+    public void observe(final WebsockQuery query)
+    {
+        final EQueryType type = query.getType();
+        if(type == EQueryType.PROCEDURE_CALL)
+        {
+            final CacheKey key = createKey(query);
+            if(key != null)
+            {
+                synchronized(this)
+                {
+                    capture(key);
+                }
+            }
+            return;
+        }
+
+        String name = null;
+        if(type == EQueryType.STORE_PROCEDURE)
+        {
+            //the payload contains the procedure's statement
+            final Object param = query.getParameter(
+                WebsockConstants.PROCEDURE_NAME);
+            if(param instanceof String)
+            {
+                name = (String) param;
+            }
+        }
+        else if(type == EQueryType.DELETE_PROCEDURE)
+        {
+            name = getProcedureName(query);
+        }
+
+        if(name != null)
+        {
+            invalidate(name);
+        }
+    }
+
+    /**
+     * Creates a sender passing all messages on to the given sender,
+     * invalidating cached results when procedures are stored or deleted.
+     * The sender must not be null.
+     *
+     * @param sender sender to wrap
+     * @return invalidating sender
+     */
+    public IMessageSender wrap(final IMessageSender sender)
+    {
+        if(sender == null)
+        {
+            throw new NullPointerException("message sender was null");
+        }
+
+        return new IMessageSender()
+        {
+            @Override
+            public void sendMessage(WebsockQuery message) throws Exception
+            {
+                observe(message);
+                sender.sendMessage(message);
+            }
+        };
+    }
+
+    /**
+     * Removes all cached results for the procedure with the given name.
+     *
+     * @param procedure name of the procedure
+     */
+    public synchronized void invalidate(final String procedure)
+    {
+        fGenerations.put(procedure, getGeneration(procedure) + 1);
+
+        final Iterator<CacheKey> iter = fEntries.keySet().iterator();
+        while(iter.hasNext())
+        {
+            if(iter.next().fProcedure.equals(procedure))
+            {
+                iter.remove();
+                ++fInvalidations;
+            }
+        }
+    }
+
+    /**
+     * Removes all cached results.
+     */
+    public synchronized void clear()
+    {
+        fEntries.clear();
+        fCalls.clear();
+    }
+
+    /**
+     * @return number of cached results, including expired ones
+     */
+    public synchronized int getSize()
+    {
+        return fEntries.size();
+    }
+
+    /**
+     * @return number of calls answered from the cache
+     */
+    public synchronized long getHits()
+    {
+        return fHits;
+    }
+
+    /**
+     * @return number of cacheable calls not found in the cache
+     */
+    public synchronized long getMisses()
+    {
+        return fMisses;
+    }
+
+    /**
+     * @return number of results evicted to make room for others
+     */
+    public synchronized long getEvictions()
+    {
+        return fEvictions;
+    }
+
+    /**
+     * @return number of results not admitted due to their low frequency
+     *  or an invalidation since their call
+     */
+    public synchronized long getRejections()
+    {
+        return fRejections;
+    }
+
+    /**
+     * @return number of results removed by procedure invalidation
+     */
+    public synchronized long getInvalidations()
+    {
+        return fInvalidations;
+    }
+
+    private long getTtl(final String procedure)
+    {
+        final Long ttl = fTtls.get(procedure);
+        if(ttl != null)
+        {
+            return ttl;
+        }
+
+        return fDefaultTtl;
+    }
+
+    private CacheKey createKey(final WebsockQuery query)
+    {
+        if(query.getType() != EQueryType.PROCEDURE_CALL)
+        {
+            return null;
+        }
+
+        final String name = getProcedureName(query);
+        if(name == null)
+        {
+            return null;
+        }
+
+        final Map<String, Object> params =
+            new HashMap<String, Object>(query.getParameters());
+        params.remove(WebsockConstants.PROCEDURE_NAME);
+
+        return new CacheKey(name, QueryMapConverter.normalize(params));
+    }
+
+    private String getProcedureName(final WebsockQuery query)
+    {
+        Object name = query.getParameter(WebsockConstants.PROCEDURE_NAME);
+        if(name == null)
+        {
+            name = query.getPayload();
+        }
+
+        if(name instanceof String)
+        {
+            return (String) name;
+        }
+        return null;
+    }
+
+    private static class CacheKey
+    {
+        private final String fProcedure;
+        private final Object fParameters;
+        private final int fHash;
+
+        public CacheKey(final String procedure, final Object parameters)
+        {
+            fProcedure = procedure;
+            fParameters = parameters;
+            fHash = 31 * procedure.hashCode() + parameters.hashCode();
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return fHash;
+        }
+
+        @Override
+        public boolean equals(final Object o)
+        {
+            if(!(o instanceof CacheKey))
+            {
+                return false;
+            }
+
+            final CacheKey other = (CacheKey) o;
+            return fHash == other.fHash
+                && fProcedure.equals(other.fProcedure)
+                && fParameters.equals(other.fParameters);
+        }
+    }
+
+    private static class CacheEntry
+    {
+        private final AResultSet<?> fResult;
+        private final long fExpires;
+
+        public CacheEntry(final AResultSet<?> result, final long expires)
+        {
+            fResult = result;
+            fExpires = expires;
+        }
+    }
+
+    /*
+     * count-min sketch with four rows of counters, halving all counters
+     * periodically so that old popularity fades
+     */
+    private static class FrequencySketch
+    {
+        private static final int[] SEEDS = {0x97cb3127, 0xb4b82e39,
+            0x8f5cd7b5, 0xe9ba3b83};
+
+        private final int[][] fCounters;
+        private final int fMask;
+        private final int fSampleSize;
+
+        private int fSamples;
+
+        public FrequencySketch(final int maxEntries)
+        {
+            int width = Integer.highestOneBit(Math.max(maxEntries, 8)) * 2;
+            fCounters = new int[SEEDS.length][width];
+            fMask = width - 1;
+            fSampleSize = 10 * maxEntries;
+        }
+
+        public void increment(final int hash)
+        {
+            for(int i = 0; i < SEEDS.length; ++i)
+            {
+                ++fCounters[i][index(hash, i)];
+            }
+
+            if(++fSamples >= fSampleSize)
+            {
+                for(int[] row : fCounters)
+                {
+                    for(int j = 0; j < row.length; ++j)
+                    {
+                        row[j] >>>= 1;
+                    }
+                }
+                fSamples /= 2;
+            }
+        }
+
+        public int frequency(final int hash)
+        {
+            int min = Integer.MAX_VALUE;
+            for(int i = 0; i < SEEDS.length; ++i)
+            {
+                min = Math.min(min, fCounters[i][index(hash, i)]);
+            }
+            return min;
+        }
+
+        private int index(final int hash, final int row)
+        {
+            int h = hash * SEEDS[row];
+            h ^= h >>> 16;
+            return h & fMask;
+        }
+    }
+}
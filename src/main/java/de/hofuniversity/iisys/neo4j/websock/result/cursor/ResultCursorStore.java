@@ -0,0 +1,452 @@
+/*
+ *  Copyright 2015 Institute of Information Systems, Hof University
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package de.hofuniversity.iisys.neo4j.websock.result.cursor;
+
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import de.hofuniversity.iisys.neo4j.websock.result.AResultSet;
+import de.hofuniversity.iisys.neo4j.websock.result.EResultType;
+import de.hofuniversity.iisys.neo4j.websock.result.ListResult;
+import de.hofuniversity.iisys.neo4j.websock.result.TableResult;
+import de.hofuniversity.iisys.neo4j.websock.result.offheap.IRowStore;
+import de.hofuniversity.iisys.neo4j.websock.result.offheap.OffHeapList;
+import de.hofuniversity.iisys.neo4j.websock.util.Base64Codec;
+import de.hofuniversity.iisys.neo4j.websock.util.SizeEstimator;
+
+/**
+ * Store holding the remainder of paged list and table results on the server,
+ * so that follow-up pages can be served without re-executing the query.
+ * Cursors are identified by opaque random tokens, expire after a fixed idle
+ * time and are evicted in least recently used order once the maximum number
+ * of cursors or the estimated memory limit is exceeded.
+ * Results backed by row stores are read from the store on demand and do
+ * not count towards the memory limit. Once their cursor is released, the
+ * store is closed.
+ * All methods are thread-safe.
+ */
+public class ResultCursorStore
+{
+    private static final int TOKEN_BYTES = 16;
+
+    private final int fMaxCursors;
+    private final long fMaxBytes;
+    private final long fTimeout;
+
+    private final LinkedHashMap<String, Cursor> fCursors;
+    private final SecureRandom fRandom;
+
+    private long fBytes;
+
+    private long fHits, fMisses, fCreated;
+    private long fSizeEvictions, fMemoryEvictions, fExpirations;
+
+    /**
+     * Creates a cursor store holding at most the given number of cursors
+     * with the given estimated total size, dropping cursors that have not
+     * been accessed for the given time.
+     *
+     * @param maxCursors maximum number of cursors held
+     * @param maxBytes estimated maximum size of all held results in bytes
+     * @param timeout idle time in milliseconds after which cursors expire
+     */
+    public ResultCursorStore(final int maxCursors, final long maxBytes,
+        final long timeout)
+    {
+        if(maxCursors <= 0)
+        {
+            throw new IllegalArgumentException(
+                "maximum number of cursors must be positive");
+        }
+
+        fMaxCursors = maxCursors;
+        fMaxBytes = maxBytes;
+        fTimeout = timeout;
+
+        fCursors = new LinkedHashMap<String, Cursor>(16, 0.75f, true);
+        fRandom = new SecureRandom();
+    }
+
+    /**
+     * Extracts the requested page from a complete list or table result.
+     * If rows remain after the page, they are registered in a new cursor
+     * whose token is set on the returned page.
+     * Other result types and unbounded pages are returned without a cursor.
+     * If a cursor is created for a result backed by a row store, the store
+     * is closed once the cursor is released; otherwise the caller remains
+     * responsible for it.
+     * The result must not be null.
+     *
+     * @param result complete result of a query
+     * @param first index of the first result to return
+     * @param max maximum number of results to return
+     * @return requested page of the result
+     */
+    public AResultSet<?> openCursor(final AResultSet<?> result,
+        final int first, final int max)
+    {
+        final EResultType type = result.getType();
+        if(type == EResultType.SINGLE || result.getResults() == null)
+        {
+            return result;
+        }
+
+        final List<?> rows = (List<?>) result.getResults();
+        List<String> columns = null;
+        if(type == EResultType.TABLE)
+        {
+            columns = ((TableResult) result).getColumns();
+        }
+
+        int total = result.getTotal();
+        if(total < 0)
+        {
+            total = result.getFirst() + rows.size();
+        }
+
+        final int start = Math.min(Math.max(first - result.getFirst(), 0),
+            rows.size());
+        int end = rows.size();
+        if(max > 0)
+        {
+            end = Math.min(start + max, rows.size());
+        }
+
+        final AResultSet<?> page = createPage(columns,
+            rows.subList(start, end), result.getFirst() + start, max,
+            total);
+
+        if(end < rows.size())
+        {
+            Cursor cursor = null;
+            if(rows instanceof OffHeapList)
+            {
+                //rows outside of the heap are read on demand
+                final OffHeapList stored = (OffHeapList) rows;
+                cursor = new Cursor(columns, stored.subList(end, rows.size()),
+                    result.getFirst() + end, total, stored.getStore());
+            }
+            else
+            {
+                cursor = new Cursor(columns,
+                    new ArrayList<Object>(rows.subList(end, rows.size())),
+                    result.getFirst() + end, total, null);
+            }
+
+            if(cursor.fBytes <= fMaxBytes)
+            {
+                page.setCursor(register(cursor));
+            }
+            else
+            {
+                cursor.release();
+            }
+        }
+
+        return page;
+    }
+
+    /**
+     * Retrieves a page from the cursor with the given token.
+     * Pages may only start at or after the first row not yet delivered
+     * when the cursor was opened.
+     * Once its last row has been delivered, the cursor is released;
+     * otherwise the returned page carries the token again.
+     *
+     * @param token token of the cursor to read from
+     * @param first index of the first result to return
+     * @param max maximum number of results to return
+     * @return requested page or null if the cursor is no longer available
+     */
+    public AResultSet<?> fetch(final String token, final int first,
+        final int max)
+    {
+        Cursor cursor = null;
+
+        synchronized(this)
+        {
+            evictExpired();
+
+            if(token != null)
+            {
+                cursor = fCursors.get(token);
+            }
+
+            if(cursor == null || first < cursor.fOffset)
+            {
+                ++fMisses;
+                return null;
+            }
+
+            ++fHits;
+            cursor.fAccessed = System.currentTimeMillis();
+        }
+
+        final int start = Math.min(first - cursor.fOffset,
+            cursor.fRows.size());
+        int end = cursor.fRows.size();
+        if(max > 0)
+        {
+            end = Math.min(start + max, cursor.fRows.size());
+        }
+
+        AResultSet<?> page = null;
+        try
+        {
+            page = createPage(cursor.fColumns,
+                cursor.fRows.subList(start, end), first, max, cursor.fTotal);
+        }
+        catch(IllegalStateException e)
+        {
+            //row store closed by a concurrent eviction
+            return null;
+        }
+
+        if(end < cursor.fRows.size())
+        {
+            page.setCursor(token);
+        }
+        else
+        {
+            close(token);
+        }
+
+        return page;
+    }
+
+    /**
+     * Releases the cursor with the given token, if it exists.
+     *
+     * @param token token of the cursor to release
+     */
+    public synchronized void close(final String token)
+    {
+        final Cursor cursor = fCursors.remove(token);
+        if(cursor != null)
+        {
+            fBytes -= cursor.fBytes;
+            cursor.release();
+        }
+    }
+
+    /**
+     * Releases all cursors that have not been accessed within the timeout.
+     */
+    public synchronized void evictExpired()
+    {
+        if(fTimeout <= 0)
+        {
+            return;
+        }
+
+        final long limit = System.currentTimeMillis() - fTimeout;
+        final Iterator<Cursor> iter = fCursors.values().iterator();
+        while(iter.hasNext())
+        {
+            final Cursor cursor = iter.next();
+            if(cursor.fAccessed < limit)
+            {
+                iter.remove();
+                fBytes -= cursor.fBytes;
+                cursor.release();
+                ++fExpirations;
+            }
+        }
+    }
+
+    /**
+     * Releases all cursors.
+     */
+    public synchronized void clear()
+    {
+        for(Cursor cursor : fCursors.values())
+        {
+            cursor.release();
+        }
+        fCursors.clear();
+        fBytes = 0;
+    }
+
+    /**
+     * @return number of cursors currently held
+     */
+    public synchronized int getSize()
+    {
+        return fCursors.size();
+    }
+
+    /**
+     * @return estimated size of all currently held results in bytes
+     */
+    public synchronized long getBytes()
+    {
+        return fBytes;
+    }
+
+    /**
+     * @return number of cursors opened so far
+     */
+    public synchronized long getCreated()
+    {
+        return fCreated;
+    }
+
+    /**
+     * @return number of pages served from cursors
+     */
+    public synchronized long getHits()
+    {
+        return fHits;
+    }
+
+    /**
+     * @return number of page requests for unavailable cursors
+     */
+    public synchronized long getMisses()
+    {
+        return fMisses;
+    }
+
+    /**
+     * @return number of cursors evicted due to the maximum number of cursors
+     */
+    public synchronized long getSizeEvictions()
+    {
+        return fSizeEvictions;
+    }
+
+    /**
+     * @return number of cursors evicted due to the memory limit
+     */
+    public synchronized long getMemoryEvictions()
+    {
+        return fMemoryEvictions;
+    }
+
+    /**
+     * @return number of cursors released after their timeout
+     */
+    public synchronized long getExpirations()
+    {
+        return fExpirations;
+    }
+
+    private synchronized String register(final Cursor cursor)
+    {
+        evictExpired();
+
+        final byte[] bytes = new byte[TOKEN_BYTES];
+        String token = null;
+        do
+        {
+            fRandom.nextBytes(bytes);
+            token = Base64Codec.encode(bytes);
+        }
+        while(fCursors.containsKey(token));
+
+        fCursors.put(token, cursor);
+        fBytes += cursor.fBytes;
+        ++fCreated;
+
+        //evict least recently used cursors
+        final Iterator<Cursor> iter = fCursors.values().iterator();
+        while(fCursors.size() > 1
+            && (fCursors.size() > fMaxCursors || fBytes > fMaxBytes))
+        {
+            final Cursor evicted = iter.next();
+            if(fCursors.size() > fMaxCursors)
+            {
+                ++fSizeEvictions;
+            }
+            else
+            {
+                ++fMemoryEvictions;
+            }
+
+            iter.remove();
+            fBytes -= evicted.fBytes;
+            evicted.release();
+        }
+
+        return token;
+    }
+
+    @SuppressWarnings("unchecked")
+    private AResultSet<?> createPage(final List<String> columns,
+        final List<?> rows, final int first, final int max, final int total)
+    {
+        AResultSet<?> page = null;
+        if(columns == null)
+        {
+            page = new ListResult(new ArrayList<Object>(rows));
+        }
+        else
+        {
+            page = new TableResult(columns,
+                new ArrayList<List<Object>>((List<List<Object>>) rows));
+        }
+
+        page.setFirst(first);
+        page.setMax(max);
+        page.setTotal(total);
+
+        return page;
+    }
+
+    private static class Cursor
+    {
+        private final List<String> fColumns;
+        private final List<?> fRows;
+        private final int fOffset;
+        private final int fTotal;
+        private final long fBytes;
+        private final IRowStore fStore;
+
+        private long fAccessed;
+
+        public Cursor(final List<String> columns, final List<?> rows,
+            final int offset, final int total, final IRowStore store)
+        {
+            fColumns = columns;
+            fRows = rows;
+            fOffset = offset;
+            fTotal = total;
+            fStore = store;
+            fAccessed = System.currentTimeMillis();
+
+            if(store == null)
+            {
+                fBytes = SizeEstimator.estimate(rows);
+            }
+            else
+            {
+                fBytes = 0;
+            }
+        }
+
+        public void release()
+        {
+            if(fStore != null)
+            {
+                fStore.close();
+            }
+        }
+    }
+}
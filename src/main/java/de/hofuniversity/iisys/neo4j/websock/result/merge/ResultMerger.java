@@ -0,0 +1,270 @@
+/*
+ *  Copyright 2015 Institute of Information Systems, Hof University
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package de.hofuniversity.iisys.neo4j.websock.result.merge;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import de.hofuniversity.iisys.neo4j.websock.result.AResultSet;
+import de.hofuniversity.iisys.neo4j.websock.result.EResultType;
+import de.hofuniversity.iisys.neo4j.websock.result.ListResult;
+import de.hofuniversity.iisys.neo4j.websock.result.TableResult;
+
+/**
+ * Utility merging list or table results that are each sorted by the same
+ * field into one sorted page, using a heap over the partial results so that
+ * only the rows needed for the page are visited.
+ * List elements are compared by the value of the sort field in their maps,
+ * table rows by the value in the sort field's column.
+ * Null values and values that are not comparable are sorted last.
+ */
+public class ResultMerger
+{
+    /**
+     * Merges the given sorted partial results into one page.
+     * The resulting total is the sum of the partial results' totals, with the
+     * largest relative error of any estimated partial total.
+     * Partial results must all be lists or all be tables with the same
+     * columns, which must include the sort field.
+     * The list of partial results must not be null or empty.
+     *
+     * @param parts sorted partial results
+     * @param sortField field the partial results are sorted by
+     * @param descending whether the partial results are sorted descendingly
+     * @param first index of the first merged result to return
+     * @param max maximum number of results to return, all if not positive
+     * @return merged page
+     */
+    @SuppressWarnings("unchecked")
+    public static AResultSet<?> merge(final List<? extends AResultSet<?>> parts,
+        final String sortField, final boolean descending, final int first,
+        final int max)
+    {
+        if(parts == null || parts.isEmpty())
+        {
+            throw new IllegalArgumentException("no partial results given");
+        }
+
+        final AResultSet<?> template = parts.get(0);
+        List<String> columns = null;
+        int column = -1;
+        if(template.getType() == EResultType.TABLE)
+        {
+            columns = ((TableResult) template).getColumns();
+            column = columns.indexOf(sortField);
+            if(column < 0)
+            {
+                throw new IllegalArgumentException("sort field '"
+                    + sortField + "' is not a column of the results");
+            }
+        }
+        else if(template.getType() != EResultType.LIST)
+        {
+            throw new IllegalArgumentException(
+                "only list and table results can be merged");
+        }
+
+        final PriorityQueue<Source> heap = new PriorityQueue<Source>(
+            parts.size(), new SourceComparator(descending));
+
+        int total = 0;
+        double totalError = 0.0;
+        for(int i = 0; i < parts.size(); ++i)
+        {
+            final AResultSet<?> part = parts.get(i);
+            if(part.getType() != template.getType())
+            {
+                throw new IllegalArgumentException(
+                    "partial results of different types");
+            }
+            if(columns != null
+                && !columns.equals(((TableResult) part).getColumns()))
+            {
+                throw new IllegalArgumentException(
+                    "partial results with different columns");
+            }
+
+            final List<?> rows = (List<?>) part.getResults();
+            if(part.getTotal() >= 0)
+            {
+                total += part.getTotal();
+                totalError = Math.max(totalError, part.getTotalError());
+            }
+            else if(rows != null)
+            {
+                total += rows.size();
+            }
+
+            if(rows != null)
+            {
+                final Source source = new Source(i, rows.iterator(),
+                    sortField, column);
+                if(source.advance())
+                {
+                    heap.add(source);
+                }
+            }
+        }
+
+        final List<Object> merged = new ArrayList<Object>();
+        int index = 0;
+        while(!heap.isEmpty() && (max <= 0 || merged.size() < max))
+        {
+            final Source source = heap.poll();
+            if(index++ >= first)
+            {
+                merged.add(source.fRow);
+            }
+
+            if(source.advance())
+            {
+                heap.add(source);
+            }
+        }
+
+        AResultSet<?> result = null;
+        if(columns == null)
+        {
+            result = new ListResult(merged);
+        }
+        else
+        {
+            result = new TableResult(columns,
+                (List<List<Object>>) (List<?>) merged);
+        }
+
+        result.setFirst(first);
+        result.setMax(max);
+        result.setTotal(total);
+        result.setTotalError(totalError);
+
+        return result;
+    }
+
+    private static class Source
+    {
+        private final int fIndex;
+        private final Iterator<?> fRows;
+        private final String fField;
+        private final int fColumn;
+
+        private Object fRow;
+        private Object fKey;
+
+        public Source(final int index, final Iterator<?> rows,
+            final String field, final int column)
+        {
+            fIndex = index;
+            fRows = rows;
+            fField = field;
+            fColumn = column;
+        }
+
+        public boolean advance()
+        {
+            if(!fRows.hasNext())
+            {
+                fRow = null;
+                fKey = null;
+                return false;
+            }
+
+            fRow = fRows.next();
+
+            if(fColumn >= 0)
+            {
+                fKey = ((List<?>) fRow).get(fColumn);
+            }
+            else if(fRow instanceof Map)
+            {
+                fKey = ((Map<?, ?>) fRow).get(fField);
+            }
+            else
+            {
+                fKey = null;
+            }
+
+            return true;
+        }
+    }
+
+    private static class SourceComparator implements Comparator<Source>
+    {
+        private final boolean fDescending;
+
+        public SourceComparator(final boolean descending)
+        {
+            fDescending = descending;
+        }
+
+        @Override
+        @SuppressWarnings({ "unchecked", "rawtypes" })
+        public int compare(final Source s1, final Source s2)
+        {
+            final Object k1 = s1.fKey;
+            final Object k2 = s2.fKey;
+
+            int result = 0;
+            if(k1 instanceof Comparable && k2 instanceof Comparable)
+            {
+                if(k1 instanceof Number && k2 instanceof Number
+                    && k1.getClass() != k2.getClass())
+                {
+                    result = Double.compare(((Number) k1).doubleValue(),
+                        ((Number) k2).doubleValue());
+                }
+                else
+                {
+                    try
+                    {
+                        result = ((Comparable) k1).compareTo(k2);
+                    }
+                    catch(ClassCastException e)
+                    {
+                        result = k1.getClass().getName().compareTo(
+                            k2.getClass().getName());
+                    }
+                }
+
+                if(fDescending)
+                {
+                    result = -result;
+                }
+            }
+            else if(k1 instanceof Comparable)
+            {
+                result = -1;
+            }
+            else if(k2 instanceof Comparable)
+            {
+                result = 1;
+            }
+
+            //keep merging stable across partial results
+            if(result == 0)
+            {
+                result = s1.fIndex - s2.fIndex;
+            }
+
+            return result;
+        }
+    }
+}
@@ -0,0 +1,282 @@
+/*
+ *  Copyright 2015 Institute of Information Systems, Hof University
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package de.hofuniversity.iisys.neo4j.websock.result.merge;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import de.hofuniversity.iisys.neo4j.websock.query.EQueryType;
+import de.hofuniversity.iisys.neo4j.websock.query.IMessageSender;
+import de.hofuniversity.iisys.neo4j.websock.query.WebsockQuery;
+import de.hofuniversity.iisys.neo4j.websock.result.AResultSet;
+import de.hofuniversity.iisys.neo4j.websock.session.WebsockConstants;
+import de.hofuniversity.iisys.neo4j.websock.util.ResultSetConverter;
+
+/**
+ * Scatter-gather execution of a sorted, paged query across several
+ * partitioned backends.
+ * The query is sent to every shard, requesting only as many rows as the
+ * final page can contain from each. The shards' responses, passed in by
+ * their connections' message handlers, are merged by sort field and order
+ * into the requested page, summing the shards' totals.
+ * Only the first response of each shard is used.
+ * Instances handle a single query.
+ */
+public class ShardedQuery
+{
+    private final List<? extends IMessageSender> fShards;
+    private final WebsockQuery fQuery;
+    private final Executor fExecutor;
+
+    private final String fSortField;
+    private final boolean fDescending;
+    private final int fFirst;
+    private final int fMax;
+
+    private final AResultSet<?>[] fResults;
+    private final CountDownLatch fLatch;
+
+    private volatile String fError;
+
+    /**
+     * Creates a scatter-gather query sending the given query to the given
+     * shards one after the other, reading sort field, sort order and subset
+     * from its parameters.
+     * Neither of the parameters may be null.
+     *
+     * @param shards senders of the connections to all shards
+     * @param query sorted query to execute
+     */
+    public ShardedQuery(final List<? extends IMessageSender> shards,
+        final WebsockQuery query)
+    {
+        this(shards, query, null);
+    }
+
+    /**
+     * Creates a scatter-gather query sending the given query to the given
+     * shards in parallel using the given executor, reading sort field, sort
+     * order and subset from its parameters.
+     * If the executor is null, the query is sent to one shard after the
+     * other.
+     * Shards and query must not be null.
+     *
+     * @param shards senders of the connections to all shards
+     * @param query sorted query to execute
+     * @param executor executor to send the query with or null
+     */
+    public ShardedQuery(final List<? extends IMessageSender> shards,
+        final WebsockQuery query, final Executor executor)
+    {
+        if(shards == null || shards.isEmpty())
+        {
+            throw new IllegalArgumentException("no shards given");
+        }
+        if(query == null)
+        {
+            throw new NullPointerException("query was null");
+        }
+
+        fShards = shards;
+        fQuery = query;
+        fExecutor = executor;
+
+        final Object field = query.getParameter(WebsockConstants.SORT_FIELD);
+        if(field == null)
+        {
+            throw new IllegalArgumentException("query has no sort field");
+        }
+        fSortField = field.toString();
+        fDescending = WebsockConstants.DESCENDING.equals(
+            query.getParameter(WebsockConstants.SORT_ORDER));
+
+        fFirst = getInt(query, WebsockConstants.SUBSET_START, 0);
+        fMax = getInt(query, WebsockConstants.SUBSET_SIZE, -1);
+
+        fResults = new AResultSet<?>[shards.size()];
+        fLatch = new CountDownLatch(shards.size());
+    }
+
+    private int getInt(final WebsockQuery query, final String key,
+        final int def)
+    {
+        final Object value = query.getParameter(key);
+        if(value instanceof Number)
+        {
+            return ((Number) value).intValue();
+        }
+
+        return def;
+    }
+
+    /**
+     * Sends the query to all shards, in parallel if an executor is
+     * available, each requesting the rows from the beginning up to the end
+     * of the final page.
+     *
+     * @throws Exception if sending fails
+     */
+    public void send() throws Exception
+    {
+        final Map<String, Object> params =
+            new HashMap<String, Object>(fQuery.getParameters());
+        params.put(WebsockConstants.SUBSET_START, 0);
+        if(fMax > 0)
+        {
+            params.put(WebsockConstants.SUBSET_SIZE, fFirst + fMax);
+        }
+        else
+        {
+            params.remove(WebsockConstants.SUBSET_SIZE);
+        }
+
+        final WebsockQuery shardQuery = new WebsockQuery(fQuery.getId(),
+            fQuery.getType());
+        shardQuery.setParameters(params);
+        shardQuery.setPayload(fQuery.getPayload());
+        shardQuery.setDeadline(fQuery.getDeadline());
+
+        final Exception[] errors = new Exception[fShards.size()];
+        final CountDownLatch sent = new CountDownLatch(fShards.size() - 1);
+        for(int i = 1; i < fShards.size(); ++i)
+        {
+            final int index = i;
+            final Runnable task = new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        fShards.get(index).sendMessage(shardQuery);
+                    }
+                    catch(Exception e)
+                    {
+                        errors[index] = e;
+                    }
+                    finally
+                    {
+                        sent.countDown();
+                    }
+                }
+            };
+
+            if(fExecutor == null)
+            {
+                task.run();
+                continue;
+            }
+            try
+            {
+                fExecutor.execute(task);
+            }
+            catch(RejectedExecutionException e)
+            {
+                task.run();
+            }
+        }
+
+        try
+        {
+            fShards.get(0).sendMessage(shardQuery);
+        }
+        catch(Exception e)
+        {
+            errors[0] = e;
+        }
+
+        sent.await();
+
+        for(Exception e : errors)
+        {
+            if(e != null)
+            {
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Passes a response received from the shard with the given index.
+     * Error responses make the whole query fail.
+     * The response must not be null.
+     *
+     * @param shard index of the shard in the list of shards
+     * @param response response received from the shard
+     */
+    @SuppressWarnings("unchecked")
+    public void onResponse(final int shard, final WebsockQuery response)
+    {
+        if(response.getType() != EQueryType.RESULT)
+        {
+            fError = "shard " + shard + " failed: " + response.getPayload();
+            while(fLatch.getCount() > 0)
+            {
+                fLatch.countDown();
+            }
+            return;
+        }
+
+        final AResultSet<?> result = ResultSetConverter.toResultSet(
+            (Map<String, Object>) response.getPayload());
+        synchronized(fResults)
+        {
+            //duplicate or further chunked responses of the shard
+            if(fResults[shard] != null)
+            {
+                return;
+            }
+            fResults[shard] = result;
+        }
+
+        fLatch.countDown();
+    }
+
+    /**
+     * Waits for all shards to respond and merges their results.
+     *
+     * @param timeout maximum time to wait in milliseconds
+     * @return merged page
+     * @throws Exception if a shard failed or did not respond in time
+     */
+    public AResultSet<?> getResult(final long timeout) throws Exception
+    {
+        if(!fLatch.await(timeout, TimeUnit.MILLISECONDS))
+        {
+            throw new RuntimeException("timed out waiting for shards");
+        }
+        if(fError != null)
+        {
+            throw new RuntimeException(fError);
+        }
+
+        final List<AResultSet<?>> results;
+        synchronized(fResults)
+        {
+            results = new ArrayList<AResultSet<?>>(Arrays.asList(fResults));
+        }
+        return ResultMerger.merge(results, fSortField,
+            fDescending, fFirst, fMax);
+    }
+}
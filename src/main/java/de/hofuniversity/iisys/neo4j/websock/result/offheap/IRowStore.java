@@ -0,0 +1,60 @@
+/*
+ *  Copyright 2015 Institute of Information Systems, Hof University
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package de.hofuniversity.iisys.neo4j.websock.result.offheap;
+
+import java.io.Closeable;
+import java.util.Iterator;
+
+/**
+ * Append-only store for result rows that are kept in a serialized form and
+ * deserialized on access.
+ */
+public interface IRowStore extends Closeable
+{
+    /**
+     * Appends a row or list element to the store.
+     *
+     * @param value value to append
+     */
+    public void add(Object value);
+
+    /**
+     * Appends all values produced by the given iterator.
+     * The iterator must not be null.
+     *
+     * @param values iterator producing values to append
+     */
+    public void addAll(Iterator<?> values);
+
+    /**
+     * @param index index of the value
+     * @return value at the given index
+     */
+    public Object get(int index);
+
+    /**
+     * @return number of values stored
+     */
+    public int size();
+
+    /**
+     * Releases all resources held by the store. The store can not be used
+     * afterwards.
+     */
+    @Override
+    public void close();
+}
@@ -0,0 +1,65 @@
+/*
+ *  Copyright 2015 Institute of Information Systems, Hof University
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package de.hofuniversity.iisys.neo4j.websock.result.offheap;
+
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+/**
+ * Read-only list view of a row store, deserializing elements on each
+ * access.
+ */
+public class OffHeapList extends AbstractList<Object> implements RandomAccess
+{
+    private final IRowStore fStore;
+
+    /**
+     * Creates a list view of the given store.
+     * The store must not be null.
+     *
+     * @param store store to create a view of
+     */
+    public OffHeapList(final IRowStore store)
+    {
+        if(store == null)
+        {
+            throw new NullPointerException("row store was null");
+        }
+
+        fStore = store;
+    }
+
+    /**
+     * @return store backing this list
+     */
+    public IRowStore getStore()
+    {
+        return fStore;
+    }
+
+    @Override
+    public Object get(final int index)
+    {
+        return fStore.get(index);
+    }
+
+    @Override
+    public int size()
+    {
+        return fStore.size();
+    }
+}
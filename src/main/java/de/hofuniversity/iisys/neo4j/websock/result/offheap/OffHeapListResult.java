@@ -0,0 +1,60 @@
+/*
+ *  Copyright 2015 Institute of Information Systems, Hof University
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package de.hofuniversity.iisys.neo4j.websock.result.offheap;
+
+import java.io.Closeable;
+
+import de.hofuniversity.iisys.neo4j.websock.result.ListResult;
+
+/**
+ * List result whose elements are kept serialized in a row store,
+ * usually outside of the Java heap, and deserialized on access.
+ * Should be closed once it is no longer needed.
+ */
+public class OffHeapListResult extends ListResult implements Closeable
+{
+    private final IRowStore fStore;
+
+    /**
+     * Creates a list result containing the elements in the given store.
+     * The store must not be null.
+     *
+     * @param store store containing the list's elements
+     */
+    public OffHeapListResult(final IRowStore store)
+    {
+        super(new OffHeapList(store));
+        fStore = store;
+    }
+
+    /**
+     * @return store containing the list's elements
+     */
+    public IRowStore getStore()
+    {
+        return fStore;
+    }
+
+    /**
+     * Releases the memory or files holding the list's elements.
+     */
+    @Override
+    public void close()
+    {
+        fStore.close();
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ *  Copyright 2015 Institute of Information Systems, Hof University
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package de.hofuniversity.iisys.neo4j.websock.result.offheap;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import de.hofuniversity.iisys.neo4j.websock.result.AResultSet;
+import de.hofuniversity.iisys.neo4j.websock.result.EResultType;
+import de.hofuniversity.iisys.neo4j.websock.result.TableResult;
+import de.hofuniversity.iisys.neo4j.websock.result.stream.ResultStream;
+import de.hofuniversity.iisys.neo4j.websock.util.ResultSetConverter;
+
+/**
+ * Factory methods creating off-heap result sets from decoded results,
+ * received result maps and result streams.
+ * Single results are always kept on the heap.
+ */
+public class OffHeapResults
+{
+    /**
+     * Copies the given list or table result into off-heap memory.
+     * Single results are returned as they are.
+     * The result must not be null.
+     *
+     * @param result result to copy
+     * @return off-heap copy of the result
+     */
+    public static AResultSet<?> copyOf(final AResultSet<?> result)
+    {
+        if(result.getType() == EResultType.SINGLE)
+        {
+            return result;
+        }
+
+        return copyOf(result, new OffHeapStore());
+    }
+
+    /**
+     * Copies the given list or table result into the given row store.
+     * Neither of the parameters may be null and the result must not be a
+     * single result.
+     *
+     * @param result result to copy
+     * @param store empty store to copy the result's rows into
+     * @return copy of the result backed by the store
+     */
+    public static AResultSet<?> copyOf(final AResultSet<?> result,
+        final IRowStore store)
+    {
+        if(result.getType() == EResultType.SINGLE)
+        {
+            throw new IllegalArgumentException(
+                "single results can not be stored in row stores");
+        }
+
+        final List<?> rows = (List<?>) result.getResults();
+        if(rows != null)
+        {
+            store.addAll(rows.iterator());
+        }
+
+        AResultSet<?> copy = null;
+        if(result.getType() == EResultType.TABLE)
+        {
+            copy = new OffHeapTableResult(new ArrayList<String>(
+                ((TableResult) result).getColumns()), store);
+        }
+        else
+        {
+            copy = new OffHeapListResult(store);
+        }
+
+        copy.setFirst(result.getFirst());
+        copy.setMax(result.getMax());
+        copy.setTotal(result.getTotal());
+        copy.setCursor(result.getCursor());
+        copy.setTotalError(result.getTotalError());
+        copy.setTotalDeferred(result.isTotalDeferred());
+
+        return copy;
+    }
+
+    /**
+     * Decodes a received result map into an off-heap result set.
+     * Column-major and dictionary encoded tables are decoded row by row
+     * while they are copied, without building decoded row lists on the heap.
+     * The received map itself is still held on the heap until it is copied
+     * and dictionary encoded lists of maps are decoded on the heap first.
+     * The map must not be null.
+     *
+     * @param map received result map
+     * @return decoded off-heap result set
+     */
+    public static AResultSet<?> decode(final Map<String, Object> map)
+    {
+        return copyOf(ResultSetConverter.toResultSet(map, true));
+    }
+
+    /**
+     * Collects the rows of a streamed result into off-heap memory as their
+     * chunks arrive, so that only the current chunk is held on the heap.
+     * Blocks until the stream has ended.
+     * The stream must not be null.
+     *
+     * @param stream stream to collect
+     * @return off-heap result set containing all streamed rows
+     */
+    public static AResultSet<?> collect(final ResultStream stream)
+    {
+        return collect(stream, new OffHeapStore());
+    }
+
+    /**
+     * Collects the rows of a streamed result into the given row store as
+     * their chunks arrive. Blocks until the stream has ended.
+     * Neither of the parameters may be null.
+     *
+     * @param stream stream to collect
+     * @param store empty store to collect the rows in
+     * @return result set backed by the store containing all streamed rows
+     */
+    public static AResultSet<?> collect(final ResultStream stream,
+        final IRowStore store)
+    {
+        try
+        {
+            store.addAll(stream);
+        }
+        catch(RuntimeException e)
+        {
+            store.close();
+            throw e;
+        }
+
+        AResultSet<?> result = null;
+        if(stream.getType() == EResultType.TABLE)
+        {
+            result = new OffHeapTableResult(stream.getColumns(), store);
+        }
+        else
+        {
+            result = new OffHeapListResult(store);
+        }
+        result.setTotal(stream.getTotal());
+
+        return result;
+    }
+}
@@ -0,0 +1,245 @@
+/*
+ *  Copyright 2015 Institute of Information Systems, Hof University
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package de.hofuniversity.iisys.neo4j.websock.result.offheap;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import de.hofuniversity.iisys.neo4j.websock.util.DirectBuffers;
+import de.hofuniversity.iisys.neo4j.websock.util.ValueCodec;
+
+/**
+ * Append-only store for result rows outside of the Java heap.
+ * Rows are serialized in a compact binary format into pages of direct
+ * memory, with an equally off-heap index of row positions, and are only
+ * deserialized when accessed.
+ * Memory is released by calling close() or, if a store is never closed, by
+ * the direct buffers' cleaners once it has been garbage collected.
+ * All methods are thread-safe.
+ */
+public class OffHeapStore implements IRowStore
+{
+    /**
+     * Default size of the memory pages rows are stored in.
+     */
+    public static final int DEFAULT_PAGE_SIZE = 1 << 20;
+
+    private static final int INITIAL_INDEX_SIZE = 1024;
+
+    private final int fPageSize;
+    private final List<ByteBuffer> fPages;
+
+    private final ScratchBuffer fScratch;
+    private final DataOutputStream fOut;
+
+    private ByteBuffer fIndex;
+    private int fSize;
+    private long fBytes;
+    private boolean fClosed;
+
+    /**
+     * Creates an empty store using the default page size.
+     */
+    public OffHeapStore()
+    {
+        this(DEFAULT_PAGE_SIZE);
+    }
+
+    /**
+     * Creates an empty store using the given page size.
+     * Rows larger than a page are stored in a page of their own.
+     *
+     * @param pageSize size of the memory pages rows are stored in
+     */
+    public OffHeapStore(final int pageSize)
+    {
+        if(pageSize <= 0)
+        {
+            throw new IllegalArgumentException("page size must be positive");
+        }
+
+        fPageSize = pageSize;
+        fPages = new ArrayList<ByteBuffer>();
+
+        fScratch = new ScratchBuffer();
+        fOut = new DataOutputStream(fScratch);
+
+        fIndex = ByteBuffer.allocateDirect(INITIAL_INDEX_SIZE * 8);
+        fBytes = fIndex.capacity();
+    }
+
+    /**
+     * Appends a row or list element to the store.
+     *
+     * @param value value to append
+     */
+    @Override
+    public synchronized void add(final Object value)
+    {
+        checkOpen();
+
+        fScratch.reset();
+        try
+        {
+            ValueCodec.write(fOut, value);
+            fOut.flush();
+        }
+        catch(IOException e)
+        {
+            //can not happen when writing to memory
+            throw new RuntimeException("failed to serialize value", e);
+        }
+        final int length = fScratch.size();
+
+        ByteBuffer page = null;
+        if(!fPages.isEmpty())
+        {
+            page = fPages.get(fPages.size() - 1);
+        }
+        if(page == null || page.remaining() < length)
+        {
+            page = ByteBuffer.allocateDirect(Math.max(fPageSize, length));
+            fPages.add(page);
+            fBytes += page.capacity();
+        }
+
+        if(fIndex.capacity() < (fSize + 1) * 8)
+        {
+            final ByteBuffer index =
+                ByteBuffer.allocateDirect(fIndex.capacity() * 2);
+            fIndex.clear();
+            index.put(fIndex);
+            fBytes += index.capacity() - fIndex.capacity();
+            DirectBuffers.free(fIndex);
+            fIndex = index;
+        }
+
+        final long position = ((long) (fPages.size() - 1) << 32)
+            | page.position();
+        fIndex.putLong(fSize * 8, position);
+        page.put(fScratch.getBuffer(), 0, length);
+        ++fSize;
+    }
+
+    /**
+     * Appends all values produced by the given iterator, for example the
+     * rows of a streamed result as they arrive.
+     * The iterator must not be null.
+     *
+     * @param values iterator producing values to append
+     */
+    @Override
+    public void addAll(final Iterator<?> values)
+    {
+        while(values.hasNext())
+        {
+            add(values.next());
+        }
+    }
+
+    /**
+     * Deserializes the value at the given index.
+     *
+     * @param index index of the value
+     * @return deserialized value
+     */
+    @Override
+    public synchronized Object get(final int index)
+    {
+        checkOpen();
+        if(index < 0 || index >= fSize)
+        {
+            throw new IndexOutOfBoundsException("index " + index + " of "
+                + fSize);
+        }
+
+        final long position = fIndex.getLong(index * 8);
+        final ByteBuffer page = fPages.get((int) (position >>> 32))
+            .duplicate();
+        page.position((int) position);
+
+        return ValueCodec.read(page);
+    }
+
+    /**
+     * @return number of values stored
+     */
+    @Override
+    public synchronized int size()
+    {
+        return fSize;
+    }
+
+    /**
+     * @return number of bytes of direct memory allocated
+     */
+    public synchronized long getBytes()
+    {
+        return fBytes;
+    }
+
+    /**
+     * @return whether the store has been closed
+     */
+    public synchronized boolean isClosed()
+    {
+        return fClosed;
+    }
+
+    /**
+     * Releases all direct memory. The store can not be used afterwards.
+     */
+    @Override
+    public synchronized void close()
+    {
+        if(fClosed)
+        {
+            return;
+        }
+
+        fClosed = true;
+        for(ByteBuffer page : fPages)
+        {
+            DirectBuffers.free(page);
+        }
+        fPages.clear();
+        DirectBuffers.free(fIndex);
+        fIndex = null;
+        fBytes = 0;
+    }
+
+    private void checkOpen()
+    {
+        if(fClosed)
+        {
+            throw new IllegalStateException("off-heap store was closed");
+        }
+    }
+
+    private static class ScratchBuffer extends ByteArrayOutputStream
+    {
+        public byte[] getBuffer()
+        {
+            return buf;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ *  Copyright 2015 Institute of Information Systems, Hof University
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package de.hofuniversity.iisys.neo4j.websock.result.offheap;
+
+import java.io.Closeable;
+import java.util.List;
+
+import de.hofuniversity.iisys.neo4j.websock.result.TableResult;
+
+/**
+ * Table result whose rows are kept serialized in a row store,
+ * usually outside of the Java heap, and deserialized on access.
+ * Should be closed once it is no longer needed.
+ */
+public class OffHeapTableResult extends TableResult implements Closeable
+{
+    private final IRowStore fStore;
+
+    /**
+     * Creates a table result with the given columns, containing the rows in
+     * the given store.
+     * Neither of the parameters may be null.
+     *
+     * @param columns ordered list of column names
+     * @param store store containing the table's rows
+     */
+    @SuppressWarnings("unchecked")
+    public OffHeapTableResult(final List<String> columns,
+        final IRowStore store)
+    {
+        super(columns, (List<List<Object>>) (List<?>) new OffHeapList(store));
+        fStore = store;
+    }
+
+    /**
+     * @return store containing the table's rows
+     */
+    public IRowStore getStore()
+    {
+        return fStore;
+    }
+
+    /**
+     * Releases the memory or files holding the table's rows.
+     */
+    @Override
+    public void close()
+    {
+        fStore.close();
+    }
+}
@@ -0,0 +1,378 @@
+/*
+ *  Copyright 2015 Institute of Information Systems, Hof University
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package de.hofuniversity.iisys.neo4j.websock.result.offheap;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import de.hofuniversity.iisys.neo4j.websock.util.DirectBuffers;
+import de.hofuniversity.iisys.neo4j.websock.util.SizeEstimator;
+import de.hofuniversity.iisys.neo4j.websock.util.ValueCodec;
+
+/**
+ * Row store keeping rows on the heap up to an estimated size threshold and
+ * spilling all further rows to a temporary file.
+ * Spilled rows are serialized and read back through read-only memory
+ * mappings of fixed size windows of the file, so the operating system's
+ * page cache rather than the heap holds them.
+ * The temporary file is deleted when the store is closed.
+ * All methods are thread-safe.
+ */
+public class SpillingStore implements IRowStore
+{
+    /**
+     * Size of the file windows mapped into memory.
+     */
+    public static final int WINDOW_SIZE = 64 << 20;
+
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+
+    private final long fThreshold;
+    private final File fDirectory;
+    private final int fWindowSize;
+
+    private final List<Object> fHeapRows;
+    private long fHeapBytes;
+
+    private File fFile;
+    private FileChannel fChannel;
+    private long[] fOffsets;
+    private int fSpilled;
+    private long fFileSize;
+
+    private final ScratchBuffer fScratch;
+    private final DataOutputStream fOut;
+    private final ByteBuffer fWriteBuffer;
+
+    private final List<MappedByteBuffer> fWindows;
+
+    private boolean fClosed;
+
+    /**
+     * Creates a store spilling rows to the default temporary directory once
+     * the estimated size of the rows on the heap exceeds the given
+     * threshold.
+     *
+     * @param threshold estimated size in bytes rows may take on the heap
+     */
+    public SpillingStore(final long threshold)
+    {
+        this(threshold, null, WINDOW_SIZE);
+    }
+
+    /**
+     * Creates a store spilling rows to a temporary file in the given
+     * directory once the estimated size of the rows on the heap exceeds the
+     * given threshold, mapping windows of the given size.
+     *
+     * @param threshold estimated size in bytes rows may take on the heap
+     * @param directory directory for the temporary file or null for default
+     * @param windowSize size of the file windows mapped into memory
+     */
+    public SpillingStore(final long threshold, final File directory,
+        final int windowSize)
+    {
+        if(windowSize <= 0)
+        {
+            throw new IllegalArgumentException(
+                "window size must be positive");
+        }
+
+        fThreshold = threshold;
+        fDirectory = directory;
+        fWindowSize = windowSize;
+
+        fHeapRows = new ArrayList<Object>();
+
+        fScratch = new ScratchBuffer();
+        fOut = new DataOutputStream(fScratch);
+        fWriteBuffer = ByteBuffer.allocate(WRITE_BUFFER_SIZE);
+
+        fWindows = new ArrayList<MappedByteBuffer>();
+    }
+
+    @Override
+    public synchronized void add(final Object value)
+    {
+        checkOpen();
+
+        if(fChannel == null)
+        {
+            final long size = SizeEstimator.estimate(value);
+            if(fHeapBytes + size <= fThreshold)
+            {
+                fHeapRows.add(value);
+                fHeapBytes += size;
+                return;
+            }
+
+            openFile();
+        }
+
+        fScratch.reset();
+        try
+        {
+            ValueCodec.write(fOut, value);
+            fOut.flush();
+        }
+        catch(IOException e)
+        {
+            throw new RuntimeException("failed to serialize value", e);
+        }
+
+        if(fSpilled == fOffsets.length)
+        {
+            fOffsets = Arrays.copyOf(fOffsets, fOffsets.length * 2);
+        }
+        fOffsets[fSpilled++] = fFileSize + fWriteBuffer.position();
+
+        final byte[] data = fScratch.getBuffer();
+        int written = 0;
+        final int length = fScratch.size();
+        while(written < length)
+        {
+            final int chunk = Math.min(fWriteBuffer.remaining(),
+                length - written);
+            fWriteBuffer.put(data, written, chunk);
+            written += chunk;
+
+            if(!fWriteBuffer.hasRemaining())
+            {
+                flush();
+            }
+        }
+    }
+
+    @Override
+    public void addAll(final Iterator<?> values)
+    {
+        while(values.hasNext())
+        {
+            add(values.next());
+        }
+    }
+
+    @Override
+    public synchronized Object get(final int index)
+    {
+        checkOpen();
+
+        if(index < 0 || index >= size())
+        {
+            throw new IndexOutOfBoundsException("index " + index + " of "
+                + size());
+        }
+
+        if(index < fHeapRows.size())
+        {
+            return fHeapRows.get(index);
+        }
+
+        final int spilled = index - fHeapRows.size();
+        final long offset = fOffsets[spilled];
+        long end = fFileSize + fWriteBuffer.position();
+        if(spilled + 1 < fSpilled)
+        {
+            end = fOffsets[spilled + 1];
+        }
+
+        if(end > fFileSize)
+        {
+            flush();
+        }
+
+        try
+        {
+            return ValueCodec.read(getBuffer(offset, (int) (end - offset)));
+        }
+        catch(IOException e)
+        {
+            throw new RuntimeException("failed to read spilled row", e);
+        }
+    }
+
+    @Override
+    public synchronized int size()
+    {
+        return fHeapRows.size() + fSpilled;
+    }
+
+    /**
+     * @return whether rows have been spilled to disk
+     */
+    public synchronized boolean isSpilled()
+    {
+        return fChannel != null;
+    }
+
+    /**
+     * @return estimated size of the rows kept on the heap in bytes
+     */
+    public synchronized long getHeapBytes()
+    {
+        return fHeapBytes;
+    }
+
+    /**
+     * @return number of bytes spilled to disk
+     */
+    public synchronized long getFileBytes()
+    {
+        return fFileSize + fWriteBuffer.position();
+    }
+
+    /**
+     * Releases all rows, unmaps the temporary file and deletes it.
+     */
+    @Override
+    public synchronized void close()
+    {
+        if(fClosed)
+        {
+            return;
+        }
+
+        fClosed = true;
+        fHeapRows.clear();
+
+        for(MappedByteBuffer window : fWindows)
+        {
+            DirectBuffers.free(window);
+        }
+        fWindows.clear();
+
+        if(fChannel != null)
+        {
+            try
+            {
+                fChannel.close();
+            }
+            catch(IOException e)
+            {
+                //deleting the file is attempted anyway
+            }
+
+            if(!fFile.delete())
+            {
+                fFile.deleteOnExit();
+            }
+        }
+    }
+
+    private void openFile()
+    {
+        try
+        {
+            fFile = File.createTempFile("websock-result", ".spill",
+                fDirectory);
+            fChannel = new RandomAccessFile(fFile, "rw").getChannel();
+        }
+        catch(IOException e)
+        {
+            throw new RuntimeException("failed to create spill file", e);
+        }
+
+        fOffsets = new long[1024];
+    }
+
+    private void flush()
+    {
+        fWriteBuffer.flip();
+        try
+        {
+            while(fWriteBuffer.hasRemaining())
+            {
+                fFileSize += fChannel.write(fWriteBuffer, fFileSize);
+            }
+        }
+        catch(IOException e)
+        {
+            throw new RuntimeException("failed to write spill file", e);
+        }
+        fWriteBuffer.clear();
+    }
+
+    /*
+     * maps complete windows, rows crossing a window border or lying in the
+     * still growing last window are read directly
+     */
+    private ByteBuffer getBuffer(final long offset, final int length)
+        throws IOException
+    {
+        final int window = (int) (offset / fWindowSize);
+        final long windowStart = (long) window * fWindowSize;
+        final long windowEnd = windowStart + fWindowSize;
+
+        if(offset + length <= windowEnd && windowEnd <= fFileSize)
+        {
+            while(fWindows.size() <= window)
+            {
+                fWindows.add(null);
+            }
+
+            MappedByteBuffer mapped = fWindows.get(window);
+            if(mapped == null)
+            {
+                mapped = fChannel.map(MapMode.READ_ONLY, windowStart,
+                    fWindowSize);
+                fWindows.set(window, mapped);
+            }
+
+            final ByteBuffer buffer = mapped.duplicate();
+            buffer.position((int) (offset - windowStart));
+            return buffer;
+        }
+
+        final ByteBuffer buffer = ByteBuffer.allocate(length);
+        while(buffer.hasRemaining())
+        {
+            if(fChannel.read(buffer, offset + buffer.position()) < 0)
+            {
+                throw new IOException("unexpected end of spill file");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private void checkOpen()
+    {
+        if(fClosed)
+        {
+            throw new IllegalStateException("spilling store was closed");
+        }
+    }
+
+    private static class ScratchBuffer extends ByteArrayOutputStream
+    {
+        public byte[] getBuffer()
+        {
+            return buf;
+        }
+    }
+}
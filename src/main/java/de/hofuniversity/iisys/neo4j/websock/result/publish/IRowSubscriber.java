@@ -0,0 +1,53 @@
+/*
+ *  Copyright 2015 Institute of Information Systems, Hof University
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package de.hofuniversity.iisys.neo4j.websock.result.publish;
+
+/**
+ * Receiver of result rows from a row publisher, receiving no more rows than
+ * it requested through its subscription.
+ * Signals are never delivered concurrently.
+ */
+public interface IRowSubscriber
+{
+    /**
+     * Called once before any other signal with the subscription to request
+     * rows through.
+     *
+     * @param subscription subscription of this subscriber
+     */
+    public void onSubscribe(IRowSubscription subscription);
+
+    /**
+     * Called for each requested row; list elements are passed as they are,
+     * table rows as lists of values.
+     *
+     * @param row received row
+     */
+    public void onNext(Object row);
+
+    /**
+     * Called once if fetching rows failed, ending the subscription.
+     *
+     * @param error cause of the failure
+     */
+    public void onError(Throwable error);
+
+    /**
+     * Called once after all rows were delivered, ending the subscription.
+     */
+    public void onComplete();
+}
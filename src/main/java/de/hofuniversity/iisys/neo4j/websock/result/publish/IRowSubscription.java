@@ -0,0 +1,39 @@
+/*
+ *  Copyright 2015 Institute of Information Systems, Hof University
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package de.hofuniversity.iisys.neo4j.websock.result.publish;
+
+/**
+ * Link between a row publisher and its subscriber, through which the
+ * subscriber signals its demand for rows.
+ */
+public interface IRowSubscription
+{
+    /**
+     * Requests the given number of additional rows.
+     * Demand adds up and is capped at Long.MAX_VALUE, which stands for
+     * unlimited demand.
+     *
+     * @param n number of additional rows, must be positive
+     */
+    public void request(long n);
+
+    /**
+     * Cancels the subscription, stopping further fetching; rows already in
+     * transit are discarded.
+     */
+    public void cancel();
+}
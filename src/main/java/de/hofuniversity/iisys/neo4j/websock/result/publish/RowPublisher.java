@@ -0,0 +1,472 @@
+/*
+ *  Copyright 2015 Institute of Information Systems, Hof University
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package de.hofuniversity.iisys.neo4j.websock.result.publish;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ExecutionException;
+
+import de.hofuniversity.iisys.neo4j.websock.query.EQueryType;
+import de.hofuniversity.iisys.neo4j.websock.query.WebsockQuery;
+import de.hofuniversity.iisys.neo4j.websock.query.client.QueryDispatcher;
+import de.hofuniversity.iisys.neo4j.websock.query.client.QueryFuture;
+import de.hofuniversity.iisys.neo4j.websock.result.AResultSet;
+import de.hofuniversity.iisys.neo4j.websock.session.WebsockConstants;
+import de.hofuniversity.iisys.neo4j.websock.util.ResultSetConverter;
+
+/**
+ * Publisher fetching the rows of a query's result page by page through a
+ * query dispatcher, using subset parameters, only as far as its subscriber
+ * requested them.
+ * The next page is only fetched once the buffered page is used up, so at
+ * most one page of rows is held at any time.
+ * A subset given in the query limits the rows published.
+ * Each publisher supports a single subscriber, receiving signals in the
+ * thread requesting rows or the one handling responses.
+ */
+public class RowPublisher implements IRowPublisher
+{
+    /**
+     * Default number of rows fetched per page.
+     */
+    public static final int DEFAULT_PAGE_SIZE = 1000;
+
+    private final QueryDispatcher fDispatcher;
+    private final WebsockQuery fQuery;
+    private final int fPageSize;
+    private final long fTimeout;
+
+    private final int fFirst;
+    private final int fLimit;
+
+    private final Queue<Object> fBuffer;
+
+    private IRowSubscriber fSubscriber;
+    private long fDemand;
+    private int fFetched;
+    private boolean fFetching;
+    private boolean fExhausted;
+    private Throwable fError;
+    private boolean fDone;
+    private QueryFuture fPending;
+
+    private boolean fEmitting;
+    private boolean fMissed;
+
+    /**
+     * Creates a publisher for the given query, fetching pages of the default
+     * size with the dispatcher's default timeout.
+     * Neither of the parameters may be null.
+     *
+     * @param dispatcher dispatcher to send page queries with
+     * @param query query to publish the result rows of
+     */
+    public RowPublisher(final QueryDispatcher dispatcher,
+        final WebsockQuery query)
+    {
+        this(dispatcher, query, DEFAULT_PAGE_SIZE,
+            QueryDispatcher.DEFAULT_TIMEOUT);
+    }
+
+    /**
+     * Creates a publisher for the given query, fetching pages of the given
+     * size with the given timeout per page.
+     * Neither dispatcher nor query may be null.
+     *
+     * @param dispatcher dispatcher to send page queries with
+     * @param query query to publish the result rows of
+     * @param pageSize number of rows to fetch per page, must be positive
+     * @param timeout time in milliseconds to wait for a page, unlimited if
+     *  not positive
+     */
+    public RowPublisher(final QueryDispatcher dispatcher,
+        final WebsockQuery query, final int pageSize, final long timeout)
+    {
+        if(dispatcher == null)
+        {
+            throw new NullPointerException("query dispatcher was null");
+        }
+        if(query == null)
+        {
+            throw new NullPointerException("query was null");
+        }
+        if(pageSize <= 0)
+        {
+            throw new IllegalArgumentException("page size must be positive");
+        }
+
+        fDispatcher = dispatcher;
+        fQuery = query;
+        fPageSize = pageSize;
+        fTimeout = timeout;
+
+        fFirst = getInt(query, WebsockConstants.SUBSET_START, 0);
+        fLimit = getInt(query, WebsockConstants.SUBSET_SIZE, -1);
+
+        fBuffer = new LinkedList<Object>();
+        fExhausted = fLimit == 0;
+    }
+
+    private int getInt(final WebsockQuery query, final String key,
+        final int def)
+    {
+        final Object value = query.getParameter(key);
+        if(value instanceof Number)
+        {
+            return ((Number) value).intValue();
+        }
+
+        return def;
+    }
+
+    @Override
+    public void subscribe(final IRowSubscriber subscriber)
+    {
+        if(subscriber == null)
+        {
+            throw new NullPointerException("subscriber was null");
+        }
+
+        boolean accepted = false;
+        synchronized(this)
+        {
+            if(fSubscriber == null)
+            {
+                fSubscriber = subscriber;
+                accepted = true;
+            }
+        }
+
+        if(accepted)
+        {
+            subscriber.onSubscribe(new Subscription());
+        }
+        else
+        {
+            subscriber.onSubscribe(new IRowSubscription()
+            {
+                @Override
+                public void request(long n)
+                {
+                    //already terminated
+                }
+
+                @Override
+                public void cancel()
+                {
+                    //already terminated
+                }
+            });
+            subscriber.onError(new IllegalStateException(
+                "publisher only supports a single subscriber"));
+        }
+    }
+
+    private void request(final long n)
+    {
+        synchronized(this)
+        {
+            if(n <= 0)
+            {
+                fError = new IllegalArgumentException(
+                    "requested number of rows must be positive");
+                fBuffer.clear();
+            }
+            else
+            {
+                fDemand += n;
+                if(fDemand < 0)
+                {
+                    fDemand = Long.MAX_VALUE;
+                }
+            }
+        }
+
+        drain();
+    }
+
+    private void cancel()
+    {
+        final QueryFuture pending;
+        synchronized(this)
+        {
+            fDone = true;
+            fBuffer.clear();
+            pending = fPending;
+            fPending = null;
+        }
+
+        if(pending != null)
+        {
+            pending.cancel(false);
+        }
+    }
+
+    //delivers signals, only ever running in one thread at a time
+    private void drain()
+    {
+        synchronized(this)
+        {
+            if(fEmitting)
+            {
+                fMissed = true;
+                return;
+            }
+            fEmitting = true;
+        }
+
+        while(true)
+        {
+            Object row = null;
+            boolean next = false;
+            Throwable error = null;
+            boolean complete = false;
+            boolean fetch = false;
+
+            synchronized(this)
+            {
+                if(fDone)
+                {
+                    fEmitting = false;
+                    return;
+                }
+
+                if(fDemand > 0 && !fBuffer.isEmpty())
+                {
+                    row = fBuffer.poll();
+                    next = true;
+                    if(fDemand != Long.MAX_VALUE)
+                    {
+                        --fDemand;
+                    }
+                }
+                else if(fBuffer.isEmpty() && fError != null)
+                {
+                    fDone = true;
+                    error = fError;
+                }
+                else if(fBuffer.isEmpty() && fExhausted)
+                {
+                    fDone = true;
+                    complete = true;
+                }
+                else if(fBuffer.isEmpty() && fDemand > 0 && !fFetching)
+                {
+                    fFetching = true;
+                    fetch = true;
+                }
+                else if(fMissed)
+                {
+                    fMissed = false;
+                    continue;
+                }
+                else
+                {
+                    fEmitting = false;
+                    return;
+                }
+            }
+
+            if(next)
+            {
+                fSubscriber.onNext(row);
+            }
+            else if(error != null)
+            {
+                fSubscriber.onError(error);
+            }
+            else if(complete)
+            {
+                fSubscriber.onComplete();
+            }
+            else if(fetch)
+            {
+                fetch();
+            }
+        }
+    }
+
+    private void fetch()
+    {
+        int size = fPageSize;
+        if(fLimit >= 0)
+        {
+            size = Math.min(size, fLimit - fFetched);
+        }
+        final int requested = size;
+
+        final Map<String, Object> params =
+            new HashMap<String, Object>(fQuery.getParameters());
+        params.put(WebsockConstants.SUBSET_START, fFirst + fFetched);
+        params.put(WebsockConstants.SUBSET_SIZE, requested);
+
+        final WebsockQuery page = new WebsockQuery(fQuery.getType());
+        page.setParameters(params);
+        page.setPayload(fQuery.getPayload());
+
+        final QueryFuture future;
+        try
+        {
+            future = fDispatcher.send(page, fTimeout);
+        }
+        catch(InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            onPage(null, requested, e);
+            return;
+        }
+
+        boolean cancelled = false;
+        synchronized(this)
+        {
+            if(fDone)
+            {
+                cancelled = true;
+            }
+            else if(!future.isDone())
+            {
+                fPending = future;
+            }
+        }
+        if(cancelled)
+        {
+            future.cancel(false);
+            return;
+        }
+
+        future.addCallback(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                if(future.isCancelled())
+                {
+                    return;
+                }
+
+                try
+                {
+                    onPage(future.get(), requested, null);
+                }
+                catch(ExecutionException e)
+                {
+                    onPage(null, requested, e.getCause());
+                }
+                catch(InterruptedException e)
+                {
+                    //not possible, the future is already done
+                    onPage(null, requested, e);
+                }
+            }
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private void onPage(final WebsockQuery response, final int requested,
+        Throwable error)
+    {
+        List<?> rows = null;
+        int total = -1;
+        boolean single = false;
+        if(error == null && response.getType() != EQueryType.RESULT)
+        {
+            error = new RuntimeException("unexpected response type: "
+                + response.getType());
+        }
+        else if(error == null)
+        {
+            final AResultSet<?> result = ResultSetConverter.toResultSet(
+                (Map<String, Object>) response.getPayload());
+            //estimated totals can not tell where the result ends
+            if(result.getTotalError() == 0 && !result.isTotalDeferred())
+            {
+                total = result.getTotal();
+            }
+            if(result.getResults() instanceof List)
+            {
+                rows = (List<?>) result.getResults();
+            }
+            else
+            {
+                //single results can not be paged
+                rows = Collections.singletonList(result.getResults());
+                single = true;
+            }
+        }
+
+        synchronized(this)
+        {
+            fPending = null;
+            fFetching = false;
+            if(fDone)
+            {
+                return;
+            }
+
+            if(error != null)
+            {
+                fError = error;
+            }
+            else
+            {
+                fBuffer.addAll(rows);
+                fFetched += rows.size();
+
+                fExhausted = single || rows.size() < requested
+                    || (total >= 0 && fFirst + fFetched >= total)
+                    || (fLimit >= 0 && fFetched >= fLimit);
+            }
+        }
+
+        drain();
+    }
+
+    /**
+     * @return number of rows fetched so far
+     */
+    public synchronized int getFetched()
+    {
+        return fFetched;
+    }
+
+    /**
+     * @return number of rows fetched but not yet delivered
+     */
+    public synchronized int getBuffered()
+    {
+        return fBuffer.size();
+    }
+
+    private class Subscription implements IRowSubscription
+    {
+        @Override
+        public void request(final long n)
+        {
+            RowPublisher.this.request(n);
+        }
+
+        @Override
+        public void cancel()
+        {
+            RowPublisher.this.cancel();
+        }
+    }
+}
@@ -0,0 +1,274 @@
+/*
+ *  Copyright 2015 Institute of Information Systems, Hof University
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package de.hofuniversity.iisys.neo4j.websock.result.stream;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import de.hofuniversity.iisys.neo4j.websock.query.EQueryType;
+import de.hofuniversity.iisys.neo4j.websock.query.WebsockQuery;
+import de.hofuniversity.iisys.neo4j.websock.result.AResultSet;
+import de.hofuniversity.iisys.neo4j.websock.result.EResultType;
+import de.hofuniversity.iisys.neo4j.websock.result.TableResult;
+import de.hofuniversity.iisys.neo4j.websock.session.WebsockConstants;
+import de.hofuniversity.iisys.neo4j.websock.util.ResultSetConverter;
+
+/**
+ * Receiving end of a streamed result, collecting result chunks passed in by
+ * the message handling thread and handing out their rows through a blocking
+ * iterator as soon as they arrive.
+ * Regular, unchunked results are treated as a single, final chunk.
+ * List elements are returned as they are, table rows as lists of values.
+ */
+public class ResultStream implements Iterator<Object>, Iterable<Object>
+{
+    private final BlockingQueue<Chunk> fChunks;
+    private final long fTimeout;
+
+    private volatile EResultType fType;
+    private volatile List<String> fColumns;
+    private volatile int fTotal = -1;
+    private volatile String fCursor;
+    private volatile boolean fTotalDeferred = false;
+
+    private Iterator<?> fCurrent;
+    private boolean fFinished = false;
+
+    /**
+     * Creates a stream waiting indefinitely for chunks to arrive.
+     */
+    public ResultStream()
+    {
+        this(0);
+    }
+
+    /**
+     * Creates a stream waiting at most the given number of milliseconds for
+     * the next chunk to arrive, failing afterwards.
+     * A timeout of zero or less means waiting indefinitely.
+     *
+     * @param timeout maximum time to wait for a chunk in milliseconds
+     */
+    public ResultStream(final long timeout)
+    {
+        fChunks = new LinkedBlockingQueue<Chunk>();
+        fTimeout = timeout;
+    }
+
+    /**
+     * Passes a message received for the streamed query to this stream.
+     * Result chunks are queued for iteration, error messages end the stream
+     * with an exception on the iterating side.
+     * The message must not be null.
+     *
+     * @param message received message
+     * @return whether the message was the last one of the stream
+     */
+    @SuppressWarnings("unchecked")
+    public boolean onMessage(final WebsockQuery message)
+    {
+        if(message.getType() == EQueryType.ERROR)
+        {
+            final Object payload = message.getPayload();
+            fChunks.add(new Chunk(null, true, String.valueOf(payload)));
+            return true;
+        }
+        if(message.getType() != EQueryType.RESULT)
+        {
+            fChunks.add(new Chunk(null, true, "unexpected message type: "
+                + message.getType()));
+            return true;
+        }
+
+        final Map<String, Object> map =
+            (Map<String, Object>) message.getPayload();
+        final boolean last = !map.containsKey(WebsockConstants.CHUNK_INDEX)
+            || Boolean.TRUE.equals(map.get(WebsockConstants.LAST_CHUNK));
+
+        final AResultSet<?> result = ResultSetConverter.toResultSet(map);
+        if(fType == null)
+        {
+            fType = result.getType();
+            if(result instanceof TableResult)
+            {
+                fColumns = ((TableResult) result).getColumns();
+            }
+        }
+        if(last)
+        {
+            fTotal = result.getTotal();
+            fCursor = result.getCursor();
+            fTotalDeferred = result.isTotalDeferred();
+        }
+
+        Iterator<?> rows = null;
+        if(result.getResults() instanceof List)
+        {
+            rows = ((List<?>) result.getResults()).iterator();
+        }
+        else
+        {
+            rows = Collections.singletonList(
+                result.getResults()).iterator();
+        }
+
+        fChunks.add(new Chunk(rows, last, null));
+        return last;
+    }
+
+    /**
+     * @return type of the streamed result or null if nothing arrived yet
+     */
+    public EResultType getType()
+    {
+        return fType;
+    }
+
+    /**
+     * @return table columns or null if not a table or nothing arrived yet
+     */
+    public List<String> getColumns()
+    {
+        return fColumns;
+    }
+
+    /**
+     * @return total number of results or -1 if the stream did not end yet
+     *  or the total is deferred
+     */
+    public int getTotal()
+    {
+        return fTotal;
+    }
+
+    /**
+     * @return cursor for the next page or null if there is none or the
+     *  stream did not end yet
+     */
+    public String getCursor()
+    {
+        return fCursor;
+    }
+
+    /**
+     * @return whether the total will be sent in a separate message
+     */
+    public boolean isTotalDeferred()
+    {
+        return fTotalDeferred;
+    }
+
+    @Override
+    public boolean hasNext()
+    {
+        while(fCurrent == null || !fCurrent.hasNext())
+        {
+            if(fFinished)
+            {
+                return false;
+            }
+
+            final Chunk chunk = take();
+            if(chunk.fError != null)
+            {
+                fFinished = true;
+                fCurrent = null;
+                throw new RuntimeException("streamed query failed: "
+                    + chunk.fError);
+            }
+
+            fCurrent = chunk.fRows;
+            fFinished = chunk.fLast;
+        }
+
+        return true;
+    }
+
+    @Override
+    public Object next()
+    {
+        if(!hasNext())
+        {
+            throw new NoSuchElementException();
+        }
+
+        return fCurrent.next();
+    }
+
+    @Override
+    public void remove()
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Iterator<Object> iterator()
+    {
+        return this;
+    }
+
+    private Chunk take()
+    {
+        Chunk chunk = null;
+        try
+        {
+            if(fTimeout > 0)
+            {
+                chunk = fChunks.poll(fTimeout, TimeUnit.MILLISECONDS);
+            }
+            else
+            {
+                chunk = fChunks.take();
+            }
+        }
+        catch(InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("interrupted while waiting for chunk",
+                e);
+        }
+
+        if(chunk == null)
+        {
+            fFinished = true;
+            throw new RuntimeException("timed out waiting for result chunk");
+        }
+
+        return chunk;
+    }
+
+    private static class Chunk
+    {
+        private final Iterator<?> fRows;
+        private final boolean fLast;
+        private final String fError;
+
+        public Chunk(final Iterator<?> rows, final boolean last,
+            final String error)
+        {
+            fRows = rows;
+            fLast = last;
+            fError = error;
+        }
+    }
+}
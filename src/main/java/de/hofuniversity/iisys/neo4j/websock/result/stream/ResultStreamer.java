@@ -0,0 +1,415 @@
+/*
+ *  Copyright 2015 Institute of Information Systems, Hof University
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package de.hofuniversity.iisys.neo4j.websock.result.stream;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+
+import de.hofuniversity.iisys.neo4j.websock.query.EQueryType;
+import de.hofuniversity.iisys.neo4j.websock.query.IMessageSender;
+import de.hofuniversity.iisys.neo4j.websock.query.WebsockQuery;
+import de.hofuniversity.iisys.neo4j.websock.query.cancel.CancellationToken;
+import de.hofuniversity.iisys.neo4j.websock.result.AResultSet;
+import de.hofuniversity.iisys.neo4j.websock.result.EResultEncoding;
+import de.hofuniversity.iisys.neo4j.websock.result.ListResult;
+import de.hofuniversity.iisys.neo4j.websock.result.TableResult;
+import de.hofuniversity.iisys.neo4j.websock.session.WebsockConstants;
+import de.hofuniversity.iisys.neo4j.websock.session.WebsockSession;
+import de.hofuniversity.iisys.neo4j.websock.util.FieldProjection;
+import de.hofuniversity.iisys.neo4j.websock.util.ResultSetConverter;
+
+/**
+ * Sender splitting list and table results into a sequence of result chunks
+ * sent under the same query ID, so the receiving side can start processing
+ * rows before the whole result has been transferred.
+ * Each chunk is a regular result map with a chunk index, the last one being
+ * flagged as such and carrying the total number of results as well as the
+ * cursor and total information of the streamed result.
+ * Streams with a cancellation token stop before the next chunk once their
+ * query is cancelled, discarding the remaining rows.
+ * Streamers created for sessions that did not enable streaming send each
+ * result as a single regular result message instead.
+ */
+public class ResultStreamer
+{
+    /**
+     * Number of rows per chunk used if none is specified.
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 1000;
+
+    private final IMessageSender fSender;
+    private final int fChunkSize;
+    private final Set<EResultEncoding> fEncodings;
+    private final boolean fStreaming;
+    private final WebsockSession fSession;
+
+    /**
+     * Creates a streamer for the given session, sending chunks of the
+     * default size if the session enabled streaming and whole results
+     * otherwise, applying the session's result encodings.
+     * Neither of the parameters may be null.
+     *
+     * @param sender sender to send messages with
+     * @param session session to create a streamer for
+     * @return streamer to use for the session
+     */
+    public static ResultStreamer forSession(final IMessageSender sender,
+        final WebsockSession session)
+    {
+        return new ResultStreamer(sender, DEFAULT_CHUNK_SIZE,
+            session.getResultEncodings(), session.getStreaming(), session);
+    }
+
+    /**
+     * Creates a streamer sending chunks of the given size over the given
+     * sender, applying the given result encodings to each chunk.
+     * Sender and encodings must not be null.
+     *
+     * @param sender sender to send chunks with
+     * @param chunkSize maximum number of rows per chunk
+     * @param encodings encodings the receiving side can decode
+     */
+    public ResultStreamer(final IMessageSender sender, final int chunkSize,
+        final Set<EResultEncoding> encodings)
+    {
+        this(sender, chunkSize, encodings, true, null);
+    }
+
+    private ResultStreamer(final IMessageSender sender, final int chunkSize,
+        final Set<EResultEncoding> encodings, final boolean streaming,
+        final WebsockSession session)
+    {
+        if(sender == null)
+        {
+            throw new NullPointerException("message sender was null");
+        }
+        if(encodings == null)
+        {
+            throw new NullPointerException("result encodings were null");
+        }
+        if(chunkSize <= 0)
+        {
+            throw new IllegalArgumentException("chunk size must be positive");
+        }
+
+        fSender = sender;
+        fChunkSize = chunkSize;
+        fEncodings = encodings;
+        fStreaming = streaming;
+        fSession = session;
+    }
+
+    /**
+     * @return whether results are sent in chunks
+     */
+    public boolean isStreaming()
+    {
+        return fStreaming;
+    }
+
+    /**
+     * Sends the given result set as a stream of chunks.
+     * Results that are neither lists nor tables are sent as a single regular
+     * result message.
+     * The result must not be null.
+     *
+     * @param id ID of the query the result belongs to
+     * @param result result to send
+     * @throws Exception if conversion or sending fail
+     */
+    public void send(final int id, final AResultSet<?> result)
+        throws Exception
+    {
+        send(id, result, null);
+    }
+
+    /**
+     * Sends the given result set as a stream of chunks, stopping once the
+     * given token is cancelled.
+     * Results that are neither lists nor tables are sent as a single regular
+     * result message.
+     * The result must not be null, the token may be null.
+     *
+     * @param id ID of the query the result belongs to
+     * @param result result to send
+     * @param token cancellation token of the query or null
+     * @throws Exception if conversion or sending fail
+     * @throws CancellationException if the query was cancelled
+     */
+    public void send(final int id, final AResultSet<?> result,
+        final CancellationToken token) throws Exception
+    {
+        send(id, result, token, null);
+    }
+
+    /**
+     * Sends the given result set as a stream of chunks, stopping once the
+     * given token is cancelled and only including the fields or columns
+     * selected by the given projection.
+     * Results that are neither lists nor tables are sent as a single regular
+     * result message.
+     * The result must not be null, token and projection may be null.
+     *
+     * @param id ID of the query the result belongs to
+     * @param result result to send
+     * @param token cancellation token of the query or null
+     * @param projection projection to apply or null
+     * @throws Exception if conversion or sending fail
+     * @throws CancellationException if the query was cancelled
+     */
+    @SuppressWarnings("unchecked")
+    public void send(final int id, final AResultSet<?> result,
+        final CancellationToken token, final FieldProjection projection)
+        throws Exception
+    {
+        if(!fStreaming)
+        {
+            sendWhole(id, result, token, projection);
+            return;
+        }
+
+        switch(result.getType())
+        {
+            case LIST:
+                final List<?> list = (List<?>) result.getResults();
+                stream(id, null, list.iterator(), result, token, projection);
+                break;
+
+            case TABLE:
+                final TableResult table = (TableResult) result;
+                stream(id, table.getColumns(),
+                    (Iterator<?>) table.getResults().iterator(), result,
+                    token, projection);
+                break;
+
+            default:
+                sendWhole(id, result, token, projection);
+        }
+    }
+
+    private Map<String, Object> toMap(final AResultSet<?> result,
+        final FieldProjection projection)
+    {
+        final Map<String, Object> map = new HashMap<String, Object>();
+        if(fSession != null)
+        {
+            return ResultSetConverter.toMap(result, map, fSession,
+                projection);
+        }
+        return ResultSetConverter.toMap(result, map, fEncodings, projection);
+    }
+
+    private void sendWhole(final int id, final AResultSet<?> result,
+        final CancellationToken token, final FieldProjection projection)
+        throws Exception
+    {
+        final WebsockQuery response = new WebsockQuery(id,
+            EQueryType.RESULT);
+        response.setPayload(toMap(result, projection));
+        if(token != null)
+        {
+            token.throwIfCancelled();
+        }
+        fSender.sendMessage(response);
+    }
+
+    /**
+     * Streams the list elements produced by the given iterator, without
+     * requiring them to be materialized beforehand.
+     * The iterator must not be null.
+     *
+     * @param id ID of the query the result belongs to
+     * @param elements iterator producing the list's elements
+     * @throws Exception if conversion or sending fail
+     */
+    public void streamList(final int id, final Iterator<?> elements)
+        throws Exception
+    {
+        stream(id, null, elements, null, null, null);
+    }
+
+    /**
+     * Streams the list elements produced by the given iterator, stopping
+     * once the given token is cancelled.
+     * The iterator must not be null, the token may be null.
+     *
+     * @param id ID of the query the result belongs to
+     * @param elements iterator producing the list's elements
+     * @param token cancellation token of the query or null
+     * @throws Exception if conversion or sending fail
+     * @throws CancellationException if the query was cancelled
+     */
+    public void streamList(final int id, final Iterator<?> elements,
+        final CancellationToken token) throws Exception
+    {
+        stream(id, null, elements, null, token, null);
+    }
+
+    /**
+     * Streams the table rows produced by the given iterator, without
+     * requiring them to be materialized beforehand.
+     * Neither of the parameters may be null.
+     *
+     * @param id ID of the query the result belongs to
+     * @param columns names of the table's columns
+     * @param rows iterator producing the table's rows
+     * @throws Exception if conversion or sending fail
+     */
+    public void streamTable(final int id, final List<String> columns,
+        final Iterator<? extends List<Object>> rows) throws Exception
+    {
+        streamTable(id, columns, rows, null);
+    }
+
+    /**
+     * Streams the table rows produced by the given iterator, stopping once
+     * the given token is cancelled.
+     * Columns and rows must not be null, the token may be null.
+     *
+     * @param id ID of the query the result belongs to
+     * @param columns names of the table's columns
+     * @param rows iterator producing the table's rows
+     * @param token cancellation token of the query or null
+     * @throws Exception if conversion or sending fail
+     * @throws CancellationException if the query was cancelled
+     */
+    public void streamTable(final int id, final List<String> columns,
+        final Iterator<? extends List<Object>> rows,
+        final CancellationToken token) throws Exception
+    {
+        if(columns == null)
+        {
+            throw new NullPointerException("column list was null");
+        }
+
+        stream(id, columns, rows, null, token, null);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void stream(final int id, final List<String> columns,
+        final Iterator<?> rows, final AResultSet<?> source,
+        final CancellationToken token, final FieldProjection projection)
+        throws Exception
+    {
+        final int first = source != null ? source.getFirst() : 0;
+
+        if(!fStreaming)
+        {
+            final List<Object> all = new ArrayList<Object>();
+            while(rows.hasNext())
+            {
+                all.add(rows.next());
+            }
+
+            AResultSet<?> result = null;
+            if(columns == null)
+            {
+                result = new ListResult(all);
+            }
+            else
+            {
+                result = new TableResult(columns,
+                    (List<List<Object>>) (List<?>) all);
+            }
+            result.setFirst(first);
+            complete(result, source, first + all.size());
+
+            sendWhole(id, result, token, projection);
+            return;
+        }
+
+        int index = 0;
+        int sent = 0;
+        boolean last = false;
+
+        while(!last)
+        {
+            final List<Object> chunk = new ArrayList<Object>(fChunkSize);
+            while(chunk.size() < fChunkSize && rows.hasNext())
+            {
+                chunk.add(rows.next());
+            }
+
+            //drop the partial chunk if cancelled while producing it
+            if(token != null)
+            {
+                token.throwIfCancelled();
+            }
+            last = !rows.hasNext();
+
+            AResultSet<?> result = null;
+            if(columns == null)
+            {
+                result = new ListResult(chunk);
+            }
+            else
+            {
+                result = new TableResult(columns,
+                    (List<List<Object>>) (List<?>) chunk);
+            }
+            result.setFirst(first + sent);
+            sent += chunk.size();
+
+            if(last)
+            {
+                complete(result, source, first + sent);
+            }
+
+            final Map<String, Object> payload = toMap(result, projection);
+            payload.put(WebsockConstants.CHUNK_INDEX, index++);
+
+            if(last)
+            {
+                payload.put(WebsockConstants.LAST_CHUNK, true);
+            }
+
+            final WebsockQuery response = new WebsockQuery(id,
+                EQueryType.RESULT);
+            response.setPayload(payload);
+            fSender.sendMessage(response);
+        }
+    }
+
+    private static void complete(final AResultSet<?> result,
+        final AResultSet<?> source, final int counted)
+    {
+        if(source == null)
+        {
+            result.setTotal(counted);
+            return;
+        }
+
+        //count the streamed rows unless the total is known or follows later
+        if(source.getTotal() >= 0)
+        {
+            result.setTotal(source.getTotal());
+        }
+        else if(!source.isTotalDeferred())
+        {
+            result.setTotal(counted);
+        }
+
+        result.setCursor(source.getCursor());
+        result.setTotalError(source.getTotalError());
+        result.setTotalDeferred(source.isTotalDeferred());
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ *  Copyright 2015 Institute of Information Systems, Hof University
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package de.hofuniversity.iisys.neo4j.websock.result.total;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import de.hofuniversity.iisys.neo4j.websock.query.EQueryType;
+import de.hofuniversity.iisys.neo4j.websock.query.IMessageSender;
+import de.hofuniversity.iisys.neo4j.websock.query.WebsockQuery;
+import de.hofuniversity.iisys.neo4j.websock.result.AResultSet;
+import de.hofuniversity.iisys.neo4j.websock.result.EResultEncoding;
+import de.hofuniversity.iisys.neo4j.websock.session.WebsockConstants;
+import de.hofuniversity.iisys.neo4j.websock.util.ResultSetConverter;
+
+/**
+ * Sender delivering a result immediately without its total and the total
+ * in a follow-up message with the same query ID once it has been counted.
+ * The follow-up is a total message carrying the total and optionally its
+ * error bound, or an error message if counting failed.
+ */
+public class DeferredTotal
+{
+    private final IMessageSender fSender;
+    private final Set<EResultEncoding> fEncodings;
+    private final Executor fExecutor;
+
+    private final Logger fLogger;
+
+    /**
+     * Creates a sender sending over the given sender and counting totals
+     * using the given executor.
+     * None of the parameters may be null.
+     *
+     * @param sender sender to send messages with
+     * @param encodings encodings the receiving side can decode
+     * @param executor executor to count totals in
+     */
+    public DeferredTotal(final IMessageSender sender,
+        final Set<EResultEncoding> encodings, final Executor executor)
+    {
+        if(sender == null)
+        {
+            throw new NullPointerException("message sender was null");
+        }
+        if(encodings == null)
+        {
+            throw new NullPointerException("result encodings were null");
+        }
+        if(executor == null)
+        {
+            throw new NullPointerException("executor was null");
+        }
+
+        fSender = sender;
+        fEncodings = encodings;
+        fExecutor = executor;
+
+        fLogger = Logger.getLogger(this.getClass().getName());
+    }
+
+    /**
+     * Sends the given result flagged as having a deferred total and then
+     * counts the total in the background, sending it as soon as it is known.
+     * Neither result nor counter may be null.
+     *
+     * @param id ID of the query the result belongs to
+     * @param result result to send
+     * @param counter callable counting the total number of results
+     * @throws Exception if conversion or sending the result fail
+     */
+    public void send(final int id, final AResultSet<?> result,
+        final Callable<? extends Number> counter) throws Exception
+    {
+        if(counter == null)
+        {
+            throw new NullPointerException("counter was null");
+        }
+
+        result.setTotal(-1);
+        result.setTotalError(0.0);
+        result.setTotalDeferred(true);
+
+        final WebsockQuery response = new WebsockQuery(id, EQueryType.RESULT);
+        response.setPayload(ResultSetConverter.toMap(result,
+            new HashMap<String, Object>(), fEncodings));
+        fSender.sendMessage(response);
+
+        fExecutor.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                sendTotal(id, counter);
+            }
+        });
+    }
+
+    private void sendTotal(final int id,
+        final Callable<? extends Number> counter)
+    {
+        WebsockQuery message = null;
+        try
+        {
+            final Number total = counter.call();
+            message = createMessage(id,
+                new TotalEstimate(total.intValue(), 0.0));
+        }
+        catch(Exception e)
+        {
+            fLogger.log(Level.WARNING, "failed to count total", e);
+
+            message = new WebsockQuery(id, EQueryType.ERROR);
+            message.setPayload("failed to count total: " + e.getMessage());
+        }
+
+        try
+        {
+            fSender.sendMessage(message);
+        }
+        catch(Exception e)
+        {
+            fLogger.log(Level.SEVERE, "failed to send total", e);
+        }
+    }
+
+    /**
+     * Creates a total message for the query with the given ID.
+     * The estimate given must not be null.
+     *
+     * @param id ID of the query the total belongs to
+     * @param estimate exact or estimated total
+     * @return total message
+     */
+    public static WebsockQuery createMessage(final int id,
+        final TotalEstimate estimate)
+    {
+        final Map<String, Object> payload = new HashMap<String, Object>();
+        payload.put(WebsockConstants.TOTAL_RESULTS, estimate.getTotal());
+        if(estimate.getError() > 0.0)
+        {
+            payload.put(WebsockConstants.TOTAL_ERROR, estimate.getError());
+        }
+
+        final WebsockQuery message = new WebsockQuery(id, EQueryType.TOTAL);
+        message.setPayload(payload);
+        return message;
+    }
+
+    /**
+     * Sets the total received in the given total message on the given
+     * result, which was received with a deferred total.
+     * Neither of the parameters may be null.
+     *
+     * @param result result with a deferred total
+     * @param message received total message
+     */
+    public static void apply(final AResultSet<?> result,
+        final WebsockQuery message)
+    {
+        if(message.getType() != EQueryType.TOTAL)
+        {
+            throw new IllegalArgumentException("not a total message: "
+                + message.getType());
+        }
+
+        final Map<?, ?> payload = (Map<?, ?>)message.getPayload();
+        final Object error = payload.get(WebsockConstants.TOTAL_ERROR);
+
+        new TotalEstimate(
+            ((Number)payload.get(WebsockConstants.TOTAL_RESULTS)).intValue(),
+            error == null ? 0.0 : ((Number)error).doubleValue())
+            .applyTo(result);
+    }
+}
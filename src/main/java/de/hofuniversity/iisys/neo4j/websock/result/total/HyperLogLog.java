@@ -0,0 +1,180 @@
+/*
+ *  Copyright 2015 Institute of Information Systems, Hof University
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package de.hofuniversity.iisys.neo4j.websock.result.total;
+
+/**
+ * HyperLogLog sketch estimating the number of distinct elements added with
+ * fixed memory of 2^precision bytes.
+ * The standard error of estimates is about 1.04 / sqrt(2^precision).
+ * Not thread-safe.
+ */
+public class HyperLogLog
+{
+    /**
+     * Default precision, using 4096 registers for a standard error of about
+     * 1.6%.
+     */
+    public static final int DEFAULT_PRECISION = 12;
+
+    private static final int MIN_PRECISION = 4;
+    private static final int MAX_PRECISION = 16;
+
+    private final int fPrecision;
+    private final byte[] fRegisters;
+
+    /**
+     * Creates a sketch with the default precision.
+     */
+    public HyperLogLog()
+    {
+        this(DEFAULT_PRECISION);
+    }
+
+    /**
+     * Creates a sketch using 2^precision registers.
+     *
+     * @param precision number of index bits, between 4 and 16
+     */
+    public HyperLogLog(final int precision)
+    {
+        if(precision < MIN_PRECISION || precision > MAX_PRECISION)
+        {
+            throw new IllegalArgumentException(
+                "precision must be between 4 and 16");
+        }
+
+        fPrecision = precision;
+        fRegisters = new byte[1 << precision];
+    }
+
+    /**
+     * Adds an element using its hash code.
+     * Equal elements are only counted once.
+     *
+     * @param element element to add, may be null
+     */
+    public void add(final Object element)
+    {
+        addHash(element == null ? 0 : element.hashCode());
+    }
+
+    /**
+     * Adds an element by a hash value, which is mixed before use.
+     *
+     * @param hash hash value of the element
+     */
+    public void addHash(final long hash)
+    {
+        final long mixed = mix(hash);
+
+        final int index = (int)(mixed >>> (64 - fPrecision));
+        final long rest = mixed << fPrecision;
+        final int rank = rest == 0 ? 64 - fPrecision + 1
+            : Long.numberOfLeadingZeros(rest) + 1;
+
+        if(rank > fRegisters[index])
+        {
+            fRegisters[index] = (byte)rank;
+        }
+    }
+
+    /**
+     * Adds all elements counted by the given sketch to this one.
+     * The sketch given must not be null and have the same precision.
+     *
+     * @param other sketch to merge
+     */
+    public void merge(final HyperLogLog other)
+    {
+        if(other.fPrecision != fPrecision)
+        {
+            throw new IllegalArgumentException("precisions differ");
+        }
+
+        for(int i = 0; i < fRegisters.length; ++i)
+        {
+            if(other.fRegisters[i] > fRegisters[i])
+            {
+                fRegisters[i] = other.fRegisters[i];
+            }
+        }
+    }
+
+    /**
+     * @return estimated number of distinct elements added
+     */
+    public long estimate()
+    {
+        final int m = fRegisters.length;
+
+        double sum = 0.0;
+        int zeros = 0;
+        for(byte register : fRegisters)
+        {
+            sum += 1.0 / (1L << register);
+            if(register == 0)
+            {
+                ++zeros;
+            }
+        }
+
+        final double estimate = alpha(m) * m * m / sum;
+
+        //linear counting is more accurate for small cardinalities
+        if(estimate <= 2.5 * m && zeros > 0)
+        {
+            return Math.round(m * Math.log((double)m / zeros));
+        }
+
+        return Math.round(estimate);
+    }
+
+    /**
+     * @return relative standard error of estimates
+     */
+    public double getError()
+    {
+        return 1.04 / Math.sqrt(fRegisters.length);
+    }
+
+    private static double alpha(final int m)
+    {
+        switch(m)
+        {
+            case 16:
+                return 0.673;
+            case 32:
+                return 0.697;
+            case 64:
+                return 0.709;
+            default:
+                return 0.7213 / (1.0 + 1.079 / m);
+        }
+    }
+
+    private static long mix(long hash)
+    {
+        //offset keeps zero from mapping to zero, then MurmurHash3 finalizer
+        hash += 0x9e3779b97f4a7c15L;
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ *  Copyright 2015 Institute of Information Systems, Hof University
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package de.hofuniversity.iisys.neo4j.websock.result.total;
+
+import de.hofuniversity.iisys.neo4j.websock.result.AResultSet;
+
+/**
+ * Estimated total number of results with a relative error bound, computed
+ * from a random sample or a HyperLogLog sketch.
+ */
+public class TotalEstimate
+{
+    //z-score for a 95% confidence interval
+    private static final double Z_95 = 1.96;
+
+    private final int fTotal;
+    private final double fError;
+
+    /**
+     * Creates an estimate with the given total and relative error bound.
+     *
+     * @param total estimated total
+     * @param error relative error bound, 0 for an exact total
+     */
+    public TotalEstimate(final int total, final double error)
+    {
+        if(total < 0)
+        {
+            throw new IllegalArgumentException("total must not be negative");
+        }
+        if(error < 0.0)
+        {
+            throw new IllegalArgumentException("error must not be negative");
+        }
+
+        fTotal = total;
+        fError = error;
+    }
+
+    /**
+     * Extrapolates the total from a uniform random sample of the candidates
+     * a query's results are selected from, with a 95% confidence bound.
+     * If the whole population was sampled, the total is exact.
+     *
+     * @param population total number of candidates
+     * @param sampled number of candidates sampled
+     * @param matched number of sampled candidates that are results
+     * @return estimated total
+     */
+    public static TotalEstimate fromSample(final long population,
+        final int sampled, final int matched)
+    {
+        if(sampled <= 0 || matched < 0 || matched > sampled
+            || population < sampled)
+        {
+            throw new IllegalArgumentException("invalid sample: " + matched
+                + " of " + sampled + " in " + population);
+        }
+
+        if(sampled == population)
+        {
+            return new TotalEstimate(matched, 0.0);
+        }
+
+        final double ratio = (double)matched / sampled;
+        final long total = Math.round(ratio * population);
+
+        //binomial standard error with finite population correction
+        final double correction = (double)(population - sampled)
+            / (population - 1);
+        final double deviation = Math.sqrt(ratio * (1.0 - ratio) / sampled
+            * correction) * population;
+
+        //without matches the deviation is 0, use the rule of three instead
+        final double bound = matched == 0 ? 3.0 * population / sampled
+            : Z_95 * deviation;
+
+        return new TotalEstimate(clamp(total),
+            bound / Math.max(total, 1L));
+    }
+
+    /**
+     * Uses the number of distinct elements counted by the given sketch as
+     * total, with a 95% confidence bound.
+     * The sketch given must not be null.
+     *
+     * @param sketch sketch counting distinct results
+     * @return estimated total
+     */
+    public static TotalEstimate fromSketch(final HyperLogLog sketch)
+    {
+        return new TotalEstimate(clamp(sketch.estimate()),
+            Z_95 * sketch.getError());
+    }
+
+    private static int clamp(final long total)
+    {
+        return (int)Math.min(total, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Sets this estimate as the total of the given result.
+     * The result given must not be null.
+     *
+     * @param result result to set the total for
+     */
+    public void applyTo(final AResultSet<?> result)
+    {
+        result.setTotal(fTotal);
+        result.setTotalError(fError);
+        result.setTotalDeferred(false);
+    }
+
+    /**
+     * @return estimated total
+     */
+    public int getTotal()
+    {
+        return fTotal;
+    }
+
+    /**
+     * @return relative error bound, 0 for an exact total
+     */
+    public double getError()
+    {
+        return fError;
+    }
+}
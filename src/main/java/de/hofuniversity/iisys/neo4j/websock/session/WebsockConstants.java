@@ -45,6 +45,9 @@ public class WebsockConstants
     //batch flush size
     public static final String BATCH_SIZE = "batch_size";
 
+    //list of compact result encodings the client can decode
+    public static final String RESULT_ENCODING_OPTION = "result_encoding";
+
     //default realm
     public static final String DEFAULT_REALM = "default";
 
@@ -56,6 +59,9 @@ public class WebsockConstants
     public static final String QUERY_TYPE = "t";
     public static final String PAYLOAD = "l";
 
+    //remaining time in milliseconds until the query's deadline
+    public static final String TIMEOUT = "to";
+
     //connection test
     public static final String PING = "i";
     public static final String PONG = "o";
@@ -66,6 +72,10 @@ public class WebsockConstants
     //error
     public static final String ERROR = "err";
 
+    //error codes, as parameter of error messages
+    public static final String ERROR_CODE = "ec";
+    public static final String DEADLINE_EXCEEDED = "dlx";
+
     //authentication
     public static final String AUTHENTICATION = "a";
     public static final String USERNAME = "u";
@@ -74,6 +84,18 @@ public class WebsockConstants
     //session configuration
     public static final String CONFIGURATION = "c";
 
+    //several messages sent in one frame
+    public static final String MESSAGE_BATCH = "b";
+
+    //several queries answered in one message batch
+    public static final String QUERY_BATCH = "qb";
+
+    //total number of results sent after the result itself
+    public static final String RESULT_TOTAL = "rc";
+
+    //cancellation of the running query with the same query ID
+    public static final String CANCEL = "cx";
+
     //requests
     public static final String DIRECT_CYPHER = "d";
 
@@ -86,6 +108,8 @@ public class WebsockConstants
     public static final String DELETE_PROCEDURE = "e";
     public static final String STORE_PROCEDURE = "n";
     public static final String PROCEDURE_NAME = "n";
+    public static final String PROCEDURE_HANDLE = "h";
+    public static final String RESOLVE_PROCEDURE = "rh";
 
     //properties
 
@@ -96,10 +120,37 @@ public class WebsockConstants
     public static final String TABLE_RESULT = "t";
     public static final String TABLE_COLUMNS = "col";
 
+    //result encodings
+    public static final String RESULT_ENCODING = "enc";
+    public static final String COLUMNAR_ENCODING = "c";
+    public static final String DICTIONARY_ENCODING = "d";
+    public static final String SCHEMA_ENCODING = "k";
+
+    public static final String ROW_COUNT = "rn";
+    public static final String COLUMN_TYPES = "ct";
+    public static final String DICTIONARIES = "dic";
+
+    //column types
+    public static final String OBJECT_COLUMN = "o";
+    public static final String INT_COLUMN = "i";
+    public static final String LONG_COLUMN = "l";
+    public static final String DOUBLE_COLUMN = "d";
+    public static final String BOOLEAN_COLUMN = "b";
+    public static final String DELTA_INT_COLUMN = "zi";
+    public static final String DELTA_LONG_COLUMN = "zl";
+    public static final String XOR_DOUBLE_COLUMN = "x";
+
     //subset query/result
     public static final String SUBSET_START = "s_s";
     public static final String SUBSET_SIZE = "s_n";
     public static final String TOTAL_RESULTS = "tot";
+    public static final String CURSOR = "cur";
+    public static final String TOTAL_ERROR = "ter";
+    public static final String TOTAL_DEFERRED = "tdf";
+
+    //streamed result chunks
+    public static final String CHUNK_INDEX = "ch";
+    public static final String LAST_CHUNK = "end";
 
     //query options
     public static final String SORT_ORDER = "so";
@@ -116,6 +167,18 @@ public class WebsockConstants
     public static final String ENDS_WITH_FILTER = "ew";
     public static final String HAS_PROPERTY_FILTER = "h";
 
+    //fields or columns to keep, as list or comma-separated dot paths
+    public static final String PROJECTION = "pf";
+
+    //how the total number of results is determined
+    public static final String TOTAL_MODE = "tm";
+    public static final String EXACT_TOTAL = "x";
+    public static final String DEFERRED_TOTAL = "df";
+    public static final String APPROXIMATE_TOTAL = "ap";
+
+    //execute the queries of a query batch in parallel
+    public static final String PARALLEL_BATCH = "par";
+
     //pass the options map to a procedure
     public static final String OPTIONS_MAP = "$OPTIONS";
 }
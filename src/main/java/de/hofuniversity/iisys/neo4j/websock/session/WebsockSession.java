@@ -16,8 +16,13 @@
  */
 package de.hofuniversity.iisys.neo4j.websock.session;
 
+import java.util.EnumSet;
+import java.util.Set;
+
 import javax.websocket.Session;
 
+import de.hofuniversity.iisys.neo4j.websock.result.EResultEncoding;
+
 /**
  * Object containing information about and options set for a websocket session.
  */
@@ -38,6 +43,9 @@ public class WebsockSession
     private boolean fBatching = false;
     private int fBatchSize = 0;
 
+    private final Set<EResultEncoding> fResultEncodings =
+        EnumSet.noneOf(EResultEncoding.class);
+
     /**
      * Creates a session object for the given websocket session.
      * The given session may not be null.
@@ -166,6 +174,40 @@ public class WebsockSession
         this.fBatchSize = batchSize;
     }
 
+    /**
+     * @return set of result encodings the client can decode
+     */
+    public Set<EResultEncoding> getResultEncodings()
+    {
+        return fResultEncodings;
+    }
+
+    /**
+     * Replaces the set of result encodings the client can decode with the
+     * encodings denoted by the given codes.
+     * Unknown codes are ignored, null clears all encodings.
+     *
+     * @param codes list of result encoding codes
+     */
+    public void setResultEncodings(Iterable<?> codes)
+    {
+        fResultEncodings.clear();
+
+        if(codes != null)
+        {
+            EResultEncoding encoding = null;
+            for(Object code : codes)
+            {
+                encoding = EResultEncoding.getTypeFor(String.valueOf(code));
+
+                if(encoding != null)
+                {
+                    fResultEncodings.add(encoding);
+                }
+            }
+        }
+    }
+
     /**
      * @return websocket session object
      */
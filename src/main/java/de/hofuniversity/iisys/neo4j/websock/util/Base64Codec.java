@@ -0,0 +1,138 @@
+/*
+ *  Copyright 2015 Institute of Information Systems, Hof University
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package de.hofuniversity.iisys.neo4j.websock.util;
+
+/**
+ * Minimal Base64 codec, used to transfer packed binary data as Strings in
+ * all message formats.
+ */
+public class Base64Codec
+{
+    private static final char[] ALPHABET = ("ABCDEFGHIJKLMNOPQRSTUVWXYZ"
+        + "abcdefghijklmnopqrstuvwxyz0123456789+/").toCharArray();
+
+    private static final int[] VALUES = new int[128];
+
+    static
+    {
+        for(int i = 0; i < VALUES.length; ++i)
+        {
+            VALUES[i] = -1;
+        }
+        for(int i = 0; i < ALPHABET.length; ++i)
+        {
+            VALUES[ALPHABET[i]] = i;
+        }
+    }
+
+    /**
+     * Encodes the given binary data as a padded Base64 String.
+     * The given array must not be null.
+     *
+     * @param data binary data to encode
+     * @return Base64 representation of the data
+     */
+    public static String encode(final byte[] data)
+    {
+        final char[] out = new char[(data.length + 2) / 3 * 4];
+
+        int o = 0;
+        int bits = 0;
+        for(int i = 0; i < data.length; i += 3)
+        {
+            bits = (data[i] & 0xFF) << 16;
+            if(i + 1 < data.length)
+            {
+                bits |= (data[i + 1] & 0xFF) << 8;
+            }
+            if(i + 2 < data.length)
+            {
+                bits |= data[i + 2] & 0xFF;
+            }
+
+            out[o++] = ALPHABET[(bits >> 18) & 0x3F];
+            out[o++] = ALPHABET[(bits >> 12) & 0x3F];
+            out[o++] = i + 1 < data.length ? ALPHABET[(bits >> 6) & 0x3F] : '=';
+            out[o++] = i + 2 < data.length ? ALPHABET[bits & 0x3F] : '=';
+        }
+
+        return new String(out);
+    }
+
+    /**
+     * Decodes the given padded Base64 String into binary data.
+     * Throws an IllegalArgumentException if the String is not valid Base64.
+     * The given String must not be null.
+     *
+     * @param text Base64 String to decode
+     * @return decoded binary data
+     */
+    public static byte[] decode(final String text)
+    {
+        final int length = text.length();
+        if(length % 4 != 0)
+        {
+            throw new IllegalArgumentException("invalid Base64 length: "
+                + length);
+        }
+
+        int padding = 0;
+        if(length > 0 && text.charAt(length - 1) == '=')
+        {
+            ++padding;
+            if(text.charAt(length - 2) == '=')
+            {
+                ++padding;
+            }
+        }
+
+        final byte[] data = new byte[length / 4 * 3 - padding];
+
+        int d = 0;
+        int bits = 0;
+        for(int i = 0; i < length; i += 4)
+        {
+            bits = 0;
+            for(int j = 0; j < 4; ++j)
+            {
+                bits <<= 6;
+                final char c = text.charAt(i + j);
+                if(c != '=')
+                {
+                    if(c >= VALUES.length || VALUES[c] < 0)
+                    {
+                        throw new IllegalArgumentException(
+                            "invalid Base64 character: " + c);
+                    }
+                    bits |= VALUES[c];
+                }
+            }
+
+            data[d++] = (byte) (bits >> 16);
+            if(d < data.length)
+            {
+                data[d++] = (byte) (bits >> 8);
+            }
+            if(d < data.length)
+            {
+                data[d++] = (byte) bits;
+            }
+        }
+
+        return data;
+    }
+}
@@ -38,6 +38,26 @@ import de.hofuniversity.iisys.neo4j.websock.session.WebsockConstants;
  */
 public class BsonConverter
 {
+    private static final IElementMapper<Object, Object> fToPlain
+        = new IElementMapper<Object, Object>()
+    {
+        @Override
+        public Object map(final Object element)
+        {
+            return convertToValue(element);
+        }
+    };
+
+    private static final IElementMapper<Object, Object> fToBson
+        = new IElementMapper<Object, Object>()
+    {
+        @Override
+        public Object map(final Object element)
+        {
+            return convertFromValue(element);
+        }
+    };
+
     /**
      * Converts an incoming BSON object into a usable websocket query object.
      * Uses the native BSON objects as map and list implementations where
@@ -57,6 +77,12 @@ public class BsonConverter
         String typeString = bson.get(WebsockConstants.QUERY_TYPE).toString();
         query.setType(EQueryType.getTypeFor(typeString));
 
+        final Object timeout = bson.get(WebsockConstants.TIMEOUT);
+        if(timeout instanceof Number)
+        {
+            query.setTimeout(((Number)timeout).longValue());
+        }
+
         //parameters
         final Object paramObj = bson.get(WebsockConstants.PARAMETERS);
         if(paramObj != null)
@@ -68,32 +94,53 @@ public class BsonConverter
         final Object payload = bson.get(WebsockConstants.PAYLOAD);
         if(payload != null)
         {
-            query.setPayload(payload);
+            if(isBatch(query.getType())
+                && payload instanceof BasicBSONList)
+            {
+                query.setPayload(fromBsonList((BasicBSONList)payload));
+            }
+            else
+            {
+                query.setPayload(payload);
+            }
         }
 
         return query;
     }
 
-    private static Map<String, Object> convertToMap(final Object o)
+    private static boolean isBatch(final EQueryType type)
     {
-        final BSONObject bson = (BSONObject)o;
-        final Map<String, Object> map = new HashMap<String, Object>();
+        return type == EQueryType.BATCH || type == EQueryType.QUERY_BATCH;
+    }
 
-        Object obj = null;
-        for(String key : bson.keySet())
-        {
-            obj = bson.get(key);
+    //decodes nested messages of batches directly into queries
+    private static List<Object> fromBsonList(final BasicBSONList bson)
+    {
+        final List<Object> list = new ArrayList<Object>(bson.size());
 
-            if(obj instanceof BasicBSONList)
+        for(Object obj : bson)
+        {
+            if(obj instanceof BSONObject)
             {
-                obj = convertToList(obj);
+                list.add(fromBson((BSONObject)obj));
             }
-            else if(obj instanceof BSONObject)
+            else
             {
-                obj = convertToMap(obj);
+                list.add(obj);
             }
+        }
+
+        return list;
+    }
+
+    private static Map<String, Object> convertToMap(final Object o)
+    {
+        final BSONObject bson = (BSONObject)o;
+        final Map<String, Object> map = new HashMap<String, Object>();
 
-            map.put(key, obj);
+        for(String key : bson.keySet())
+        {
+            map.put(key, convertToValue(bson.get(key)));
         }
 
         return map;
@@ -102,25 +149,36 @@ public class BsonConverter
     private static List<Object> convertToList(final Object o)
     {
         final BasicBSONList bson = (BasicBSONList)o;
-        final List<Object> list = new ArrayList<Object>(bson.size());
 
-        for(Object obj : bson)
+        //split large lists into parallel tasks
+        if(bson.size() > ParallelLists.DEFAULT_THRESHOLD)
         {
-            if(obj instanceof BasicBSONList)
-            {
-                obj = convertToList(obj);
-            }
-            else if(obj instanceof BSONObject)
-            {
-                obj = convertToMap(obj);
-            }
+            return ParallelLists.map(bson, fToPlain);
+        }
 
-            list.add(obj);
+        final List<Object> list = new ArrayList<Object>(bson.size());
+        for(Object obj : bson)
+        {
+            list.add(convertToValue(obj));
         }
 
         return list;
     }
 
+    private static Object convertToValue(final Object obj)
+    {
+        if(obj instanceof BasicBSONList)
+        {
+            return convertToList(obj);
+        }
+        else if(obj instanceof BSONObject)
+        {
+            return convertToMap(obj);
+        }
+
+        return obj;
+    }
+
     /**
      * Converts a generic websocket query into BSON.
      * Detects maps and lists that are already in the proper format and lets
@@ -139,6 +197,12 @@ public class BsonConverter
         bson.put(WebsockConstants.QUERY_ID, query.getId());
         bson.put(WebsockConstants.QUERY_TYPE, query.getType().getCode());
 
+        final long timeout = query.getTimeout();
+        if(timeout > 0)
+        {
+            bson.put(WebsockConstants.TIMEOUT, timeout);
+        }
+
         //parameters
         final Map<String, Object> params = query.getParameters();
         if(params != null && !params.isEmpty())
@@ -174,54 +238,57 @@ public class BsonConverter
         return bson;
     }
 
-    @SuppressWarnings("unchecked")
     private static BSONObject convertFromMap(final Map<String, ?> map)
     {
         final BasicBSONObject bson = new BasicBSONObject(map.size());
 
-        Object o = null;
         for(Entry<String, ?> mapE : map.entrySet())
         {
-            o = mapE.getValue();
-
-            if(!(o instanceof BasicBSONObject)
-                && o instanceof Map)
-            {
-                o = convertFromMap((Map<String, ?>)o);
-            }
-            else if(!(o instanceof BasicBSONList)
-                && o instanceof List)
-            {
-                o = convertFromList((List<?>)o);
-            }
-
-            bson.put(mapE.getKey(), o);
+            bson.put(mapE.getKey(), convertFromValue(mapE.getValue()));
         }
 
         return bson;
     }
 
-    @SuppressWarnings("unchecked")
     private static BSONObject convertFromList(final List<?> list)
     {
         final BasicBSONList bson = new BasicBSONList();
 
-        for(Object o : list)
+        //split large lists into parallel tasks
+        if(list.size() > ParallelLists.DEFAULT_THRESHOLD)
         {
-            if(!(o instanceof BasicBSONObject)
-                && o instanceof Map)
-            {
-                o = convertFromMap((Map<String, ?>)o);
-            }
-            else if(!(o instanceof BasicBSONList)
-                && o instanceof List)
-            {
-                o = convertFromList((List<?>)o);
-            }
+            bson.addAll(ParallelLists.map(list, fToBson));
+            return bson;
+        }
 
-            bson.add(o);
+        for(Object o : list)
+        {
+            bson.add(convertFromValue(o));
         }
 
         return bson;
     }
+
+    @SuppressWarnings("unchecked")
+    private static Object convertFromValue(final Object o)
+    {
+        //nested messages, such as in batches
+        if(o instanceof WebsockQuery)
+        {
+            return toBson((WebsockQuery)o);
+        }
+
+        if(!(o instanceof BasicBSONObject)
+            && o instanceof Map)
+        {
+            return convertFromMap((Map<String, ?>)o);
+        }
+        else if(!(o instanceof BasicBSONList)
+            && o instanceof List)
+        {
+            return convertFromList((List<?>)o);
+        }
+
+        return o;
+    }
 }
@@ -0,0 +1,373 @@
+/*
+ *  Copyright 2015 Institute of Information Systems, Hof University
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package de.hofuniversity.iisys.neo4j.websock.util;
+
+import java.nio.ByteBuffer;
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+
+import de.hofuniversity.iisys.neo4j.websock.session.WebsockConstants;
+
+/**
+ * Codec encoding a single result column as a typed array and back.
+ * Columns only containing non-null values of the same primitive wrapper type
+ * are packed into binary arrays, all other columns are passed through as
+ * generic lists.
+ * Integral columns are stored as variable length deltas, floating point
+ * columns using XOR compression (see NumericCodec).
+ * Packed arrays are transferred as Base64 Strings, since not all message
+ * formats support binary data.
+ */
+public class ColumnCodec
+{
+    /**
+     * Determines the most compact column type code for the given values.
+     * The list given must not be null.
+     *
+     * @param values values of the column
+     * @return column type code
+     */
+    public static String getType(final List<?> values)
+    {
+        Class<?> clazz = null;
+        for(Object o : values)
+        {
+            if(o == null)
+            {
+                return WebsockConstants.OBJECT_COLUMN;
+            }
+            else if(clazz == null)
+            {
+                clazz = o.getClass();
+            }
+            else if(clazz != o.getClass())
+            {
+                return WebsockConstants.OBJECT_COLUMN;
+            }
+        }
+
+        String type = WebsockConstants.OBJECT_COLUMN;
+        if(clazz == Integer.class)
+        {
+            type = WebsockConstants.DELTA_INT_COLUMN;
+        }
+        else if(clazz == Long.class)
+        {
+            type = WebsockConstants.DELTA_LONG_COLUMN;
+        }
+        else if(clazz == Double.class)
+        {
+            type = WebsockConstants.XOR_DOUBLE_COLUMN;
+        }
+        else if(clazz == Boolean.class)
+        {
+            type = WebsockConstants.BOOLEAN_COLUMN;
+        }
+
+        return type;
+    }
+
+    /**
+     * Encodes the given column values using the given column type.
+     * None of the parameters may be null.
+     *
+     * @param type column type code as determined by getType
+     * @param values values of the column
+     * @return encoded column
+     */
+    public static Object encode(final String type, final List<?> values)
+    {
+        final int size = values.size();
+        ByteBuffer buffer = null;
+
+        if(WebsockConstants.DELTA_INT_COLUMN.equals(type)
+            || WebsockConstants.DELTA_LONG_COLUMN.equals(type))
+        {
+            final long[] longs = new long[size];
+            int i = 0;
+            for(Object o : values)
+            {
+                longs[i++] = ((Number)o).longValue();
+            }
+            buffer = ByteBuffer.wrap(NumericCodec.encodeDeltas(longs));
+        }
+        else if(WebsockConstants.XOR_DOUBLE_COLUMN.equals(type))
+        {
+            final double[] doubles = new double[size];
+            int i = 0;
+            for(Object o : values)
+            {
+                doubles[i++] = (Double)o;
+            }
+            buffer = ByteBuffer.wrap(NumericCodec.encodeXor(doubles));
+        }
+        else if(WebsockConstants.INT_COLUMN.equals(type))
+        {
+            buffer = ByteBuffer.allocate(size * 4);
+            for(Object o : values)
+            {
+                buffer.putInt((Integer)o);
+            }
+        }
+        else if(WebsockConstants.LONG_COLUMN.equals(type))
+        {
+            buffer = ByteBuffer.allocate(size * 8);
+            for(Object o : values)
+            {
+                buffer.putLong((Long)o);
+            }
+        }
+        else if(WebsockConstants.DOUBLE_COLUMN.equals(type))
+        {
+            buffer = ByteBuffer.allocate(size * 8);
+            for(Object o : values)
+            {
+                buffer.putDouble((Double)o);
+            }
+        }
+        else if(WebsockConstants.BOOLEAN_COLUMN.equals(type))
+        {
+            final byte[] bits = new byte[(size + 7) / 8];
+            int i = 0;
+            for(Object o : values)
+            {
+                if((Boolean)o)
+                {
+                    bits[i >> 3] |= 1 << (i & 7);
+                }
+                ++i;
+            }
+            buffer = ByteBuffer.wrap(bits);
+        }
+        else
+        {
+            return values;
+        }
+
+        return Base64Codec.encode(buffer.array());
+    }
+
+    /**
+     * Decodes a received column of the given type into a list of values.
+     * Packed arrays are wrapped in read-only list views without boxing them
+     * in advance.
+     * None of the parameters may be null.
+     *
+     * @param type column type code
+     * @param data received column data
+     * @param size number of values in the column
+     * @return list of column values
+     */
+    @SuppressWarnings("unchecked")
+    public static List<Object> decode(final String type, final Object data,
+        final int size)
+    {
+        if(WebsockConstants.OBJECT_COLUMN.equals(type))
+        {
+            return (List<Object>) data;
+        }
+
+        final byte[] bytes = Base64Codec.decode(data.toString());
+
+        final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        List<Object> column = null;
+
+        if(WebsockConstants.DELTA_INT_COLUMN.equals(type))
+        {
+            final long[] longs = NumericCodec.decodeDeltas(bytes, size);
+            final int[] values = new int[size];
+            for(int i = 0; i < size; ++i)
+            {
+                values[i] = (int) longs[i];
+            }
+            column = new IntColumn(values);
+        }
+        else if(WebsockConstants.DELTA_LONG_COLUMN.equals(type))
+        {
+            column = new LongColumn(NumericCodec.decodeDeltas(bytes, size));
+        }
+        else if(WebsockConstants.XOR_DOUBLE_COLUMN.equals(type))
+        {
+            column = new DoubleColumn(NumericCodec.decodeXor(bytes, size));
+        }
+        else if(WebsockConstants.INT_COLUMN.equals(type))
+        {
+            final int[] values = new int[size];
+            buffer.asIntBuffer().get(values);
+            column = new IntColumn(values);
+        }
+        else if(WebsockConstants.LONG_COLUMN.equals(type))
+        {
+            final long[] values = new long[size];
+            buffer.asLongBuffer().get(values);
+            column = new LongColumn(values);
+        }
+        else if(WebsockConstants.DOUBLE_COLUMN.equals(type))
+        {
+            final double[] values = new double[size];
+            buffer.asDoubleBuffer().get(values);
+            column = new DoubleColumn(values);
+        }
+        else if(WebsockConstants.BOOLEAN_COLUMN.equals(type))
+        {
+            column = new BooleanColumn(bytes, size);
+        }
+        else
+        {
+            throw new IllegalArgumentException("unknown column type: " + type);
+        }
+
+        return column;
+    }
+
+    private static class IntColumn extends AbstractList<Object>
+        implements RandomAccess, INumericColumn
+    {
+        private final int[] fValues;
+
+        public IntColumn(int[] values)
+        {
+            fValues = values;
+        }
+
+        @Override
+        public Object get(int index)
+        {
+            return fValues[index];
+        }
+
+        @Override
+        public int size()
+        {
+            return fValues.length;
+        }
+
+        @Override
+        public long getLong(int index)
+        {
+            return fValues[index];
+        }
+
+        @Override
+        public double getDouble(int index)
+        {
+            return fValues[index];
+        }
+    }
+
+    private static class LongColumn extends AbstractList<Object>
+        implements RandomAccess, INumericColumn
+    {
+        private final long[] fValues;
+
+        public LongColumn(long[] values)
+        {
+            fValues = values;
+        }
+
+        @Override
+        public Object get(int index)
+        {
+            return fValues[index];
+        }
+
+        @Override
+        public int size()
+        {
+            return fValues.length;
+        }
+
+        @Override
+        public long getLong(int index)
+        {
+            return fValues[index];
+        }
+
+        @Override
+        public double getDouble(int index)
+        {
+            return fValues[index];
+        }
+    }
+
+    private static class DoubleColumn extends AbstractList<Object>
+        implements RandomAccess, INumericColumn
+    {
+        private final double[] fValues;
+
+        public DoubleColumn(double[] values)
+        {
+            fValues = values;
+        }
+
+        @Override
+        public Object get(int index)
+        {
+            return fValues[index];
+        }
+
+        @Override
+        public int size()
+        {
+            return fValues.length;
+        }
+
+        @Override
+        public long getLong(int index)
+        {
+            return (long) fValues[index];
+        }
+
+        @Override
+        public double getDouble(int index)
+        {
+            return fValues[index];
+        }
+    }
+
+    private static class BooleanColumn extends AbstractList<Object>
+        implements RandomAccess
+    {
+        private final byte[] fBits;
+        private final int fSize;
+
+        public BooleanColumn(byte[] bits, int size)
+        {
+            fBits = bits;
+            fSize = size;
+        }
+
+        @Override
+        public Object get(int index)
+        {
+            if(index < 0 || index >= fSize)
+            {
+                throw new IndexOutOfBoundsException("index " + index
+                    + " of " + fSize);
+            }
+
+            return (fBits[index >> 3] & (1 << (index & 7))) != 0;
+        }
+
+        @Override
+        public int size()
+        {
+            return fSize;
+        }
+    }
+}
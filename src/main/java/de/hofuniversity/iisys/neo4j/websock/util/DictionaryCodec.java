@@ -0,0 +1,315 @@
+/*
+ *  Copyright 2015 Institute of Information Systems, Hof University
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package de.hofuniversity.iisys.neo4j.websock.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * Codec replacing the values of low-cardinality String columns and map
+ * fields with integer codes referencing a per-result dictionary.
+ * When decoding, all occurrences of a value share the same String instance.
+ * Null values are encoded as -1.
+ */
+public class DictionaryCodec
+{
+    /**
+     * Minimum number of values for a column to be considered.
+     */
+    public static final int MIN_VALUES = 8;
+
+    /**
+     * Maximum number of distinct values in a dictionary.
+     */
+    public static final int MAX_ENTRIES = 1024;
+
+    /**
+     * Minimum average number of occurrences per distinct value.
+     */
+    public static final int MIN_REPETITIONS = 4;
+
+    private static final Integer NULL_CODE = -1;
+
+    /**
+     * Creates a dictionary for the given values if they are all Strings or
+     * null and have a low enough cardinality to benefit from dictionary
+     * encoding.
+     * The list given must not be null.
+     *
+     * @param values values of a column or field
+     * @return dictionary of distinct values or null if not applicable
+     */
+    public static List<String> getDictionary(final List<?> values)
+    {
+        final Map<String, Integer> codes = new LinkedHashMap<String, Integer>();
+
+        int count = 0;
+        for(Object o : values)
+        {
+            if(o == null)
+            {
+                continue;
+            }
+            else if(!(o instanceof String))
+            {
+                return null;
+            }
+
+            ++count;
+            if(!codes.containsKey(o))
+            {
+                if(codes.size() == MAX_ENTRIES)
+                {
+                    return null;
+                }
+                codes.put((String)o, codes.size());
+            }
+        }
+
+        if(count < MIN_VALUES
+            || codes.size() * MIN_REPETITIONS > count)
+        {
+            return null;
+        }
+
+        return new ArrayList<String>(codes.keySet());
+    }
+
+    /**
+     * Replaces the given values with their codes in the given dictionary.
+     * None of the parameters may be null.
+     *
+     * @param values values to encode
+     * @param dictionary dictionary containing all values
+     * @return list of integer codes
+     */
+    public static List<Object> encode(final List<?> values,
+        final List<String> dictionary)
+    {
+        final Map<String, Integer> codes = getCodes(dictionary);
+        final List<Object> encoded = new ArrayList<Object>(values.size());
+
+        for(Object o : values)
+        {
+            encoded.add(o == null ? NULL_CODE : codes.get(o));
+        }
+
+        return encoded;
+    }
+
+    /**
+     * Replaces the given codes with the shared String instances of the given
+     * dictionary.
+     * None of the parameters may be null.
+     *
+     * @param codes integer codes to decode
+     * @param dictionary received dictionary
+     * @return list of decoded Strings
+     */
+    public static List<Object> decode(final List<?> codes,
+        final List<?> dictionary)
+    {
+        final String[] entries = getEntries(dictionary);
+        final Object[] decoded = new Object[codes.size()];
+
+        int i = 0;
+        for(Object code : codes)
+        {
+            decoded[i++] = lookup(code, entries);
+        }
+
+        return Arrays.asList(decoded);
+    }
+
+    /**
+     * Encodes low-cardinality String fields in a list of maps, copying all
+     * maps. The dictionaries created are added to the given map, keyed by
+     * field name.
+     * Returns null if the list contains non-map entries or no field can be
+     * encoded.
+     * None of the parameters may be null.
+     *
+     * @param list list of maps to encode
+     * @param dictionaries map to add the dictionaries to
+     * @return list of encoded map copies or null
+     */
+    @SuppressWarnings("unchecked")
+    public static List<Object> encodeMaps(final List<?> list,
+        final Map<String, Object> dictionaries)
+    {
+        //collect values per field
+        final Map<String, List<Object>> fields =
+            new LinkedHashMap<String, List<Object>>();
+
+        List<Object> values = null;
+        for(Object o : list)
+        {
+            if(!(o instanceof Map))
+            {
+                return null;
+            }
+
+            for(Entry<String, ?> mapE : ((Map<String, ?>)o).entrySet())
+            {
+                values = fields.get(mapE.getKey());
+                if(values == null)
+                {
+                    values = new ArrayList<Object>();
+                    fields.put(mapE.getKey(), values);
+                }
+                values.add(mapE.getValue());
+            }
+        }
+
+        //determine encodable fields
+        final Map<String, Map<String, Integer>> codes =
+            new LinkedHashMap<String, Map<String, Integer>>();
+
+        List<String> dictionary = null;
+        for(Entry<String, List<Object>> fieldE : fields.entrySet())
+        {
+            dictionary = getDictionary(fieldE.getValue());
+            if(dictionary != null)
+            {
+                dictionaries.put(fieldE.getKey(), dictionary);
+                codes.put(fieldE.getKey(), getCodes(dictionary));
+            }
+        }
+
+        if(codes.isEmpty())
+        {
+            return null;
+        }
+
+        //copy maps, replacing values
+        final List<Object> encoded = new ArrayList<Object>(list.size());
+
+        Map<String, Object> copy = null;
+        Map<String, Integer> fieldCodes = null;
+        for(Object o : list)
+        {
+            copy = new LinkedHashMap<String, Object>((Map<String, Object>)o);
+
+            for(Entry<String, Object> mapE : copy.entrySet())
+            {
+                fieldCodes = codes.get(mapE.getKey());
+                if(fieldCodes != null)
+                {
+                    mapE.setValue(mapE.getValue() == null ? NULL_CODE
+                        : fieldCodes.get(mapE.getValue()));
+                }
+            }
+
+            encoded.add(copy);
+        }
+
+        return encoded;
+    }
+
+    /**
+     * Decodes dictionary encoded fields in a received list of maps, copying
+     * all maps.
+     * None of the parameters may be null.
+     *
+     * @param list received list of maps
+     * @param dictionaries received dictionaries, keyed by field name
+     * @return list of decoded maps
+     */
+    @SuppressWarnings("unchecked")
+    public static List<Object> decodeMaps(final List<?> list,
+        final Map<String, ?> dictionaries)
+    {
+        final Map<String, String[]> entries = new HashMap<String, String[]>();
+        for(Entry<String, ?> dictE : dictionaries.entrySet())
+        {
+            entries.put(dictE.getKey(), getEntries((List<?>)dictE.getValue()));
+        }
+
+        final List<Object> decoded = new ArrayList<Object>(list.size());
+
+        Map<String, Object> copy = null;
+        String[] fieldEntries = null;
+        for(Object o : list)
+        {
+            copy = new LinkedHashMap<String, Object>((Map<String, Object>)o);
+
+            for(Entry<String, Object> mapE : copy.entrySet())
+            {
+                fieldEntries = entries.get(mapE.getKey());
+                if(fieldEntries != null)
+                {
+                    mapE.setValue(lookup(mapE.getValue(), fieldEntries));
+                }
+            }
+
+            decoded.add(copy);
+        }
+
+        return decoded;
+    }
+
+    /**
+     * Converts a received dictionary into an array of String instances to
+     * share between all decoded values.
+     * The list given must not be null.
+     *
+     * @param dictionary received dictionary
+     * @return array of dictionary entries
+     */
+    public static String[] getEntries(final List<?> dictionary)
+    {
+        final String[] entries = new String[dictionary.size()];
+
+        int i = 0;
+        for(Object o : dictionary)
+        {
+            entries[i++] = o.toString();
+        }
+
+        return entries;
+    }
+
+    /**
+     * @param code received integer code
+     * @param entries dictionary entries
+     * @return String referenced by the code or null
+     */
+    public static String lookup(final Object code, final String[] entries)
+    {
+        final int index = ((Number)code).intValue();
+        return index < 0 ? null : entries[index];
+    }
+
+    private static Map<String, Integer> getCodes(final List<String> dictionary)
+    {
+        final Map<String, Integer> codes =
+            new HashMap<String, Integer>(dictionary.size() * 2);
+
+        int i = 0;
+        for(String entry : dictionary)
+        {
+            codes.put(entry, i++);
+        }
+
+        return codes;
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ *  Copyright 2015 Institute of Information Systems, Hof University
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package de.hofuniversity.iisys.neo4j.websock.util;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Utility releasing the memory of direct and memory mapped buffers
+ * immediately instead of waiting for the buffer's cleaner to run after it
+ * has been garbage collected.
+ * Uses Unsafe.invokeCleaner on Java 9 and later and the buffer's internal
+ * cleaner on older versions. If neither is accessible, buffers are left to
+ * the garbage collector.
+ */
+public class DirectBuffers
+{
+    private static final Object fUnsafe;
+    private static final Method fInvokeCleaner;
+
+    static
+    {
+        Object unsafe = null;
+        Method invokeCleaner = null;
+
+        try
+        {
+            final Class<?> clazz = Class.forName("sun.misc.Unsafe");
+            invokeCleaner = clazz.getMethod("invokeCleaner",
+                ByteBuffer.class);
+
+            final Field field = clazz.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            unsafe = field.get(null);
+        }
+        catch(Exception e)
+        {
+            //older Java version, internal cleaner is used instead
+            invokeCleaner = null;
+        }
+
+        fUnsafe = unsafe;
+        fInvokeCleaner = invokeCleaner;
+    }
+
+    /**
+     * Releases the memory held by the given buffer. The buffer must not be
+     * used afterwards. Heap buffers and null are ignored.
+     *
+     * @param buffer buffer to release
+     */
+    public static void free(final ByteBuffer buffer)
+    {
+        if(buffer == null || !buffer.isDirect())
+        {
+            return;
+        }
+
+        try
+        {
+            if(fInvokeCleaner != null)
+            {
+                fInvokeCleaner.invoke(fUnsafe, buffer);
+            }
+            else
+            {
+                final Method cleanerMethod =
+                    buffer.getClass().getMethod("cleaner");
+                cleanerMethod.setAccessible(true);
+                final Object cleaner = cleanerMethod.invoke(buffer);
+                if(cleaner != null)
+                {
+                    cleaner.getClass().getMethod("clean").invoke(cleaner);
+                }
+            }
+        }
+        catch(Exception e)
+        {
+            Logger.getLogger(DirectBuffers.class.getName()).log(Level.FINE,
+                "could not release buffer, leaving it to the garbage "
+                + "collector", e);
+        }
+    }
+}
@@ -0,0 +1,290 @@
+/*
+ *  Copyright 2015 Institute of Information Systems, Hof University
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package de.hofuniversity.iisys.neo4j.websock.util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import de.hofuniversity.iisys.neo4j.websock.result.AResultSet;
+import de.hofuniversity.iisys.neo4j.websock.result.EResultType;
+import de.hofuniversity.iisys.neo4j.websock.result.ListResult;
+import de.hofuniversity.iisys.neo4j.websock.result.SingleResult;
+import de.hofuniversity.iisys.neo4j.websock.result.TableResult;
+import de.hofuniversity.iisys.neo4j.websock.session.WebsockConstants;
+
+/**
+ * Projection reducing maps and tables to a set of fields or columns.
+ * Fields are given as paths with segments separated by dots, selecting
+ * values in nested maps; paths into lists are applied to each map in the
+ * list. Selecting a field includes all its nested values.
+ */
+public class FieldProjection
+{
+    private static final String SEPARATOR = "\\.";
+
+    private final Map<String, FieldProjection> fFields;
+
+    /**
+     * Creates a projection for the given field paths.
+     * The collection given must not be null or empty.
+     *
+     * @param paths paths of fields to keep
+     */
+    public FieldProjection(final Collection<String> paths)
+    {
+        if(paths == null || paths.isEmpty())
+        {
+            throw new IllegalArgumentException("no fields given");
+        }
+
+        fFields = new LinkedHashMap<String, FieldProjection>();
+
+        for(String path : paths)
+        {
+            add(path.split(SEPARATOR), 0);
+        }
+    }
+
+    private FieldProjection()
+    {
+        fFields = new LinkedHashMap<String, FieldProjection>();
+    }
+
+    /**
+     * Reads a projection from the given query parameters, either as a list
+     * of field paths or as a single comma-separated string.
+     * The map given must not be null.
+     *
+     * @param params query parameters
+     * @return projection or null if none was requested
+     */
+    public static FieldProjection fromParameters(
+        final Map<String, Object> params)
+    {
+        final Object value = params.get(WebsockConstants.PROJECTION);
+
+        final List<String> paths = new ArrayList<String>();
+        if(value instanceof Collection)
+        {
+            for(Object o : (Collection<?>)value)
+            {
+                paths.add(o.toString());
+            }
+        }
+        else if(value != null)
+        {
+            for(String path : value.toString().split(","))
+            {
+                if(!path.trim().isEmpty())
+                {
+                    paths.add(path.trim());
+                }
+            }
+        }
+
+        if(paths.isEmpty())
+        {
+            return null;
+        }
+        return new FieldProjection(paths);
+    }
+
+    private void add(final String[] segments, final int index)
+    {
+        final String field = segments[index];
+        final boolean last = index == segments.length - 1;
+
+        if(fFields.containsKey(field))
+        {
+            final FieldProjection child = fFields.get(field);
+
+            //already selected completely
+            if(child == null)
+            {
+                return;
+            }
+            else if(last)
+            {
+                fFields.put(field, null);
+            }
+            else
+            {
+                child.add(segments, index + 1);
+            }
+        }
+        else if(last)
+        {
+            fFields.put(field, null);
+        }
+        else
+        {
+            final FieldProjection child = new FieldProjection();
+            child.add(segments, index + 1);
+            fFields.put(field, child);
+        }
+    }
+
+    /**
+     * @return top level fields in the order they were first given
+     */
+    public List<String> getFields()
+    {
+        return new ArrayList<String>(fFields.keySet());
+    }
+
+    /**
+     * Creates a new map containing only the projected fields of the given
+     * map; missing fields are left out.
+     * The map given must not be null.
+     *
+     * @param map map to project
+     * @return new projected map
+     */
+    public Map<String, Object> apply(final Map<?, ?> map)
+    {
+        final Map<String, Object> result =
+            new LinkedHashMap<String, Object>();
+
+        for(Entry<String, FieldProjection> fieldE : fFields.entrySet())
+        {
+            final String field = fieldE.getKey();
+            if(map.containsKey(field))
+            {
+                result.put(field, applyNested(fieldE.getValue(),
+                    map.get(field)));
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Creates a new result set containing only the projected fields or
+     * columns of the given one, keeping its subset information.
+     * Lists are projected element by element, leaving values that are not
+     * maps unchanged.
+     * The result set given must not be null.
+     *
+     * @param result result set to project
+     * @return new projected result set
+     */
+    public AResultSet<?> apply(final AResultSet<?> result)
+    {
+        final AResultSet<?> projected;
+        final EResultType type = result.getType();
+
+        if(type == EResultType.TABLE)
+        {
+            projected = applyTable((TableResult)result);
+        }
+        else if(type == EResultType.LIST)
+        {
+            projected = new ListResult(applyList(
+                ((ListResult)result).getResults()));
+        }
+        else
+        {
+            projected = new SingleResult(apply(
+                ((SingleResult)result).getResults()));
+        }
+
+        projected.setFirst(result.getFirst());
+        projected.setMax(result.getMax());
+        projected.setTotal(result.getTotal());
+        projected.setCursor(result.getCursor());
+        projected.setTotalError(result.getTotalError());
+        projected.setTotalDeferred(result.isTotalDeferred());
+        return projected;
+    }
+
+    private TableResult applyTable(final TableResult table)
+    {
+        final List<String> columns = new ArrayList<String>();
+        final List<Integer> indices = new ArrayList<Integer>();
+        final List<FieldProjection> nested = new ArrayList<FieldProjection>();
+
+        for(Entry<String, FieldProjection> fieldE : fFields.entrySet())
+        {
+            final int index = table.getColumnIndex(fieldE.getKey());
+            if(index >= 0)
+            {
+                columns.add(fieldE.getKey());
+                indices.add(index);
+                nested.add(fieldE.getValue());
+            }
+        }
+
+        final List<List<Object>> rows =
+            new ArrayList<List<Object>>(table.getSize());
+        for(List<Object> row : table.getResults())
+        {
+            final List<Object> newRow = new ArrayList<Object>(columns.size());
+            for(int i = 0; i < indices.size(); ++i)
+            {
+                newRow.add(applyNested(nested.get(i),
+                    row.get(indices.get(i))));
+            }
+            rows.add(newRow);
+        }
+
+        return new TableResult(columns, rows);
+    }
+
+    private List<Object> applyList(final List<?> list)
+    {
+        final List<Object> result = new ArrayList<Object>(list.size());
+
+        for(Object o : list)
+        {
+            if(o instanceof Map)
+            {
+                result.add(apply((Map<?, ?>)o));
+            }
+            else
+            {
+                result.add(o);
+            }
+        }
+
+        return result;
+    }
+
+    private static Object applyNested(final FieldProjection projection,
+        final Object value)
+    {
+        //whole value selected
+        if(projection == null)
+        {
+            return value;
+        }
+
+        if(value instanceof Map)
+        {
+            return projection.apply((Map<?, ?>)value);
+        }
+        else if(value instanceof List)
+        {
+            return projection.applyList((List<?>)value);
+        }
+
+        return value;
+    }
+}
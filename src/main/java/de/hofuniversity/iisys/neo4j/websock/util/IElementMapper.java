@@ -0,0 +1,34 @@
+/*
+ *  Copyright 2015 Institute of Information Systems, Hof University
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package de.hofuniversity.iisys.neo4j.websock.util;
+
+/**
+ * Function converting a single list element, used for parallel conversion of
+ * large lists.
+ * Implementations must be thread-safe.
+ *
+ * @param <S> source element type
+ * @param <T> target element type
+ */
+public interface IElementMapper<S, T>
+{
+    /**
+     * @param element element to convert, may be null
+     * @return converted element
+     */
+    public T map(S element);
+}
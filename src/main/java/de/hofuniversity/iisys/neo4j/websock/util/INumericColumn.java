@@ -0,0 +1,36 @@
+/*
+ *  Copyright 2015 Institute of Information Systems, Hof University
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package de.hofuniversity.iisys.neo4j.websock.util;
+
+/**
+ * Decoded column backed by a primitive array, giving access to its values
+ * without boxing them.
+ */
+public interface INumericColumn
+{
+    /**
+     * @param index index of the value
+     * @return value at the given index as a long
+     */
+    public long getLong(int index);
+
+    /**
+     * @param index index of the value
+     * @return value at the given index as a double
+     */
+    public double getDouble(int index);
+}
@@ -17,6 +17,7 @@
 package de.hofuniversity.iisys.neo4j.websock.util;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
@@ -39,6 +40,40 @@ import de.hofuniversity.iisys.neo4j.websock.session.WebsockConstants;
  */
 public class JsonConverter
 {
+    private static final IElementMapper<Object, Object> fToValue
+        = new IElementMapper<Object, Object>()
+    {
+        @Override
+        public Object map(final Object element)
+        {
+            try
+            {
+                return convertToValue(element);
+            }
+            catch(JSONException e)
+            {
+                throw new WrappedJSONException(e);
+            }
+        }
+    };
+
+    private static final IElementMapper<Object, Object> fFromValue
+        = new IElementMapper<Object, Object>()
+    {
+        @Override
+        public Object map(final Object element)
+        {
+            try
+            {
+                return convertFromValue(element);
+            }
+            catch(JSONException e)
+            {
+                throw new WrappedJSONException(e);
+            }
+        }
+    };
+
     /**
      * Converts an incoming JSON object into a usable websocket query object.
      * Uses the JSON wrapper objects as map and list implementations where
@@ -57,6 +92,12 @@ public class JsonConverter
         String typeString = json.opt(WebsockConstants.QUERY_TYPE).toString();
         query.setType(EQueryType.getTypeFor(typeString));
 
+        final Object timeout = json.opt(WebsockConstants.TIMEOUT);
+        if(timeout instanceof Number)
+        {
+            query.setTimeout(((Number)timeout).longValue());
+        }
+
         //parameters
         final Object paramObj = json.opt(WebsockConstants.PARAMETERS);
         if(paramObj != null)
@@ -70,7 +111,14 @@ public class JsonConverter
         {
             if(payload instanceof JSONArray)
             {
-                payload = new JSONList((JSONArray) payload);
+                if(isBatch(query.getType()))
+                {
+                    payload = fromJsonList((JSONArray) payload);
+                }
+                else
+                {
+                    payload = new JSONList((JSONArray) payload);
+                }
             }
             else if(payload instanceof JSONObject)
             {
@@ -83,31 +131,48 @@ public class JsonConverter
         return query;
     }
 
-    private static Map<String, Object> convertToMap(final Object o)
+    private static boolean isBatch(final EQueryType type)
+    {
+        return type == EQueryType.BATCH || type == EQueryType.QUERY_BATCH;
+    }
+
+    //decodes nested messages of batches directly into queries
+    private static List<Object> fromJsonList(final JSONArray json)
         throws JSONException
     {
-        final JSONObject json = (JSONObject)o;
-        final Map<String, Object> map = new HashMap<String, Object>();
+        final int size = json.length();
+        final List<Object> list = new ArrayList<Object>(size);
 
-        Iterator<?> keyIter = json.keys();
-        String key = null;
         Object obj = null;
-        while(keyIter.hasNext())
+        for(int i = 0; i < size; ++i)
         {
-            key = keyIter.next().toString();
-
-            obj = json.opt(key);
+            obj = json.opt(i);
 
-            if(obj instanceof JSONArray)
+            if(obj instanceof JSONObject)
             {
-                obj = convertToList(obj);
+                list.add(fromJson((JSONObject)obj));
             }
-            else if(obj instanceof JSONObject)
+            else
             {
-                obj = convertToMap(obj);
+                list.add(obj);
             }
+        }
+
+        return list;
+    }
+
+    private static Map<String, Object> convertToMap(final Object o)
+        throws JSONException
+    {
+        final JSONObject json = (JSONObject)o;
+        final Map<String, Object> map = new HashMap<String, Object>();
 
-            map.put(key, obj);
+        Iterator<?> keyIter = json.keys();
+        String key = null;
+        while(keyIter.hasNext())
+        {
+            key = keyIter.next().toString();
+            map.put(key, convertToValue(json.opt(key)));
         }
 
         return map;
@@ -118,28 +183,44 @@ public class JsonConverter
     {
         final JSONArray json = (JSONArray)o;
         final int size = json.length();
-        final List<Object> list = new ArrayList<Object>(size);
 
-        Object obj = null;
-        for(int i = 0; i < size; ++i)
+        //split large arrays into parallel tasks
+        if(size > ParallelLists.DEFAULT_THRESHOLD)
         {
-            obj = json.opt(i);
-
-            if(obj instanceof JSONArray)
+            final Object[] source = new Object[size];
+            for(int i = 0; i < size; ++i)
             {
-                obj = convertToList(obj);
-            }
-            else if(obj instanceof JSONObject)
-            {
-                obj = convertToMap(obj);
+                source[i] = json.opt(i);
             }
 
-            list.add(obj);
+            return new ArrayList<Object>(Arrays.asList(
+                mapParallel(source, fToValue)));
+        }
+
+        final List<Object> list = new ArrayList<Object>(size);
+        for(int i = 0; i < size; ++i)
+        {
+            list.add(convertToValue(json.opt(i)));
         }
 
         return list;
     }
 
+    private static Object convertToValue(final Object obj)
+        throws JSONException
+    {
+        if(obj instanceof JSONArray)
+        {
+            return convertToList(obj);
+        }
+        else if(obj instanceof JSONObject)
+        {
+            return convertToMap(obj);
+        }
+
+        return obj;
+    }
+
     /**
      * Converts a generic websocket query into JSON.
      * Detects maps and lists that are already in the proper wrapped format and
@@ -158,6 +239,12 @@ public class JsonConverter
         json.put(WebsockConstants.QUERY_ID, query.getId());
         json.put(WebsockConstants.QUERY_TYPE, query.getType().getCode());
 
+        final long timeout = query.getTimeout();
+        if(timeout > 0)
+        {
+            json.put(WebsockConstants.TIMEOUT, timeout);
+        }
+
         //parameters
         Map<String, Object> params = query.getParameters();
         if(params != null && !params.isEmpty())
@@ -206,80 +293,108 @@ public class JsonConverter
         return json;
     }
 
-    @SuppressWarnings("unchecked")
     private static JSONObject convertFromMap(final Map<String, ?> map)
         throws JSONException
     {
         final JSONObject json = new JSONObject(map.size());
 
-        Object o = null;
         for(Entry<String, ?> mapE : map.entrySet())
         {
-            o = mapE.getValue();
+            json.put(mapE.getKey(), convertFromValue(mapE.getValue()));
+        }
 
-            if(o instanceof Map)
-            {
-                if(o instanceof JSONMap)
-                {
-                    o = ((JSONMap)o).getJson();
-                }
-                else
-                {
-                    o = convertFromMap((Map<String, ?>)o);
-                }
-            }
-            else if(o instanceof List)
+        return json;
+    }
+
+    private static JSONArray convertFromList(final List<?> list)
+        throws JSONException
+    {
+        final JSONArray json = new JSONArray();
+
+        //split large lists into parallel tasks
+        if(list.size() > ParallelLists.DEFAULT_THRESHOLD)
+        {
+            for(Object o : mapParallel(list.toArray(), fFromValue))
             {
-                if(o instanceof JSONList)
-                {
-                    o = ((JSONList)o).getJson();
-                }
-                else
-                {
-                    o = convertFromList((List<?>)o);
-                }
+                json.put(o);
             }
+            return json;
+        }
 
-            json.put(mapE.getKey(), o);
+        for(Object o : list)
+        {
+            json.put(convertFromValue(o));
         }
 
         return json;
     }
 
     @SuppressWarnings("unchecked")
-    private static JSONArray convertFromList(final List<?> list)
+    private static Object convertFromValue(final Object o)
         throws JSONException
     {
-        final JSONArray json = new JSONArray();
+        //nested messages, such as in batches
+        if(o instanceof WebsockQuery)
+        {
+            return toJson((WebsockQuery)o);
+        }
 
-        for(Object o : list)
+        if(o instanceof Map)
         {
-            if(o instanceof Map)
+            if(o instanceof JSONMap)
             {
-                if(o instanceof JSONMap)
-                {
-                    o = ((JSONMap)o).getJson();
-                }
-                else
-                {
-                    o = convertFromMap((Map<String, ?>)o);
-                }
+                return ((JSONMap)o).getJson();
             }
-            else if(o instanceof List)
+            else
             {
-                if(o instanceof JSONList)
-                {
-                    o = ((JSONList)o).getJson();
-                }
-                else
-                {
-                    o = convertFromList((List<?>)o);
-                }
+                return convertFromMap((Map<String, ?>)o);
+            }
+        }
+        else if(o instanceof List)
+        {
+            if(o instanceof JSONList)
+            {
+                return ((JSONList)o).getJson();
+            }
+            else
+            {
+                return convertFromList((List<?>)o);
             }
+        }
 
-            json.put(o);
+        return o;
+    }
+
+    private static Object[] mapParallel(final Object[] source,
+        final IElementMapper<Object, Object> mapper) throws JSONException
+    {
+        try
+        {
+            return ParallelLists.map(source, mapper,
+                ParallelLists.DEFAULT_THRESHOLD, null);
+        }
+        catch(WrappedJSONException e)
+        {
+            //fork-join may rewrap exceptions thrown in other threads
+            Throwable cause = e.getCause();
+            while(!(cause instanceof JSONException))
+            {
+                cause = cause.getCause();
+            }
+            throw (JSONException)cause;
         }
+    }
 
-        return json;
+    /**
+     * Carries checked JSON exceptions out of parallel conversion tasks.
+     */
+    private static class WrappedJSONException extends RuntimeException
+    {
+        private static final long serialVersionUID = 1L;
+
+        public WrappedJSONException(final JSONException cause)
+        {
+            super(cause);
+        }
     }
 }
@@ -0,0 +1,279 @@
+/*
+ *  Copyright 2015 Institute of Information Systems, Hof University
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package de.hofuniversity.iisys.neo4j.websock.util;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Codec for compact numeric columns.
+ * Integral values are stored as zigzag encoded variable length deltas, which
+ * makes sorted or nearly sorted IDs, timestamps and counters take one or two
+ * bytes per value.
+ * Floating point values are stored as the XOR of each value with its
+ * predecessor, writing only the meaningful bits (Gorilla encoding), which
+ * compresses slowly changing values well.
+ */
+public class NumericCodec
+{
+    /**
+     * Encodes the given values as zigzag encoded variable length deltas.
+     * The array given must not be null.
+     *
+     * @param values values to encode
+     * @return encoded values
+     */
+    public static byte[] encodeDeltas(final long[] values)
+    {
+        final ByteArrayOutputStream out =
+            new ByteArrayOutputStream(values.length * 2);
+
+        long previous = 0;
+        long zigzag = 0;
+        for(long value : values)
+        {
+            final long delta = value - previous;
+            previous = value;
+
+            zigzag = (delta << 1) ^ (delta >> 63);
+            while((zigzag & ~0x7FL) != 0)
+            {
+                out.write((int) ((zigzag & 0x7F) | 0x80));
+                zigzag >>>= 7;
+            }
+            out.write((int) zigzag);
+        }
+
+        return out.toByteArray();
+    }
+
+    /**
+     * Decodes the given number of values from zigzag encoded variable length
+     * deltas.
+     * Throws an IllegalArgumentException if the data is incomplete.
+     * The array given must not be null.
+     *
+     * @param data encoded values
+     * @param size number of values
+     * @return decoded values
+     */
+    public static long[] decodeDeltas(final byte[] data, final int size)
+    {
+        final long[] values = new long[size];
+
+        int pos = 0;
+        long previous = 0;
+        for(int i = 0; i < size; ++i)
+        {
+            long zigzag = 0;
+            int shift = 0;
+            int b = 0;
+            do
+            {
+                if(pos >= data.length)
+                {
+                    throw new IllegalArgumentException(
+                        "delta encoded column ended prematurely");
+                }
+
+                b = data[pos++];
+                zigzag |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            }
+            while((b & 0x80) != 0);
+
+            previous += (zigzag >>> 1) ^ -(zigzag & 1);
+            values[i] = previous;
+        }
+
+        return values;
+    }
+
+    /**
+     * Encodes the given values using XOR compression.
+     * The array given must not be null.
+     *
+     * @param values values to encode
+     * @return encoded values
+     */
+    public static byte[] encodeXor(final double[] values)
+    {
+        final BitWriter out = new BitWriter(values.length * 2 + 8);
+
+        long previous = 0;
+        int prevLeading = Integer.MAX_VALUE;
+        int prevTrailing = 0;
+
+        for(int i = 0; i < values.length; ++i)
+        {
+            final long bits = Double.doubleToRawLongBits(values[i]);
+
+            if(i == 0)
+            {
+                out.write(bits, 64);
+                previous = bits;
+                continue;
+            }
+
+            final long xor = bits ^ previous;
+            previous = bits;
+
+            if(xor == 0)
+            {
+                //identical value
+                out.write(0, 1);
+                continue;
+            }
+
+            out.write(1, 1);
+
+            final int leading = Math.min(Long.numberOfLeadingZeros(xor), 31);
+            final int trailing = Long.numberOfTrailingZeros(xor);
+
+            if(leading >= prevLeading && trailing >= prevTrailing)
+            {
+                //meaningful bits fit into the previous window
+                out.write(0, 1);
+                out.write(xor >>> prevTrailing,
+                    64 - prevLeading - prevTrailing);
+            }
+            else
+            {
+                //new window: 5 bits leading zeros, 6 bits length - 1
+                final int length = 64 - leading - trailing;
+
+                out.write(1, 1);
+                out.write(leading, 5);
+                out.write(length - 1, 6);
+                out.write(xor >>> trailing, length);
+
+                prevLeading = leading;
+                prevTrailing = trailing;
+            }
+        }
+
+        return out.toByteArray();
+    }
+
+    /**
+     * Decodes the given number of XOR compressed values.
+     * Throws an IllegalArgumentException if the data is incomplete.
+     * The array given must not be null.
+     *
+     * @param data encoded values
+     * @param size number of values
+     * @return decoded values
+     */
+    public static double[] decodeXor(final byte[] data, final int size)
+    {
+        final double[] values = new double[size];
+        final BitReader in = new BitReader(data);
+
+        long previous = 0;
+        int leading = 0;
+        int trailing = 0;
+
+        for(int i = 0; i < size; ++i)
+        {
+            if(i == 0)
+            {
+                previous = in.read(64);
+            }
+            else if(in.read(1) != 0)
+            {
+                if(in.read(1) != 0)
+                {
+                    leading = (int) in.read(5);
+                    trailing = 64 - leading - ((int) in.read(6) + 1);
+                }
+
+                previous ^= in.read(64 - leading - trailing) << trailing;
+            }
+
+            values[i] = Double.longBitsToDouble(previous);
+        }
+
+        return values;
+    }
+
+    private static class BitWriter
+    {
+        private byte[] fData;
+        private long fBits;
+
+        public BitWriter(int capacity)
+        {
+            fData = new byte[Math.max(capacity, 8)];
+        }
+
+        public void write(long value, int count)
+        {
+            for(int i = count - 1; i >= 0; --i)
+            {
+                final int index = (int) (fBits >> 3);
+                if(index == fData.length)
+                {
+                    final byte[] data = new byte[fData.length * 2];
+                    System.arraycopy(fData, 0, data, 0, fData.length);
+                    fData = data;
+                }
+
+                if(((value >>> i) & 1) != 0)
+                {
+                    fData[index] |= 0x80 >>> (fBits & 7);
+                }
+                ++fBits;
+            }
+        }
+
+        public byte[] toByteArray()
+        {
+            final byte[] data = new byte[(int) ((fBits + 7) >> 3)];
+            System.arraycopy(fData, 0, data, 0, data.length);
+            return data;
+        }
+    }
+
+    private static class BitReader
+    {
+        private final byte[] fData;
+        private long fBits;
+
+        public BitReader(byte[] data)
+        {
+            fData = data;
+        }
+
+        public long read(int count)
+        {
+            if(fBits + count > (long) fData.length << 3)
+            {
+                throw new IllegalArgumentException(
+                    "XOR encoded column ended prematurely");
+            }
+
+            long value = 0;
+            for(int i = 0; i < count; ++i)
+            {
+                value = (value << 1)
+                    | ((fData[(int) (fBits >> 3)] >>> (7 - (fBits & 7))) & 1);
+                ++fBits;
+            }
+
+            return value;
+        }
+    }
+}
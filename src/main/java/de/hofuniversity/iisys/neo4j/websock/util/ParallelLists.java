@@ -0,0 +1,424 @@
+/*
+ *  Copyright 2015 Institute of Information Systems, Hof University
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package de.hofuniversity.iisys.neo4j.websock.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Utility converting, filtering and sorting large lists using fork-join tasks.
+ * Lists up to the threshold size are processed sequentially in the calling
+ * thread, larger ones are split into ranges of at most the threshold size.
+ * Results are deterministic: element order is preserved for conversion and
+ * filtering and sorting is stable.
+ */
+public final class ParallelLists
+{
+    /**
+     * Default maximum number of elements processed by a single task.
+     */
+    public static final int DEFAULT_THRESHOLD = 8192;
+
+    private static ForkJoinPool fDefaultPool;
+
+    private ParallelLists()
+    {
+        //static utility
+    }
+
+    /**
+     * Converts all elements of the given list into a new list, keeping their
+     * order, using the default threshold and pool.
+     * None of the parameters may be null.
+     *
+     * @param list list to convert
+     * @param mapper thread-safe element converter
+     * @return new list of converted elements
+     */
+    public static <S, T> List<T> map(final List<? extends S> list,
+        final IElementMapper<? super S, ? extends T> mapper)
+    {
+        return map(list, mapper, DEFAULT_THRESHOLD, null);
+    }
+
+    /**
+     * Converts all elements of the given list into a new list, keeping their
+     * order.
+     * Neither list nor mapper may be null.
+     *
+     * @param list list to convert
+     * @param mapper thread-safe element converter
+     * @param threshold maximum number of elements per task, must be positive
+     * @param pool pool to run tasks in or null for the shared default pool
+     * @return new list of converted elements
+     */
+    @SuppressWarnings("unchecked")
+    public static <S, T> List<T> map(final List<? extends S> list,
+        final IElementMapper<? super S, ? extends T> mapper,
+        final int threshold, final ForkJoinPool pool)
+    {
+        checkThreshold(threshold);
+        if(mapper == null)
+        {
+            throw new NullPointerException("mapper was null");
+        }
+
+        final Object[] source = list.toArray();
+        final Object[] target = map(source,
+            (IElementMapper<Object, Object>)mapper, threshold, pool);
+
+        return (List<T>)new ArrayList<Object>(Arrays.asList(target));
+    }
+
+    /**
+     * Converts all elements of the given array into a new array, keeping
+     * their order.
+     * Neither source nor mapper may be null.
+     *
+     * @param source elements to convert
+     * @param mapper thread-safe element converter
+     * @param threshold maximum number of elements per task, must be positive
+     * @param pool pool to run tasks in or null for the shared default pool
+     * @return new array of converted elements
+     */
+    public static Object[] map(final Object[] source,
+        final IElementMapper<Object, Object> mapper, final int threshold,
+        final ForkJoinPool pool)
+    {
+        final Object[] target = new Object[source.length];
+        final MapTask task = new MapTask(source, target, mapper, 0,
+            source.length, threshold);
+
+        if(source.length <= threshold)
+        {
+            task.compute();
+        }
+        else
+        {
+            getPool(pool).invoke(task);
+        }
+
+        return target;
+    }
+
+    /**
+     * Creates a new list containing all elements accepted by the given
+     * predicate, keeping their order, using the default threshold and pool.
+     * None of the parameters may be null.
+     *
+     * @param list list to filter
+     * @param predicate thread-safe predicate
+     * @return new list of accepted elements
+     */
+    public static <T> List<T> filter(final List<? extends T> list,
+        final IElementPredicate<? super T> predicate)
+    {
+        return filter(list, predicate, DEFAULT_THRESHOLD, null);
+    }
+
+    /**
+     * Creates a new list containing all elements accepted by the given
+     * predicate, keeping their order.
+     * Neither list nor predicate may be null.
+     *
+     * @param list list to filter
+     * @param predicate thread-safe predicate
+     * @param threshold maximum number of elements per task, must be positive
+     * @param pool pool to run tasks in or null for the shared default pool
+     * @return new list of accepted elements
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> List<T> filter(final List<? extends T> list,
+        final IElementPredicate<? super T> predicate, final int threshold,
+        final ForkJoinPool pool)
+    {
+        checkThreshold(threshold);
+        if(predicate == null)
+        {
+            throw new NullPointerException("predicate was null");
+        }
+
+        final Object[] source = list.toArray();
+        final boolean[] accepted = new boolean[source.length];
+        final FilterTask task = new FilterTask(source, accepted,
+            (IElementPredicate<Object>)predicate, 0, source.length,
+            threshold);
+
+        if(source.length <= threshold)
+        {
+            task.compute();
+        }
+        else
+        {
+            getPool(pool).invoke(task);
+        }
+
+        //sequential compaction keeps the original order
+        final List<T> result = new ArrayList<T>();
+        for(int i = 0; i < source.length; ++i)
+        {
+            if(accepted[i])
+            {
+                result.add((T)source[i]);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Sorts the given list in place using a stable parallel merge sort,
+     * using the default threshold and pool.
+     * The list must be modifiable and none of the parameters may be null.
+     *
+     * @param list list to sort
+     * @param comparator thread-safe comparator
+     */
+    public static <T> void sort(final List<T> list,
+        final Comparator<? super T> comparator)
+    {
+        sort(list, comparator, DEFAULT_THRESHOLD, null);
+    }
+
+    /**
+     * Sorts the given list in place using a stable parallel merge sort.
+     * The list must be modifiable and neither list nor comparator may be
+     * null.
+     *
+     * @param list list to sort
+     * @param comparator thread-safe comparator
+     * @param threshold maximum number of elements per task, must be positive
+     * @param pool pool to run tasks in or null for the shared default pool
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> void sort(final List<T> list,
+        final Comparator<? super T> comparator, final int threshold,
+        final ForkJoinPool pool)
+    {
+        checkThreshold(threshold);
+        if(comparator == null)
+        {
+            throw new NullPointerException("comparator was null");
+        }
+
+        final Object[] data = list.toArray();
+        final SortTask task = new SortTask(data, new Object[data.length],
+            (Comparator<Object>)comparator, 0, data.length, threshold);
+
+        if(data.length <= threshold)
+        {
+            task.compute();
+        }
+        else
+        {
+            getPool(pool).invoke(task);
+        }
+
+        final ListIterator<T> iter = list.listIterator();
+        for(Object o : data)
+        {
+            iter.next();
+            iter.set((T)o);
+        }
+    }
+
+    private static void checkThreshold(final int threshold)
+    {
+        if(threshold < 1)
+        {
+            throw new IllegalArgumentException("threshold must be positive");
+        }
+    }
+
+    private static ForkJoinPool getPool(final ForkJoinPool pool)
+    {
+        if(pool != null)
+        {
+            return pool;
+        }
+
+        synchronized(ParallelLists.class)
+        {
+            if(fDefaultPool == null)
+            {
+                fDefaultPool = new ForkJoinPool();
+            }
+            return fDefaultPool;
+        }
+    }
+
+    private static class MapTask extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final Object[] fSource, fTarget;
+        private final IElementMapper<Object, Object> fMapper;
+        private final int fFrom, fTo, fThreshold;
+
+        public MapTask(final Object[] source, final Object[] target,
+            final IElementMapper<Object, Object> mapper, final int from,
+            final int to, final int threshold)
+        {
+            fSource = source;
+            fTarget = target;
+            fMapper = mapper;
+            fFrom = from;
+            fTo = to;
+            fThreshold = threshold;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if(fTo - fFrom > fThreshold)
+            {
+                final int mid = (fFrom + fTo) >>> 1;
+                invokeAll(new MapTask(fSource, fTarget, fMapper, fFrom, mid,
+                    fThreshold), new MapTask(fSource, fTarget, fMapper, mid,
+                    fTo, fThreshold));
+            }
+            else
+            {
+                for(int i = fFrom; i < fTo; ++i)
+                {
+                    fTarget[i] = fMapper.map(fSource[i]);
+                }
+            }
+        }
+    }
+
+    private static class FilterTask extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final Object[] fSource;
+        private final boolean[] fAccepted;
+        private final IElementPredicate<Object> fPredicate;
+        private final int fFrom, fTo, fThreshold;
+
+        public FilterTask(final Object[] source, final boolean[] accepted,
+            final IElementPredicate<Object> predicate, final int from,
+            final int to, final int threshold)
+        {
+            fSource = source;
+            fAccepted = accepted;
+            fPredicate = predicate;
+            fFrom = from;
+            fTo = to;
+            fThreshold = threshold;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if(fTo - fFrom > fThreshold)
+            {
+                final int mid = (fFrom + fTo) >>> 1;
+                invokeAll(new FilterTask(fSource, fAccepted, fPredicate,
+                    fFrom, mid, fThreshold), new FilterTask(fSource,
+                    fAccepted, fPredicate, mid, fTo, fThreshold));
+            }
+            else
+            {
+                for(int i = fFrom; i < fTo; ++i)
+                {
+                    fAccepted[i] = fPredicate.accept(fSource[i]);
+                }
+            }
+        }
+    }
+
+    private static class SortTask extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final Object[] fData, fBuffer;
+        private final Comparator<Object> fComparator;
+        private final int fFrom, fTo, fThreshold;
+
+        public SortTask(final Object[] data, final Object[] buffer,
+            final Comparator<Object> comparator, final int from,
+            final int to, final int threshold)
+        {
+            fData = data;
+            fBuffer = buffer;
+            fComparator = comparator;
+            fFrom = from;
+            fTo = to;
+            fThreshold = threshold;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if(fTo - fFrom > fThreshold)
+            {
+                final int mid = (fFrom + fTo) >>> 1;
+                invokeAll(new SortTask(fData, fBuffer, fComparator, fFrom, mid,
+                    fThreshold), new SortTask(fData, fBuffer, fComparator, mid,
+                    fTo, fThreshold));
+                merge(mid);
+            }
+            else
+            {
+                //stable for equal elements
+                Arrays.sort(fData, fFrom, fTo, fComparator);
+            }
+        }
+
+        private void merge(final int mid)
+        {
+            //already in order
+            if(fComparator.compare(fData[mid - 1], fData[mid]) <= 0)
+            {
+                return;
+            }
+
+            System.arraycopy(fData, fFrom, fBuffer, fFrom, fTo - fFrom);
+
+            int left = fFrom;
+            int right = mid;
+            int i = fFrom;
+            while(left < mid && right < fTo)
+            {
+                //taking from the left on ties keeps the sort stable
+                if(fComparator.compare(fBuffer[right], fBuffer[left]) < 0)
+                {
+                    fData[i++] = fBuffer[right++];
+                }
+                else
+                {
+                    fData[i++] = fBuffer[left++];
+                }
+            }
+
+            while(left < mid)
+            {
+                fData[i++] = fBuffer[left++];
+            }
+            while(right < fTo)
+            {
+                fData[i++] = fBuffer[right++];
+            }
+        }
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ *  Copyright 2015 Institute of Information Systems, Hof University
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package de.hofuniversity.iisys.neo4j.websock.util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import de.hofuniversity.iisys.neo4j.websock.query.EQueryType;
+import de.hofuniversity.iisys.neo4j.websock.query.WebsockQuery;
+import de.hofuniversity.iisys.neo4j.websock.session.WebsockConstants;
+
+/**
+ * Converter, transforming WebsockQueries into plain maps that can be nested
+ * in other messages and vice versa.
+ */
+public class QueryMapConverter
+{
+    /**
+     * Converts the given query into a map containing its ID, type,
+     * remaining time until its deadline, parameters and payload.
+     * The query must not be null.
+     *
+     * @param query query to convert
+     * @return converted query
+     */
+    public static Map<String, Object> toMap(final WebsockQuery query)
+    {
+        final Map<String, Object> map = new HashMap<String, Object>();
+
+        map.put(WebsockConstants.QUERY_ID, query.getId());
+        map.put(WebsockConstants.QUERY_TYPE, query.getType().getCode());
+
+        final long timeout = query.getTimeout();
+        if(timeout > 0)
+        {
+            map.put(WebsockConstants.TIMEOUT, timeout);
+        }
+
+        final Map<String, Object> params = query.getParameters();
+        if(params != null && !params.isEmpty())
+        {
+            map.put(WebsockConstants.PARAMETERS, params);
+        }
+
+        final Object payload = query.getPayload();
+        if(payload != null)
+        {
+            map.put(WebsockConstants.PAYLOAD, payload);
+        }
+
+        return map;
+    }
+
+    /**
+     * Returns a nested message as query, converting it if it was decoded as
+     * a map.
+     * The object must either be a query or a map containing a valid query
+     * type.
+     *
+     * @param message nested message
+     * @return nested message as query
+     */
+    @SuppressWarnings("unchecked")
+    public static WebsockQuery toQuery(final Object message)
+    {
+        if(message instanceof WebsockQuery)
+        {
+            return (WebsockQuery)message;
+        }
+
+        return fromMap((Map<String, ?>)message);
+    }
+
+    /**
+     * Converts a nested message map back into a query.
+     * The map must not be null and contain a valid query type.
+     *
+     * @param map map to convert
+     * @return converted query
+     */
+    @SuppressWarnings("unchecked")
+    public static WebsockQuery fromMap(final Map<String, ?> map)
+    {
+        final String typeString =
+            String.valueOf(map.get(WebsockConstants.QUERY_TYPE));
+        final EQueryType type = EQueryType.getTypeFor(typeString);
+        if(type == null)
+        {
+            throw new RuntimeException("unknown query type: " + typeString);
+        }
+
+        int id = 0;
+        final Object idObj = map.get(WebsockConstants.QUERY_ID);
+        if(idObj != null)
+        {
+            id = ((Number)idObj).intValue();
+        }
+
+        final WebsockQuery query = new WebsockQuery(id, type);
+
+        final Object timeout = map.get(WebsockConstants.TIMEOUT);
+        if(timeout instanceof Number)
+        {
+            query.setTimeout(((Number)timeout).longValue());
+        }
+
+        final Object params = map.get(WebsockConstants.PARAMETERS);
+        if(params != null)
+        {
+            query.setParameters((Map<String, Object>)params);
+        }
+
+        query.setPayload(map.get(WebsockConstants.PAYLOAD));
+
+        return query;
+    }
+
+    /**
+     * Creates a structural copy of the given parameter value for comparison,
+     * so that equal values decoded as different numeric types, map or list
+     * implementations are equal and have equal hash codes.
+     *
+     * @param o value to normalize
+     * @return normalized copy of the value
+     */
+    public static Object normalize(final Object o)
+    {
+        Object norm = o;
+
+        if(o instanceof Integer || o instanceof Short || o instanceof Byte)
+        {
+            norm = ((Number) o).longValue();
+        }
+        else if(o instanceof Float)
+        {
+            norm = ((Number) o).doubleValue();
+        }
+        else if(o instanceof Map)
+        {
+            final Map<Object, Object> map = new HashMap<Object, Object>();
+            for(Entry<?, ?> e : ((Map<?, ?>) o).entrySet())
+            {
+                map.put(e.getKey(), normalize(e.getValue()));
+            }
+            norm = map;
+        }
+        else if(o instanceof List)
+        {
+            final List<Object> list = new ArrayList<Object>();
+            for(Object val : (List<?>) o)
+            {
+                list.add(normalize(val));
+            }
+            norm = list;
+        }
+
+        return norm;
+    }
+}
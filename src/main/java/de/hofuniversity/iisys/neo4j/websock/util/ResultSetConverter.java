@@ -16,14 +16,27 @@
  */
 package de.hofuniversity.iisys.neo4j.websock.util;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
 
 import de.hofuniversity.iisys.neo4j.websock.result.AResultSet;
+import de.hofuniversity.iisys.neo4j.websock.result.ColumnarTable;
+import de.hofuniversity.iisys.neo4j.websock.result.DictionaryRowList;
+import de.hofuniversity.iisys.neo4j.websock.result.EResultEncoding;
 import de.hofuniversity.iisys.neo4j.websock.result.EResultType;
 import de.hofuniversity.iisys.neo4j.websock.result.ListResult;
+import de.hofuniversity.iisys.neo4j.websock.result.SchemaMapList;
 import de.hofuniversity.iisys.neo4j.websock.result.SingleResult;
 import de.hofuniversity.iisys.neo4j.websock.result.TableResult;
 import de.hofuniversity.iisys.neo4j.websock.session.WebsockConstants;
+import de.hofuniversity.iisys.neo4j.websock.session.WebsockSession;
 
 /**
  * Converter, transforming result sets into transferable maps and vice versa.
@@ -42,6 +55,86 @@ public class ResultSetConverter
     public static Map<String, Object> toMap(final AResultSet<?> result,
         final Map<String, Object> map)
     {
+        return toMap(result, map, EnumSet.noneOf(EResultEncoding.class));
+    }
+
+    /**
+     * Converts the given result set by setting the appropriate values in the
+     * given map, using the result encodings negotiated for the given
+     * session.
+     * None of the parameters may be null.
+     *
+     * @param result result set to convert
+     * @param map map to base the result on
+     * @param session session the result will be sent to
+     * @return converted result set
+     */
+    public static Map<String, Object> toMap(final AResultSet<?> result,
+        final Map<String, Object> map, final WebsockSession session)
+    {
+        return toMap(result, map, session.getResultEncodings());
+    }
+
+    /**
+     * Converts the given result set by setting the appropriate values in the
+     * given map, applying those of the given encodings that fit the result.
+     * None of the parameters may be null.
+     *
+     * @param result result set to convert
+     * @param map map to base the result on
+     * @param encodings encodings the receiving side can decode
+     * @return converted result set
+     */
+    public static Map<String, Object> toMap(final AResultSet<?> result,
+        final Map<String, Object> map, final Set<EResultEncoding> encodings)
+    {
+        return toMap(result, map, encodings, null);
+    }
+
+    /**
+     * Converts the given result set by setting the appropriate values in the
+     * given map, using the result encodings negotiated for the given session
+     * and only including the fields or columns selected by the given
+     * projection.
+     * The projection may be null to include everything.
+     *
+     * @param result result set to convert
+     * @param map map to base the result on
+     * @param session session the result will be sent to
+     * @param projection projection to apply or null
+     * @return converted result set
+     */
+    public static Map<String, Object> toMap(final AResultSet<?> result,
+        final Map<String, Object> map, final WebsockSession session,
+        final FieldProjection projection)
+    {
+        return toMap(result, map, session.getResultEncodings(), projection);
+    }
+
+    /**
+     * Converts the given result set by setting the appropriate values in the
+     * given map, applying those of the given encodings that fit the result
+     * and only including the fields or columns selected by the given
+     * projection.
+     * The projection may be null to include everything, all other parameters
+     * must not be null.
+     *
+     * @param result result set to convert
+     * @param map map to base the result on
+     * @param encodings encodings the receiving side can decode
+     * @param projection projection to apply or null
+     * @return converted result set
+     */
+    public static Map<String, Object> toMap(AResultSet<?> result,
+        final Map<String, Object> map, final Set<EResultEncoding> encodings,
+        final FieldProjection projection)
+    {
+        //strip unused fields before anything is encoded
+        if(projection != null)
+        {
+            result = projection.apply(result);
+        }
+
         final EResultType type = result.getType();
         map.put(WebsockConstants.RESULT_TYPE, type.getCode());
 
@@ -61,25 +154,255 @@ public class ResultSetConverter
             map.put(WebsockConstants.TOTAL_RESULTS, result.getTotal());
         }
 
-        map.put(WebsockConstants.RESULT, result.getResults());
+        if(result.getCursor() != null)
+        {
+            map.put(WebsockConstants.CURSOR, result.getCursor());
+        }
+
+        if(result.getTotalError() > 0.0)
+        {
+            map.put(WebsockConstants.TOTAL_ERROR, result.getTotalError());
+        }
+
+        if(result.isTotalDeferred())
+        {
+            map.put(WebsockConstants.TOTAL_DEFERRED, true);
+        }
+
+        final List<String> applied = new ArrayList<String>(3);
 
         if(type == EResultType.TABLE)
         {
-            map.put(WebsockConstants.TABLE_COLUMNS,
-                ((TableResult)result).getColumns());
+            toTable((TableResult)result, map, encodings, applied);
+        }
+        else if(type == EResultType.LIST)
+        {
+            toList((ListResult)result, map, encodings, applied);
+        }
+        else
+        {
+            map.put(WebsockConstants.RESULT, result.getResults());
+        }
+
+        if(!applied.isEmpty())
+        {
+            map.put(WebsockConstants.RESULT_ENCODING, applied);
         }
 
         return map;
     }
 
+    private static void toTable(final TableResult table,
+        final Map<String, Object> map, final Set<EResultEncoding> encodings,
+        final List<String> applied)
+    {
+        map.put(WebsockConstants.TABLE_COLUMNS, table.getColumns());
+
+        final boolean columnar = encodings.contains(EResultEncoding.COLUMNAR);
+        final boolean dictionary =
+            encodings.contains(EResultEncoding.DICTIONARY);
+
+        if(!columnar && !dictionary)
+        {
+            map.put(WebsockConstants.RESULT, table.getResults());
+            return;
+        }
+
+        final int width = table.getColumns().size();
+        final List<List<Object>> columns = new ArrayList<List<Object>>(width);
+        for(int i = 0; i < width; ++i)
+        {
+            columns.add(table.getColumnValues(i));
+        }
+
+        putColumns(columns, table.getSize(), table.getResults(), map,
+            encodings, applied);
+    }
+
+    private static void toList(final ListResult result,
+        final Map<String, Object> map, final Set<EResultEncoding> encodings,
+        final List<String> applied)
+    {
+        final List<?> list = result.getResults();
+
+        //send maps sharing the same keys as key list and value tuples
+        if(encodings.contains(EResultEncoding.SCHEMA))
+        {
+            final List<String> keys = SchemaMapList.getSharedKeys(list);
+
+            if(keys != null)
+            {
+                final List<List<Object>> columns =
+                    new ArrayList<List<Object>>(keys.size());
+                for(int i = 0; i < keys.size(); ++i)
+                {
+                    columns.add(new ArrayList<Object>(list.size()));
+                }
+
+                Map<?, ?> entry = null;
+                for(Object o : list)
+                {
+                    entry = (Map<?, ?>)o;
+                    for(int i = 0; i < keys.size(); ++i)
+                    {
+                        columns.get(i).add(entry.get(keys.get(i)));
+                    }
+                }
+
+                map.put(WebsockConstants.TABLE_COLUMNS, keys);
+                applied.add(EResultEncoding.SCHEMA.getCode());
+
+                putColumns(columns, list.size(), null, map, encodings,
+                    applied);
+                return;
+            }
+        }
+
+        //send lists of numbers or flags as a single packed column
+        if(encodings.contains(EResultEncoding.COLUMNAR) && !list.isEmpty())
+        {
+            final String colType = ColumnCodec.getType(list);
+
+            if(!WebsockConstants.OBJECT_COLUMN.equals(colType))
+            {
+                final List<String> types = new ArrayList<String>(1);
+                types.add(colType);
+
+                map.put(WebsockConstants.ROW_COUNT, list.size());
+                map.put(WebsockConstants.COLUMN_TYPES, types);
+                map.put(WebsockConstants.RESULT,
+                    ColumnCodec.encode(colType, list));
+                applied.add(EResultEncoding.COLUMNAR.getCode());
+                return;
+            }
+        }
+
+        if(encodings.contains(EResultEncoding.DICTIONARY))
+        {
+            toDictionaryList(result, map, applied);
+        }
+        else
+        {
+            map.put(WebsockConstants.RESULT, list);
+        }
+    }
+
+    private static void putColumns(final List<List<Object>> columns,
+        final int rows, final List<List<Object>> original,
+        final Map<String, Object> map, final Set<EResultEncoding> encodings,
+        final List<String> applied)
+    {
+        final int width = columns.size();
+        final boolean columnar = encodings.contains(EResultEncoding.COLUMNAR);
+        final boolean dictionary =
+            encodings.contains(EResultEncoding.DICTIONARY);
+
+        //replace low-cardinality String columns with codes
+        final Map<String, Object> dictionaries = new HashMap<String, Object>();
+        if(dictionary)
+        {
+            List<String> dict = null;
+            for(int i = 0; i < width; ++i)
+            {
+                dict = DictionaryCodec.getDictionary(columns.get(i));
+                if(dict != null)
+                {
+                    columns.set(i, DictionaryCodec.encode(columns.get(i),
+                        dict));
+                    dictionaries.put(Integer.toString(i), dict);
+                }
+            }
+        }
+
+        if(!dictionaries.isEmpty())
+        {
+            map.put(WebsockConstants.DICTIONARIES, dictionaries);
+            applied.add(EResultEncoding.DICTIONARY.getCode());
+        }
+
+        if(columnar)
+        {
+            toColumns(columns, rows, map);
+            applied.add(EResultEncoding.COLUMNAR.getCode());
+        }
+        else if(original == null || !dictionaries.isEmpty())
+        {
+            map.put(WebsockConstants.RESULT,
+                ColumnarTable.toRows(columns, rows));
+        }
+        else
+        {
+            map.put(WebsockConstants.RESULT, original);
+        }
+    }
+
+    private static void toColumns(final List<List<Object>> columns,
+        final int rows, final Map<String, Object> map)
+    {
+        final List<String> types = new ArrayList<String>(columns.size());
+        final List<Object> encoded = new ArrayList<Object>(columns.size());
+
+        String colType = null;
+        for(List<Object> values : columns)
+        {
+            colType = ColumnCodec.getType(values);
+
+            types.add(colType);
+            encoded.add(ColumnCodec.encode(colType, values));
+        }
+
+        map.put(WebsockConstants.ROW_COUNT, rows);
+        map.put(WebsockConstants.COLUMN_TYPES, types);
+        map.put(WebsockConstants.RESULT, encoded);
+    }
+
+    private static void toDictionaryList(final ListResult result,
+        final Map<String, Object> map, final List<String> applied)
+    {
+        final Map<String, Object> dictionaries = new HashMap<String, Object>();
+        final List<Object> encoded = DictionaryCodec.encodeMaps(
+            result.getResults(), dictionaries);
+
+        if(encoded != null)
+        {
+            map.put(WebsockConstants.DICTIONARIES, dictionaries);
+            map.put(WebsockConstants.RESULT, encoded);
+            applied.add(EResultEncoding.DICTIONARY.getCode());
+        }
+        else
+        {
+            map.put(WebsockConstants.RESULT, result.getResults());
+        }
+    }
+
     /**
      * Converts a received map into a result set.
+     * Column-major tables are converted into row lists.
      * The given map must not be null.
      *
      * @param map map to convert
      * @return converted result set
      */
     public static AResultSet<?> toResultSet(final Map<String, Object> map)
+    {
+        return toResultSet(map, false);
+    }
+
+    /**
+     * Converts a received map into a result set.
+     * Column-major tables are either converted into row lists or kept column
+     * by column in a ColumnarTable. Likewise, dictionary encoded rows are
+     * either decoded right away or on access using a DictionaryRowList.
+     * Lists of maps sent with a shared schema are returned as a
+     * SchemaMapList, expanding maps on access.
+     * The given map must not be null.
+     *
+     * @param map map to convert
+     * @param columnar whether to keep received encoded tables as they are
+     * @return converted result set
+     */
+    public static AResultSet<?> toResultSet(final Map<String, Object> map,
+        final boolean columnar)
     {
         if(map == null)
         {
@@ -91,10 +414,32 @@ public class ResultSetConverter
         String typeString = map.get(WebsockConstants.RESULT_TYPE).toString();
         EResultType type = EResultType.getTypeFor(typeString);
 
+        Collection<?> applied = Collections.emptyList();
+        final Object encObj = map.get(WebsockConstants.RESULT_ENCODING);
+        if(encObj != null)
+        {
+            applied = (Collection<?>)encObj;
+        }
+
         switch(type)
         {
             case LIST:
-                set = new ListResult(map);
+                if(applied.contains(EResultEncoding.SCHEMA.getCode()))
+                {
+                    set = fromSchemaList(map, applied, columnar);
+                }
+                else if(applied.contains(EResultEncoding.COLUMNAR.getCode()))
+                {
+                    set = fromColumnList(map);
+                }
+                else if(applied.contains(EResultEncoding.DICTIONARY.getCode()))
+                {
+                    set = fromDictionaryList(map);
+                }
+                else
+                {
+                    set = new ListResult(map);
+                }
                 break;
 
             case SINGLE:
@@ -102,11 +447,171 @@ public class ResultSetConverter
                 break;
 
             case TABLE:
-                set = new TableResult(map);
+                if(applied.isEmpty())
+                {
+                    set = new TableResult(map);
+                }
+                else
+                {
+                    set = fromTable(map, applied, columnar);
+                }
                 break;
         }
 
 
         return set;
     }
+
+    @SuppressWarnings("unchecked")
+    private static TableResult fromTable(final Map<String, Object> map,
+        final Collection<?> applied, final boolean columnar)
+    {
+        final List<String> names =
+            (List<String>)map.get(WebsockConstants.TABLE_COLUMNS);
+
+        final TableResult result = new TableResult(names,
+            decodeRows(map, applied, columnar));
+        readSubset(result, map);
+
+        return result;
+    }
+
+    private static ListResult fromSchemaList(final Map<String, Object> map,
+        final Collection<?> applied, final boolean columnar)
+    {
+        final List<?> keys = (List<?>)map.get(WebsockConstants.TABLE_COLUMNS);
+
+        final ListResult result = new ListResult(new SchemaMapList(keys,
+            decodeRows(map, applied, columnar)));
+        readSubset(result, map);
+
+        return result;
+    }
+
+    private static ListResult fromColumnList(final Map<String, Object> map)
+    {
+        final List<?> types = (List<?>)map.get(WebsockConstants.COLUMN_TYPES);
+        final int size =
+            ((Number)map.get(WebsockConstants.ROW_COUNT)).intValue();
+
+        final ListResult result = new ListResult(ColumnCodec.decode(
+            types.get(0).toString(), map.get(WebsockConstants.RESULT), size));
+        readSubset(result, map);
+
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<List<Object>> decodeRows(final Map<String, Object> map,
+        final Collection<?> applied, final boolean columnar)
+    {
+        final Map<String, ?> dictionaries =
+            (Map<String, ?>)map.get(WebsockConstants.DICTIONARIES);
+
+        List<List<Object>> table = null;
+
+        if(applied.contains(EResultEncoding.COLUMNAR.getCode()))
+        {
+            final List<?> types =
+                (List<?>)map.get(WebsockConstants.COLUMN_TYPES);
+            final List<?> data = (List<?>)map.get(WebsockConstants.RESULT);
+            final int rows =
+                ((Number)map.get(WebsockConstants.ROW_COUNT)).intValue();
+
+            final int width = types.size();
+            final List<List<Object>> columns =
+                new ArrayList<List<Object>>(width);
+            for(int i = 0; i < width; ++i)
+            {
+                columns.add(ColumnCodec.decode(types.get(i).toString(),
+                    data.get(i), rows));
+            }
+
+            if(dictionaries != null)
+            {
+                for(Entry<String, ?> dictE : dictionaries.entrySet())
+                {
+                    final int index = Integer.parseInt(dictE.getKey());
+                    columns.set(index, DictionaryCodec.decode(
+                        columns.get(index), (List<?>)dictE.getValue()));
+                }
+            }
+
+            if(columnar)
+            {
+                table = new ColumnarTable(columns, rows);
+            }
+            else
+            {
+                table = ColumnarTable.toRows(columns, rows);
+            }
+        }
+        else
+        {
+            table = (List<List<Object>>)map.get(WebsockConstants.RESULT);
+
+            if(dictionaries != null && columnar)
+            {
+                table = new DictionaryRowList(table, dictionaries);
+            }
+            else if(dictionaries != null)
+            {
+                table = new ArrayList<List<Object>>(
+                    new DictionaryRowList(table, dictionaries));
+            }
+        }
+
+        return table;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ListResult fromDictionaryList(final Map<String, Object> map)
+    {
+        final List<?> list = (List<?>)map.get(WebsockConstants.RESULT);
+        final Map<String, ?> dictionaries =
+            (Map<String, ?>)map.get(WebsockConstants.DICTIONARIES);
+
+        final ListResult result = new ListResult(
+            DictionaryCodec.decodeMaps(list, dictionaries));
+        readSubset(result, map);
+
+        return result;
+    }
+
+    private static void readSubset(final AResultSet<?> set,
+        final Map<String, Object> map)
+    {
+        final Object first = map.get(WebsockConstants.SUBSET_START);
+        if(first != null)
+        {
+            set.setFirst(((Number)first).intValue());
+        }
+
+        final Object max = map.get(WebsockConstants.SUBSET_SIZE);
+        if(max != null)
+        {
+            set.setMax(((Number)max).intValue());
+        }
+
+        final Object total = map.get(WebsockConstants.TOTAL_RESULTS);
+        if(total != null)
+        {
+            set.setTotal(((Number)total).intValue());
+        }
+
+        final Object cursor = map.get(WebsockConstants.CURSOR);
+        if(cursor != null)
+        {
+            set.setCursor(cursor.toString());
+        }
+
+        final Object error = map.get(WebsockConstants.TOTAL_ERROR);
+        if(error != null)
+        {
+            set.setTotalError(((Number)error).doubleValue());
+        }
+
+        set.setTotalDeferred(Boolean.TRUE.equals(
+            map.get(WebsockConstants.TOTAL_DEFERRED)));
+    }
 }
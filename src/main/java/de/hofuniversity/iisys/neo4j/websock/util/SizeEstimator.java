@@ -0,0 +1,67 @@
+/*
+ *  Copyright 2015 Institute of Information Systems, Hof University
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package de.hofuniversity.iisys.neo4j.websock.util;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * Utility roughly estimating the encoded size of message contents in bytes,
+ * without actually encoding them.
+ */
+public class SizeEstimator
+{
+    /**
+     * Estimates the encoded size of the given object, recursively walking
+     * maps and collections.
+     * Null values are permitted.
+     *
+     * @param o object to estimate the size of
+     * @return estimated size in bytes
+     */
+    public static long estimate(final Object o)
+    {
+        long size = 1;
+
+        if(o instanceof String)
+        {
+            size += ((String) o).length() + 5;
+        }
+        else if(o instanceof Number)
+        {
+            size += 8;
+        }
+        else if(o instanceof Map)
+        {
+            for(Entry<?, ?> e : ((Map<?, ?>) o).entrySet())
+            {
+                size += String.valueOf(e.getKey()).length() + 1
+                    + estimate(e.getValue());
+            }
+        }
+        else if(o instanceof Collection)
+        {
+            for(Object val : (Collection<?>) o)
+            {
+                size += 2 + estimate(val);
+            }
+        }
+
+        return size;
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ *  Copyright 2015 Institute of Information Systems, Hof University
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package de.hofuniversity.iisys.neo4j.websock.util;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * Codec for a compact binary representation of result values, used to store
+ * decoded results outside of the Java heap.
+ * Supports null, booleans, numbers, Strings and nested lists and maps with
+ * String keys. Bytes and shorts are read back as integers, floats as
+ * doubles.
+ */
+public class ValueCodec
+{
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final byte NULL = 0;
+    private static final byte TRUE = 1;
+    private static final byte FALSE = 2;
+    private static final byte INT = 3;
+    private static final byte LONG = 4;
+    private static final byte DOUBLE = 5;
+    private static final byte STRING = 6;
+    private static final byte LIST = 7;
+    private static final byte MAP = 8;
+
+    /**
+     * Writes the given value to the given output.
+     * The output must not be null.
+     *
+     * @param out output to write to
+     * @param value value to write
+     * @throws IOException if writing fails
+     */
+    public static void write(final DataOutput out, final Object value)
+        throws IOException
+    {
+        if(value == null)
+        {
+            out.writeByte(NULL);
+        }
+        else if(value instanceof Boolean)
+        {
+            if((Boolean) value)
+            {
+                out.writeByte(TRUE);
+            }
+            else
+            {
+                out.writeByte(FALSE);
+            }
+        }
+        else if(value instanceof Integer || value instanceof Short
+            || value instanceof Byte)
+        {
+            out.writeByte(INT);
+            out.writeInt(((Number) value).intValue());
+        }
+        else if(value instanceof Long)
+        {
+            out.writeByte(LONG);
+            out.writeLong((Long) value);
+        }
+        else if(value instanceof Double || value instanceof Float)
+        {
+            out.writeByte(DOUBLE);
+            out.writeDouble(((Number) value).doubleValue());
+        }
+        else if(value instanceof String)
+        {
+            final byte[] bytes = ((String) value).getBytes(UTF8);
+            out.writeByte(STRING);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+        else if(value instanceof List)
+        {
+            final List<?> list = (List<?>) value;
+            out.writeByte(LIST);
+            out.writeInt(list.size());
+            for(Object o : list)
+            {
+                write(out, o);
+            }
+        }
+        else if(value instanceof Map)
+        {
+            final Map<?, ?> map = (Map<?, ?>) value;
+            out.writeByte(MAP);
+            out.writeInt(map.size());
+            for(Entry<?, ?> e : map.entrySet())
+            {
+                final byte[] key = e.getKey().toString().getBytes(UTF8);
+                out.writeInt(key.length);
+                out.write(key);
+                write(out, e.getValue());
+            }
+        }
+        else
+        {
+            throw new IllegalArgumentException("unsupported value type: "
+                + value.getClass().getName());
+        }
+    }
+
+    /**
+     * Reads a value from the given buffer's current position, advancing it
+     * past the value.
+     * The buffer must not be null.
+     *
+     * @param in buffer to read from
+     * @return value read
+     */
+    public static Object read(final ByteBuffer in)
+    {
+        final byte tag = in.get();
+        Object value = null;
+
+        switch(tag)
+        {
+            case NULL:
+                break;
+
+            case TRUE:
+                value = Boolean.TRUE;
+                break;
+
+            case FALSE:
+                value = Boolean.FALSE;
+                break;
+
+            case INT:
+                value = in.getInt();
+                break;
+
+            case LONG:
+                value = in.getLong();
+                break;
+
+            case DOUBLE:
+                value = in.getDouble();
+                break;
+
+            case STRING:
+                value = readString(in);
+                break;
+
+            case LIST:
+                final int length = in.getInt();
+                final List<Object> list = new ArrayList<Object>(length);
+                for(int i = 0; i < length; ++i)
+                {
+                    list.add(read(in));
+                }
+                value = list;
+                break;
+
+            case MAP:
+                final int size = in.getInt();
+                final Map<String, Object> map =
+                    new HashMap<String, Object>(size * 4 / 3 + 1);
+                for(int i = 0; i < size; ++i)
+                {
+                    final String key = readString(in);
+                    map.put(key, read(in));
+                }
+                value = map;
+                break;
+
+            default:
+                throw new IllegalArgumentException("unknown value tag: "
+                    + tag);
+        }
+
+        return value;
+    }
+
+    private static String readString(final ByteBuffer in)
+    {
+        final byte[] bytes = new byte[in.getInt()];
+        in.get(bytes);
+        return new String(bytes, UTF8);
+    }
+}
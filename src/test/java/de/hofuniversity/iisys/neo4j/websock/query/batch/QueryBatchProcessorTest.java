@@ -0,0 +1,224 @@
+/*
+ *  Copyright 2015 Institute of Information Systems, Hof University
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package de.hofuniversity.iisys.neo4j.websock.query.batch;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONObject;
+import org.junit.Assert;
+import org.junit.Test;
+
+import de.hofuniversity.iisys.neo4j.websock.query.EQueryType;
+import de.hofuniversity.iisys.neo4j.websock.query.IMessageConverter;
+import de.hofuniversity.iisys.neo4j.websock.query.IMessageSender;
+import de.hofuniversity.iisys.neo4j.websock.query.IQueryProcessor;
+import de.hofuniversity.iisys.neo4j.websock.query.WebsockQuery;
+import de.hofuniversity.iisys.neo4j.websock.query.client.QueryDispatcher;
+import de.hofuniversity.iisys.neo4j.websock.query.client.QueryFuture;
+import de.hofuniversity.iisys.neo4j.websock.query.deadline.DeadlineQueryListener;
+import de.hofuniversity.iisys.neo4j.websock.query.encoding.BatchUnpackingHandler;
+import de.hofuniversity.iisys.neo4j.websock.query.encoding.unsafe.BsonQueryHandler;
+import de.hofuniversity.iisys.neo4j.websock.util.JsonConverter;
+
+/**
+ * Test for query batches answered with a single combined response.
+ */
+public class QueryBatchProcessorTest
+{
+    //echoes payloads, fails for "fail"
+    private final IQueryProcessor fEcho = new IQueryProcessor()
+    {
+        @Override
+        public WebsockQuery process(WebsockQuery query)
+        {
+            if("fail".equals(query.getPayload()))
+            {
+                throw new RuntimeException("failed on purpose");
+            }
+
+            final WebsockQuery response = new WebsockQuery(query.getId(),
+                EQueryType.RESULT);
+            response.setPayload("echo " + query.getPayload());
+            return response;
+        }
+    };
+
+    /**
+     * Tests sending a batch through the dispatcher, processing it
+     * sequentially and in parallel and completing each query's future from
+     * the combined BSON-encoded response.
+     */
+    @Test
+    public void dispatchTest() throws Exception
+    {
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        final QueryBatchProcessor processor = new QueryBatchProcessor(fEcho,
+            executor);
+        final BsonQueryHandler codec = new BsonQueryHandler();
+
+        final List<WebsockQuery> responses = new ArrayList<WebsockQuery>();
+        final List<WebsockQuery> requests = new ArrayList<WebsockQuery>();
+        final QueryDispatcher dispatcher = new QueryDispatcher(
+            new IMessageSender()
+        {
+            @Override
+            public void sendMessage(WebsockQuery query) throws Exception
+            {
+                //one frame each way
+                final WebsockQuery received = codec.decode(
+                    codec.encode(query));
+                requests.add(received);
+                responses.add(codec.decode(codec.encode(
+                    processor.process(received))));
+            }
+        });
+        final BatchUnpackingHandler handler =
+            (BatchUnpackingHandler)dispatcher.createHandler(
+            new IMessageConverter()
+        {
+            @Override
+            public WebsockQuery convert(ByteBuffer message) throws Exception
+            {
+                return codec.decode(message);
+            }
+
+            @Override
+            public WebsockQuery convert(String message)
+            {
+                throw new UnsupportedOperationException();
+            }
+        });
+
+        for(boolean parallel : new boolean[] {false, true})
+        {
+            final List<WebsockQuery> queries = new ArrayList<WebsockQuery>();
+            for(int i = 0; i < 10; ++i)
+            {
+                final WebsockQuery query = new WebsockQuery(
+                    EQueryType.PROCEDURE_CALL);
+                query.setPayload(i == 5 ? "fail" : "q" + i);
+                queries.add(query);
+            }
+
+            final List<QueryFuture> futures = dispatcher.sendBatch(queries,
+                parallel);
+
+            final WebsockQuery request = requests.get(requests.size() - 1);
+            Assert.assertEquals(EQueryType.QUERY_BATCH, request.getType());
+            Assert.assertEquals(parallel, QueryBatch.isParallel(request));
+
+            final WebsockQuery response = responses.get(responses.size() - 1);
+            Assert.assertEquals(EQueryType.BATCH, response.getType());
+            Assert.assertEquals(request.getId(), response.getId());
+            Assert.assertEquals(10, QueryBatch.getQueries(response).size());
+
+            handler.dispatch(response);
+            for(int i = 0; i < 10; ++i)
+            {
+                if(i == 5)
+                {
+                    Assert.assertTrue(futures.get(i).isFailed());
+                    continue;
+                }
+                Assert.assertEquals("echo q" + i, futures.get(i).get(1,
+                    TimeUnit.SECONDS).getPayload());
+            }
+        }
+
+        Assert.assertEquals(0, dispatcher.getInFlight());
+        executor.shutdown();
+    }
+
+    /**
+     * Tests nested batches surviving JSON encoding as nested queries.
+     */
+    @Test
+    public void nestedJsonTest() throws Exception
+    {
+        final List<WebsockQuery> inner = new ArrayList<WebsockQuery>();
+        inner.add(new WebsockQuery(3, EQueryType.PING));
+        final List<WebsockQuery> outer = new ArrayList<WebsockQuery>();
+        outer.add(new WebsockQuery(1, EQueryType.PING));
+        outer.add(QueryBatch.create(2, inner, false));
+
+        final WebsockQuery decoded = JsonConverter.fromJson(new JSONObject(
+            JsonConverter.toJson(QueryBatch.create(0, outer, true))
+            .toString()));
+        final List<WebsockQuery> queries = QueryBatch.getQueries(decoded);
+        Assert.assertEquals(2, queries.size());
+        Assert.assertEquals(1, queries.get(0).getId());
+        Assert.assertEquals(EQueryType.QUERY_BATCH, queries.get(1).getType());
+        Assert.assertEquals(3,
+            QueryBatch.getQueries(queries.get(1)).get(0).getId());
+
+        //nested batch answered with nested response batch
+        final WebsockQuery response = new QueryBatchProcessor(
+            new IQueryProcessor()
+        {
+            @Override
+            public WebsockQuery process(WebsockQuery query)
+            {
+                return null;
+            }
+        }, null).process(decoded);
+        final List<WebsockQuery> responses = QueryBatch.getQueries(response);
+        Assert.assertEquals(EQueryType.SUCCESS, responses.get(0).getType());
+        Assert.assertEquals(EQueryType.BATCH, responses.get(1).getType());
+        Assert.assertEquals(3,
+            QueryBatch.getQueries(responses.get(1)).get(0).getId());
+    }
+
+    /**
+     * Tests that queries whose deadline passed while earlier queries of the
+     * batch executed are not executed.
+     */
+    @Test
+    public void deadlineTest() throws Exception
+    {
+        final List<WebsockQuery> executed = new ArrayList<WebsockQuery>();
+        final IQueryProcessor slow = new IQueryProcessor()
+        {
+            @Override
+            public WebsockQuery process(WebsockQuery query) throws Exception
+            {
+                executed.add(query);
+                Thread.sleep(100);
+                return null;
+            }
+        };
+
+        final List<WebsockQuery> queries = new ArrayList<WebsockQuery>();
+        queries.add(new WebsockQuery(1, EQueryType.PING));
+        final WebsockQuery expiring = new WebsockQuery(2, EQueryType.PING);
+        expiring.setDeadline(System.currentTimeMillis() + 20);
+        queries.add(expiring);
+
+        final WebsockQuery response = new QueryBatchProcessor(slow, null)
+            .process(QueryBatch.create(0, queries, false));
+        final List<WebsockQuery> responses = QueryBatch.getQueries(response);
+
+        Assert.assertEquals(1, executed.size());
+        Assert.assertEquals(EQueryType.SUCCESS, responses.get(0).getType());
+        Assert.assertTrue(DeadlineQueryListener.isDeadlineExceeded(
+            responses.get(1)));
+    }
+}
@@ -0,0 +1,226 @@
+/*
+ *  Copyright 2015 Institute of Information Systems, Hof University
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package de.hofuniversity.iisys.neo4j.websock.query.cancel;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import de.hofuniversity.iisys.neo4j.websock.query.EQueryType;
+import de.hofuniversity.iisys.neo4j.websock.query.IMessageConverter;
+import de.hofuniversity.iisys.neo4j.websock.query.IMessageSender;
+import de.hofuniversity.iisys.neo4j.websock.query.IQueryListener;
+import de.hofuniversity.iisys.neo4j.websock.query.WebsockQuery;
+import de.hofuniversity.iisys.neo4j.websock.query.concurrent.QueryExecutor;
+import de.hofuniversity.iisys.neo4j.websock.query.concurrent.ThreadPerQueryHandler;
+import de.hofuniversity.iisys.neo4j.websock.query.encoding.BatchingMessageSender;
+import de.hofuniversity.iisys.neo4j.websock.result.EResultEncoding;
+import de.hofuniversity.iisys.neo4j.websock.result.stream.ResultStreamer;
+
+/**
+ * Test for the cancellation of executing queries.
+ */
+public class CancellationRegistryTest
+{
+    private final List<WebsockQuery> fSent = new ArrayList<WebsockQuery>();
+
+    private final IMessageSender fSender = new IMessageSender()
+    {
+        @Override
+        public void sendMessage(WebsockQuery query)
+        {
+            fSent.add(query);
+        }
+    };
+
+    /**
+     * Tests that a cancellation message stops a streamed result, discarding
+     * the partially produced chunk.
+     */
+    @Test
+    public void streamTest() throws Exception
+    {
+        final CancellationRegistry registry = new CancellationRegistry();
+        final ResultStreamer streamer = new ResultStreamer(fSender, 10,
+            Collections.<EResultEncoding>emptySet());
+        final IQueryListener[] listener = new IQueryListener[1];
+
+        //cancels itself in the middle of the second chunk
+        final Iterator<Object> rows = new Iterator<Object>()
+        {
+            private int fRow = 0;
+
+            @Override
+            public boolean hasNext()
+            {
+                return fRow < 100;
+            }
+
+            @Override
+            public Object next()
+            {
+                if(fRow == 15)
+                {
+                    listener[0].onQuery(new WebsockQuery(7,
+                        EQueryType.CANCEL));
+                }
+                return fRow++;
+            }
+
+            @Override
+            public void remove()
+            {
+                throw new UnsupportedOperationException();
+            }
+        };
+
+        listener[0] = registry.createListener(new ICancellableQueryListener()
+        {
+            @Override
+            public void onQuery(WebsockQuery query, CancellationToken token)
+            {
+                Assert.assertEquals(1, registry.getActive());
+                try
+                {
+                    streamer.streamList(query.getId(), rows, token);
+                }
+                catch(RuntimeException e)
+                {
+                    throw e;
+                }
+                catch(Exception e)
+                {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+
+        listener[0].onQuery(new WebsockQuery(7, EQueryType.DIRECT_CYPHER));
+
+        Assert.assertEquals(1, fSent.size());
+        Assert.assertEquals(0, registry.getActive());
+        Assert.assertFalse(registry.cancel(7));
+    }
+
+    /**
+     * Tests that batched messages of a cancelled query are discarded.
+     */
+    @Test
+    public void batchTest() throws Exception
+    {
+        final BatchingMessageSender sender = new BatchingMessageSender(
+            fSender, 10, BatchingMessageSender.DEFAULT_MAX_BYTES, 60000,
+            null);
+        final CancellationRegistry registry = new CancellationRegistry();
+        final CancellationToken token = registry.register(1);
+        sender.discardOnCancel(token);
+
+        for(int i = 1; i <= 3; ++i)
+        {
+            final WebsockQuery result = new WebsockQuery(i % 2,
+                EQueryType.RESULT);
+            result.setPayload(new HashMap<String, Object>());
+            sender.sendMessage(result);
+        }
+        Assert.assertEquals(3, sender.getPending());
+
+        Assert.assertTrue(registry.cancel(1));
+        Assert.assertTrue(token.isCancelled());
+        Assert.assertEquals(1, sender.getPending());
+
+        sender.flush();
+        Assert.assertEquals(1, fSent.size());
+        Assert.assertEquals(0, fSent.get(0).getId());
+    }
+
+    /**
+     * Tests cancelling a query still waiting for a free thread.
+     */
+    @Test
+    public void pendingTest() throws Exception
+    {
+        final CancellationRegistry registry = new CancellationRegistry();
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch blocker = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(2);
+        final List<Integer> executed =
+            Collections.synchronizedList(new ArrayList<Integer>());
+
+        final IQueryListener listener = registry.createListener(
+            new ICancellableQueryListener()
+        {
+            @Override
+            public void onQuery(WebsockQuery query, CancellationToken token)
+            {
+                executed.add(query.getId());
+                if(query.getId() == 1)
+                {
+                    started.countDown();
+                    try
+                    {
+                        blocker.await();
+                    }
+                    catch(InterruptedException e)
+                    {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                done.countDown();
+            }
+        });
+
+        //a single permit, so query 2 waits for query 1 to finish
+        final QueryExecutor executor = new QueryExecutor(1);
+        final ThreadPerQueryHandler handler = new ThreadPerQueryHandler(
+            executor, new IMessageConverter()
+            {
+                @Override
+                public WebsockQuery convert(ByteBuffer message)
+                {
+                    throw new UnsupportedOperationException();
+                }
+
+                @Override
+                public WebsockQuery convert(String message)
+                {
+                    throw new UnsupportedOperationException();
+                }
+            }, listener, false);
+        handler.submit(new WebsockQuery(1, EQueryType.DIRECT_CYPHER));
+        Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+        handler.submit(new WebsockQuery(2, EQueryType.DIRECT_CYPHER));
+        handler.submit(new WebsockQuery(2, EQueryType.CANCEL));
+
+        //query 2 is dropped once it gets its permit
+        blocker.countDown();
+        handler.submit(new WebsockQuery(3, EQueryType.DIRECT_CYPHER));
+        Assert.assertTrue(done.await(5, TimeUnit.SECONDS));
+
+        final List<Integer> expected = new ArrayList<Integer>();
+        Collections.addAll(expected, 1, 3);
+        Assert.assertEquals(expected, executed);
+        executor.shutdown();
+    }
+}
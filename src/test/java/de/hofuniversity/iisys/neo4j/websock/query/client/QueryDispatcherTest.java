@@ -0,0 +1,255 @@
+/*
+ *  Copyright 2015 Institute of Information Systems, Hof University
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package de.hofuniversity.iisys.neo4j.websock.query.client;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import de.hofuniversity.iisys.neo4j.websock.query.EQueryType;
+import de.hofuniversity.iisys.neo4j.websock.query.IMessageSender;
+import de.hofuniversity.iisys.neo4j.websock.query.WebsockQuery;
+import de.hofuniversity.iisys.neo4j.websock.result.ListResult;
+import de.hofuniversity.iisys.neo4j.websock.result.stream.ResultStream;
+import de.hofuniversity.iisys.neo4j.websock.session.WebsockConstants;
+import de.hofuniversity.iisys.neo4j.websock.util.ResultSetConverter;
+
+/**
+ * Test for the pipelining client-side query dispatcher.
+ */
+public class QueryDispatcherTest
+{
+    private final List<WebsockQuery> fSent = new ArrayList<WebsockQuery>();
+
+    private final IMessageSender fSender = new IMessageSender()
+    {
+        @Override
+        public void sendMessage(WebsockQuery query)
+        {
+            fSent.add(query);
+        }
+    };
+
+    /**
+     * Tests correlating responses arriving out of order with their queries.
+     */
+    @Test
+    public void pipelineTest() throws Exception
+    {
+        final QueryDispatcher dispatcher = new QueryDispatcher(fSender);
+
+        final List<QueryFuture> futures = new ArrayList<QueryFuture>();
+        for(int i = 0; i < 3; ++i)
+        {
+            final WebsockQuery query = new WebsockQuery(
+                EQueryType.DIRECT_CYPHER);
+            query.setPayload("query " + i);
+            futures.add(dispatcher.send(query));
+        }
+        Assert.assertEquals(3, dispatcher.getInFlight());
+
+        //answer in reverse order
+        for(int i = 2; i >= 0; --i)
+        {
+            final WebsockQuery response = new WebsockQuery(
+                fSent.get(i).getId(), EQueryType.RESULT);
+            response.setPayload("result " + i);
+            dispatcher.onQuery(response);
+        }
+
+        for(int i = 0; i < 3; ++i)
+        {
+            Assert.assertEquals("result " + i,
+                futures.get(i).get(1, TimeUnit.SECONDS).getPayload());
+        }
+        Assert.assertEquals(0, dispatcher.getInFlight());
+
+        //late duplicate is ignored
+        dispatcher.onQuery(new WebsockQuery(fSent.get(0).getId(),
+            EQueryType.TOTAL));
+    }
+
+    /**
+     * Tests error responses and timeouts completing futures exceptionally.
+     */
+    @Test
+    public void failureTest() throws Exception
+    {
+        final QueryDispatcher dispatcher = new QueryDispatcher(fSender, 1, 50,
+            null);
+
+        final QueryFuture failed = dispatcher.send(
+            new WebsockQuery(EQueryType.PING));
+        final WebsockQuery error = new WebsockQuery(fSent.get(0).getId(),
+            EQueryType.ERROR);
+        error.setPayload("boom");
+        dispatcher.onQuery(error);
+        try
+        {
+            failed.get();
+            Assert.fail();
+        }
+        catch(ExecutionException e)
+        {
+            Assert.assertTrue(e.getCause().getMessage().contains("boom"));
+        }
+
+        //occupies the only slot until it times out
+        final QueryFuture expired = dispatcher.send(
+            new WebsockQuery(EQueryType.PING), 200);
+        final QueryFuture waiting = dispatcher.send(
+            new WebsockQuery(EQueryType.PING), 1000);
+        Assert.assertTrue(expired.isFailed());
+        Assert.assertFalse(waiting.isDone());
+        try
+        {
+            expired.get();
+            Assert.fail();
+        }
+        catch(ExecutionException e)
+        {
+            Assert.assertTrue(e.getCause() instanceof TimeoutException);
+        }
+
+        dispatcher.close();
+        Assert.assertTrue(waiting.isFailed());
+        Assert.assertEquals(0, dispatcher.getInFlight());
+    }
+
+    /**
+     * Tests that cancelled futures fail and notify the server.
+     */
+    @Test
+    public void cancelTest() throws Exception
+    {
+        final QueryDispatcher dispatcher = new QueryDispatcher(fSender);
+
+        final QueryFuture future = dispatcher.send(
+            new WebsockQuery(EQueryType.DIRECT_CYPHER));
+        final int id = fSent.get(0).getId();
+        Assert.assertTrue(future.cancel(true));
+
+        Assert.assertEquals(2, fSent.size());
+        Assert.assertEquals(EQueryType.CANCEL, fSent.get(1).getType());
+        Assert.assertEquals(id, fSent.get(1).getId());
+        Assert.assertEquals(0, dispatcher.getInFlight());
+        try
+        {
+            future.get();
+            Assert.fail();
+        }
+        catch(CancellationException e)
+        {
+            //expected
+        }
+
+        //late responses are ignored
+        dispatcher.onQuery(new WebsockQuery(id, EQueryType.RESULT));
+        Assert.assertTrue(future.isCancelled());
+        dispatcher.close();
+    }
+
+    /**
+     * Tests that streamed results complete their future with the last chunk
+     * and fail futures of queries sent without a stream.
+     */
+    @Test
+    public void streamTest() throws Exception
+    {
+        final QueryDispatcher dispatcher = new QueryDispatcher(fSender);
+
+        final ResultStream stream = new ResultStream(1000);
+        final QueryFuture future = dispatcher.stream(
+            new WebsockQuery(EQueryType.DIRECT_CYPHER), stream);
+        final int id = fSent.get(0).getId();
+
+        dispatcher.onQuery(createChunk(id, 0, false, "a", "b"));
+        Assert.assertFalse(future.isDone());
+        dispatcher.onQuery(createChunk(id, 1, true, "c"));
+        Assert.assertTrue(future.isDone());
+        Assert.assertFalse(future.isFailed());
+        Assert.assertEquals(0, dispatcher.getInFlight());
+
+        final List<Object> rows = new ArrayList<Object>();
+        for(Object row : stream)
+        {
+            rows.add(row);
+        }
+        Assert.assertEquals(Arrays.<Object>asList("a", "b", "c"), rows);
+
+        //streams of failed queries end with an error
+        final ResultStream failing = new ResultStream(1000);
+        final QueryFuture cancelled = dispatcher.stream(
+            new WebsockQuery(EQueryType.DIRECT_CYPHER), failing);
+        dispatcher.onQuery(createChunk(fSent.get(1).getId(), 0, false, "a"));
+        cancelled.cancel(true);
+        Assert.assertEquals("a", failing.next());
+        try
+        {
+            failing.hasNext();
+            Assert.fail("no exception thrown");
+        }
+        catch(RuntimeException e)
+        {
+            //expected
+        }
+
+        //chunks do not complete futures without a stream
+        final QueryFuture plain = dispatcher.send(
+            new WebsockQuery(EQueryType.DIRECT_CYPHER));
+        final int plainId = fSent.get(fSent.size() - 1).getId();
+        dispatcher.onQuery(createChunk(plainId, 0, false, "a"));
+        Assert.assertTrue(plain.isFailed());
+        try
+        {
+            plain.get();
+            Assert.fail("no exception thrown");
+        }
+        catch(ExecutionException e)
+        {
+            Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+
+        dispatcher.close();
+    }
+
+    private WebsockQuery createChunk(int id, int index, boolean last,
+        Object ... values)
+    {
+        final Map<String, Object> payload = ResultSetConverter.toMap(
+            new ListResult(Arrays.asList(values)),
+            new HashMap<String, Object>());
+        payload.put(WebsockConstants.CHUNK_INDEX, index);
+        if(last)
+        {
+            payload.put(WebsockConstants.LAST_CHUNK, true);
+        }
+
+        final WebsockQuery chunk = new WebsockQuery(id, EQueryType.RESULT);
+        chunk.setPayload(payload);
+        return chunk;
+    }
+}
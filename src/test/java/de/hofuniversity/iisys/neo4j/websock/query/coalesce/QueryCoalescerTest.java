@@ -0,0 +1,192 @@
+/*
+ *  Copyright 2015 Institute of Information Systems, Hof University
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package de.hofuniversity.iisys.neo4j.websock.query.coalesce;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.bson.BSONObject;
+import org.junit.Assert;
+import org.junit.Test;
+
+import de.hofuniversity.iisys.neo4j.websock.query.EQueryType;
+import de.hofuniversity.iisys.neo4j.websock.query.IMessageSender;
+import de.hofuniversity.iisys.neo4j.websock.query.IQueryProcessor;
+import de.hofuniversity.iisys.neo4j.websock.query.WebsockQuery;
+import de.hofuniversity.iisys.neo4j.websock.session.WebsockConstants;
+import de.hofuniversity.iisys.neo4j.websock.util.JSONMap;
+
+/**
+ * Test for the single-flight coalescing of identical queries.
+ */
+public class QueryCoalescerTest
+{
+    private final List<WebsockQuery> fSent =
+        Collections.synchronizedList(new ArrayList<WebsockQuery>());
+
+    private final IMessageSender fSender = new IMessageSender()
+    {
+        @Override
+        public void sendMessage(WebsockQuery query)
+        {
+            fSent.add(query);
+        }
+    };
+
+    private final CountDownLatch fStarted = new CountDownLatch(1);
+    private final CountDownLatch fBlocker = new CountDownLatch(1);
+    private int fProcessed;
+
+    //query 1 blocks until released, answers with the received parameter
+    private final IQueryProcessor fProcessor = new IQueryProcessor()
+    {
+        @Override
+        public WebsockQuery process(WebsockQuery query) throws Exception
+        {
+            synchronized(QueryCoalescerTest.this)
+            {
+                ++fProcessed;
+            }
+            if(query.getId() == 1)
+            {
+                fStarted.countDown();
+                fBlocker.await();
+            }
+
+            final Map<String, Object> payload =
+                new HashMap<String, Object>();
+            payload.put("value", query.getParameter("x"));
+
+            final WebsockQuery response = new WebsockQuery(query.getId(),
+                EQueryType.RESULT);
+            response.setPayload(payload);
+            return response;
+        }
+    };
+
+    private static WebsockQuery call(int id, Object param)
+    {
+        final WebsockQuery query = new WebsockQuery(id,
+            EQueryType.PROCEDURE_CALL);
+        query.setPayload("feed");
+        query.setParameter("x", param);
+        return query;
+    }
+
+    private WebsockQuery getResponse(int id)
+    {
+        for(WebsockQuery response : fSent)
+        {
+            if(response.getId() == id)
+            {
+                return response;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Tests that identical queries arriving during an execution share its
+     * response, converted once per format.
+     */
+    @Test
+    public void coalesceTest() throws Exception
+    {
+        final QueryCoalescer coalescer = new QueryCoalescer(fProcessor,
+            false);
+
+        final Thread leader = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                coalescer.execute(call(1, 5), fSender,
+                    WebsockConstants.BSON_FORMAT);
+            }
+        });
+        leader.start();
+        Assert.assertTrue(fStarted.await(5, TimeUnit.SECONDS));
+
+        //equal parameters decoded as another type
+        coalescer.execute(call(2, 5L), fSender,
+            WebsockConstants.BSON_FORMAT);
+        coalescer.execute(call(3, 5), fSender,
+            WebsockConstants.JSON_FORMAT);
+        Assert.assertEquals(1, coalescer.getInFlight());
+
+        //different parameters are executed separately
+        coalescer.execute(call(4, 6), fSender,
+            WebsockConstants.BSON_FORMAT);
+        Assert.assertEquals(1, fSent.size());
+
+        fBlocker.countDown();
+        leader.join(5000);
+
+        Assert.assertEquals(2, fProcessed);
+        Assert.assertEquals(2, coalescer.getExecutions());
+        Assert.assertEquals(2, coalescer.getCoalesced());
+        Assert.assertEquals(0, coalescer.getInFlight());
+        Assert.assertEquals(4, fSent.size());
+
+        final Object bson = getResponse(1).getPayload();
+        Assert.assertTrue(bson instanceof BSONObject);
+        Assert.assertSame(bson, getResponse(2).getPayload());
+        Assert.assertEquals(5, ((BSONObject) bson).get("value"));
+
+        final Object json = getResponse(3).getPayload();
+        Assert.assertTrue(json instanceof JSONMap);
+        Assert.assertEquals(5, ((JSONMap) json).get("value"));
+        Assert.assertEquals(EQueryType.RESULT, getResponse(3).getType());
+    }
+
+    /**
+     * Tests that Cypher statements and excluded procedures are not
+     * coalesced and that failures are reported to each query.
+     */
+    @Test
+    public void exclusionTest() throws Exception
+    {
+        final QueryCoalescer coalescer = new QueryCoalescer(
+            new IQueryProcessor()
+            {
+                @Override
+                public WebsockQuery process(WebsockQuery query)
+                    throws Exception
+                {
+                    throw new RuntimeException("failed");
+                }
+            }, false);
+        coalescer.exclude("feed");
+
+        final WebsockQuery cypher = new WebsockQuery(1,
+            EQueryType.DIRECT_CYPHER);
+        cypher.setPayload("MATCH (n) RETURN n");
+        coalescer.execute(cypher, fSender, WebsockConstants.JSON_FORMAT);
+        coalescer.execute(call(2, 1), fSender,
+            WebsockConstants.JSON_FORMAT);
+
+        Assert.assertEquals(2, coalescer.getExecutions());
+        Assert.assertEquals(2, fSent.size());
+        Assert.assertEquals(EQueryType.ERROR, getResponse(1).getType());
+        Assert.assertEquals("failed", getResponse(2).getPayload());
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ *  Copyright 2015 Institute of Information Systems, Hof University
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package de.hofuniversity.iisys.neo4j.websock.query.concurrent;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import de.hofuniversity.iisys.neo4j.websock.query.EQueryType;
+import de.hofuniversity.iisys.neo4j.websock.query.IMessageConverter;
+import de.hofuniversity.iisys.neo4j.websock.query.IQueryListener;
+import de.hofuniversity.iisys.neo4j.websock.query.WebsockQuery;
+
+/**
+ * Test for the thread-per-query message handler.
+ */
+public class ThreadPerQueryHandlerTest
+{
+    private static final IMessageConverter CONVERTER = new IMessageConverter()
+    {
+        @Override
+        public WebsockQuery convert(ByteBuffer message)
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public WebsockQuery convert(String message)
+        {
+            return new WebsockQuery(Integer.parseInt(message),
+                EQueryType.PING);
+        }
+    };
+
+    private final List<Integer> fExecuted =
+        Collections.synchronizedList(new ArrayList<Integer>());
+    private final AtomicInteger fActive = new AtomicInteger();
+    private final AtomicInteger fMaxActive = new AtomicInteger();
+    private CountDownLatch fDone;
+
+    //queries with lower IDs take longer, records concurrency and order
+    private final IQueryListener fListener = new IQueryListener()
+    {
+        @Override
+        public void onQuery(WebsockQuery query)
+        {
+            final int active = fActive.incrementAndGet();
+            synchronized(fMaxActive)
+            {
+                if(active > fMaxActive.get())
+                {
+                    fMaxActive.set(active);
+                }
+            }
+
+            try
+            {
+                Thread.sleep(10 * (6 - query.getId()));
+            }
+            catch(InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+
+            fActive.decrementAndGet();
+            fExecuted.add(query.getId());
+            fDone.countDown();
+        }
+    };
+
+    /**
+     * Tests that unordered queries run concurrently within the global limit.
+     */
+    @Test
+    public void concurrencyLimitTest() throws Exception
+    {
+        final QueryExecutor executor = new QueryExecutor(2);
+        final ThreadPerQueryHandler handler = new ThreadPerQueryHandler(
+            executor, CONVERTER, fListener, false);
+        fDone = new CountDownLatch(6);
+
+        for(int i = 0; i < 6; ++i)
+        {
+            handler.onMessage(Integer.toString(i));
+        }
+
+        Assert.assertTrue(fDone.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals(6, fExecuted.size());
+        Assert.assertTrue(fMaxActive.get() <= 2);
+
+        executor.shutdown();
+    }
+
+    /**
+     * Tests that ordered handlers execute their queries in arrival order.
+     */
+    @Test
+    public void orderingTest() throws Exception
+    {
+        final QueryExecutor executor = new QueryExecutor(4);
+        final ThreadPerQueryHandler handler = (ThreadPerQueryHandler)
+            executor.createHandler(CONVERTER, fListener, true);
+        fDone = new CountDownLatch(6);
+
+        for(int i = 0; i < 6; ++i)
+        {
+            handler.onMessage(Integer.toString(i));
+        }
+
+        Assert.assertTrue(fDone.await(5, TimeUnit.SECONDS));
+        final List<Integer> expected = new ArrayList<Integer>();
+        Collections.addAll(expected, 0, 1, 2, 3, 4, 5);
+        Assert.assertEquals(expected, fExecuted);
+        Assert.assertEquals(1, fMaxActive.get());
+
+        executor.shutdown();
+    }
+
+    /**
+     * Tests that rejected ordered queries are run with the next query and
+     * that given executors are not shut down.
+     */
+    @Test
+    public void rejectionTest() throws Exception
+    {
+        final ExecutorService pool = Executors.newCachedThreadPool();
+        final boolean[] reject = {true};
+        final QueryExecutor executor = new QueryExecutor(new Executor()
+        {
+            @Override
+            public void execute(Runnable command)
+            {
+                if(reject[0])
+                {
+                    throw new RejectedExecutionException("saturated");
+                }
+                pool.execute(command);
+            }
+        }, 2);
+        final ThreadPerQueryHandler handler = (ThreadPerQueryHandler)
+            executor.createHandler(CONVERTER, fListener, true);
+        fDone = new CountDownLatch(2);
+
+        handler.onMessage("0");
+        reject[0] = false;
+        handler.onMessage("1");
+
+        Assert.assertTrue(fDone.await(5, TimeUnit.SECONDS));
+        final List<Integer> expected = new ArrayList<Integer>();
+        Collections.addAll(expected, 0, 1);
+        Assert.assertEquals(expected, fExecuted);
+
+        executor.shutdown();
+        Assert.assertFalse(pool.isShutdown());
+        pool.shutdown();
+    }
+
+    /**
+     * Tests that disposed unordered handlers drop further queries.
+     */
+    @Test
+    public void disposeTest() throws Exception
+    {
+        final QueryExecutor executor = new QueryExecutor(1);
+        final ThreadPerQueryHandler handler = new ThreadPerQueryHandler(
+            executor, CONVERTER, fListener, false);
+        fDone = new CountDownLatch(1);
+
+        handler.dispose();
+        handler.onMessage("5");
+        Assert.assertFalse(fDone.await(100, TimeUnit.MILLISECONDS));
+        Assert.assertTrue(fExecuted.isEmpty());
+
+        executor.shutdown();
+    }
+}
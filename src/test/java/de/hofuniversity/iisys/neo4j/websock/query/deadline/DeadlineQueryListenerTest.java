@@ -0,0 +1,123 @@
+/*
+ *  Copyright 2015 Institute of Information Systems, Hof University
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package de.hofuniversity.iisys.neo4j.websock.query.deadline;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import de.hofuniversity.iisys.neo4j.websock.query.EQueryType;
+import de.hofuniversity.iisys.neo4j.websock.query.IMessageSender;
+import de.hofuniversity.iisys.neo4j.websock.query.IQueryListener;
+import de.hofuniversity.iisys.neo4j.websock.query.WebsockQuery;
+import de.hofuniversity.iisys.neo4j.websock.util.BsonConverter;
+import de.hofuniversity.iisys.neo4j.websock.util.JsonConverter;
+import de.hofuniversity.iisys.neo4j.websock.util.QueryMapConverter;
+
+/**
+ * Test for query deadlines and the dropping of expired queries.
+ */
+public class DeadlineQueryListenerTest
+{
+    private final List<WebsockQuery> fSent = new ArrayList<WebsockQuery>();
+    private final List<WebsockQuery> fExecuted = new ArrayList<WebsockQuery>();
+
+    private final IMessageSender fSender = new IMessageSender()
+    {
+        @Override
+        public void sendMessage(WebsockQuery query)
+        {
+            fSent.add(query);
+        }
+    };
+
+    private final IQueryListener fListener = new IQueryListener()
+    {
+        @Override
+        public void onQuery(WebsockQuery query)
+        {
+            fExecuted.add(query);
+        }
+    };
+
+    /**
+     * Tests that expired queries are answered with an error instead of being
+     * executed.
+     */
+    @Test
+    public void sheddingTest() throws Exception
+    {
+        final DeadlineQueryListener listener = new DeadlineQueryListener(
+            fListener, fSender);
+
+        listener.onQuery(new WebsockQuery(1, EQueryType.DIRECT_CYPHER));
+
+        final WebsockQuery pending = new WebsockQuery(2,
+            EQueryType.DIRECT_CYPHER);
+        pending.setTimeout(60000);
+        listener.onQuery(pending);
+
+        final WebsockQuery expired = new WebsockQuery(3,
+            EQueryType.DIRECT_CYPHER);
+        expired.setDeadline(System.currentTimeMillis() - 100);
+        Assert.assertTrue(expired.isExpired());
+        listener.onQuery(expired);
+
+        Assert.assertEquals(2, fExecuted.size());
+        Assert.assertEquals(2, listener.getExecuted());
+        Assert.assertEquals(1, listener.getShed());
+
+        Assert.assertEquals(1, fSent.size());
+        Assert.assertEquals(3, fSent.get(0).getId());
+        Assert.assertTrue(DeadlineQueryListener.isDeadlineExceeded(
+            fSent.get(0)));
+        Assert.assertFalse(DeadlineQueryListener.isDeadlineExceeded(
+            new WebsockQuery(4, EQueryType.ERROR)));
+    }
+
+    /**
+     * Tests that all codecs transfer the remaining time until the deadline.
+     */
+    @Test
+    public void encodingTest() throws Exception
+    {
+        final WebsockQuery query = new WebsockQuery(1, EQueryType.PING);
+        query.setTimeout(60000);
+
+        final List<WebsockQuery> decoded = new ArrayList<WebsockQuery>();
+        decoded.add(BsonConverter.fromBson(BsonConverter.toBson(query)));
+        decoded.add(JsonConverter.fromJson(JsonConverter.toJson(query)));
+        decoded.add(QueryMapConverter.fromMap(
+            QueryMapConverter.toMap(query)));
+
+        for(WebsockQuery result : decoded)
+        {
+            final long diff = result.getDeadline() - query.getDeadline();
+            Assert.assertTrue(diff >= 0 && diff < 5000);
+            Assert.assertFalse(result.isExpired());
+        }
+
+        //no deadline is transferred as none
+        query.setTimeout(0);
+        Assert.assertEquals(0, BsonConverter.fromBson(
+            BsonConverter.toBson(query)).getDeadline());
+        Assert.assertEquals(0, JsonConverter.fromJson(
+            JsonConverter.toJson(query)).getDeadline());
+    }
+}
@@ -0,0 +1,260 @@
+/*
+ *  Copyright 2015 Institute of Information Systems, Hof University
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package de.hofuniversity.iisys.neo4j.websock.query.encoding;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.websocket.RemoteEndpoint.Basic;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import de.hofuniversity.iisys.neo4j.websock.queries.FakeWebsockSession;
+import de.hofuniversity.iisys.neo4j.websock.queries.TestMessageHandler;
+import de.hofuniversity.iisys.neo4j.websock.query.EQueryType;
+import de.hofuniversity.iisys.neo4j.websock.query.IMessageSender;
+import de.hofuniversity.iisys.neo4j.websock.query.IQueryListener;
+import de.hofuniversity.iisys.neo4j.websock.query.WebsockQuery;
+import de.hofuniversity.iisys.neo4j.websock.session.WebsockConstants;
+import de.hofuniversity.iisys.neo4j.websock.session.WebsockSession;
+import de.hofuniversity.iisys.neo4j.websock.util.SizeEstimator;
+
+/**
+ * Tests the batching of outgoing messages and the unpacking of received
+ * batches.
+ */
+public class BatchingMessageSenderTest
+{
+    /**
+     * Tests flushing batches by message count and when sending other
+     * messages, in binary and text form.
+     */
+    @Test
+    public void sizeTest() throws Exception
+    {
+        sizeTest(WebsockConstants.BSON_FORMAT);
+        sizeTest(WebsockConstants.JSON_FORMAT);
+    }
+
+    private void sizeTest(String format) throws Exception
+    {
+        final FakeWebsockSession session = new FakeWebsockSession();
+        final TransferUtil util = createUtil(session, format);
+        final BatchingMessageSender sender = new BatchingMessageSender(util,
+            3, BatchingMessageSender.DEFAULT_MAX_BYTES, 60000, null);
+
+        for(int i = 1; i <= 5; ++i)
+        {
+            sender.sendMessage(createResult(i));
+        }
+        Assert.assertEquals(2, sender.getPending());
+        Assert.assertEquals(1, getFrameCount(session));
+
+        //non-batchable messages flush the batch first
+        sender.sendMessage(new WebsockQuery(6, EQueryType.PING));
+        Assert.assertEquals(0, sender.getPending());
+        Assert.assertEquals(3, getFrameCount(session));
+
+        final List<WebsockQuery> received = receive(session, util);
+        Assert.assertEquals(6, received.size());
+        for(int i = 0; i < 5; ++i)
+        {
+            final WebsockQuery query = received.get(i);
+            Assert.assertEquals(i + 1, query.getId());
+            Assert.assertEquals(EQueryType.RESULT, query.getType());
+            Assert.assertEquals("value " + (i + 1),
+                ((Map<?, ?>) query.getPayload()).get("key"));
+        }
+        Assert.assertEquals(EQueryType.PING, received.get(5).getType());
+    }
+
+    /**
+     * Tests flushing batches by their estimated size and by linger time.
+     */
+    @Test
+    public void limitTest() throws Exception
+    {
+        final FakeWebsockSession session = new FakeWebsockSession();
+        final TransferUtil util = createUtil(session,
+            WebsockConstants.BSON_FORMAT);
+
+        //byte budget
+        BatchingMessageSender sender = new BatchingMessageSender(util, 100,
+            30, 60000, null);
+        sender.sendMessage(createResult(1));
+        Assert.assertEquals(1, sender.getPending());
+        sender.sendMessage(createResult(2));
+        Assert.assertEquals(0, sender.getPending());
+        Assert.assertEquals(2, receive(session, util).size());
+
+        //linger time
+        sender = new BatchingMessageSender(util, 100,
+            BatchingMessageSender.DEFAULT_MAX_BYTES, 10, null);
+        sender.sendMessage(new WebsockQuery(1, EQueryType.SUCCESS));
+        sender.sendMessage(new WebsockQuery(2, EQueryType.SUCCESS));
+
+        final long deadline = System.currentTimeMillis() + 5000;
+        while(sender.getPending() > 0
+            && System.currentTimeMillis() < deadline)
+        {
+            Thread.sleep(5);
+        }
+
+        final List<WebsockQuery> received = receive(session, util);
+        Assert.assertEquals(2, received.size());
+        Assert.assertEquals(EQueryType.SUCCESS, received.get(1).getType());
+    }
+
+    /**
+     * Tests that the remaining time of batched messages is computed when
+     * the batch is sent.
+     */
+    @Test
+    public void deadlineTest() throws Exception
+    {
+        final List<WebsockQuery> sent = new ArrayList<WebsockQuery>();
+        final BatchingMessageSender sender = new BatchingMessageSender(
+            new IMessageSender()
+            {
+                @Override
+                public void sendMessage(WebsockQuery query)
+                {
+                    sent.add(query);
+                }
+            }, 10, BatchingMessageSender.DEFAULT_MAX_BYTES, 60000, null);
+
+        for(int i = 1; i <= 2; ++i)
+        {
+            final WebsockQuery result = createResult(i);
+            result.setDeadline(System.currentTimeMillis() + 1000);
+            sender.sendMessage(result);
+        }
+        Thread.sleep(300);
+        sender.flush();
+
+        Assert.assertEquals(1, sent.size());
+        for(Object message : (List<?>) sent.get(0).getPayload())
+        {
+            final long timeout = ((Number) ((Map<?, ?>) message).get(
+                WebsockConstants.TIMEOUT)).longValue();
+            Assert.assertTrue(timeout <= 700);
+        }
+    }
+
+    /**
+     * Tests that discarded messages no longer count towards the byte budget.
+     */
+    @Test
+    public void discardTest() throws Exception
+    {
+        final WebsockQuery sample = createResult(1);
+        final long size = SizeEstimator.estimate(sample.getPayload())
+            + SizeEstimator.estimate(sample.getParameters());
+        final BatchingMessageSender sender = new BatchingMessageSender(
+            new IMessageSender()
+            {
+                @Override
+                public void sendMessage(WebsockQuery query)
+                {
+                    //discarded
+                }
+            }, 10, (int) (size * 5 / 2), 60000, null);
+
+        sender.sendMessage(createResult(1));
+        sender.sendMessage(createResult(2));
+        Assert.assertEquals(1, sender.discard(1));
+
+        sender.sendMessage(createResult(3));
+        Assert.assertEquals(2, sender.getPending());
+    }
+
+    /**
+     * Tests creating senders from session settings.
+     */
+    @Test
+    public void sessionTest()
+    {
+        final IMessageSender base = createUtil(new FakeWebsockSession(),
+            WebsockConstants.BSON_FORMAT);
+        final WebsockSession session = new WebsockSession(
+            new FakeWebsockSession());
+
+        Assert.assertSame(base,
+            BatchingMessageSender.forSession(base, session));
+
+        session.setBatching(true);
+        Assert.assertTrue(BatchingMessageSender.forSession(base, session)
+            instanceof BatchingMessageSender);
+    }
+
+    private WebsockQuery createResult(int id)
+    {
+        final WebsockQuery query = new WebsockQuery(id, EQueryType.RESULT);
+        final Map<String, Object> payload = new HashMap<String, Object>();
+        payload.put("key", "value " + id);
+        query.setPayload(payload);
+        return query;
+    }
+
+    private int getFrameCount(FakeWebsockSession session)
+    {
+        return session.getBinaryMessages().size()
+            + session.getTextMessages().size();
+    }
+
+    private List<WebsockQuery> receive(FakeWebsockSession session,
+        TransferUtil util)
+    {
+        final List<WebsockQuery> received = new ArrayList<WebsockQuery>();
+        final BatchUnpackingHandler handler = new BatchUnpackingHandler(util,
+            new IQueryListener()
+            {
+                @Override
+                public void onQuery(WebsockQuery query)
+                {
+                    received.add(query);
+                }
+            });
+
+        while(!session.getBinaryMessages().isEmpty())
+        {
+            handler.onMessage(session.getBinaryMessages().pop());
+        }
+        while(!session.getTextMessages().isEmpty())
+        {
+            handler.onMessage(session.getTextMessages().pop());
+        }
+
+        return received;
+    }
+
+    private TransferUtil createUtil(FakeWebsockSession session,
+        String format)
+    {
+        final TestMessageHandler handler = new TestMessageHandler();
+        final Basic remote = session.getBasicRemote();
+
+        final TransferUtil util = new TransferUtil(
+            new StringTransferUtil(remote, handler),
+            new BinaryTransferUtil(remote, handler, true));
+        util.setFormat(format, WebsockConstants.NO_COMPRESSION);
+        return util;
+    }
+}
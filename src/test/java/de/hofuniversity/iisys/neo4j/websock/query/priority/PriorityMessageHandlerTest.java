@@ -0,0 +1,236 @@
+/*
+ *  Copyright 2015 Institute of Information Systems, Hof University
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package de.hofuniversity.iisys.neo4j.websock.query.priority;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import de.hofuniversity.iisys.neo4j.websock.query.EQueryType;
+import de.hofuniversity.iisys.neo4j.websock.query.IMessageConverter;
+import de.hofuniversity.iisys.neo4j.websock.query.IQueryListener;
+import de.hofuniversity.iisys.neo4j.websock.query.WebsockQuery;
+import de.hofuniversity.iisys.neo4j.websock.query.procedure.ProcedureTable;
+import de.hofuniversity.iisys.neo4j.websock.session.WebsockConstants;
+
+/**
+ * Test for the priority-aware message handler.
+ */
+public class PriorityMessageHandlerTest
+{
+    private static final IMessageConverter CONVERTER = new IMessageConverter()
+    {
+        @Override
+        public WebsockQuery convert(ByteBuffer message)
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public WebsockQuery convert(String message)
+        {
+            throw new UnsupportedOperationException();
+        }
+    };
+
+    private final List<Integer> fExecuted =
+        Collections.synchronizedList(new ArrayList<Integer>());
+    private final CountDownLatch fBlocker = new CountDownLatch(1);
+    private CountDownLatch fDone;
+
+    //query 0 blocks until released, records all IDs
+    private final IQueryListener fListener = new IQueryListener()
+    {
+        @Override
+        public void onQuery(WebsockQuery query)
+        {
+            try
+            {
+                if(query.getId() == 0)
+                {
+                    fBlocker.await();
+                }
+            }
+            catch(InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+            fExecuted.add(query.getId());
+            fDone.countDown();
+        }
+    };
+
+    private static WebsockQuery query(int id, EQueryType type)
+    {
+        final WebsockQuery query = new WebsockQuery(id, type);
+        query.setPayload("proc");
+        return query;
+    }
+
+    /**
+     * Tests that queued queries are executed by class, not arrival order,
+     * and that procedures can be classified by name.
+     */
+    @Test
+    public void priorityTest() throws Exception
+    {
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        final PriorityMessageHandler handler = new PriorityMessageHandler(
+            CONVERTER, fListener, executor, 1);
+        fDone = new CountDownLatch(5);
+
+        handler.enqueue(query(0, EQueryType.DIRECT_CYPHER));
+        handler.enqueue(query(1, EQueryType.DIRECT_CYPHER));
+        handler.enqueue(query(2, EQueryType.PROCEDURE_CALL));
+        handler.setClass("proc", EPriorityClass.LOW);
+        handler.enqueue(query(3, EQueryType.PROCEDURE_CALL));
+        handler.enqueue(query(4, EQueryType.PING));
+
+        Assert.assertEquals(2, handler.getQueued(EPriorityClass.LOW));
+        Assert.assertEquals(1, handler.getRunning(EPriorityClass.LOW));
+
+        fBlocker.countDown();
+        Assert.assertTrue(fDone.await(5, TimeUnit.SECONDS));
+
+        final List<Integer> expected = new ArrayList<Integer>();
+        Collections.addAll(expected, 0, 4, 2, 1, 3);
+        Assert.assertEquals(expected, fExecuted);
+        executor.shutdown();
+    }
+
+    /**
+     * Tests per-class limits leaving room for other classes.
+     */
+    @Test
+    public void limitTest() throws Exception
+    {
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        final PriorityMessageHandler handler = new PriorityMessageHandler(
+            CONVERTER, fListener, executor, 2);
+        fDone = new CountDownLatch(1);
+
+        //low priority may only use one of the two slots
+        handler.enqueue(query(0, EQueryType.DIRECT_CYPHER));
+        handler.enqueue(query(1, EQueryType.DIRECT_CYPHER));
+        handler.enqueue(query(2, EQueryType.PING));
+        Assert.assertTrue(fDone.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals(Collections.singletonList(2), fExecuted);
+        Assert.assertEquals(1, handler.getQueued(EPriorityClass.LOW));
+
+        fDone = new CountDownLatch(2);
+        fBlocker.countDown();
+        Assert.assertTrue(fDone.await(5, TimeUnit.SECONDS));
+        executor.shutdown();
+    }
+
+    /**
+     * Tests queries waiting longer than the maximum wait time being started
+     * before queries of higher classes.
+     */
+    @Test
+    public void starvationTest() throws Exception
+    {
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        final PriorityMessageHandler handler = new PriorityMessageHandler(
+            CONVERTER, fListener, executor, 1);
+        handler.setMaxWait(0);
+        fDone = new CountDownLatch(3);
+
+        handler.enqueue(query(0, EQueryType.DIRECT_CYPHER));
+        handler.enqueue(query(1, EQueryType.DIRECT_CYPHER));
+        handler.enqueue(query(2, EQueryType.PING));
+
+        fBlocker.countDown();
+        Assert.assertTrue(fDone.await(5, TimeUnit.SECONDS));
+
+        final List<Integer> expected = new ArrayList<Integer>();
+        Collections.addAll(expected, 0, 1, 2);
+        Assert.assertEquals(expected, fExecuted);
+        executor.shutdown();
+    }
+
+    /**
+     * Tests that queries rejected by the executor are started later.
+     */
+    @Test
+    public void rejectionTest() throws Exception
+    {
+        final boolean[] reject = {true};
+        final Executor executor = new Executor()
+        {
+            @Override
+            public void execute(Runnable command)
+            {
+                if(reject[0])
+                {
+                    throw new RejectedExecutionException("saturated");
+                }
+                new Thread(command).start();
+            }
+        };
+        final PriorityMessageHandler handler = new PriorityMessageHandler(
+            CONVERTER, fListener, executor, 1);
+        fDone = new CountDownLatch(2);
+
+        handler.enqueue(query(1, EQueryType.PING));
+        Assert.assertEquals(1, handler.getQueued(EPriorityClass.HIGH));
+        Assert.assertEquals(0, handler.getRunning(EPriorityClass.HIGH));
+
+        reject[0] = false;
+        handler.enqueue(query(2, EQueryType.PING));
+        Assert.assertTrue(fDone.await(5, TimeUnit.SECONDS));
+
+        final List<Integer> expected = new ArrayList<Integer>();
+        Collections.addAll(expected, 1, 2);
+        Assert.assertEquals(expected, fExecuted);
+    }
+
+    /**
+     * Tests classifying procedure calls by handle.
+     */
+    @Test
+    public void handleTest()
+    {
+        final PriorityMessageHandler handler = new PriorityMessageHandler(
+            CONVERTER, fListener, Executors.newSingleThreadExecutor(), 1);
+        handler.setClass("proc", EPriorityClass.LOW);
+
+        final ProcedureTable<Object> procedures = new ProcedureTable<Object>();
+        final int handle = procedures.register("proc", new Object());
+
+        final WebsockQuery call = new WebsockQuery(1,
+            EQueryType.PROCEDURE_CALL);
+        call.setParameter(WebsockConstants.PROCEDURE_HANDLE, handle);
+        Assert.assertEquals(EPriorityClass.NORMAL, handler.classify(call));
+
+        handler.setProcedureTable(procedures);
+        Assert.assertEquals(EPriorityClass.LOW, handler.classify(call));
+
+        procedures.remove("proc");
+        Assert.assertEquals(EPriorityClass.NORMAL, handler.classify(call));
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ *  Copyright 2015 Institute of Information Systems, Hof University
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package de.hofuniversity.iisys.neo4j.websock.query.procedure;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import de.hofuniversity.iisys.neo4j.websock.query.EQueryType;
+import de.hofuniversity.iisys.neo4j.websock.query.WebsockQuery;
+import de.hofuniversity.iisys.neo4j.websock.session.WebsockConstants;
+
+/**
+ * Test for numeric procedure handles on server and client side.
+ */
+public class ProcedureTableTest
+{
+    /**
+     * Tests registering, resolving and invalidating handles.
+     */
+    @Test
+    public void tableTest()
+    {
+        final ProcedureTable<String> table = new ProcedureTable<String>();
+
+        final int[] handles = new int[40];
+        for(int i = 0; i < handles.length; ++i)
+        {
+            handles[i] = table.register("proc" + i, "MATCH " + i);
+        }
+        Assert.assertEquals(40, table.getSize());
+        Assert.assertEquals(handles[7], table.resolve("proc7"));
+        Assert.assertEquals("MATCH 7", table.get(handles[7]));
+        Assert.assertEquals("proc7", table.getName(handles[7]));
+
+        //deleted and replaced handles stay invalid after slot reuse
+        Assert.assertTrue(table.remove("proc7"));
+        Assert.assertNull(table.get(handles[7]));
+        Assert.assertEquals(-1, table.resolve("proc7"));
+
+        final int replaced = table.register("proc8", "MATCH 8 again");
+        Assert.assertNull(table.get(handles[8]));
+        Assert.assertEquals("MATCH 8 again", table.get(replaced));
+
+        final int reused = table.register("other", "MATCH x");
+        Assert.assertFalse(reused == handles[7]);
+        Assert.assertNull(table.get(handles[7]));
+        Assert.assertNull(table.get(-1));
+        Assert.assertNull(table.get(Integer.MAX_VALUE));
+    }
+
+    /**
+     * Tests a client learning a handle and calling the procedure with it.
+     */
+    @Test
+    public void callTest()
+    {
+        final ProcedureTable<String> table = new ProcedureTable<String>();
+        table.register("people", "MATCH (p:Person) RETURN p");
+        final ProcedureHandleCache cache = new ProcedureHandleCache();
+
+        //resolve round trip
+        final WebsockQuery resolve = ProcedureHandleCache.createResolve(
+            "people");
+        resolve.setId(4);
+        final String name = (String)resolve.getParameter(
+            WebsockConstants.PROCEDURE_NAME);
+        Assert.assertTrue(cache.learn(ProcedureTable.createHandleResponse(
+            resolve.getId(), name, table.resolve(name))));
+
+        final WebsockQuery call = new WebsockQuery(5,
+            EQueryType.PROCEDURE_CALL);
+        call.setPayload("people");
+        call.setParameter("limit", 10);
+
+        final WebsockQuery prepared = cache.prepare(call);
+        Assert.assertNull(prepared.getPayload());
+        Assert.assertEquals(10, prepared.getParameter("limit"));
+        Assert.assertNotNull(prepared.getParameter(
+            WebsockConstants.PROCEDURE_HANDLE));
+        Assert.assertEquals("MATCH (p:Person) RETURN p", table.get(prepared));
+        Assert.assertEquals("people", call.getPayload());
+
+        //stale handle is rejected, original call still works
+        table.remove("people");
+        table.register("people", "MATCH (p:Person) RETURN p.name");
+        try
+        {
+            table.get(prepared);
+            Assert.fail();
+        }
+        catch(IllegalArgumentException e)
+        {
+            cache.invalidate("people");
+        }
+        Assert.assertSame(call, cache.prepare(call));
+        Assert.assertEquals("MATCH (p:Person) RETURN p.name",
+            table.get(call));
+
+        //deleting drops the cached handle
+        cache.learn(ProcedureTable.createHandleResponse(6, "people",
+            table.resolve("people")));
+        final WebsockQuery delete = new WebsockQuery(
+            EQueryType.DELETE_PROCEDURE);
+        delete.setParameter(WebsockConstants.PROCEDURE_NAME, "people");
+        cache.prepare(delete);
+        Assert.assertNull(cache.getHandle("people"));
+
+        //storing reads the name from its parameter, not the statement
+        cache.learn(ProcedureTable.createHandleResponse(7, "people",
+            table.resolve("people")));
+        final WebsockQuery store = new WebsockQuery(
+            EQueryType.STORE_PROCEDURE);
+        store.setPayload("people");
+        cache.prepare(store);
+        Assert.assertNotNull(cache.getHandle("people"));
+        store.setParameter(WebsockConstants.PROCEDURE_NAME, "people");
+        cache.prepare(store);
+        Assert.assertNull(cache.getHandle("people"));
+    }
+}
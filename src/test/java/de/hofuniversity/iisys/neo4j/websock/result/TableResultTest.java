@@ -17,6 +17,8 @@
 package de.hofuniversity.iisys.neo4j.websock.result;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -25,6 +27,7 @@ import org.junit.Assert;
 import org.junit.Test;
 
 import de.hofuniversity.iisys.neo4j.websock.session.WebsockConstants;
+import de.hofuniversity.iisys.neo4j.websock.util.ResultSetConverter;
 
 /**
  * Tests for the implementation of a table result.
@@ -118,4 +121,105 @@ public class TableResultTest
         Assert.assertEquals(1, result.getColumnIndex("column 2"));
         Assert.assertEquals(2, result.getColumnIndex("column 3"));
     }
+
+    /**
+     * Tests column lookup and the row cursor for row and column tables.
+     */
+    @Test
+    public void rowTest()
+    {
+        final List<String> columns = new ArrayList<String>(
+            Arrays.asList("id", "name", "score", "active"));
+        final List<List<Object>> rows = new ArrayList<List<Object>>();
+        for(int i = 0; i < 5; ++i)
+        {
+            rows.add(Arrays.asList((Object) (i * 1000), "name " + i,
+                i * 0.5, i % 2 == 0));
+        }
+
+        TableResult result = new TableResult(columns, rows);
+        Assert.assertEquals(2, result.getColumnIndex("score"));
+        Assert.assertEquals(-1, result.getColumnIndex("missing"));
+        checkRows(result);
+
+        //column indices follow changed column names
+        result.setColumns(Arrays.asList("a", "b", "c", "d"));
+        Assert.assertEquals(-1, result.getColumnIndex("id"));
+        Assert.assertEquals(3, result.getColumnIndex("d"));
+
+        //row cursors keep the column names they were created with
+        final TableRow before = result.getRow();
+        result.setColumns(Arrays.asList("id", "name", "score", "active"));
+        Assert.assertTrue(before.next());
+        Assert.assertEquals(0, before.getLong("a"));
+        try
+        {
+            before.getLong("id");
+            Assert.fail("no exception thrown");
+        }
+        catch(IllegalArgumentException e)
+        {
+            //expected
+        }
+        final TableRow after = result.getRow();
+        Assert.assertTrue(after.next());
+        Assert.assertEquals(0, after.getLong("id"));
+
+        //columnar table with primitive columns
+        final Map<String, Object> map = ResultSetConverter.toMap(
+            new TableResult(new ArrayList<String>(Arrays.asList("id", "name",
+                "score", "active")), rows), new HashMap<String, Object>(),
+            EnumSet.of(EResultEncoding.COLUMNAR));
+        result = (TableResult) ResultSetConverter.toResultSet(map, true);
+        Assert.assertTrue(result.isColumnar());
+        checkRows(result);
+    }
+
+    private void checkRows(TableResult result)
+    {
+        final TableRow row = result.getRow();
+        checkNoRow(row);
+        int count = 0;
+        while(row.next())
+        {
+            Assert.assertEquals(count, row.getIndex());
+            Assert.assertEquals(count * 1000, row.getLong("id"));
+            Assert.assertEquals(count * 1000, row.getInt(0));
+            Assert.assertEquals("name " + count, row.getString("name"));
+            Assert.assertEquals(count * 0.5, row.getDouble("score"), 0.0);
+            Assert.assertEquals(count % 2 == 0, row.getBoolean("active"));
+            Assert.assertFalse(row.isNull("id"));
+            ++count;
+        }
+        Assert.assertEquals(5, count);
+        Assert.assertFalse(row.next());
+        checkNoRow(row);
+
+        row.moveTo(2);
+        Assert.assertEquals(2000.0, row.getDouble(0), 0.0);
+        Assert.assertEquals(1, row.getLong("score"));
+    }
+
+    private void checkNoRow(TableRow row)
+    {
+        try
+        {
+            row.get(1);
+            Assert.fail("no exception thrown");
+        }
+        catch(IllegalStateException e)
+        {
+            //expected
+        }
+
+        try
+        {
+            row.getLong(0);
+            Assert.fail("no exception thrown");
+        }
+        catch(IllegalStateException e)
+        {
+            //expected
+        }
+    }
 }
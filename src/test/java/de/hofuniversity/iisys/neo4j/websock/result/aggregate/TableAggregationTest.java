@@ -0,0 +1,138 @@
+/*
+ *  Copyright 2015 Institute of Information Systems, Hof University
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package de.hofuniversity.iisys.neo4j.websock.result.aggregate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import de.hofuniversity.iisys.neo4j.websock.result.TableResult;
+
+/**
+ * Test for the aggregation of table results.
+ */
+public class TableAggregationTest
+{
+    private static final List<String> COLUMNS = Arrays.asList("dept", "name",
+        "salary", "bonus");
+
+    /**
+     * Tests grouping and aggregating a small table.
+     */
+    @Test
+    public void groupTest()
+    {
+        final List<List<Object>> rows = new ArrayList<List<Object>>();
+        rows.add(row("it", "anna", 100, 1.5));
+        rows.add(row("hr", "bert", 80, null));
+        rows.add(row("it", "carl", 120, 2.5));
+        rows.add(row("it", "anna", 90, null));
+        rows.add(row("hr", "dora", 70, 1.0));
+
+        final TableResult table = new TableResult(COLUMNS, rows);
+        final TableResult result = table.aggregate(
+            new TableAggregation("dept")
+            .count("rows")
+            .add(EAggregateFunction.COUNT, "bonus", "bonuses")
+            .countDistinct("name", "people")
+            .sum("salary", "total")
+            .sum("bonus", "bonus")
+            .min("salary", "min")
+            .max("name", "last"));
+
+        Assert.assertEquals(Arrays.asList("dept", "rows", "bonuses",
+            "people", "total", "bonus", "min", "last"), result.getColumns());
+        Assert.assertEquals(2, result.getSize());
+        Assert.assertEquals(Arrays.asList((Object) "it", 3L, 2L, 2L, 310L,
+            4.0, 90, "carl"), result.getResults().get(0));
+        Assert.assertEquals(Arrays.asList((Object) "hr", 2L, 1L, 2L, 150L,
+            1.0, 70, "dora"), result.getResults().get(1));
+
+        //global aggregation
+        final TableResult global = table.aggregate(new TableAggregation()
+            .count("rows").max("salary", "max"));
+        Assert.assertEquals(Arrays.asList((Object) 5L, 120),
+            global.getResults().get(0));
+
+        final TableResult empty = new TableResult(COLUMNS,
+            new ArrayList<List<Object>>()).aggregate(
+                new TableAggregation().count("rows"));
+        Assert.assertEquals(Arrays.asList((Object) 0L),
+            empty.getResults().get(0));
+
+        //distinct
+        final TableResult distinct = table.distinct("dept", "name");
+        Assert.assertEquals(4, distinct.getSize());
+        Assert.assertEquals(Arrays.asList((Object) "it", "anna"),
+            distinct.getResults().get(0));
+        Assert.assertEquals(Arrays.asList((Object) "hr", "dora"),
+            distinct.getResults().get(3));
+    }
+
+    /**
+     * Tests that parallel aggregation yields the same result as sequential
+     * aggregation.
+     */
+    @Test
+    public void parallelTest()
+    {
+        final List<List<Object>> rows = new ArrayList<List<Object>>();
+        for(int i = 0; i < 50000; ++i)
+        {
+            rows.add(row("dept " + (i * 7 % 13), "name " + (i % 101),
+                i % 1000, (double) (i % 10)));
+        }
+        final TableResult table = new TableResult(COLUMNS, rows);
+
+        final TableAggregation sequential = createAggregation()
+            .setThreshold(Integer.MAX_VALUE);
+        final TableAggregation parallel = createAggregation()
+            .setThreshold(1000);
+
+        final TableResult expected = sequential.apply(table);
+        final TableResult actual = parallel.apply(table);
+
+        Assert.assertEquals(13, expected.getSize());
+        Assert.assertEquals(expected.getColumns(), actual.getColumns());
+        Assert.assertEquals(expected.getResults(), actual.getResults());
+    }
+
+    /**
+     * Tests rejection of unknown columns.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownColumnTest()
+    {
+        new TableAggregation("missing").apply(new TableResult(COLUMNS,
+            new ArrayList<List<Object>>()));
+    }
+
+    private TableAggregation createAggregation()
+    {
+        return new TableAggregation("dept").count("rows")
+            .countDistinct("name", "people").sum("salary", "total")
+            .sum("bonus", "bonus").min("salary", "min").max("name", "max");
+    }
+
+    private List<Object> row(Object ... values)
+    {
+        return Arrays.asList(values);
+    }
+}
@@ -0,0 +1,273 @@
+/*
+ *  Copyright 2015 Institute of Information Systems, Hof University
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package de.hofuniversity.iisys.neo4j.websock.result.cache;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import de.hofuniversity.iisys.neo4j.websock.query.EQueryType;
+import de.hofuniversity.iisys.neo4j.websock.query.IMessageSender;
+import de.hofuniversity.iisys.neo4j.websock.query.WebsockQuery;
+import de.hofuniversity.iisys.neo4j.websock.query.procedure.ProcedureHandleCache;
+import de.hofuniversity.iisys.neo4j.websock.query.procedure.ProcedureTable;
+import de.hofuniversity.iisys.neo4j.websock.result.AResultSet;
+import de.hofuniversity.iisys.neo4j.websock.result.ListResult;
+import de.hofuniversity.iisys.neo4j.websock.session.WebsockConstants;
+
+/**
+ * Test for the client-side procedure result cache.
+ */
+public class ProcedureResultCacheTest
+{
+    /**
+     * Tests caching by procedure name and parameter structure.
+     */
+    @Test
+    public void lookupTest()
+    {
+        final ProcedureResultCache cache = new ProcedureResultCache(10,
+            60000);
+        final AResultSet<?> result = new ListResult(Arrays.asList("a", "b"));
+
+        Assert.assertNull(cache.get(createCall("proc", 1)));
+        cache.put(createCall("proc", 1), result);
+
+        //numeric type differences do not matter
+        final WebsockQuery call = createCall("proc", 1L);
+        Assert.assertSame(result, cache.get(call));
+        Assert.assertNull(cache.get(createCall("proc", 2)));
+        Assert.assertNull(cache.get(createCall("other", 1)));
+
+        //nested parameters
+        final WebsockQuery nested = createCall("proc", 1);
+        nested.setParameter("list", Arrays.asList(1, 2, 3));
+        cache.put(nested, result);
+        final WebsockQuery nested2 = createCall("proc", 1);
+        nested2.setParameter("list", new ArrayList<Object>(
+            Arrays.asList(1L, 2L, 3L)));
+        Assert.assertSame(result, cache.get(nested2));
+
+        //other query types are never cached
+        final WebsockQuery cypher = new WebsockQuery(EQueryType.DIRECT_CYPHER);
+        cypher.setPayload("proc");
+        cache.put(cypher, result);
+        Assert.assertNull(cache.get(cypher));
+
+        Assert.assertEquals(2, cache.getHits());
+        Assert.assertEquals(3, cache.getMisses());
+    }
+
+    /**
+     * Tests per-procedure times to live.
+     */
+    @Test
+    public void ttlTest() throws Exception
+    {
+        final ProcedureResultCache cache = new ProcedureResultCache(10, 0);
+        cache.setTtl("short", 1);
+        cache.setTtl("long", 60000);
+
+        final AResultSet<?> result = new ListResult(Arrays.asList("a"));
+        cache.put(createCall("default", 1), result);
+        cache.put(createCall("short", 1), result);
+        cache.put(createCall("long", 1), result);
+        Assert.assertEquals(2, cache.getSize());
+
+        Thread.sleep(20);
+        Assert.assertNull(cache.get(createCall("default", 1)));
+        Assert.assertNull(cache.get(createCall("short", 1)));
+        Assert.assertSame(result, cache.get(createCall("long", 1)));
+    }
+
+    /**
+     * Tests least recently used eviction and frequency based admission.
+     */
+    @Test
+    public void evictionTest()
+    {
+        final AResultSet<?> result = new ListResult(Arrays.asList("a"));
+
+        ProcedureResultCache cache = new ProcedureResultCache(2, 60000);
+        cache.put(createCall("proc", 1), result);
+        cache.put(createCall("proc", 2), result);
+        cache.get(createCall("proc", 1));
+        cache.put(createCall("proc", 3), result);
+
+        Assert.assertEquals(1, cache.getEvictions());
+        Assert.assertNotNull(cache.get(createCall("proc", 1)));
+        Assert.assertNull(cache.get(createCall("proc", 2)));
+        Assert.assertNotNull(cache.get(createCall("proc", 3)));
+
+        //rarely requested results do not displace popular ones
+        cache = new ProcedureResultCache(2, 60000, true);
+        for(int i = 0; i < 5; ++i)
+        {
+            cache.get(createCall("proc", 1));
+            cache.get(createCall("proc", 2));
+        }
+        cache.put(createCall("proc", 1), result);
+        cache.put(createCall("proc", 2), result);
+
+        cache.get(createCall("proc", 3));
+        cache.put(createCall("proc", 3), result);
+        Assert.assertEquals(1, cache.getRejections());
+        Assert.assertEquals(2, cache.getSize());
+        Assert.assertNull(cache.get(createCall("proc", 3)));
+
+        //frequently requested ones do
+        for(int i = 0; i < 10; ++i)
+        {
+            cache.get(createCall("proc", 4));
+        }
+        cache.put(createCall("proc", 4), result);
+        Assert.assertNotNull(cache.get(createCall("proc", 4)));
+        Assert.assertEquals(1, cache.getEvictions());
+    }
+
+    /**
+     * Tests invalidation when procedures are stored or deleted.
+     */
+    @Test
+    public void invalidationTest() throws Exception
+    {
+        final ProcedureResultCache cache = new ProcedureResultCache(10,
+            60000);
+        final AResultSet<?> result = new ListResult(Arrays.asList("a"));
+        cache.put(createCall("proc", 1), result);
+        cache.put(createCall("proc", 2), result);
+        cache.put(createCall("other", 1), result);
+
+        final List<WebsockQuery> sent = new ArrayList<WebsockQuery>();
+        final IMessageSender sender = cache.wrap(new IMessageSender()
+        {
+            @Override
+            public void sendMessage(WebsockQuery message)
+            {
+                sent.add(message);
+            }
+        });
+
+        final WebsockQuery store = new WebsockQuery(EQueryType.STORE_PROCEDURE);
+        store.setParameter(WebsockConstants.PROCEDURE_NAME, "proc");
+        store.setPayload("MATCH (n) RETURN n");
+        sender.sendMessage(store);
+
+        Assert.assertEquals(1, sent.size());
+        Assert.assertEquals(2, cache.getInvalidations());
+        Assert.assertNull(cache.get(createCall("proc", 1)));
+        Assert.assertNotNull(cache.get(createCall("other", 1)));
+
+        final WebsockQuery delete =
+            new WebsockQuery(EQueryType.DELETE_PROCEDURE);
+        delete.setPayload("other");
+        sender.sendMessage(delete);
+        Assert.assertEquals(0, cache.getSize());
+    }
+
+    /**
+     * Tests that results of calls sent before an invalidation are not
+     * cached and that stored statements are not taken for names.
+     */
+    @Test
+    public void generationTest() throws Exception
+    {
+        final ProcedureResultCache cache = new ProcedureResultCache(10,
+            60000);
+        final AResultSet<?> result = new ListResult(Arrays.asList("a"));
+        final IMessageSender sender = cache.wrap(new IMessageSender()
+        {
+            @Override
+            public void sendMessage(WebsockQuery message)
+            {
+                //discarded
+            }
+        });
+
+        //call sent, procedure redefined before the response arrives
+        sender.sendMessage(createCall("proc", 1));
+        final long generation = cache.getGeneration(createCall("proc", 2));
+
+        final WebsockQuery store = new WebsockQuery(EQueryType.STORE_PROCEDURE);
+        store.setParameter(WebsockConstants.PROCEDURE_NAME, "proc");
+        store.setPayload("other");
+        sender.sendMessage(store);
+
+        cache.put(createCall("proc", 1), result);
+        cache.put(createCall("proc", 2), result, generation);
+        Assert.assertEquals(0, cache.getSize());
+        Assert.assertEquals(2, cache.getRejections());
+
+        //calls after the invalidation are cached again
+        Assert.assertNull(cache.get(createCall("proc", 1)));
+        cache.put(createCall("proc", 1), result);
+        Assert.assertSame(result, cache.get(createCall("proc", 1)));
+
+        //the statement in the payload is not a procedure name
+        cache.put(createCall("other", 1), result);
+        Assert.assertNotNull(cache.get(createCall("other", 1)));
+    }
+
+    /**
+     * Tests caching calls sent using procedure handles.
+     */
+    @Test
+    public void handleTest() throws Exception
+    {
+        final ProcedureResultCache cache = new ProcedureResultCache(10,
+            60000);
+        final AResultSet<?> result = new ListResult(Arrays.asList("a"));
+        final ProcedureHandleCache handles = new ProcedureHandleCache();
+        handles.learn(ProcedureTable.createHandleResponse(1, "proc", 3));
+
+        final List<WebsockQuery> sent = new ArrayList<WebsockQuery>();
+        final IMessageSender sender = cache.wrap(handles.wrap(
+            new IMessageSender()
+            {
+                @Override
+                public void sendMessage(WebsockQuery message)
+                {
+                    sent.add(message);
+                }
+            }));
+
+        //the result cache sees the name, the server the handle
+        final WebsockQuery call = createCall("proc", 1);
+        Assert.assertNull(cache.get(call));
+        sender.sendMessage(call);
+        Assert.assertEquals(3, sent.get(0).getParameter(
+            WebsockConstants.PROCEDURE_HANDLE));
+        cache.put(call, result);
+        Assert.assertSame(result, cache.get(createCall("proc", 1)));
+
+        //calls by handle are not cached
+        Assert.assertNull(cache.get(sent.get(0)));
+        cache.put(sent.get(0), result);
+        Assert.assertEquals(1, cache.getSize());
+    }
+
+    private WebsockQuery createCall(String name, Object param)
+    {
+        final WebsockQuery query = new WebsockQuery(EQueryType.PROCEDURE_CALL);
+        query.setPayload(name);
+        query.setParameter("param", param);
+        return query;
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ *  Copyright 2015 Institute of Information Systems, Hof University
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package de.hofuniversity.iisys.neo4j.websock.result.cursor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import de.hofuniversity.iisys.neo4j.websock.result.AResultSet;
+import de.hofuniversity.iisys.neo4j.websock.result.ListResult;
+import de.hofuniversity.iisys.neo4j.websock.result.TableResult;
+import de.hofuniversity.iisys.neo4j.websock.session.WebsockConstants;
+import de.hofuniversity.iisys.neo4j.websock.util.ResultSetConverter;
+
+/**
+ * Test for the server-side store of result cursors.
+ */
+public class ResultCursorStoreTest
+{
+    /**
+     * Tests paging through a list result using a cursor.
+     */
+    @Test
+    public void pagingTest()
+    {
+        final ResultCursorStore store = new ResultCursorStore(10,
+            Long.MAX_VALUE, 60000);
+        final List<Object> list = createList(25);
+
+        AResultSet<?> page = store.openCursor(new ListResult(list), 0, 10);
+        Assert.assertEquals(list.subList(0, 10), page.getResults());
+        Assert.assertEquals(25, page.getTotal());
+        Assert.assertEquals(10, page.getMax());
+        Assert.assertNotNull(page.getCursor());
+        Assert.assertEquals(1, store.getSize());
+        Assert.assertTrue(store.getBytes() > 0);
+
+        //token survives the transfer
+        final Map<String, Object> map = ResultSetConverter.toMap(page,
+            new HashMap<String, Object>());
+        final String token = ResultSetConverter.toResultSet(map).getCursor();
+        Assert.assertEquals(page.getCursor(), token);
+
+        page = store.fetch(token, 10, 10);
+        Assert.assertEquals(list.subList(10, 20), page.getResults());
+        Assert.assertEquals(10, page.getFirst());
+        Assert.assertEquals(token, page.getCursor());
+
+        page = store.fetch(token, 20, 10);
+        Assert.assertEquals(list.subList(20, 25), page.getResults());
+        Assert.assertEquals(25, page.getTotal());
+        Assert.assertNull(page.getCursor());
+
+        //exhausted cursors are released
+        Assert.assertEquals(0, store.getSize());
+        Assert.assertEquals(0, store.getBytes());
+        Assert.assertNull(store.fetch(token, 20, 10));
+        Assert.assertEquals(2, store.getHits());
+        Assert.assertEquals(1, store.getMisses());
+
+        //pages fitting completely need no cursor
+        page = store.openCursor(new ListResult(list), 5, 100);
+        Assert.assertEquals(list.subList(5, 25), page.getResults());
+        Assert.assertNull(page.getCursor());
+    }
+
+    /**
+     * Tests paging through a table result using a cursor.
+     */
+    @Test
+    public void tableTest()
+    {
+        final ResultCursorStore store = new ResultCursorStore(10,
+            Long.MAX_VALUE, 60000);
+        final List<String> columns = Arrays.asList("id", "name");
+        final List<List<Object>> rows = new ArrayList<List<Object>>();
+        for(int i = 0; i < 6; ++i)
+        {
+            rows.add(Arrays.asList((Object) i, "name " + i));
+        }
+
+        final AResultSet<?> page = store.openCursor(
+            new TableResult(columns, rows), 0, 4);
+        Assert.assertEquals(rows.subList(0, 4), page.getResults());
+
+        final TableResult next = (TableResult) store.fetch(page.getCursor(),
+            4, 4);
+        Assert.assertEquals(columns, next.getColumns());
+        Assert.assertEquals(rows.subList(4, 6), next.getResults());
+        Assert.assertEquals(6, next.getTotal());
+
+        //rows before the cursor's position can not be served
+        final String token = store.openCursor(new TableResult(columns, rows),
+            0, 2).getCursor();
+        Assert.assertNull(store.fetch(token, 0, 2));
+        Assert.assertNotNull(store.fetch(token, 2, 2));
+    }
+
+    /**
+     * Tests eviction by number of cursors, memory and idle time.
+     */
+    @Test
+    public void evictionTest() throws Exception
+    {
+        ResultCursorStore store = new ResultCursorStore(2, Long.MAX_VALUE,
+            60000);
+        final List<Object> list = createList(20);
+
+        final String first = store.openCursor(new ListResult(list), 0, 5)
+            .getCursor();
+        final String second = store.openCursor(new ListResult(list), 0, 5)
+            .getCursor();
+
+        //access the first cursor so the second one is evicted
+        Assert.assertNotNull(store.fetch(first, 5, 5));
+        store.openCursor(new ListResult(list), 0, 5);
+
+        Assert.assertEquals(2, store.getSize());
+        Assert.assertEquals(1, store.getSizeEvictions());
+        Assert.assertNull(store.fetch(second, 5, 5));
+        Assert.assertNotNull(store.fetch(first, 10, 5));
+
+        //memory
+        store = new ResultCursorStore(10, 400, 60000);
+        store.openCursor(new ListResult(list), 0, 5);
+        store.openCursor(new ListResult(list), 0, 5);
+        Assert.assertEquals(1, store.getSize());
+        Assert.assertEquals(1, store.getMemoryEvictions());
+        Assert.assertTrue(store.getBytes() <= 400);
+
+        //results exceeding the limit on their own are not held
+        Assert.assertNull(store.openCursor(new ListResult(createList(200)),
+            0, 5).getCursor());
+
+        //idle time
+        store = new ResultCursorStore(10, Long.MAX_VALUE, 1);
+        final String token = store.openCursor(new ListResult(list), 0, 5)
+            .getCursor();
+        Thread.sleep(20);
+        Assert.assertNull(store.fetch(token, 5, 5));
+        Assert.assertEquals(1, store.getExpirations());
+        Assert.assertEquals(0, store.getSize());
+    }
+
+    private List<Object> createList(int size)
+    {
+        final List<Object> list = new ArrayList<Object>();
+        for(int i = 0; i < size; ++i)
+        {
+            list.add("entry " + i);
+        }
+        return list;
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ *  Copyright 2015 Institute of Information Systems, Hof University
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package de.hofuniversity.iisys.neo4j.websock.result.merge;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import de.hofuniversity.iisys.neo4j.websock.result.AResultSet;
+import de.hofuniversity.iisys.neo4j.websock.result.ListResult;
+import de.hofuniversity.iisys.neo4j.websock.result.TableResult;
+
+/**
+ * Test for the merging of sorted partial results.
+ */
+public class ResultMergerTest
+{
+    /**
+     * Tests merging sorted lists of maps.
+     */
+    @Test
+    public void listTest()
+    {
+        final List<AResultSet<?>> parts = new ArrayList<AResultSet<?>>();
+        parts.add(createList(1, 4, 7, 10));
+        parts.add(createList(2, 5, 8));
+        parts.add(createList(3, 6, 9, 11, 12));
+
+        AResultSet<?> result = ResultMerger.merge(parts, "id", false, 0, -1);
+        Assert.assertEquals(12, result.getTotal());
+        checkIds(result, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12);
+
+        result = ResultMerger.merge(parts, "id", false, 3, 4);
+        Assert.assertEquals(3, result.getFirst());
+        Assert.assertEquals(4, result.getMax());
+        Assert.assertEquals(12, result.getTotal());
+        checkIds(result, 4, 5, 6, 7);
+
+        //descending order
+        parts.clear();
+        parts.add(createList(9, 3, 2));
+        parts.add(createList(8, 7, 1));
+        result = ResultMerger.merge(parts, "id", true, 1, 3);
+        checkIds(result, 8, 7, 3);
+
+        //missing values are sorted last
+        parts.clear();
+        parts.add(createList(1, null));
+        parts.add(createList(2));
+        result = ResultMerger.merge(parts, "id", false, 0, 10);
+        checkIds(result, 1, 2, null);
+    }
+
+    /**
+     * Tests merging sorted tables.
+     */
+    @Test
+    public void tableTest()
+    {
+        final List<String> columns = Arrays.asList("name", "age");
+
+        final List<AResultSet<?>> parts = new ArrayList<AResultSet<?>>();
+        parts.add(createTable(columns, "anna", 30, "carl", 20));
+        parts.add(createTable(columns, "bert", 25, "dora", 40));
+        parts.get(1).setTotal(10);
+
+        final TableResult result = (TableResult) ResultMerger.merge(parts,
+            "name", false, 1, 2);
+        Assert.assertEquals(columns, result.getColumns());
+        Assert.assertEquals(12, result.getTotal());
+        Assert.assertEquals(2, result.getSize());
+        Assert.assertEquals(Arrays.asList((Object) "bert", 25),
+            result.getResults().get(0));
+        Assert.assertEquals(Arrays.asList((Object) "carl", 20),
+            result.getResults().get(1));
+    }
+
+    /**
+     * Tests that tables without the sort field or with differing columns
+     * are rejected.
+     */
+    @Test
+    public void columnTest()
+    {
+        final List<AResultSet<?>> parts = new ArrayList<AResultSet<?>>();
+        parts.add(createTable(Arrays.asList("name", "age"), "anna", 30));
+        parts.add(createTable(Arrays.asList("age", "name"), 25, "bert"));
+
+        try
+        {
+            ResultMerger.merge(parts, "id", false, 0, 0);
+            Assert.fail("no exception thrown");
+        }
+        catch(IllegalArgumentException e)
+        {
+            Assert.assertTrue(e.getMessage().contains("id"));
+        }
+
+        try
+        {
+            ResultMerger.merge(parts, "name", false, 0, 0);
+            Assert.fail("no exception thrown");
+        }
+        catch(IllegalArgumentException e)
+        {
+            Assert.assertTrue(e.getMessage().contains("columns"));
+        }
+    }
+
+    private ListResult createList(Integer ... ids)
+    {
+        final List<Map<String, Object>> list =
+            new ArrayList<Map<String, Object>>();
+        for(Integer id : ids)
+        {
+            final Map<String, Object> map = new HashMap<String, Object>();
+            map.put("id", id);
+            list.add(map);
+        }
+        return new ListResult(list);
+    }
+
+    private TableResult createTable(List<String> columns, Object ... values)
+    {
+        final List<List<Object>> rows = new ArrayList<List<Object>>();
+        for(int i = 0; i < values.length; i += 2)
+        {
+            rows.add(Arrays.asList(values[i], values[i + 1]));
+        }
+        return new TableResult(columns, rows);
+    }
+
+    private void checkIds(AResultSet<?> result, Integer ... ids)
+    {
+        final List<?> list = (List<?>) result.getResults();
+        Assert.assertEquals(ids.length, list.size());
+        for(int i = 0; i < ids.length; ++i)
+        {
+            Assert.assertEquals(ids[i], ((Map<?, ?>) list.get(i)).get("id"));
+        }
+    }
+}
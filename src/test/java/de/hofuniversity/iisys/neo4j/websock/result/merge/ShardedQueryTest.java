@@ -0,0 +1,204 @@
+/*
+ *  Copyright 2015 Institute of Information Systems, Hof University
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package de.hofuniversity.iisys.neo4j.websock.result.merge;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import de.hofuniversity.iisys.neo4j.websock.query.EQueryType;
+import de.hofuniversity.iisys.neo4j.websock.query.IMessageSender;
+import de.hofuniversity.iisys.neo4j.websock.query.WebsockQuery;
+import de.hofuniversity.iisys.neo4j.websock.result.AResultSet;
+import de.hofuniversity.iisys.neo4j.websock.result.ListResult;
+import de.hofuniversity.iisys.neo4j.websock.session.WebsockConstants;
+import de.hofuniversity.iisys.neo4j.websock.util.ResultSetConverter;
+
+/**
+ * Test for the scatter-gather execution of sorted queries.
+ */
+public class ShardedQueryTest
+{
+    /**
+     * Tests sending a paged query to several shards and merging their
+     * responses.
+     */
+    @Test
+    public void scatterGatherTest() throws Exception
+    {
+        final List<FakeShard> shards = new ArrayList<FakeShard>();
+        shards.add(new FakeShard(0, 0, 3, 6, 9, 12, 15));
+        shards.add(new FakeShard(1, 1, 4, 7, 10, 13));
+        shards.add(new FakeShard(2, 2, 5, 8, 11, 14));
+
+        final WebsockQuery query = new WebsockQuery(7,
+            EQueryType.PROCEDURE_CALL);
+        query.setPayload("people");
+        query.setParameter(WebsockConstants.SORT_FIELD, "id");
+        query.setParameter(WebsockConstants.SORT_ORDER,
+            WebsockConstants.ASCENDING);
+        query.setParameter(WebsockConstants.SUBSET_START, 4);
+        query.setParameter(WebsockConstants.SUBSET_SIZE, 3);
+
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        final ShardedQuery sharded = new ShardedQuery(shards, query,
+            executor);
+        for(FakeShard shard : shards)
+        {
+            shard.fQuery = sharded;
+        }
+        sharded.send();
+        executor.shutdown();
+
+        for(FakeShard shard : shards)
+        {
+            Assert.assertEquals(0, shard.fReceived.getParameter(
+                WebsockConstants.SUBSET_START));
+            Assert.assertEquals(7, shard.fReceived.getParameter(
+                WebsockConstants.SUBSET_SIZE));
+            Assert.assertEquals("people", shard.fReceived.getPayload());
+        }
+
+        final AResultSet<?> result = sharded.getResult(1000);
+        Assert.assertEquals(16, result.getTotal());
+        Assert.assertEquals(4, result.getFirst());
+
+        final List<?> list = (List<?>) result.getResults();
+        Assert.assertEquals(3, list.size());
+        for(int i = 0; i < 3; ++i)
+        {
+            Assert.assertEquals(i + 4, ((Map<?, ?>) list.get(i)).get("id"));
+        }
+    }
+
+    /**
+     * Tests that an error from one shard fails the whole query.
+     */
+    @Test
+    public void errorTest() throws Exception
+    {
+        final List<IMessageSender> shards = new ArrayList<IMessageSender>();
+        shards.add(new FakeShard());
+        shards.add(new FakeShard());
+
+        final WebsockQuery query = new WebsockQuery(EQueryType.DIRECT_CYPHER);
+        query.setParameter(WebsockConstants.SORT_FIELD, "id");
+
+        final ShardedQuery sharded = new ShardedQuery(shards, query);
+        final WebsockQuery error = new WebsockQuery(EQueryType.ERROR);
+        error.setPayload("unavailable");
+        sharded.onResponse(1, error);
+
+        try
+        {
+            sharded.getResult(1000);
+            Assert.fail("no exception thrown");
+        }
+        catch(RuntimeException e)
+        {
+            Assert.assertTrue(e.getMessage().contains("unavailable"));
+        }
+    }
+
+    /**
+     * Tests that repeated responses of a shard are only counted once.
+     */
+    @Test
+    public void duplicateTest() throws Exception
+    {
+        final List<FakeShard> shards = new ArrayList<FakeShard>();
+        shards.add(new FakeShard(0, 0, 2));
+        shards.add(new FakeShard(1, 1, 3));
+
+        final WebsockQuery query = new WebsockQuery(EQueryType.DIRECT_CYPHER);
+        query.setParameter(WebsockConstants.SORT_FIELD, "id");
+
+        query.setParameter(WebsockConstants.SUBSET_START, 0);
+        query.setParameter(WebsockConstants.SUBSET_SIZE, 10);
+
+        final ShardedQuery sharded = new ShardedQuery(shards, query);
+        shards.get(0).fQuery = sharded;
+        shards.get(0).sendMessage(query);
+        shards.get(0).sendMessage(query);
+
+        try
+        {
+            sharded.getResult(50);
+            Assert.fail("no exception thrown");
+        }
+        catch(RuntimeException e)
+        {
+            Assert.assertTrue(e.getMessage().contains("timed out"));
+        }
+
+        shards.get(1).fQuery = sharded;
+        shards.get(1).sendMessage(query);
+        Assert.assertEquals(4, sharded.getResult(1000).getSize());
+    }
+
+    private static class FakeShard implements IMessageSender
+    {
+        private final int fIndex;
+        private final List<Map<String, Object>> fData;
+
+        private ShardedQuery fQuery;
+        private WebsockQuery fReceived;
+
+        public FakeShard(int index, int ... ids)
+        {
+            fIndex = index;
+            fData = new ArrayList<Map<String, Object>>();
+            for(int id : ids)
+            {
+                final Map<String, Object> map = new HashMap<String, Object>();
+                map.put("id", id);
+                fData.add(map);
+            }
+        }
+
+        public FakeShard()
+        {
+            this(0);
+        }
+
+        @Override
+        public synchronized void sendMessage(WebsockQuery message)
+        {
+            fReceived = message;
+
+            final int first = (Integer) message.getParameter(
+                WebsockConstants.SUBSET_START);
+            final int max = (Integer) message.getParameter(
+                WebsockConstants.SUBSET_SIZE);
+            final ListResult result = new ListResult(new ArrayList<Object>(
+                fData.subList(first, Math.min(first + max, fData.size()))));
+            result.setTotal(fData.size());
+
+            final WebsockQuery response = new WebsockQuery(message.getId(),
+                EQueryType.RESULT);
+            response.setPayload(ResultSetConverter.toMap(result,
+                new HashMap<String, Object>()));
+            fQuery.onResponse(fIndex, response);
+        }
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ *  Copyright 2015 Institute of Information Systems, Hof University
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package de.hofuniversity.iisys.neo4j.websock.result.offheap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import de.hofuniversity.iisys.neo4j.websock.result.AResultSet;
+import de.hofuniversity.iisys.neo4j.websock.result.DictionaryRowList;
+import de.hofuniversity.iisys.neo4j.websock.result.EResultEncoding;
+import de.hofuniversity.iisys.neo4j.websock.result.ListResult;
+import de.hofuniversity.iisys.neo4j.websock.result.TableResult;
+import de.hofuniversity.iisys.neo4j.websock.util.ResultSetConverter;
+
+/**
+ * Test for the off-heap storage of results.
+ */
+public class OffHeapStoreTest
+{
+    /**
+     * Tests storing and reading back values of all supported types across
+     * several pages.
+     */
+    @Test
+    public void storeTest()
+    {
+        final OffHeapStore store = new OffHeapStore(64);
+
+        final Map<String, Object> map = new HashMap<String, Object>();
+        map.put("name", "J\u00fcrgen");
+        map.put("tags", Arrays.asList("a", "b"));
+        map.put("nothing", null);
+
+        final List<Object> values = Arrays.asList((Object) null, true, false,
+            42, Long.MAX_VALUE, 42.5, "text", map,
+            Arrays.asList(1, "two", 3.0), createString(200));
+        for(Object value : values)
+        {
+            store.add(value);
+        }
+
+        Assert.assertEquals(values.size(), store.size());
+        Assert.assertTrue(store.getBytes() > 200);
+        for(int i = 0; i < values.size(); ++i)
+        {
+            Assert.assertEquals(values.get(i), store.get(i));
+        }
+
+        //narrow types are widened
+        store.add((short) 3);
+        store.add(1.5f);
+        Assert.assertEquals(3, store.get(values.size()));
+        Assert.assertEquals(1.5, store.get(values.size() + 1));
+
+        //growing the index
+        for(int i = 0; i < 5000; ++i)
+        {
+            store.add(i);
+        }
+        Assert.assertEquals(4999, store.get(store.size() - 1));
+
+        store.close();
+        Assert.assertTrue(store.isClosed());
+        Assert.assertEquals(0, store.getBytes());
+        try
+        {
+            store.get(0);
+            Assert.fail("closed store was readable");
+        }
+        catch(IllegalStateException e)
+        {
+            //expected
+        }
+    }
+
+    /**
+     * Tests copying and decoding list and table results into off-heap
+     * memory.
+     */
+    @Test
+    public void resultTest()
+    {
+        final List<Object> list = new ArrayList<Object>();
+        for(int i = 0; i < 100; ++i)
+        {
+            list.add("entry " + i);
+        }
+        final ListResult listResult = new ListResult(list);
+        listResult.setTotal(1000);
+
+        final OffHeapListResult offList =
+            (OffHeapListResult) OffHeapResults.copyOf(listResult);
+        Assert.assertEquals(list, offList.getResults());
+        Assert.assertEquals(1000, offList.getTotal());
+        offList.close();
+        Assert.assertTrue(((OffHeapStore) offList.getStore()).isClosed());
+
+        final List<String> columns = Arrays.asList("id", "value");
+        final List<List<Object>> rows = new ArrayList<List<Object>>();
+        for(int i = 0; i < 100; ++i)
+        {
+            rows.add(Arrays.asList((Object) i, i * 0.25));
+        }
+
+        final Map<String, Object> map = ResultSetConverter.toMap(
+            new TableResult(columns, rows), new HashMap<String, Object>(),
+            EnumSet.of(EResultEncoding.COLUMNAR));
+        final AResultSet<?> decoded = OffHeapResults.decode(map);
+        Assert.assertTrue(decoded instanceof OffHeapTableResult);
+
+        final OffHeapTableResult table = (OffHeapTableResult) decoded;
+        Assert.assertEquals(columns, table.getColumns());
+        Assert.assertEquals(rows, table.getResults());
+        Assert.assertEquals(0.25, table.getRow().moveTo(1).getDouble("value"),
+            0.0);
+        table.close();
+
+        //dictionary encoded rows are decoded while copying
+        final List<List<Object>> groups = new ArrayList<List<Object>>();
+        for(int i = 0; i < 100; ++i)
+        {
+            groups.add(Arrays.asList((Object) i, "group " + (i % 3)));
+        }
+        final Map<String, Object> dictMap = ResultSetConverter.toMap(
+            new TableResult(columns, groups), new HashMap<String, Object>(),
+            EnumSet.of(EResultEncoding.DICTIONARY));
+        Assert.assertTrue(ResultSetConverter.toResultSet(dictMap, true)
+            .getResults() instanceof DictionaryRowList);
+
+        final OffHeapTableResult dictTable =
+            (OffHeapTableResult) OffHeapResults.decode(dictMap);
+        Assert.assertEquals(groups, dictTable.getResults());
+        dictTable.close();
+    }
+
+    private String createString(int length)
+    {
+        final StringBuilder builder = new StringBuilder();
+        for(int i = 0; i < length; ++i)
+        {
+            builder.append((char) ('a' + i % 26));
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ *  Copyright 2015 Institute of Information Systems, Hof University
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package de.hofuniversity.iisys.neo4j.websock.result.offheap;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import de.hofuniversity.iisys.neo4j.websock.query.IMessageSender;
+import de.hofuniversity.iisys.neo4j.websock.query.WebsockQuery;
+import de.hofuniversity.iisys.neo4j.websock.result.AResultSet;
+import de.hofuniversity.iisys.neo4j.websock.result.EResultEncoding;
+import de.hofuniversity.iisys.neo4j.websock.result.TableResult;
+import de.hofuniversity.iisys.neo4j.websock.result.cursor.ResultCursorStore;
+import de.hofuniversity.iisys.neo4j.websock.result.stream.ResultStream;
+import de.hofuniversity.iisys.neo4j.websock.result.stream.ResultStreamer;
+
+/**
+ * Test for the row store spilling rows to a memory mapped file.
+ */
+public class SpillingStoreTest
+{
+    /**
+     * Tests keeping rows on the heap, spilling them and reading them back.
+     */
+    @Test
+    public void spillTest()
+    {
+        final File dir = new File(System.getProperty("java.io.tmpdir"),
+            "spill-test-" + System.nanoTime());
+        Assert.assertTrue(dir.mkdir());
+        final SpillingStore store = new SpillingStore(500, dir, 256);
+
+        final List<Object> rows = createRows(500);
+        for(int i = 0; i < 10; ++i)
+        {
+            store.add(rows.get(i));
+        }
+        Assert.assertFalse(store.isSpilled());
+        Assert.assertTrue(store.getHeapBytes() > 0);
+
+        for(int i = 10; i < rows.size(); ++i)
+        {
+            store.add(rows.get(i));
+
+            //reading rows that are still buffered
+            if(i % 100 == 0)
+            {
+                Assert.assertEquals(rows.get(i), store.get(i));
+            }
+        }
+        Assert.assertTrue(store.isSpilled());
+        Assert.assertTrue(store.getHeapBytes() <= 500);
+        Assert.assertTrue(store.getFileBytes() > 256 * 4);
+        Assert.assertEquals(rows.size(), store.size());
+
+        //random access within mapped windows and across their borders
+        for(int i = rows.size() - 1; i >= 0; i -= 7)
+        {
+            Assert.assertEquals(rows.get(i), store.get(i));
+        }
+
+        Assert.assertEquals(1, dir.listFiles().length);
+        store.close();
+        Assert.assertEquals(0, dir.listFiles().length);
+        Assert.assertTrue(dir.delete());
+
+        try
+        {
+            store.get(0);
+            Assert.fail("closed store was readable");
+        }
+        catch(IllegalStateException e)
+        {
+            //expected
+        }
+    }
+
+    /**
+     * Tests streaming and paging spilled table results.
+     */
+    @Test
+    public void resultTest() throws Exception
+    {
+        final List<String> columns = Arrays.asList("id", "name");
+        final List<Object> rows = createRows(300);
+
+        @SuppressWarnings("unchecked")
+        final TableResult table = new TableResult(columns,
+            (List<List<Object>>) (List<?>) rows);
+
+        //streaming the spilled result
+        final SpillingStore store = new SpillingStore(200);
+        final AResultSet<?> spilled = OffHeapResults.copyOf(table, store);
+        Assert.assertTrue(store.isSpilled());
+        Assert.assertEquals(rows, spilled.getResults());
+
+        final ResultStream stream = new ResultStream();
+        new ResultStreamer(new IMessageSender()
+        {
+            @Override
+            public void sendMessage(WebsockQuery message)
+            {
+                stream.onMessage(message);
+            }
+        }, 64, EnumSet.noneOf(EResultEncoding.class)).send(1, spilled);
+
+        final SpillingStore collected = new SpillingStore(200);
+        final OffHeapTableResult received = (OffHeapTableResult)
+            OffHeapResults.collect(stream, collected);
+        Assert.assertEquals(columns, received.getColumns());
+        Assert.assertEquals(rows, received.getResults());
+        Assert.assertEquals(300, received.getTotal());
+        received.close();
+
+        //paging through a cursor closes the store at the end
+        final ResultCursorStore cursors = new ResultCursorStore(10, 0,
+            60000);
+        AResultSet<?> page = cursors.openCursor(spilled, 0, 200);
+        Assert.assertEquals(rows.subList(0, 200), page.getResults());
+        Assert.assertNotNull(page.getCursor());
+
+        page = cursors.fetch(page.getCursor(), 200, 200);
+        Assert.assertEquals(rows.subList(200, 300), page.getResults());
+        Assert.assertNull(page.getCursor());
+        try
+        {
+            store.get(0);
+            Assert.fail("store was not closed");
+        }
+        catch(IllegalStateException e)
+        {
+            //expected
+        }
+    }
+
+    private List<Object> createRows(int count)
+    {
+        final List<Object> rows = new ArrayList<Object>();
+        for(int i = 0; i < count; ++i)
+        {
+            rows.add(Arrays.asList((Object) i, "name number " + i));
+        }
+        return rows;
+    }
+}
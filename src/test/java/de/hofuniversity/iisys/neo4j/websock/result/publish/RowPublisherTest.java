@@ -0,0 +1,189 @@
+/*
+ *  Copyright 2015 Institute of Information Systems, Hof University
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package de.hofuniversity.iisys.neo4j.websock.result.publish;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import de.hofuniversity.iisys.neo4j.websock.query.EQueryType;
+import de.hofuniversity.iisys.neo4j.websock.query.IMessageSender;
+import de.hofuniversity.iisys.neo4j.websock.query.WebsockQuery;
+import de.hofuniversity.iisys.neo4j.websock.query.client.QueryDispatcher;
+import de.hofuniversity.iisys.neo4j.websock.result.ListResult;
+import de.hofuniversity.iisys.neo4j.websock.session.WebsockConstants;
+import de.hofuniversity.iisys.neo4j.websock.util.ResultSetConverter;
+
+/**
+ * Test for the demand-driven result row publisher.
+ */
+public class RowPublisherTest
+{
+    private static final int ROWS = 25;
+
+    private final List<WebsockQuery> fSent = new ArrayList<WebsockQuery>();
+    private QueryDispatcher fDispatcher;
+
+    //answers page queries immediately from a list of numbers
+    private final IMessageSender fSender = new IMessageSender()
+    {
+        @Override
+        public void sendMessage(WebsockQuery query)
+        {
+            fSent.add(query);
+
+            final int first = (Integer) query.getParameter(
+                WebsockConstants.SUBSET_START);
+            final int size = (Integer) query.getParameter(
+                WebsockConstants.SUBSET_SIZE);
+            final List<Object> rows = new ArrayList<Object>();
+            for(int i = first; i < Math.min(first + size, ROWS); ++i)
+            {
+                rows.add(i);
+            }
+
+            final ListResult result = new ListResult(rows);
+            result.setFirst(first);
+            result.setMax(size);
+            result.setTotal(ROWS);
+
+            final WebsockQuery response = new WebsockQuery(query.getId(),
+                EQueryType.RESULT);
+            response.setPayload(ResultSetConverter.toMap(result,
+                new HashMap<String, Object>()));
+            fDispatcher.onQuery(response);
+        }
+    };
+
+    private final List<Object> fRows = new ArrayList<Object>();
+    private IRowSubscription fSubscription;
+    private boolean fComplete;
+    private Throwable fError;
+
+    private final IRowSubscriber fSubscriber = new IRowSubscriber()
+    {
+        @Override
+        public void onSubscribe(IRowSubscription subscription)
+        {
+            fSubscription = subscription;
+        }
+
+        @Override
+        public void onNext(Object row)
+        {
+            fRows.add(row);
+        }
+
+        @Override
+        public void onError(Throwable error)
+        {
+            fError = error;
+        }
+
+        @Override
+        public void onComplete()
+        {
+            fComplete = true;
+        }
+    };
+
+    private WebsockQuery query()
+    {
+        final WebsockQuery query = new WebsockQuery(EQueryType.DIRECT_CYPHER);
+        query.setPayload("MATCH (n) RETURN n");
+        return query;
+    }
+
+    /**
+     * Tests that pages are only fetched as rows are requested and that the
+     * publisher completes at the end of the result.
+     */
+    @Test
+    public void demandTest() throws Exception
+    {
+        fDispatcher = new QueryDispatcher(fSender);
+        final RowPublisher publisher = new RowPublisher(fDispatcher, query(),
+            4, 0);
+        publisher.subscribe(fSubscriber);
+        Assert.assertTrue(fSent.isEmpty());
+
+        fSubscription.request(10);
+        Assert.assertEquals(10, fRows.size());
+        Assert.assertEquals(3, fSent.size());
+        Assert.assertEquals(2, publisher.getBuffered());
+        Assert.assertFalse(fComplete);
+
+        fSubscription.request(Long.MAX_VALUE);
+        Assert.assertEquals(ROWS, fRows.size());
+        Assert.assertEquals(7, fSent.size());
+        Assert.assertTrue(fComplete);
+        Assert.assertNull(fError);
+
+        for(int i = 0; i < ROWS; ++i)
+        {
+            Assert.assertEquals(i, fRows.get(i));
+        }
+        Assert.assertEquals(24, fSent.get(6).getParameter(
+            WebsockConstants.SUBSET_START));
+
+        //second subscriber is rejected
+        fError = null;
+        publisher.subscribe(fSubscriber);
+        Assert.assertTrue(fError instanceof IllegalStateException);
+        fDispatcher.close();
+    }
+
+    /**
+     * Tests that cancelling stops fetching and that query subsets limit the
+     * published rows.
+     */
+    @Test
+    public void cancelTest() throws Exception
+    {
+        fDispatcher = new QueryDispatcher(fSender);
+        RowPublisher publisher = new RowPublisher(fDispatcher, query(), 4, 0);
+        publisher.subscribe(fSubscriber);
+
+        fSubscription.request(5);
+        fSubscription.cancel();
+        fSubscription.request(5);
+        Assert.assertEquals(5, fRows.size());
+        Assert.assertEquals(2, fSent.size());
+        Assert.assertEquals(0, publisher.getBuffered());
+        Assert.assertFalse(fComplete);
+
+        fRows.clear();
+        fSent.clear();
+        final WebsockQuery query = query();
+        query.setParameter(WebsockConstants.SUBSET_START, 3);
+        query.setParameter(WebsockConstants.SUBSET_SIZE, 6);
+        publisher = new RowPublisher(fDispatcher, query, 4, 0);
+        publisher.subscribe(fSubscriber);
+
+        fSubscription.request(100);
+        Assert.assertEquals(6, fRows.size());
+        Assert.assertEquals(3, fRows.get(0));
+        Assert.assertEquals(2, fSent.size());
+        Assert.assertEquals(2, fSent.get(1).getParameter(
+            WebsockConstants.SUBSET_SIZE));
+        Assert.assertTrue(fComplete);
+        fDispatcher.close();
+    }
+}
@@ -0,0 +1,296 @@
+/*
+ *  Copyright 2015 Institute of Information Systems, Hof University
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package de.hofuniversity.iisys.neo4j.websock.result.stream;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import de.hofuniversity.iisys.neo4j.websock.queries.FakeWebsockSession;
+import de.hofuniversity.iisys.neo4j.websock.query.EQueryType;
+import de.hofuniversity.iisys.neo4j.websock.query.IMessageSender;
+import de.hofuniversity.iisys.neo4j.websock.query.WebsockQuery;
+import de.hofuniversity.iisys.neo4j.websock.query.encoding.unsafe.BsonQueryHandler;
+import de.hofuniversity.iisys.neo4j.websock.result.EResultEncoding;
+import de.hofuniversity.iisys.neo4j.websock.result.EResultType;
+import de.hofuniversity.iisys.neo4j.websock.result.ListResult;
+import de.hofuniversity.iisys.neo4j.websock.result.SingleResult;
+import de.hofuniversity.iisys.neo4j.websock.result.TableResult;
+import de.hofuniversity.iisys.neo4j.websock.session.WebsockConstants;
+import de.hofuniversity.iisys.neo4j.websock.session.WebsockSession;
+import de.hofuniversity.iisys.neo4j.websock.util.FieldProjection;
+
+/**
+ * Test for the chunked streaming of results and the receiving result stream.
+ */
+public class ResultStreamTest
+{
+    private static final int QUERY_ID = 42;
+
+    /**
+     * Tests streaming a list result in several chunks.
+     */
+    @Test
+    public void listTest() throws Exception
+    {
+        final List<Object> list = new ArrayList<Object>();
+        for(int i = 0; i < 25; ++i)
+        {
+            list.add("entry " + i);
+        }
+
+        final RecordingSender sender = new RecordingSender();
+        new ResultStreamer(sender, 10,
+            EnumSet.noneOf(EResultEncoding.class)).send(QUERY_ID,
+                new ListResult(list));
+
+        Assert.assertEquals(3, sender.fMessages.size());
+
+        final ResultStream stream = new ResultStream();
+        for(int i = 0; i < sender.fMessages.size(); ++i)
+        {
+            final WebsockQuery message = sender.fMessages.get(i);
+            Assert.assertEquals(QUERY_ID, message.getId());
+            Assert.assertEquals(i == 2, stream.onMessage(message));
+        }
+
+        final List<Object> received = new ArrayList<Object>();
+        for(Object o : stream)
+        {
+            received.add(o);
+        }
+
+        Assert.assertEquals(list, received);
+        Assert.assertEquals(EResultType.LIST, stream.getType());
+        Assert.assertEquals(25, stream.getTotal());
+    }
+
+    /**
+     * Tests streaming a columnar encoded table and receiving its first rows
+     * before the remaining chunks arrived.
+     */
+    @Test
+    public void tableTest() throws Exception
+    {
+        final List<String> columns = Arrays.asList("id", "name");
+        final List<List<Object>> rows = new ArrayList<List<Object>>();
+        for(int i = 0; i < 7; ++i)
+        {
+            rows.add(Arrays.asList((Object) i, "name " + i));
+        }
+
+        final RecordingSender sender = new RecordingSender();
+        new ResultStreamer(sender, 3, EnumSet.of(EResultEncoding.COLUMNAR))
+            .streamTable(QUERY_ID, columns, rows.iterator());
+        Assert.assertEquals(3, sender.fMessages.size());
+
+        final ResultStream stream = new ResultStream(1000);
+        Assert.assertFalse(stream.onMessage(sender.fMessages.get(0)));
+
+        Assert.assertEquals(columns, stream.getColumns());
+        Assert.assertEquals(-1, stream.getTotal());
+        for(int i = 0; i < 3; ++i)
+        {
+            Assert.assertTrue(stream.hasNext());
+            Assert.assertEquals(rows.get(i), stream.next());
+        }
+
+        Assert.assertFalse(stream.onMessage(sender.fMessages.get(1)));
+        Assert.assertTrue(stream.onMessage(sender.fMessages.get(2)));
+
+        for(int i = 3; i < 7; ++i)
+        {
+            Assert.assertEquals(rows.get(i), stream.next());
+        }
+        Assert.assertFalse(stream.hasNext());
+        Assert.assertEquals(7, stream.getTotal());
+    }
+
+    /**
+     * Tests streaming an empty result and sending single results unchunked.
+     */
+    @Test
+    public void edgeCaseTest() throws Exception
+    {
+        final RecordingSender sender = new RecordingSender();
+        final ResultStreamer streamer = new ResultStreamer(sender,
+            ResultStreamer.DEFAULT_CHUNK_SIZE,
+            EnumSet.noneOf(EResultEncoding.class));
+
+        streamer.send(QUERY_ID, new ListResult(new ArrayList<Object>()));
+        Assert.assertEquals(1, sender.fMessages.size());
+
+        ResultStream stream = new ResultStream();
+        Assert.assertTrue(stream.onMessage(sender.fMessages.get(0)));
+        Assert.assertFalse(stream.hasNext());
+        Assert.assertEquals(0, stream.getTotal());
+
+        sender.fMessages.clear();
+        final Map<String, Object> single = new HashMap<String, Object>();
+        single.put("key", "value");
+        streamer.send(QUERY_ID, new SingleResult(single));
+        Assert.assertEquals(1, sender.fMessages.size());
+        Assert.assertNull(((Map<?, ?>) sender.fMessages.get(0)
+            .getPayload()).get(WebsockConstants.CHUNK_INDEX));
+
+        stream = new ResultStream();
+        Assert.assertTrue(stream.onMessage(sender.fMessages.get(0)));
+        Assert.assertEquals(single, stream.next());
+        Assert.assertFalse(stream.hasNext());
+    }
+
+    /**
+     * Tests that an error message ends the stream with an exception.
+     */
+    @Test
+    public void errorTest() throws Exception
+    {
+        final ResultStream stream = new ResultStream();
+        final WebsockQuery error = new WebsockQuery(QUERY_ID,
+            EQueryType.ERROR);
+        error.setPayload("failure");
+        Assert.assertTrue(stream.onMessage(error));
+
+        try
+        {
+            stream.hasNext();
+            Assert.fail("no exception thrown");
+        }
+        catch(RuntimeException e)
+        {
+            Assert.assertTrue(e.getMessage().contains("failure"));
+        }
+        Assert.assertFalse(stream.hasNext());
+    }
+
+    /**
+     * Tests that streamers for sessions without streaming send whole
+     * results.
+     */
+    @Test
+    public void sessionTest() throws Exception
+    {
+        final List<Object> list = new ArrayList<Object>();
+        for(int i = 0; i < 2500; ++i)
+        {
+            list.add(i);
+        }
+
+        final WebsockSession session = new WebsockSession(
+            new FakeWebsockSession());
+        final RecordingSender sender = new RecordingSender();
+        ResultStreamer streamer = ResultStreamer.forSession(sender, session);
+        Assert.assertFalse(streamer.isStreaming());
+
+        streamer.send(QUERY_ID, new ListResult(list));
+        streamer.streamList(QUERY_ID, list.iterator());
+        Assert.assertEquals(2, sender.fMessages.size());
+        for(WebsockQuery message : sender.fMessages)
+        {
+            final Map<?, ?> payload = (Map<?, ?>) message.getPayload();
+            Assert.assertFalse(payload.containsKey(
+                WebsockConstants.CHUNK_INDEX));
+            Assert.assertEquals(2500,
+                ((List<?>) payload.get(WebsockConstants.RESULT)).size());
+        }
+        Assert.assertEquals(2500, ((Map<?, ?>) sender.fMessages.get(1)
+            .getPayload()).get(WebsockConstants.TOTAL_RESULTS));
+
+        //streaming sessions receive chunks of the default size
+        sender.fMessages.clear();
+        session.setStreaming(true);
+        streamer = ResultStreamer.forSession(sender, session);
+        streamer.send(QUERY_ID, new ListResult(list));
+        Assert.assertEquals(3, sender.fMessages.size());
+    }
+
+    /**
+     * Tests that the last chunk carries the cursor and total information of
+     * the streamed result and that projections are applied to each chunk.
+     */
+    @Test
+    public void summaryTest() throws Exception
+    {
+        final List<String> columns = Arrays.asList("id", "name");
+        final List<List<Object>> rows = new ArrayList<List<Object>>();
+        for(int i = 0; i < 1500; ++i)
+        {
+            rows.add(Arrays.asList((Object) i, "name " + i));
+        }
+
+        final TableResult table = new TableResult(columns, rows);
+        table.setCursor("next");
+        table.setTotalError(0.05);
+        table.setTotalDeferred(true);
+
+        final WebsockSession session = new WebsockSession(
+            new FakeWebsockSession());
+        session.setStreaming(true);
+        final RecordingSender sender = new RecordingSender();
+        ResultStreamer.forSession(sender, session).send(QUERY_ID, table,
+            null, new FieldProjection(Arrays.asList("name")));
+        Assert.assertEquals(2, sender.fMessages.size());
+
+        final Map<?, ?> first =
+            (Map<?, ?>) sender.fMessages.get(0).getPayload();
+        Assert.assertFalse(first.containsKey(WebsockConstants.CURSOR));
+        Assert.assertFalse(first.containsKey(
+            WebsockConstants.TOTAL_DEFERRED));
+
+        final Map<?, ?> last =
+            (Map<?, ?>) sender.fMessages.get(1).getPayload();
+        Assert.assertEquals("next", last.get(WebsockConstants.CURSOR));
+        Assert.assertEquals(0.05, ((Number) last.get(
+            WebsockConstants.TOTAL_ERROR)).doubleValue(), 0.0);
+        Assert.assertFalse(last.containsKey(WebsockConstants.TOTAL_RESULTS));
+
+        final ResultStream stream = new ResultStream(1000);
+        stream.onMessage(sender.fMessages.get(0));
+        Assert.assertTrue(stream.onMessage(sender.fMessages.get(1)));
+        Assert.assertEquals(Arrays.asList("name"), stream.getColumns());
+        Assert.assertEquals("next", stream.getCursor());
+        Assert.assertTrue(stream.isTotalDeferred());
+        Assert.assertEquals(-1, stream.getTotal());
+
+        int count = 0;
+        for(Object row : stream)
+        {
+            Assert.assertEquals(Arrays.asList("name " + count), row);
+            ++count;
+        }
+        Assert.assertEquals(1500, count);
+    }
+
+    private static class RecordingSender implements IMessageSender
+    {
+        private final BsonQueryHandler fHandler = new BsonQueryHandler();
+        private final List<WebsockQuery> fMessages =
+            new ArrayList<WebsockQuery>();
+
+        @Override
+        public void sendMessage(WebsockQuery message) throws Exception
+        {
+            fMessages.add(fHandler.decode(fHandler.encode(message)));
+        }
+    }
+}
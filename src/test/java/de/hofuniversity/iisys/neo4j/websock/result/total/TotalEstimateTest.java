@@ -0,0 +1,162 @@
+/*
+ *  Copyright 2015 Institute of Information Systems, Hof University
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package de.hofuniversity.iisys.neo4j.websock.result.total;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import de.hofuniversity.iisys.neo4j.websock.query.EQueryType;
+import de.hofuniversity.iisys.neo4j.websock.query.IMessageSender;
+import de.hofuniversity.iisys.neo4j.websock.query.WebsockQuery;
+import de.hofuniversity.iisys.neo4j.websock.result.AResultSet;
+import de.hofuniversity.iisys.neo4j.websock.result.EResultEncoding;
+import de.hofuniversity.iisys.neo4j.websock.result.ETotalMode;
+import de.hofuniversity.iisys.neo4j.websock.result.ListResult;
+import de.hofuniversity.iisys.neo4j.websock.session.WebsockConstants;
+import de.hofuniversity.iisys.neo4j.websock.util.ResultSetConverter;
+
+/**
+ * Test for deferred and approximate totals.
+ */
+public class TotalEstimateTest
+{
+    /**
+     * Tests that sketch estimates stay within their error bound.
+     */
+    @Test
+    public void sketchTest()
+    {
+        final HyperLogLog sketch = new HyperLogLog();
+        for(int i = 0; i < 100000; ++i)
+        {
+            //every element twice
+            sketch.add("node" + (i % 50000));
+        }
+
+        final TotalEstimate estimate = TotalEstimate.fromSketch(sketch);
+        Assert.assertEquals(50000, estimate.getTotal(),
+            50000 * estimate.getError());
+
+        final HyperLogLog small = new HyperLogLog();
+        for(int i = 0; i < 100; ++i)
+        {
+            small.add(i);
+        }
+        Assert.assertEquals(100, small.estimate(), 3);
+    }
+
+    /**
+     * Tests extrapolating totals from samples and transferring the error
+     * bound with the result.
+     */
+    @Test
+    public void sampleTest()
+    {
+        final TotalEstimate exact = TotalEstimate.fromSample(500, 500, 123);
+        Assert.assertEquals(123, exact.getTotal());
+        Assert.assertEquals(0.0, exact.getError(), 0.0);
+
+        final TotalEstimate estimate = TotalEstimate.fromSample(1000000,
+            1000, 250);
+        Assert.assertEquals(250000, estimate.getTotal());
+        Assert.assertTrue(estimate.getError() > 0.0);
+        Assert.assertTrue(estimate.getError() < 0.2);
+
+        final ListResult result = new ListResult(new ArrayList<Object>());
+        estimate.applyTo(result);
+
+        final Map<String, Object> params = new HashMap<String, Object>();
+        params.put(WebsockConstants.TOTAL_MODE,
+            WebsockConstants.APPROXIMATE_TOTAL);
+        Assert.assertEquals(ETotalMode.APPROXIMATE,
+            ETotalMode.fromParameters(params));
+        Assert.assertEquals(ETotalMode.EXACT,
+            ETotalMode.fromParameters(new HashMap<String, Object>()));
+
+        final AResultSet<?> decoded = ResultSetConverter.toResultSet(
+            ResultSetConverter.toMap(result, new HashMap<String, Object>()));
+        Assert.assertEquals(250000, decoded.getTotal());
+        Assert.assertEquals(estimate.getError(), decoded.getTotalError(),
+            0.0);
+        Assert.assertFalse(decoded.isTotalDeferred());
+    }
+
+    /**
+     * Tests sending a result first and its total in a follow-up message.
+     */
+    @Test
+    public void deferredTest() throws Exception
+    {
+        final List<WebsockQuery> sent = new ArrayList<WebsockQuery>();
+        final IMessageSender sender = new IMessageSender()
+        {
+            @Override
+            public void sendMessage(WebsockQuery query)
+            {
+                sent.add(query);
+            }
+        };
+        final List<Runnable> tasks = new ArrayList<Runnable>();
+        final Executor executor = new Executor()
+        {
+            @Override
+            public void execute(Runnable command)
+            {
+                tasks.add(command);
+            }
+        };
+
+        final List<Object> page = new ArrayList<Object>();
+        page.add("a");
+        page.add("b");
+        final DeferredTotal deferred = new DeferredTotal(sender,
+            EnumSet.noneOf(EResultEncoding.class), executor);
+        deferred.send(3, new ListResult(page), new Callable<Integer>()
+        {
+            @Override
+            public Integer call()
+            {
+                return 4711;
+            }
+        });
+
+        //page is sent before counting
+        Assert.assertEquals(1, sent.size());
+        @SuppressWarnings("unchecked")
+        final AResultSet<?> received = ResultSetConverter.toResultSet(
+            (Map<String, Object>)sent.get(0).getPayload());
+        Assert.assertTrue(received.isTotalDeferred());
+        Assert.assertEquals(-1, received.getTotal());
+
+        tasks.get(0).run();
+        Assert.assertEquals(2, sent.size());
+        Assert.assertEquals(EQueryType.TOTAL, sent.get(1).getType());
+        Assert.assertEquals(3, sent.get(1).getId());
+
+        DeferredTotal.apply(received, sent.get(1));
+        Assert.assertEquals(4711, received.getTotal());
+        Assert.assertFalse(received.isTotalDeferred());
+    }
+}
@@ -301,4 +301,24 @@ public class BsonConverterTest
 
         Assert.assertEquals(TEST_STRING_1, payload.get(TEST_STRING_1_NAME));
     }
+
+    /**
+     * Tests that queries nested as map values are converted as well.
+     */
+    @Test
+    public void nestedQueryTest()
+    {
+        final WebsockQuery query = new WebsockQuery(TEST_ID_1, TEST_TYPE_1);
+        final Map<String, Object> payload = new HashMap<String, Object>();
+        payload.put("inner", new WebsockQuery(7, EQueryType.PING));
+        query.setPayload(payload);
+
+        final BSONObject encoded = BsonConverter.toBson(query);
+        final BSONObject converted =
+            (BSONObject) encoded.get(WebsockConstants.PAYLOAD);
+        final BSONObject inner = (BSONObject) converted.get("inner");
+        Assert.assertEquals(7, inner.get(WebsockConstants.QUERY_ID));
+        Assert.assertEquals(EQueryType.PING.getCode(),
+            inner.get(WebsockConstants.QUERY_TYPE));
+    }
 }
@@ -0,0 +1,113 @@
+/*
+ *  Copyright 2015 Institute of Information Systems, Hof University
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package de.hofuniversity.iisys.neo4j.websock.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import de.hofuniversity.iisys.neo4j.websock.session.WebsockConstants;
+
+/**
+ * Test for the codec packing result columns into typed arrays.
+ */
+public class ColumnCodecTest
+{
+    /**
+     * Tests the detection of column types.
+     */
+    @Test
+    public void typeTest()
+    {
+        Assert.assertEquals(WebsockConstants.DELTA_INT_COLUMN,
+            ColumnCodec.getType(Arrays.asList(1, 2, 3)));
+        Assert.assertEquals(WebsockConstants.DELTA_LONG_COLUMN,
+            ColumnCodec.getType(Arrays.asList(1L, 2L, 3L)));
+        Assert.assertEquals(WebsockConstants.XOR_DOUBLE_COLUMN,
+            ColumnCodec.getType(Arrays.asList(1.0, 2.5)));
+        Assert.assertEquals(WebsockConstants.BOOLEAN_COLUMN,
+            ColumnCodec.getType(Arrays.asList(true, false)));
+
+        //mixed, null and other values
+        Assert.assertEquals(WebsockConstants.OBJECT_COLUMN,
+            ColumnCodec.getType(Arrays.<Object>asList(1, 2L)));
+        Assert.assertEquals(WebsockConstants.OBJECT_COLUMN,
+            ColumnCodec.getType(Arrays.<Object>asList(1L, null)));
+        Assert.assertEquals(WebsockConstants.OBJECT_COLUMN,
+            ColumnCodec.getType(Arrays.asList("a", "b")));
+    }
+
+    /**
+     * Tests encoding and decoding of all column types.
+     */
+    @Test
+    public void reextractTest()
+    {
+        List<List<?>> columns = new ArrayList<List<?>>();
+        columns.add(Arrays.asList(Integer.MIN_VALUE, 0, Integer.MAX_VALUE));
+        columns.add(Arrays.asList(Long.MIN_VALUE, 0L, Long.MAX_VALUE));
+        columns.add(Arrays.asList(-1.5, Double.NaN, Double.MAX_VALUE));
+        columns.add(Arrays.asList(true, false, false, true, true, false,
+            false, false, true));
+        columns.add(Arrays.<Object>asList("a", null, 3));
+
+        for(List<?> column : columns)
+        {
+            String type = ColumnCodec.getType(column);
+
+            Object encoded = ColumnCodec.encode(type, column);
+            Assert.assertEquals(column, ColumnCodec.decode(type, encoded,
+                column.size()));
+        }
+
+        //uncompressed numeric columns
+        String[] types = {WebsockConstants.INT_COLUMN,
+            WebsockConstants.LONG_COLUMN, WebsockConstants.DOUBLE_COLUMN};
+        for(int i = 0; i < types.length; ++i)
+        {
+            Object encoded = ColumnCodec.encode(types[i], columns.get(i));
+            Assert.assertEquals(columns.get(i), ColumnCodec.decode(types[i],
+                encoded, columns.get(i).size()));
+        }
+    }
+
+    /**
+     * Tests the Base64 codec used for packed columns in text formats.
+     */
+    @Test
+    public void base64Test()
+    {
+        for(int length = 0; length < 10; ++length)
+        {
+            byte[] data = new byte[length];
+            for(int i = 0; i < length; ++i)
+            {
+                data[i] = (byte) (i * 73 - 128);
+            }
+
+            String text = Base64Codec.encode(data);
+            Assert.assertEquals(0, text.length() % 4);
+            Assert.assertArrayEquals(data, Base64Codec.decode(text));
+        }
+
+        Assert.assertEquals("TWFu", Base64Codec.encode("Man".getBytes()));
+        Assert.assertEquals("TWE=", Base64Codec.encode("Ma".getBytes()));
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ *  Copyright 2015 Institute of Information Systems, Hof University
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package de.hofuniversity.iisys.neo4j.websock.util;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import de.hofuniversity.iisys.neo4j.websock.query.EQueryType;
+import de.hofuniversity.iisys.neo4j.websock.query.WebsockQuery;
+import de.hofuniversity.iisys.neo4j.websock.query.encoding.unsafe.BsonQueryHandler;
+import de.hofuniversity.iisys.neo4j.websock.query.encoding.unsafe.DeflateBsonQueryHandler;
+import de.hofuniversity.iisys.neo4j.websock.result.EResultEncoding;
+import de.hofuniversity.iisys.neo4j.websock.result.TableResult;
+import de.hofuniversity.iisys.neo4j.websock.session.WebsockConstants;
+
+/**
+ * Benchmark comparing message sizes and decoding times of row-based and
+ * encoded table results for wide and long tables.
+ * Not run as a unit test, start the main method manually.
+ */
+public class ColumnarEncodingBenchmark
+{
+    private static final int ITERATIONS = 20;
+
+    public static void main(String[] args) throws Exception
+    {
+        run("wide (200 columns x 500 rows)", createTable(200, 500));
+        run("long (5 columns x 100000 rows)", createTable(5, 100000));
+    }
+
+    private static TableResult createTable(int width, int height)
+    {
+        final List<String> columns = new ArrayList<String>(width);
+        for(int i = 0; i < width; ++i)
+        {
+            columns.add("column" + i);
+        }
+
+        final List<List<Object>> rows = new ArrayList<List<Object>>(height);
+        for(int i = 0; i < height; ++i)
+        {
+            final List<Object> row = new ArrayList<Object>(width);
+            for(int j = 0; j < width; ++j)
+            {
+                switch(j % 5)
+                {
+                    case 0:
+                        row.add(1000000L + i);
+                        break;
+                    case 1:
+                        row.add(i % 100);
+                        break;
+                    case 2:
+                        row.add(i * 0.25);
+                        break;
+                    case 3:
+                        row.add(i % 7 == 0);
+                        break;
+                    default:
+                        row.add("status " + (i % 4));
+                        break;
+                }
+            }
+            rows.add(row);
+        }
+
+        return new TableResult(columns, rows);
+    }
+
+    private static void run(String name, TableResult table) throws Exception
+    {
+        System.out.println(name);
+
+        measure("rows", table, EnumSet.noneOf(EResultEncoding.class));
+        measure("columnar", table, EnumSet.of(EResultEncoding.COLUMNAR));
+        measure("dictionary", table, EnumSet.of(EResultEncoding.DICTIONARY));
+        measure("col+dict", table, EnumSet.of(EResultEncoding.COLUMNAR,
+            EResultEncoding.DICTIONARY));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void measure(String name, TableResult table,
+        Set<EResultEncoding> encodings) throws Exception
+    {
+        final WebsockQuery query = new WebsockQuery(1, EQueryType.RESULT);
+        query.setPayload(ResultSetConverter.toMap(table,
+            new HashMap<String, Object>(), encodings));
+
+        final BsonQueryHandler bson = new BsonQueryHandler();
+        final DeflateBsonQueryHandler deflate = new DeflateBsonQueryHandler(
+            WebsockConstants.FASTEST_COMPRESSION);
+
+        final ByteBuffer bsonData = bson.encode(query);
+        final int deflateSize = deflate.encode(query).remaining();
+
+        long best = Long.MAX_VALUE;
+        long checksum = 0;
+        for(int i = 0; i < ITERATIONS; ++i)
+        {
+            final long start = System.nanoTime();
+
+            final WebsockQuery decoded = bson.decode(bsonData);
+            final TableResult result = (TableResult)
+                ResultSetConverter.toResultSet(
+                (Map<String, Object>)decoded.getPayload());
+            for(List<Object> row : result.getResults())
+            {
+                checksum += row.get(row.size() - 1).hashCode();
+            }
+
+            best = Math.min(best, System.nanoTime() - start);
+        }
+
+        System.out.println(String.format(
+            "  %-10s BSON %,11d bytes  deflated %,10d bytes  decode %7.1f ms"
+            + "  (%d)", name, bsonData.remaining(), deflateSize,
+            best / 1000000.0, checksum % 10));
+    }
+}
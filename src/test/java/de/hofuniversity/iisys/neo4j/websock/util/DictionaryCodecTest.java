@@ -0,0 +1,115 @@
+/*
+ *  Copyright 2015 Institute of Information Systems, Hof University
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package de.hofuniversity.iisys.neo4j.websock.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test for the codec replacing low-cardinality Strings with dictionary codes.
+ */
+public class DictionaryCodecTest
+{
+    /**
+     * Tests which value lists are considered for dictionary encoding.
+     */
+    @Test
+    public void detectionTest()
+    {
+        List<Object> values = new ArrayList<Object>();
+        for(int i = 0; i < 20; ++i)
+        {
+            values.add(i % 2 == 0 ? "even" : "odd");
+        }
+        values.add(null);
+
+        Assert.assertEquals(Arrays.asList("even", "odd"),
+            DictionaryCodec.getDictionary(values));
+
+        //too few values
+        Assert.assertNull(DictionaryCodec.getDictionary(
+            values.subList(0, DictionaryCodec.MIN_VALUES - 1)));
+
+        //not only Strings
+        values.add(1);
+        Assert.assertNull(DictionaryCodec.getDictionary(values));
+
+        //too many distinct values
+        values.clear();
+        for(int i = 0; i < 20; ++i)
+        {
+            values.add("value " + i);
+        }
+        Assert.assertNull(DictionaryCodec.getDictionary(values));
+    }
+
+    /**
+     * Tests encoding and decoding values with a dictionary.
+     */
+    @Test
+    public void reextractTest()
+    {
+        List<String> dictionary = Arrays.asList("a", "b");
+        List<Object> values = Arrays.<Object>asList("b", null, "a", "b");
+
+        List<Object> codes = DictionaryCodec.encode(values, dictionary);
+        Assert.assertEquals(Arrays.<Object>asList(1, -1, 0, 1), codes);
+
+        List<Object> decoded = DictionaryCodec.decode(codes, dictionary);
+        Assert.assertEquals(values, decoded);
+        Assert.assertSame(decoded.get(0), decoded.get(3));
+    }
+
+    /**
+     * Tests that encoding and decoding lists of maps keeps their key order.
+     */
+    @Test
+    public void mapOrderTest()
+    {
+        final List<Object> maps = new ArrayList<Object>();
+        for(int i = 0; i < 20; ++i)
+        {
+            final Map<String, Object> map =
+                new LinkedHashMap<String, Object>();
+            map.put("z", i % 2 == 0 ? "even" : "odd");
+            map.put("a", i);
+            map.put("m", "value");
+            maps.add(map);
+        }
+
+        final Map<String, Object> dictionaries =
+            new HashMap<String, Object>();
+        final List<Object> encoded = DictionaryCodec.encodeMaps(maps,
+            dictionaries);
+        final List<Object> decoded = DictionaryCodec.decodeMaps(encoded,
+            dictionaries);
+
+        final List<Object> order = Arrays.<Object>asList("z", "a", "m");
+        Assert.assertEquals(order, new ArrayList<Object>(
+            ((Map<?, ?>) encoded.get(0)).keySet()));
+        Assert.assertEquals(order, new ArrayList<Object>(
+            ((Map<?, ?>) decoded.get(0)).keySet()));
+        Assert.assertEquals(maps, decoded);
+    }
+}
@@ -296,4 +296,23 @@ public class JsonConverterTest
         JSONList list2 = (JSONList) payload.get(TEST_LIST_2_NAME);
         Assert.assertTrue(testList2.getJson() == list2.getJson());
     }
+
+    /**
+     * Tests that queries nested as map values are converted as well.
+     */
+    @Test
+    public void nestedQueryTest() throws Exception
+    {
+        final WebsockQuery query = new WebsockQuery(TEST_ID_1, TEST_TYPE_1);
+        final Map<String, Object> payload = new HashMap<String, Object>();
+        payload.put("inner", new WebsockQuery(7, EQueryType.PING));
+        query.setPayload(payload);
+
+        final JSONObject encoded = JsonConverter.toJson(query);
+        final JSONObject inner = encoded.getJSONObject(
+            WebsockConstants.PAYLOAD).getJSONObject("inner");
+        Assert.assertEquals(7, inner.get(WebsockConstants.QUERY_ID));
+        Assert.assertEquals(EQueryType.PING.getCode(),
+            inner.get(WebsockConstants.QUERY_TYPE));
+    }
 }
@@ -0,0 +1,100 @@
+/*
+ *  Copyright 2015 Institute of Information Systems, Hof University
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package de.hofuniversity.iisys.neo4j.websock.util;
+
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test for the delta and XOR codecs for numeric columns.
+ */
+public class NumericCodecTest
+{
+    /**
+     * Tests zigzag encoded variable length deltas for sorted, unsorted and
+     * extreme values.
+     */
+    @Test
+    public void deltaTest()
+    {
+        //sorted IDs
+        long[] values = new long[1000];
+        for(int i = 0; i < values.length; ++i)
+        {
+            values[i] = 1400000000000L + i * 3;
+        }
+
+        byte[] data = NumericCodec.encodeDeltas(values);
+        Assert.assertArrayEquals(values, NumericCodec.decodeDeltas(data,
+            values.length));
+        Assert.assertTrue(data.length < values.length + 8);
+
+        //extremes and random values
+        values = new long[] {Long.MIN_VALUE, Long.MAX_VALUE, 0, -1,
+            Long.MAX_VALUE, Long.MIN_VALUE, 42};
+        Assert.assertArrayEquals(values, NumericCodec.decodeDeltas(
+            NumericCodec.encodeDeltas(values), values.length));
+
+        Random random = new Random(42);
+        values = new long[500];
+        for(int i = 0; i < values.length; ++i)
+        {
+            values[i] = random.nextLong();
+        }
+        Assert.assertArrayEquals(values, NumericCodec.decodeDeltas(
+            NumericCodec.encodeDeltas(values), values.length));
+
+        Assert.assertEquals(0, NumericCodec.decodeDeltas(
+            NumericCodec.encodeDeltas(new long[0]), 0).length);
+    }
+
+    /**
+     * Tests XOR compression for slowly changing, special and random values.
+     */
+    @Test
+    public void xorTest()
+    {
+        //slowly changing scores
+        double[] values = new double[1000];
+        for(int i = 0; i < values.length; ++i)
+        {
+            values[i] = 0.5 + (i / 100) * 0.25;
+        }
+
+        byte[] data = NumericCodec.encodeXor(values);
+        Assert.assertArrayEquals(values, NumericCodec.decodeXor(data,
+            values.length), 0.0);
+        Assert.assertTrue(data.length < values.length);
+
+        //special and random values
+        values = new double[] {Double.NaN, 0.0, -0.0, Double.MIN_VALUE,
+            Double.MAX_VALUE, Double.NEGATIVE_INFINITY, 1.0, 1.0};
+        Assert.assertArrayEquals(values, NumericCodec.decodeXor(
+            NumericCodec.encodeXor(values), values.length), 0.0);
+
+        Random random = new Random(42);
+        values = new double[500];
+        for(int i = 0; i < values.length; ++i)
+        {
+            values[i] = random.nextDouble() * random.nextInt();
+        }
+        Assert.assertArrayEquals(values, NumericCodec.decodeXor(
+            NumericCodec.encodeXor(values), values.length), 0.0);
+    }
+}
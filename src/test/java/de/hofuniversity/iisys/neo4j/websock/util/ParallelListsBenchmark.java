@@ -0,0 +1,124 @@
+/*
+ *  Copyright 2015 Institute of Information Systems, Hof University
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package de.hofuniversity.iisys.neo4j.websock.util;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Benchmark comparing sequential and fork-join based conversion, filtering
+ * and sorting of large lists of maps for increasing numbers of cores.
+ * Not run as a unit test, start the main method manually.
+ */
+public class ParallelListsBenchmark
+{
+    private static final int ITERATIONS = 10;
+    private static final int SIZE = 500000;
+
+    private static final IElementMapper<Object, Object> COPY
+        = new IElementMapper<Object, Object>()
+    {
+        @Override
+        public Object map(Object element)
+        {
+            return new HashMap<Object, Object>((Map<?, ?>)element);
+        }
+    };
+
+    private static final IElementPredicate<Object> FILTER
+        = new IElementPredicate<Object>()
+    {
+        @Override
+        public boolean accept(Object element)
+        {
+            return ((Map<?, ?>)element).get("name").toString()
+                .endsWith("7");
+        }
+    };
+
+    private static final Comparator<Object> SORT = new Comparator<Object>()
+    {
+        @Override
+        public int compare(Object o1, Object o2)
+        {
+            return ((Map<?, ?>)o1).get("name").toString().compareTo(
+                ((Map<?, ?>)o2).get("name").toString());
+        }
+    };
+
+    public static void main(String[] args) throws Exception
+    {
+        final List<Object> list = new ArrayList<Object>(SIZE);
+        for(int i = 0; i < SIZE; ++i)
+        {
+            final Map<String, Object> map = new HashMap<String, Object>();
+            map.put("id", i);
+            map.put("name", "node " + ((i * 7919L) % SIZE));
+            map.put("score", i * 0.5);
+            list.add(map);
+        }
+
+        System.out.println(SIZE + " maps");
+        run("sequential", list, Integer.MAX_VALUE, 1);
+
+        final int cores = Runtime.getRuntime().availableProcessors();
+        for(int threads = 1; threads <= cores; threads *= 2)
+        {
+            run(threads + " threads", list, ParallelLists.DEFAULT_THRESHOLD,
+                threads);
+        }
+    }
+
+    private static void run(String name, List<Object> list, int threshold,
+        int threads)
+    {
+        final ForkJoinPool pool = new ForkJoinPool(threads);
+
+        long map = Long.MAX_VALUE;
+        long filter = Long.MAX_VALUE;
+        long sort = Long.MAX_VALUE;
+        long checksum = 0;
+        for(int i = 0; i < ITERATIONS; ++i)
+        {
+            long start = System.nanoTime();
+            checksum += ParallelLists.map(list, COPY, threshold, pool).size();
+            map = Math.min(map, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            checksum += ParallelLists.filter(list, FILTER, threshold, pool)
+                .size();
+            filter = Math.min(filter, System.nanoTime() - start);
+
+            final List<Object> copy = new ArrayList<Object>(list);
+            start = System.nanoTime();
+            ParallelLists.sort(copy, SORT, threshold, pool);
+            sort = Math.min(sort, System.nanoTime() - start);
+            checksum += copy.get(0).hashCode();
+        }
+
+        pool.shutdown();
+
+        System.out.println(String.format(
+            "  %-12s convert %7.1f ms  filter %7.1f ms  sort %7.1f ms  (%d)",
+            name, map / 1000000.0, filter / 1000000.0, sort / 1000000.0,
+            checksum % 10));
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ *  Copyright 2015 Institute of Information Systems, Hof University
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+package de.hofuniversity.iisys.neo4j.websock.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+import org.bson.BSONObject;
+import org.json.JSONObject;
+import org.junit.Assert;
+import org.junit.Test;
+
+import de.hofuniversity.iisys.neo4j.websock.query.EQueryType;
+import de.hofuniversity.iisys.neo4j.websock.query.WebsockQuery;
+
+/**
+ * Test for the fork-join based list conversion, filtering and sorting.
+ */
+public class ParallelListsTest
+{
+    private static final int SIZE = 10000;
+    private static final int THRESHOLD = 64;
+
+    private static final Comparator<Integer[]> BY_KEY
+        = new Comparator<Integer[]>()
+    {
+        @Override
+        public int compare(Integer[] o1, Integer[] o2)
+        {
+            return o1[0].compareTo(o2[0]);
+        }
+    };
+
+    /**
+     * Tests that parallel results match the sequential ones, including the
+     * order of equal elements when sorting.
+     */
+    @Test
+    public void parallelTest()
+    {
+        final ForkJoinPool pool = new ForkJoinPool(4);
+
+        final List<Integer[]> list = new ArrayList<Integer[]>(SIZE);
+        for(int i = 0; i < SIZE; ++i)
+        {
+            list.add(new Integer[] {(i * 7919) % 97, i});
+        }
+
+        //conversion keeps the order
+        final List<Integer> ids = ParallelLists.map(list,
+            new IElementMapper<Integer[], Integer>()
+        {
+            @Override
+            public Integer map(Integer[] element)
+            {
+                return element[1];
+            }
+        }, THRESHOLD, pool);
+        Assert.assertEquals(SIZE, ids.size());
+        for(int i = 0; i < SIZE; ++i)
+        {
+            Assert.assertEquals(Integer.valueOf(i), ids.get(i));
+        }
+
+        //filtering keeps the order
+        final List<Integer[]> even = ParallelLists.filter(list,
+            new IElementPredicate<Integer[]>()
+        {
+            @Override
+            public boolean accept(Integer[] element)
+            {
+                return element[0] % 2 == 0;
+            }
+        }, THRESHOLD, pool);
+        final List<Integer[]> expected = new ArrayList<Integer[]>();
+        for(Integer[] e : list)
+        {
+            if(e[0] % 2 == 0)
+            {
+                expected.add(e);
+            }
+        }
+        Assert.assertEquals(expected, even);
+
+        //sorting is stable
+        final List<Integer[]> sorted = new ArrayList<Integer[]>(list);
+        ParallelLists.sort(sorted, BY_KEY, THRESHOLD, pool);
+        Collections.sort(list, BY_KEY);
+        Assert.assertEquals(list, sorted);
+
+        pool.shutdown();
+    }
+
+    /**
+     * Tests conversion of lists above the threshold by the BSON and JSON
+     * converters.
+     */
+    @Test
+    public void converterTest() throws Exception
+    {
+        final int size = ParallelLists.DEFAULT_THRESHOLD * 3;
+        final List<Object> payload = new ArrayList<Object>(size);
+        for(int i = 0; i < size; ++i)
+        {
+            final Map<String, Object> map = new HashMap<String, Object>();
+            map.put("id", i);
+            map.put("tags", Collections.singletonList("t" + i));
+            payload.add(map);
+        }
+
+        final WebsockQuery query = new WebsockQuery(1, EQueryType.RESULT);
+        query.setPayload(payload);
+
+        final BSONObject bson = BsonConverter.toBson(query);
+        Assert.assertEquals(payload,
+            BsonConverter.fromBson(bson).getPayload());
+
+        final JSONObject json = new JSONObject(
+            JsonConverter.toJson(query).toString());
+        Assert.assertEquals(payload,
+            JsonConverter.fromJson(json).getPayload());
+    }
+}
@@ -17,6 +17,7 @@
 package de.hofuniversity.iisys.neo4j.websock.util;
 
 import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -25,9 +26,16 @@ import org.junit.Assert;
 
 import org.junit.Test;
 
+import de.hofuniversity.iisys.neo4j.websock.query.EQueryType;
+import de.hofuniversity.iisys.neo4j.websock.query.WebsockQuery;
+import de.hofuniversity.iisys.neo4j.websock.query.encoding.safe.TSafeJsonQueryHandler;
+import de.hofuniversity.iisys.neo4j.websock.query.encoding.unsafe.BsonQueryHandler;
+import de.hofuniversity.iisys.neo4j.websock.query.encoding.unsafe.DeflateBsonQueryHandler;
 import de.hofuniversity.iisys.neo4j.websock.result.AResultSet;
+import de.hofuniversity.iisys.neo4j.websock.result.EResultEncoding;
 import de.hofuniversity.iisys.neo4j.websock.result.EResultType;
 import de.hofuniversity.iisys.neo4j.websock.result.ListResult;
+import de.hofuniversity.iisys.neo4j.websock.result.SchemaMapList;
 import de.hofuniversity.iisys.neo4j.websock.result.SingleResult;
 import de.hofuniversity.iisys.neo4j.websock.result.TableResult;
 import de.hofuniversity.iisys.neo4j.websock.session.WebsockConstants;
@@ -254,4 +262,369 @@ public class ResultSetConverterTest
             TEST_STRING_ARRAY[2]));
         Assert.assertTrue(resLists == set.getResults());
     }
+
+    /**
+     * Test for the column-major table encoding, transferred as BSON and JSON
+     * and decoded into row-based and columnar tables.
+     */
+    @SuppressWarnings("unchecked")
+    @Test
+    public void columnarTest() throws Exception
+    {
+        List<String> columns = new ArrayList<String>();
+        columns.add("id");
+        columns.add("count");
+        columns.add("score");
+        columns.add("flag");
+        columns.add("name");
+
+        List<List<Object>> rows = new ArrayList<List<Object>>();
+        for(int i = 0; i < 10; ++i)
+        {
+            List<Object> row = new ArrayList<Object>();
+            row.add(1000L + i);
+            row.add(i);
+            row.add(i / 4.0);
+            row.add(i % 3 == 0);
+            row.add(i % 2 == 0 ? "name " + i : null);
+            rows.add(row);
+        }
+
+        TableResult table = new TableResult(columns, rows);
+        table.setFirst(TEST_INT_1);
+        table.setTotal(TEST_INT_2);
+
+        EnumSet<EResultEncoding> encodings =
+            EnumSet.of(EResultEncoding.COLUMNAR);
+
+        //BSON
+        WebsockQuery query = new WebsockQuery(1, EQueryType.RESULT);
+        query.setPayload(ResultSetConverter.toMap(table,
+            new HashMap<String, Object>(), encodings));
+
+        BsonQueryHandler bson = new BsonQueryHandler();
+        query = bson.decode(bson.encode(query));
+
+        TableResult result = (TableResult)ResultSetConverter.toResultSet(
+            (Map<String, Object>)query.getPayload());
+        Assert.assertFalse(result.isColumnar());
+        checkTable(rows, columns, result);
+
+        result = (TableResult)ResultSetConverter.toResultSet(
+            (Map<String, Object>)query.getPayload(), true);
+        Assert.assertTrue(result.isColumnar());
+        checkTable(rows, columns, result);
+        Assert.assertEquals(1004L, result.getColumnValues("id").get(4));
+
+        //JSON
+        query = new WebsockQuery(1, EQueryType.RESULT);
+        query.setPayload(ResultSetConverter.toMap(table,
+            new HashMap<String, Object>(), encodings));
+
+        TSafeJsonQueryHandler json = new TSafeJsonQueryHandler();
+        query = json.decode(json.encode(query));
+
+        result = (TableResult)ResultSetConverter.toResultSet(
+            (Map<String, Object>)query.getPayload(), true);
+        checkTable(rows, columns, result);
+    }
+
+    /**
+     * Test for the dictionary encoding of low-cardinality String columns and
+     * fields in tables and lists.
+     */
+    @SuppressWarnings("unchecked")
+    @Test
+    public void dictionaryTest() throws Exception
+    {
+        List<String> columns = new ArrayList<String>();
+        columns.add("id");
+        columns.add("label");
+
+        List<List<Object>> rows = new ArrayList<List<Object>>();
+        List<Map<String, Object>> maps = new ArrayList<Map<String, Object>>();
+        for(int i = 0; i < 40; ++i)
+        {
+            List<Object> row = new ArrayList<Object>();
+            row.add("id" + i);
+            row.add(i % 5 == 0 ? null : "label " + i % 3);
+            rows.add(row);
+
+            Map<String, Object> map = new HashMap<String, Object>();
+            map.put("id", "id" + i);
+            map.put("type", "type " + i % 2);
+            maps.add(map);
+        }
+
+        TableResult table = new TableResult(columns, rows);
+        table.setFirst(TEST_INT_1);
+        table.setTotal(TEST_INT_2);
+
+        ListResult list = new ListResult(maps);
+
+        //row-based table, BSON
+        EnumSet<EResultEncoding> encodings =
+            EnumSet.of(EResultEncoding.DICTIONARY);
+        Map<String, Object> map = ResultSetConverter.toMap(table,
+            new HashMap<String, Object>(), encodings);
+        Assert.assertTrue(((Map<String, Object>)map.get(
+            WebsockConstants.DICTIONARIES)).containsKey("1"));
+
+        TableResult result = (TableResult)ResultSetConverter.toResultSet(
+            transfer(map, true));
+        checkTable(rows, columns, result);
+        Assert.assertSame(result.getResults().get(1).get(1),
+            result.getResults().get(4).get(1));
+
+        //columnar table, JSON
+        encodings.add(EResultEncoding.COLUMNAR);
+        map = ResultSetConverter.toMap(table, new HashMap<String, Object>(),
+            encodings);
+
+        result = (TableResult)ResultSetConverter.toResultSet(
+            transfer(map, false), true);
+        checkTable(rows, columns, result);
+
+        //list of maps, BSON and JSON
+        map = ResultSetConverter.toMap(list, new HashMap<String, Object>(),
+            encodings);
+        Assert.assertTrue(((Map<String, Object>)map.get(
+            WebsockConstants.DICTIONARIES)).containsKey("type"));
+
+        for(boolean bson : new boolean[] {true, false})
+        {
+            List<?> resList = (List<?>)ResultSetConverter.toResultSet(
+                transfer(map, bson)).getResults();
+            Assert.assertEquals(maps, resList);
+            Assert.assertSame(((Map<String, ?>)resList.get(0)).get("type"),
+                ((Map<String, ?>)resList.get(2)).get("type"));
+        }
+    }
+
+    /**
+     * Test for the shared-schema encoding of lists of maps with the same
+     * keys, combined with the other encodings.
+     */
+    @SuppressWarnings("unchecked")
+    @Test
+    public void schemaTest() throws Exception
+    {
+        List<Map<String, Object>> maps = new ArrayList<Map<String, Object>>();
+        for(int i = 0; i < 20; ++i)
+        {
+            Map<String, Object> map = new HashMap<String, Object>();
+            map.put("id", i);
+            map.put("name", "person " + i);
+            map.put("type", i % 3 == 0 ? "admin" : "user");
+            map.put("mail", null);
+            maps.add(map);
+        }
+
+        ListResult list = new ListResult(maps);
+        list.setFirst(TEST_INT_1);
+
+        List<EnumSet<EResultEncoding>> combinations =
+            new ArrayList<EnumSet<EResultEncoding>>();
+        combinations.add(EnumSet.of(EResultEncoding.SCHEMA));
+        combinations.add(EnumSet.of(EResultEncoding.SCHEMA,
+            EResultEncoding.DICTIONARY));
+        combinations.add(EnumSet.allOf(EResultEncoding.class));
+
+        for(EnumSet<EResultEncoding> encodings : combinations)
+        {
+            Map<String, Object> map = ResultSetConverter.toMap(list,
+                new HashMap<String, Object>(), encodings);
+            Assert.assertEquals(4, ((List<?>)map.get(
+                WebsockConstants.TABLE_COLUMNS)).size());
+
+            for(boolean bson : new boolean[] {true, false})
+            {
+                AResultSet<?> set = ResultSetConverter.toResultSet(
+                    transfer(map, bson), !bson);
+
+                Assert.assertTrue(set.getResults() instanceof SchemaMapList);
+                Assert.assertEquals(maps, set.getResults());
+                Assert.assertEquals((int)TEST_INT_1, set.getFirst());
+
+                Map<String, Object> first =
+                    ((List<Map<String, Object>>)set.getResults()).get(0);
+                Assert.assertTrue(first.containsKey("mail"));
+                Assert.assertNull(first.get("mail"));
+                Assert.assertNull(first.get("unknown"));
+            }
+        }
+
+        //differing keys are sent unchanged
+        maps.get(3).remove("mail");
+        Map<String, Object> map = ResultSetConverter.toMap(list,
+            new HashMap<String, Object>(),
+            EnumSet.of(EResultEncoding.SCHEMA));
+        Assert.assertNull(map.get(WebsockConstants.RESULT_ENCODING));
+        Assert.assertTrue(maps == map.get(WebsockConstants.RESULT));
+    }
+
+    /**
+     * Test for the compact encoding of numeric lists over plain and
+     * compressed BSON.
+     */
+    @SuppressWarnings("unchecked")
+    @Test
+    public void numericListTest() throws Exception
+    {
+        List<Long> ids = new ArrayList<Long>();
+        List<Double> scores = new ArrayList<Double>();
+        for(int i = 0; i < 100; ++i)
+        {
+            ids.add(5000000L + i * 2);
+            scores.add(1.0 - (i / 10) * 0.125);
+        }
+
+        EnumSet<EResultEncoding> encodings =
+            EnumSet.of(EResultEncoding.COLUMNAR);
+
+        DeflateBsonQueryHandler deflate = new DeflateBsonQueryHandler(
+            WebsockConstants.BEST_COMPRESSION);
+        BsonQueryHandler bson = new BsonQueryHandler();
+
+        for(List<?> list : new List<?>[] {ids, scores})
+        {
+            ListResult result = new ListResult(list);
+            result.setTotal(TEST_INT_2);
+
+            Map<String, Object> map = ResultSetConverter.toMap(result,
+                new HashMap<String, Object>(), encodings);
+            Assert.assertTrue(map.get(WebsockConstants.RESULT)
+                instanceof String);
+
+            WebsockQuery query = new WebsockQuery(1, EQueryType.RESULT);
+            query.setPayload(map);
+
+            AResultSet<?> set = ResultSetConverter.toResultSet(
+                (Map<String, Object>)bson.decode(bson.encode(query))
+                .getPayload());
+            Assert.assertEquals(list, set.getResults());
+            Assert.assertEquals((int)TEST_INT_2, set.getTotal());
+
+            set = ResultSetConverter.toResultSet(
+                (Map<String, Object>)deflate.decode(deflate.encode(query))
+                .getPayload());
+            Assert.assertEquals(list, set.getResults());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> transfer(Map<String, Object> map,
+        boolean bson) throws Exception
+    {
+        WebsockQuery query = new WebsockQuery(1, EQueryType.RESULT);
+        query.setPayload(map);
+
+        if(bson)
+        {
+            BsonQueryHandler handler = new BsonQueryHandler();
+            query = handler.decode(handler.encode(query));
+        }
+        else
+        {
+            TSafeJsonQueryHandler handler = new TSafeJsonQueryHandler();
+            query = handler.decode(handler.encode(query));
+        }
+
+        return (Map<String, Object>)query.getPayload();
+    }
+
+    private void checkTable(List<List<Object>> rows, List<String> columns,
+        TableResult result)
+    {
+        Assert.assertEquals(columns, result.getColumns());
+        Assert.assertEquals(rows.size(), result.getSize());
+        Assert.assertEquals((int)TEST_INT_1, result.getFirst());
+        Assert.assertEquals((int)TEST_INT_2, result.getTotal());
+
+        for(int i = 0; i < rows.size(); ++i)
+        {
+            Assert.assertEquals(rows.get(i), result.getResults().get(i));
+        }
+    }
+
+    /**
+     * Tests that projected fields and columns, including nested paths, are
+     * the only ones converted.
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void projectionTest()
+    {
+        final Map<String, Object> params = new HashMap<String, Object>();
+        params.put(WebsockConstants.PROJECTION, "name, address.city, tags.id");
+        final FieldProjection projection = FieldProjection.fromParameters(
+            params);
+
+        final Map<String, Object> address = new HashMap<String, Object>();
+        address.put("city", "Hof");
+        address.put("zip", "95028");
+        final Map<String, Object> tag = new HashMap<String, Object>();
+        tag.put("id", 1);
+        tag.put("label", "a");
+        final List<Object> tags = new ArrayList<Object>();
+        tags.add(tag);
+
+        final Map<String, Object> person = new HashMap<String, Object>();
+        person.put("name", "alice");
+        person.put("age", 42);
+        person.put("address", address);
+        person.put("tags", tags);
+        final List<Object> list = new ArrayList<Object>();
+        list.add(person);
+        list.add("plain");
+
+        final ListResult listResult = new ListResult(list);
+        listResult.setTotal(2);
+        final Map<String, Object> map = ResultSetConverter.toMap(listResult,
+            new HashMap<String, Object>(),
+            EnumSet.noneOf(EResultEncoding.class), projection);
+
+        Assert.assertEquals(2, map.get(WebsockConstants.TOTAL_RESULTS));
+        final List<Object> results =
+            (List<Object>)map.get(WebsockConstants.RESULT);
+        final Map<String, Object> projected =
+            (Map<String, Object>)results.get(0);
+        Assert.assertEquals(3, projected.size());
+        Assert.assertEquals("alice", projected.get("name"));
+        Assert.assertEquals(1,
+            ((Map<String, Object>)projected.get("address")).size());
+        Assert.assertEquals("Hof",
+            ((Map<String, Object>)projected.get("address")).get("city"));
+        final Map<String, Object> projectedTag = (Map<String, Object>)
+            ((List<Object>)projected.get("tags")).get(0);
+        Assert.assertEquals(1, projectedTag.size());
+        Assert.assertEquals(1, projectedTag.get("id"));
+        Assert.assertEquals("plain", results.get(1));
+
+        //tables keep the selected columns in projection order
+        final List<String> columns = new ArrayList<String>();
+        columns.add("age");
+        columns.add("address");
+        columns.add("name");
+        final List<List<Object>> rows = new ArrayList<List<Object>>();
+        final List<Object> row = new ArrayList<Object>();
+        row.add(42);
+        row.add(address);
+        row.add("alice");
+        rows.add(row);
+
+        final Map<String, Object> tableMap = ResultSetConverter.toMap(
+            new TableResult(columns, rows), new HashMap<String, Object>(),
+            EnumSet.of(EResultEncoding.COLUMNAR), projection);
+        final TableResult table = (TableResult)
+            ResultSetConverter.toResultSet(tableMap);
+        Assert.assertEquals(2, table.getColumns().size());
+        Assert.assertEquals("name", table.getColumns().get(0));
+        Assert.assertEquals("address", table.getColumns().get(1));
+        Assert.assertEquals("alice", table.getResults().get(0).get(0));
+        Assert.assertEquals("Hof", ((Map<String, Object>)
+            table.getResults().get(0).get(1)).get("city"));
+        Assert.assertNull(((Map<String, Object>)
+            table.getResults().get(0).get(1)).get("zip"));
+    }
 }